@@ -0,0 +1,103 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2020 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+
+package org.pentaho.di.core;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.pentaho.di.core.row.RowMeta;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.value.ValueMetaInteger;
+
+/**
+ * Measures the hand-over of rows between one producing and one consuming thread for the available row set types.
+ */
+@State( Scope.Group )
+@BenchmarkMode( Mode.Throughput )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class RowSetBenchmark {
+
+  @Param( { "blocking", "batching", "ringBuffer", "adaptiveBatching" } )
+  public String rowSetType;
+
+  @Param( { "10000" } )
+  public int rowSetSize;
+
+  private RowSet rowSet;
+  private RowMetaInterface rowMeta;
+  private Object[] row;
+
+  @Setup( Level.Iteration )
+  public void setUp() {
+    switch ( rowSetType ) {
+      case "blocking":
+        rowSet = new BlockingRowSet( rowSetSize );
+        break;
+      case "batching":
+        rowSet = new BlockingBatchingRowSet( rowSetSize );
+        break;
+      case "ringBuffer":
+        rowSet = new RingBufferRowSet( rowSetSize );
+        break;
+      case "adaptiveBatching":
+        rowSet = new AdaptiveBatchingRowSet( rowSetSize );
+        break;
+      default:
+        throw new IllegalArgumentException( "Unknown row set type: " + rowSetType );
+    }
+    rowMeta = new RowMeta();
+    rowMeta.addValueMeta( new ValueMetaInteger( "id" ) );
+    row = new Object[] { 1L };
+  }
+
+  @Benchmark
+  @Group( "handoff" )
+  @GroupThreads( 1 )
+  public boolean put() {
+    return rowSet.putRow( rowMeta, row );
+  }
+
+  @Benchmark
+  @Group( "handoff" )
+  @GroupThreads( 1 )
+  public Object[] get() {
+    return rowSet.getRowImmediate();
+  }
+}
@@ -0,0 +1,134 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2020 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+
+package org.pentaho.di.core.hash;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.row.RowMeta;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.value.ValueMetaInteger;
+
+/**
+ * Measures building and probing the ByteArrayHashIndex and LongHashIndex used by the lookup steps.
+ */
+@State( Scope.Thread )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.NANOSECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class HashIndexBenchmark {
+  private static final int NR_KEYS = 100000;
+
+  @Param( { "1000", "100000" } )
+  public int indexSize;
+
+  private RowMetaInterface keyMeta;
+  private long[] longKeys;
+  private byte[][] byteKeys;
+  private LongHashIndex longIndex;
+  private ByteArrayHashIndex byteArrayIndex;
+
+  @Setup
+  public void setUp() throws KettleException {
+    keyMeta = new RowMeta();
+    keyMeta.addValueMeta( new ValueMetaInteger( "key" ) );
+
+    longKeys = new long[ NR_KEYS ];
+    byteKeys = new byte[ NR_KEYS ][];
+    for ( int i = 0; i < NR_KEYS; i++ ) {
+      longKeys[ i ] = i * 7919L;
+      byteKeys[ i ] = serialize( new Object[] { longKeys[ i ] } );
+    }
+
+    longIndex = buildLongIndex();
+    byteArrayIndex = buildByteArrayIndex();
+  }
+
+  private byte[] serialize( Object[] key ) throws KettleException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    keyMeta.writeData( new DataOutputStream( bytes ), key );
+    return bytes.toByteArray();
+  }
+
+  private LongHashIndex buildLongIndex() throws KettleException {
+    LongHashIndex index = new LongHashIndex( indexSize );
+    for ( int i = 0; i < NR_KEYS; i++ ) {
+      index.put( longKeys[ i ], (long) i );
+    }
+    return index;
+  }
+
+  private ByteArrayHashIndex buildByteArrayIndex() throws KettleException {
+    ByteArrayHashIndex index = new ByteArrayHashIndex( keyMeta, indexSize );
+    for ( int i = 0; i < NR_KEYS; i++ ) {
+      index.put( byteKeys[ i ], byteKeys[ i ] );
+    }
+    return index;
+  }
+
+  @Benchmark
+  @OperationsPerInvocation( NR_KEYS )
+  public LongHashIndex longIndexPut() throws KettleException {
+    return buildLongIndex();
+  }
+
+  @Benchmark
+  @OperationsPerInvocation( NR_KEYS )
+  public void longIndexGet( Blackhole blackhole ) throws KettleException {
+    for ( int i = 0; i < NR_KEYS; i++ ) {
+      blackhole.consume( longIndex.get( longKeys[ i ] ) );
+    }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation( NR_KEYS )
+  public ByteArrayHashIndex byteArrayIndexPut() throws KettleException {
+    return buildByteArrayIndex();
+  }
+
+  @Benchmark
+  @OperationsPerInvocation( NR_KEYS )
+  public void byteArrayIndexGet( Blackhole blackhole ) throws KettleException {
+    for ( int i = 0; i < NR_KEYS; i++ ) {
+      blackhole.consume( byteArrayIndex.get( byteKeys[ i ] ) );
+    }
+  }
+}
@@ -0,0 +1,111 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2020 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+
+package org.pentaho.di.core.row;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.math.BigDecimal;
+import java.net.SocketTimeoutException;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.pentaho.di.core.exception.KettleFileException;
+import org.pentaho.di.core.row.value.ValueMetaBigNumber;
+import org.pentaho.di.core.row.value.ValueMetaBoolean;
+import org.pentaho.di.core.row.value.ValueMetaDate;
+import org.pentaho.di.core.row.value.ValueMetaInteger;
+import org.pentaho.di.core.row.value.ValueMetaNumber;
+import org.pentaho.di.core.row.value.ValueMetaString;
+
+/**
+ * Measures RowMeta.writeData() and readData(), the serialization used by Sort Rows spill files and remote steps.
+ */
+@State( Scope.Thread )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.NANOSECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class RowMetaSerializationBenchmark {
+
+  /** The number of times the 6 field mixed block is repeated in the row */
+  @Param( { "1", "10" } )
+  public int width;
+
+  private RowMetaInterface rowMeta;
+  private Object[] row;
+  private ByteArrayOutputStream bytes;
+  private DataOutputStream outputStream;
+  private byte[] serializedRow;
+
+  @Setup
+  public void setUp() throws KettleFileException {
+    rowMeta = new RowMeta();
+    row = new Object[ width * 6 ];
+    for ( int i = 0; i < width; i++ ) {
+      rowMeta.addValueMeta( new ValueMetaString( "string" + i ) );
+      rowMeta.addValueMeta( new ValueMetaInteger( "integer" + i ) );
+      rowMeta.addValueMeta( new ValueMetaNumber( "number" + i ) );
+      rowMeta.addValueMeta( new ValueMetaDate( "date" + i ) );
+      rowMeta.addValueMeta( new ValueMetaBoolean( "boolean" + i ) );
+      rowMeta.addValueMeta( new ValueMetaBigNumber( "bignumber" + i ) );
+      row[ i * 6 ] = "Customer name " + i;
+      row[ i * 6 + 1 ] = 1234567L + i;
+      row[ i * 6 + 2 ] = 1234.567d + i;
+      row[ i * 6 + 3 ] = new Date( 1500000000000L + i );
+      row[ i * 6 + 4 ] = i % 2 == 0;
+      row[ i * 6 + 5 ] = new BigDecimal( "12345678901234567890.12345" ).add( BigDecimal.valueOf( i ) );
+    }
+
+    bytes = new ByteArrayOutputStream( 1024 );
+    outputStream = new DataOutputStream( bytes );
+    rowMeta.writeData( outputStream, row );
+    serializedRow = bytes.toByteArray();
+  }
+
+  @Benchmark
+  public int writeData() throws KettleFileException {
+    bytes.reset();
+    rowMeta.writeData( outputStream, row );
+    return bytes.size();
+  }
+
+  @Benchmark
+  public Object[] readData() throws KettleFileException, SocketTimeoutException {
+    return rowMeta.readData( new DataInputStream( new ByteArrayInputStream( serializedRow ) ) );
+  }
+}
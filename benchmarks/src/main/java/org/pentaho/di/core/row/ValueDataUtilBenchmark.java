@@ -0,0 +1,109 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2020 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+
+package org.pentaho.di.core.row;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.pentaho.di.core.exception.KettleValueException;
+import org.pentaho.di.core.row.value.ValueMetaBigNumber;
+import org.pentaho.di.core.row.value.ValueMetaInteger;
+import org.pentaho.di.core.row.value.ValueMetaNumber;
+
+/**
+ * Measures the ValueDataUtil arithmetic used by the Calculator step.
+ */
+@State( Scope.Thread )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.NANOSECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class ValueDataUtilBenchmark {
+
+  @Param( { "Integer", "Number", "BigNumber" } )
+  public String type;
+
+  private ValueMetaInterface metaA;
+  private ValueMetaInterface metaB;
+  private Object dataA;
+  private Object dataB;
+
+  @Setup
+  public void setUp() {
+    switch ( type ) {
+      case "Integer":
+        metaA = new ValueMetaInteger( "a" );
+        metaB = new ValueMetaInteger( "b" );
+        dataA = 123456789L;
+        dataB = 987L;
+        break;
+      case "Number":
+        metaA = new ValueMetaNumber( "a" );
+        metaB = new ValueMetaNumber( "b" );
+        dataA = 123456.789d;
+        dataB = 987.654d;
+        break;
+      case "BigNumber":
+        metaA = new ValueMetaBigNumber( "a" );
+        metaB = new ValueMetaBigNumber( "b" );
+        dataA = new BigDecimal( "123456789.123456789" );
+        dataB = new BigDecimal( "987.654" );
+        break;
+      default:
+        throw new IllegalArgumentException( "Unknown type: " + type );
+    }
+  }
+
+  @Benchmark
+  public Object plus() throws KettleValueException {
+    return ValueDataUtil.plus( metaA, dataA, metaB, dataB );
+  }
+
+  @Benchmark
+  public Object minus() throws KettleValueException {
+    return ValueDataUtil.minus( metaA, dataA, metaB, dataB );
+  }
+
+  @Benchmark
+  public Object multiply() throws KettleValueException {
+    return ValueDataUtil.multiply( metaA, dataA, metaB, dataB );
+  }
+
+  @Benchmark
+  public Object divide() throws KettleValueException {
+    return ValueDataUtil.divide( metaA, dataA, metaB, dataB );
+  }
+}
@@ -0,0 +1,115 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2020 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+
+package org.pentaho.di.core.row;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.pentaho.di.core.exception.KettleValueException;
+import org.pentaho.di.core.row.value.ValueMetaDate;
+import org.pentaho.di.core.row.value.ValueMetaInteger;
+import org.pentaho.di.core.row.value.ValueMetaNumber;
+import org.pentaho.di.core.row.value.ValueMetaString;
+
+/**
+ * Measures ValueMetaBase.compare(), hashCode() and convertData() for the most common data types.
+ */
+@State( Scope.Thread )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.NANOSECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class ValueMetaBenchmark {
+
+  @Param( { "Integer", "Number", "String", "Date" } )
+  public String type;
+
+  private ValueMetaInterface valueMeta;
+  private ValueMetaInterface stringMeta;
+  private Object data1;
+  private Object data2;
+  private String stringData;
+
+  @Setup
+  public void setUp() throws KettleValueException {
+    stringMeta = new ValueMetaString( "string" );
+    switch ( type ) {
+      case "Integer":
+        valueMeta = new ValueMetaInteger( "value" );
+        data1 = 123456789L;
+        data2 = 123456790L;
+        break;
+      case "Number":
+        valueMeta = new ValueMetaNumber( "value" );
+        data1 = 12345.6789d;
+        data2 = 12345.6790d;
+        break;
+      case "String":
+        valueMeta = new ValueMetaString( "value" );
+        data1 = "The quick brown fox jumps over the lazy dog";
+        data2 = "The quick brown fox jumps over the lazy cat";
+        break;
+      case "Date":
+        valueMeta = new ValueMetaDate( "value" );
+        data1 = new Date( 1500000000000L );
+        data2 = new Date( 1500000001000L );
+        break;
+      default:
+        throw new IllegalArgumentException( "Unknown type: " + type );
+    }
+    stringData = valueMeta.getString( data1 );
+  }
+
+  @Benchmark
+  public int compare() throws KettleValueException {
+    return valueMeta.compare( data1, data2 );
+  }
+
+  @Benchmark
+  public int hashCodeOfValue() throws KettleValueException {
+    return valueMeta.hashCode( data1 );
+  }
+
+  @Benchmark
+  public Object convertFromString() throws KettleValueException {
+    return valueMeta.convertData( stringMeta, stringData );
+  }
+
+  @Benchmark
+  public Object convertToString() throws KettleValueException {
+    return stringMeta.convertData( valueMeta, data1 );
+  }
+}
@@ -0,0 +1,139 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2020 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+
+package org.pentaho.di.trans;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.pentaho.di.core.Const;
+import org.pentaho.di.core.KettleEnvironment;
+import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.plugins.PluginRegistry;
+import org.pentaho.di.core.plugins.StepPluginType;
+import org.pentaho.di.core.row.RowMeta;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.value.ValueMetaInteger;
+import org.pentaho.di.core.row.value.ValueMetaString;
+import org.pentaho.di.trans.step.StepMeta;
+import org.pentaho.di.trans.step.StepMetaInterface;
+import org.pentaho.di.trans.steps.dummytrans.DummyTransMeta;
+import org.pentaho.di.trans.steps.injector.InjectorMeta;
+
+/**
+ * Measures BaseStep.putRow() and getRow() by pushing rows through a small in-memory transformation:
+ * Injector -> Dummy -> ... -> Dummy. Every hop adds one putRow/getRow pair per row.
+ */
+@State( Scope.Thread )
+@BenchmarkMode( Mode.Throughput )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Warmup( iterations = 5, time = 2 )
+@Measurement( iterations = 5, time = 2 )
+@Fork( 1 )
+public class StepRowHandoffBenchmark {
+  private static final int NR_ROWS = 100000;
+
+  @Param( { "blocking", "ringBuffer", "adaptiveBatching" } )
+  public String rowSetType;
+
+  @Param( { "3" } )
+  public int nrDummySteps;
+
+  private TransMeta transMeta;
+  private RowMetaInterface rowMeta;
+  private Object[] row;
+  private String ringBufferRowSet;
+
+  @Setup( Level.Trial )
+  public void setUp() throws KettleException {
+    KettleEnvironment.init( false );
+
+    ringBufferRowSet = System.getProperty( Const.KETTLE_RING_BUFFER_ROWSET );
+    System.setProperty( Const.KETTLE_RING_BUFFER_ROWSET, "ringBuffer".equals( rowSetType ) ? "Y" : "N" );
+
+    transMeta = new TransMeta();
+    transMeta.setVariable( Const.KETTLE_ADAPTIVE_BATCHING_ROWSET,
+      "adaptiveBatching".equals( rowSetType ) ? "Y" : "N" );
+
+    StepMeta previous = addStep( new InjectorMeta(), "injector" );
+    for ( int i = 0; i < nrDummySteps; i++ ) {
+      StepMeta dummy = addStep( new DummyTransMeta(), "dummy" + i );
+      transMeta.addTransHop( new TransHopMeta( previous, dummy ) );
+      previous = dummy;
+    }
+
+    rowMeta = new RowMeta();
+    rowMeta.addValueMeta( new ValueMetaInteger( "id" ) );
+    rowMeta.addValueMeta( new ValueMetaString( "name" ) );
+    row = new Object[] { 1L, "name" };
+  }
+
+  @TearDown( Level.Trial )
+  public void tearDown() {
+    if ( ringBufferRowSet == null ) {
+      System.clearProperty( Const.KETTLE_RING_BUFFER_ROWSET );
+    } else {
+      System.setProperty( Const.KETTLE_RING_BUFFER_ROWSET, ringBufferRowSet );
+    }
+  }
+
+  private StepMeta addStep( StepMetaInterface stepMetaInterface, String name ) {
+    String pluginId = PluginRegistry.getInstance().getPluginId( StepPluginType.class, stepMetaInterface );
+    StepMeta stepMeta = new StepMeta( pluginId, name, stepMetaInterface );
+    transMeta.addStep( stepMeta );
+    return stepMeta;
+  }
+
+  @Benchmark
+  @OperationsPerInvocation( NR_ROWS )
+  public long pushRows() throws KettleException {
+    Trans trans = new Trans( transMeta );
+    trans.prepareExecution( null );
+    RowProducer producer = trans.addRowProducer( "injector", 0 );
+    trans.startThreads();
+
+    for ( int i = 0; i < NR_ROWS; i++ ) {
+      producer.putRow( rowMeta, row );
+    }
+    producer.finished();
+    trans.waitUntilFinished();
+
+    if ( trans.getErrors() > 0 ) {
+      throw new KettleException( "Benchmark transformation finished with errors" );
+    }
+    return trans.getStepInterface( "dummy" + ( nrDummySteps - 1 ), 0 ).getLinesWritten();
+  }
+}
@@ -0,0 +1,493 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2020 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.core;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.pentaho.di.core.row.RowMetaInterface;
+
+/**
+ * A row set for a single consumer thread that hands rows over in batches. The producer collects rows in a buffer and
+ * publishes the whole buffer at once, so the cost of publishing and waking up the consumer is paid once per batch
+ * instead of once per row. The buffer is guarded by a lock, so rows can also be put from several threads, for example
+ * from row listeners or worker threads. With a single producer the lock is uncontended.
+ * <p>
+ * The batch size adapts to the observed rates of both sides:
+ * <ul>
+ * <li>If the producer runs into a full row set, the consumer is the bottleneck and batches grow.</li>
+ * <li>If the consumer is starving for rows, the producer is the bottleneck and batches shrink (down to a single row),
+ * so trickle streams see no extra latency.</li>
+ * </ul>
+ * A partially filled batch is also published once it is older than the maximum latency, when the producer calls
+ * {@link #flush()} and when the row set is set to done. The age of a batch is checked when a row is put and when the
+ * consumer finds no published batch, so a partial batch doesn't wait for the next row of a trickle source. A consumer
+ * that has to wait for rows takes the partial batch right away.
+ */
+public class AdaptiveBatchingRowSet extends BaseRowSet implements Comparable<RowSet>, RowSet {
+  public static final int DEFAULT_MAX_BATCH_SIZE = 256;
+
+  public static final int DEFAULT_MAX_LATENCY_MILLIS = 5;
+
+  private static final int INITIAL_BATCH_SIZE = 16;
+  private static final int SPIN_TRIES = 128;
+  private static final int YIELD_TRIES = 16;
+  private static final long MAX_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos( 500 );
+
+  /** The maximum number of rows in the row set, including the rows in the batch that is being built */
+  private final int capacity;
+  private final int maxBatchSize;
+  private final long maxLatencyNanos;
+
+  /** Published batches. Every batch holds at least one row, so there can never be more than capacity of them. */
+  private final Object[][][] batches;
+  private final int mask;
+
+  /** The next batch to read, only written by the consumer */
+  private final AtomicLong head = new AtomicLong( 0L );
+
+  /** The next batch to write, only written by the producer */
+  private final AtomicLong tail = new AtomicLong( 0L );
+
+  /** The number of rows published, only written by the producer */
+  private final AtomicLong rowsPublished = new AtomicLong( 0L );
+
+  /** The number of rows handed out, only written by the consumer */
+  private final AtomicLong rowsTaken = new AtomicLong( 0L );
+
+  private volatile Thread waitingProducer;
+  private volatile Thread waitingConsumer;
+
+  /** Guards the producer state, the consumer only takes it to publish a partial batch */
+  private final ReentrantLock producerLock = new ReentrantLock();
+
+  // Producer state
+  //
+  private Object[][] inputBuffer;
+  private int putIndex;
+  private int batchSize;
+  private long batchStarted;
+  private long rowsPut;
+  private long cachedRowsTaken;
+
+  // Consumer state
+  //
+  private Object[][] outputBuffer;
+  private int getIndex;
+  private long taken;
+  private long cachedTail;
+
+  private int timeoutPut;
+  private int timeoutGet;
+
+  /**
+   * Create a new adaptive batching row set that holds at most maxSize rows.
+   *
+   * @param maxSize
+   */
+  public AdaptiveBatchingRowSet( int maxSize ) {
+    this( maxSize, DEFAULT_MAX_BATCH_SIZE, DEFAULT_MAX_LATENCY_MILLIS );
+  }
+
+  /**
+   * Create a new adaptive batching row set.
+   *
+   * @param maxSize
+   *          the maximum number of rows in the row set
+   * @param maxBatchSize
+   *          the largest batch the producer will build
+   * @param maxLatencyMillis
+   *          the time after which a partial batch is published
+   */
+  public AdaptiveBatchingRowSet( int maxSize, int maxBatchSize, int maxLatencyMillis ) {
+    super();
+
+    capacity = Math.max( 1, maxSize );
+    this.maxBatchSize = Math.max( 1, Math.min( maxBatchSize, capacity / 4 ) );
+    this.maxLatencyNanos = TimeUnit.MILLISECONDS.toNanos( Math.max( 0, maxLatencyMillis ) );
+    batchSize = Math.min( INITIAL_BATCH_SIZE, this.maxBatchSize );
+
+    int length = Integer.highestOneBit( capacity );
+    if ( length < capacity ) {
+      length <<= 1;
+    }
+    batches = new Object[length][][];
+    mask = length - 1;
+
+    timeoutGet = Const.toInt( System.getProperty( Const.KETTLE_ROWSET_GET_TIMEOUT ), Const.TIMEOUT_GET_MILLIS );
+    timeoutPut = Const.toInt( System.getProperty( Const.KETTLE_ROWSET_PUT_TIMEOUT ), Const.TIMEOUT_PUT_MILLIS );
+  }
+
+  @Override
+  public boolean putRow( RowMetaInterface rowMeta, Object[] rowData ) {
+    return putRowWait( rowMeta, rowData, timeoutPut, TimeUnit.MILLISECONDS );
+  }
+
+  @Override
+  public boolean putRowWait( RowMetaInterface rowMeta, Object[] rowData, long time, TimeUnit tu ) {
+    this.rowMeta = rowMeta;
+    if ( rowData == null ) {
+      return false;
+    }
+    producerLock.lock();
+    try {
+      return putRowLocked( rowData, time, tu );
+    } finally {
+      producerLock.unlock();
+    }
+  }
+
+  /**
+   * Adds the rows to the batches while holding the producer lock once, the first row that can't be added in time stops
+   * the batch.
+   */
+  @Override
+  public int putRows( RowMetaInterface rowMeta, List<Object[]> rows ) {
+    this.rowMeta = rowMeta;
+    int nrPut = 0;
+    producerLock.lock();
+    try {
+      for ( Object[] rowData : rows ) {
+        if ( rowData == null || !putRowLocked( rowData, timeoutPut, TimeUnit.MILLISECONDS ) ) {
+          break;
+        }
+        nrPut++;
+      }
+    } finally {
+      producerLock.unlock();
+    }
+    return nrPut;
+  }
+
+  private boolean putRowLocked( Object[] rowData, long time, TimeUnit tu ) {
+    if ( rowsPut - cachedRowsTaken >= capacity ) {
+      cachedRowsTaken = rowsTaken.get();
+      if ( rowsPut - cachedRowsTaken >= capacity ) {
+        // The consumer can't keep up: hand over what we have and build bigger batches from now on.
+        //
+        publish();
+        batchSize = Math.min( batchSize << 1, maxBatchSize );
+        if ( !awaitSpace( tu.toNanos( time ) ) ) {
+          return false;
+        }
+      }
+    }
+
+    if ( inputBuffer == null ) {
+      inputBuffer = new Object[batchSize][];
+      putIndex = 0;
+      batchStarted = System.nanoTime();
+    }
+    inputBuffer[putIndex++] = rowData;
+    rowsPut++;
+
+    if ( putIndex >= inputBuffer.length ) {
+      publish();
+    } else if ( waitingConsumer != null ) {
+      // The consumer is starving: don't let it wait for a full batch.
+      //
+      batchSize = Math.max( batchSize >> 1, 1 );
+      publish();
+    } else if ( System.nanoTime() - batchStarted >= maxLatencyNanos ) {
+      publish();
+    }
+    return true;
+  }
+
+  /**
+   * Publish the batch that is being built, if any. Only called while holding the producer lock.
+   */
+  private void publish() {
+    if ( inputBuffer == null || putIndex == 0 ) {
+      return;
+    }
+    // A partial batch simply ends at the first null slot
+    //
+    Object[][] batch = inputBuffer;
+    inputBuffer = null;
+    putIndex = 0;
+
+    long t = tail.get();
+    batches[(int) ( t & mask )] = batch;
+    rowsPublished.lazySet( rowsPut );
+    tail.lazySet( t + 1 );
+
+    Thread consumer = waitingConsumer;
+    if ( consumer != null ) {
+      LockSupport.unpark( consumer );
+    }
+  }
+
+  @Override
+  public void flush() {
+    producerLock.lock();
+    try {
+      publish();
+    } finally {
+      producerLock.unlock();
+    }
+  }
+
+  /**
+   * Publish the partial batch for the consumer if it's older than the maximum latency, or right away if the consumer is
+   * starving. Gives up if a producer is busy: that producer publishes the batch itself. Only called by the consumer.
+   *
+   * @return true if there is a published batch for the consumer to take.
+   */
+  private boolean publishPartialBatch( long h, boolean starving ) {
+    if ( producerLock.tryLock() ) {
+      try {
+        if ( inputBuffer != null && putIndex > 0
+          && ( starving || System.nanoTime() - batchStarted >= maxLatencyNanos ) ) {
+          publish();
+        }
+      } finally {
+        producerLock.unlock();
+      }
+    }
+    cachedTail = tail.get();
+    return h < cachedTail;
+  }
+
+  @Override
+  public Object[] getRow() {
+    return getRowWait( timeoutGet, TimeUnit.MILLISECONDS );
+  }
+
+  @Override
+  public Object[] getRowImmediate() {
+    return getRowWait( 0, TimeUnit.NANOSECONDS );
+  }
+
+  @Override
+  public Object[] getRowWait( long timeout, TimeUnit tu ) {
+    if ( outputBuffer == null && !nextBatch( tu.toNanos( timeout ) ) ) {
+      return null;
+    }
+
+    Object[] row = outputBuffer[getIndex];
+    outputBuffer[getIndex++] = null; // prevent any hold-up to GC
+    if ( getIndex == outputBuffer.length || outputBuffer[getIndex] == null ) {
+      outputBuffer = null;
+    }
+    rowsTaken.lazySet( ++taken );
+
+    Thread producer = waitingProducer;
+    if ( producer != null ) {
+      LockSupport.unpark( producer );
+    }
+    return row;
+  }
+
+  /**
+   * Hands out the rest of the current batch (and any other published batches) in one go.
+   */
+  @Override
+  public List<Object[]> getRows( int max ) {
+    List<Object[]> rows = new ArrayList<>( Math.min( max, maxBatchSize ) );
+    if ( max <= 0 || ( outputBuffer == null && !nextBatch( TimeUnit.MILLISECONDS.toNanos( timeoutGet ) ) ) ) {
+      return rows;
+    }
+    while ( rows.size() < max && ( outputBuffer != null || nextBatch( 0L ) ) ) {
+      while ( rows.size() < max && getIndex < outputBuffer.length && outputBuffer[getIndex] != null ) {
+        rows.add( outputBuffer[getIndex] );
+        outputBuffer[getIndex++] = null;
+      }
+      if ( getIndex == outputBuffer.length || outputBuffer[getIndex] == null ) {
+        outputBuffer = null;
+      }
+    }
+    taken += rows.size();
+    rowsTaken.lazySet( taken );
+
+    Thread producer = waitingProducer;
+    if ( producer != null ) {
+      LockSupport.unpark( producer );
+    }
+    return rows;
+  }
+
+  /**
+   * Take the next published batch as the output buffer. Only called by the consumer.
+   *
+   * @return true if a batch was found before the timeout expired.
+   */
+  private boolean nextBatch( long timeoutNanos ) {
+    long h = head.get();
+    if ( h >= cachedTail ) {
+      cachedTail = tail.get();
+      if ( h >= cachedTail && !publishPartialBatch( h, false )
+        && ( timeoutNanos <= 0L || !awaitBatch( h, timeoutNanos ) ) ) {
+        return false;
+      }
+    }
+    int index = (int) ( h & mask );
+    outputBuffer = batches[index];
+    batches[index] = null;
+    getIndex = 0;
+    head.lazySet( h + 1 );
+    return true;
+  }
+
+  private boolean awaitSpace( long timeoutNanos ) {
+    long deadline = System.nanoTime() + timeoutNanos;
+    int tries = 0;
+    while ( true ) {
+      cachedRowsTaken = rowsTaken.get();
+      if ( rowsPut - cachedRowsTaken < capacity ) {
+        return true;
+      }
+      if ( tries < SPIN_TRIES ) {
+        tries++;
+        continue;
+      }
+      long remaining = deadline - System.nanoTime();
+      if ( remaining <= 0 ) {
+        return false;
+      }
+      if ( tries < SPIN_TRIES + YIELD_TRIES ) {
+        tries++;
+        Thread.yield();
+        continue;
+      }
+
+      waitingProducer = Thread.currentThread();
+      try {
+        cachedRowsTaken = rowsTaken.get();
+        if ( rowsPut - cachedRowsTaken < capacity ) {
+          return true;
+        }
+        LockSupport.parkNanos( this, Math.min( remaining, MAX_PARK_NANOS ) );
+      } finally {
+        waitingProducer = null;
+      }
+      if ( Thread.interrupted() ) {
+        return false;
+      }
+    }
+  }
+
+  private boolean awaitBatch( long h, long timeoutNanos ) {
+    long deadline = System.nanoTime() + timeoutNanos;
+    int tries = 0;
+
+    // Let the producer know we're starving for the whole wait, not just while parked.
+    //
+    waitingConsumer = Thread.currentThread();
+    try {
+      while ( true ) {
+        cachedTail = tail.get();
+        if ( h < cachedTail ) {
+          return true;
+        }
+        if ( tries < SPIN_TRIES ) {
+          tries++;
+          continue;
+        }
+        long remaining = deadline - System.nanoTime();
+        if ( remaining <= 0 ) {
+          return false;
+        }
+        if ( tries < SPIN_TRIES + YIELD_TRIES ) {
+          tries++;
+          Thread.yield();
+          continue;
+        }
+        if ( publishPartialBatch( h, true ) ) {
+          return true;
+        }
+        LockSupport.parkNanos( this, Math.min( remaining, MAX_PARK_NANOS ) );
+        if ( Thread.interrupted() ) {
+          return false;
+        }
+      }
+    } finally {
+      waitingConsumer = null;
+    }
+  }
+
+  /**
+   * Publishes the last partial batch before flagging the end of the stream.
+   */
+  @Override
+  public void setDone() {
+    flush();
+    super.setDone();
+
+    Thread consumer = waitingConsumer;
+    if ( consumer != null ) {
+      LockSupport.unpark( consumer );
+    }
+  }
+
+  /**
+   * @return the number of published rows that were not handed out yet.
+   */
+  @Override
+  public int size() {
+    long t = rowsTaken.get();
+    return (int) ( rowsPublished.get() - t );
+  }
+
+  /**
+   * @return the current target size of the batches built by the producer.
+   */
+  public int getBatchSize() {
+    return batchSize;
+  }
+
+  /**
+   * Removes all rows and the "done" flag. This is not meant to be called while the producer or consumer is active.
+   */
+  @Override
+  public void clear() {
+    producerLock.lock();
+    try {
+      clearLocked();
+    } finally {
+      producerLock.unlock();
+    }
+  }
+
+  private void clearLocked() {
+    long t = tail.get();
+    for ( long h = head.get(); h < t; h++ ) {
+      batches[(int) ( h & mask )] = null;
+    }
+    head.set( t );
+    cachedTail = t;
+    inputBuffer = null;
+    putIndex = 0;
+    outputBuffer = null;
+    getIndex = 0;
+    taken = rowsPut;
+    cachedRowsTaken = rowsPut;
+    rowsPublished.set( rowsPut );
+    rowsTaken.set( rowsPut );
+    done.set( false );
+  }
+}
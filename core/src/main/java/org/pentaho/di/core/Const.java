@@ -1017,6 +1017,184 @@ public class Const {
    */
   public static final String KETTLE_BATCHING_ROWSET = "KETTLE_BATCHING_ROWSET";
 
+  /**
+   * Set this variable to Y to use the lock-free ring buffer row set instead of the classic blocking row set on
+   * point-to-point hops. Only use it when no step writes rows to a hop from more than one thread, for example from row
+   * listeners or worker threads. This can be set per transformation. (default = N)
+   */
+  public static final String KETTLE_RING_BUFFER_ROWSET = "KETTLE_RING_BUFFER_ROWSET";
+
+  /**
+   * Set this variable to Y to hand rows over in adaptively sized batches on point-to-point hops. Unlike the ring buffer
+   * row set it takes rows from any number of producer threads. This can be set per transformation. (default = N)
+   */
+  public static final String KETTLE_ADAPTIVE_BATCHING_ROWSET = "KETTLE_ADAPTIVE_BATCHING_ROWSET";
+
+  /**
+   * The maximum time (in ms) a partially filled batch is held back by the adaptive batching row set. (default = 5)
+   */
+  public static final String KETTLE_ADAPTIVE_BATCHING_ROWSET_LATENCY = "KETTLE_ADAPTIVE_BATCHING_ROWSET_LATENCY";
+
+  /**
+   * Set this variable to N to have the Sort Rows step sort on a single thread and write its temp files while it waits.
+   * This can be set per transformation. (default = Y)
+   */
+  public static final String KETTLE_SORT_ROWS_PARALLEL = "KETTLE_SORT_ROWS_PARALLEL";
+
+  /**
+   * The memory budget (in MB) of a Memory Group By step. When the estimated size of the groups exceeds it, partitions of
+   * groups are moved to temp files and aggregated one at a time at the end of the stream. This can be set per
+   * transformation. (default = 0, no limit)
+   */
+  public static final String KETTLE_MEMORY_GROUP_BY_MAX_MEMORY = "KETTLE_MEMORY_GROUP_BY_MAX_MEMORY";
+
+  /**
+   * Set this variable to Y to have the Stream Lookup step keep its hash table in memory-mapped files in the Kettle temp
+   * directory instead of the heap. Every step copy builds its own files. It doesn't apply to the sorted list and
+   * integer pair algorithms. This can be set per transformation. (default = N)
+   */
+  public static final String KETTLE_STREAM_LOOKUP_MAPPED_FILES = "KETTLE_STREAM_LOOKUP_MAPPED_FILES";
+
+  /**
+   * Set this variable to Y to have the Database Lookup and Dimension Lookup steps share their caches through the JVM-wide
+   * lookup cache registry, so that step copies and consecutive runs reading the same table load it only once. The
+   * Table Output, Insert / Update, Update, Delete, Synchronize after merge and Dimension Lookup steps invalidate the
+   * caches of the tables they wrote to once they committed, other writers only show up after the time to live. This can
+   * be set per transformation. (default = N)
+   */
+  public static final String KETTLE_SHARED_LOOKUP_CACHE = "KETTLE_SHARED_LOOKUP_CACHE";
+
+  /**
+   * The number of seconds after loading when a shared lookup cache expires and is read from the database again. This
+   * can be set per transformation. (default = 600, 0 never expires)
+   */
+  public static final String KETTLE_SHARED_LOOKUP_CACHE_TTL = "KETTLE_SHARED_LOOKUP_CACHE_TTL";
+
+  /**
+   * The maximum number of shared lookup caches kept in memory while no step is using them. The least recently used
+   * ones are removed first. (default = 10)
+   */
+  public static final String KETTLE_SHARED_LOOKUP_CACHE_MAX_IDLE = "KETTLE_SHARED_LOOKUP_CACHE_MAX_IDLE";
+
+  /**
+   * The number of batches a Table Output step in batch mode can insert in the background at the same time, each on a
+   * connection of its own. The step builds the next batch while the database works on the previous ones. Batches are
+   * committed in order. It doesn't apply when the table name comes from a field or the table is partitioned. This can
+   * be set per transformation. (default = 0, batches are inserted on the step thread)
+   */
+  public static final String KETTLE_TABLE_OUTPUT_ASYNC_BATCHES = "KETTLE_TABLE_OUTPUT_ASYNC_BATCHES";
+
+  /**
+   * Set this variable to Y to have the PostgreSQL Bulk Loader send rows in the binary COPY format instead of CSV. The
+   * values are encoded in the format of the target column types, the step falls back to CSV when a column has a type
+   * the binary format doesn't support. This can be set per transformation. (default = N)
+   */
+  public static final String KETTLE_PGBULKLOADER_BINARY_COPY = "KETTLE_PGBULKLOADER_BINARY_COPY";
+
+  /**
+   * The number of rows a Table Input step reads ahead on a background thread, converting them while the step passes on
+   * the previous ones. The fetch size is adapted to the width of the rows and the time a round trip to the database
+   * takes. This can be set per transformation. (default = 0, rows are read on the step thread)
+   */
+  public static final String KETTLE_DATABASE_PREFETCH_ROWS = "KETTLE_DATABASE_PREFETCH_ROWS";
+
+  /**
+   * The number of rows an Insert/Update step collects in a temporary table before it merges them into the target table
+   * with a single MERGE or upsert statement. It only applies to databases with such a statement, to keys compared with
+   * "=" and to steps without error handling. PostgreSQL and MySQL only merge with a primary key or unique index on
+   * exactly the key fields. The statement doesn't tell which rows it inserted or updated: every merged row counts as
+   * output, none as updated or skipped, and rows that didn't change are written again. This can be set per transformation. (default = 0, every row is looked
+   * up and inserted or updated on its own)
+   */
+  public static final String KETTLE_INSERT_UPDATE_MERGE_ROWS = "KETTLE_INSERT_UPDATE_MERGE_ROWS";
+
+  /**
+   * The number of distinct keys a Database Lookup step looks up with a single query, or the number of distinct
+   * parameter rows a Database Join step runs its query for at once. The input rows are held until their batch is
+   * looked up and passed on in their original order. Database Lookup only batches keys compared with "=", Database Join
+   * only queries without ORDER BY or row limit. If a batch query fails, the step rolls it back and runs one query per
+   * key from then on. This can be set per transformation. (default = 0, one query per key)
+   */
+  public static final String KETTLE_DATABASE_LOOKUP_BATCH_SIZE = "KETTLE_DATABASE_LOOKUP_BATCH_SIZE";
+
+  /**
+   * Set this variable to Y to have a Dimension Lookup/Update step load all versions of the dimension into memory before
+   * it processes the first row. The versions are indexed on the natural key, lookups and updates are served from
+   * memory and the rows written to the dimension are sent in batches of the commit size. The step has to be the only
+   * one writing to the dimension. When the step updates the dimension, the natural key fields have to be integers: the
+   * database could compare other values differently, the step then looks them up in the database as before. This can
+   * be set per transformation. (default = N)
+   */
+  public static final String KETTLE_DIMENSION_LOOKUP_PRELOAD_INDEX = "KETTLE_DIMENSION_LOOKUP_PRELOAD_INDEX";
+
+  /**
+   * Set this variable to the number of prepared statements a pooled connection keeps open for reuse. Statements
+   * prepared again on the same connection, by a later step or transformation, are served from the cache instead of
+   * being parsed by the database again. A statement taken from the cache gets the row limit, fetch size and timeout of
+   * a new statement back. It applies to connection pools created after it is set, unless the pooling parameters of the
+   * connection configure poolPreparedStatements themselves. (default = 0, no cache)
+   */
+  public static final String KETTLE_CONNECTION_POOL_STATEMENT_CACHE_SIZE =
+    "KETTLE_CONNECTION_POOL_STATEMENT_CACHE_SIZE";
+
+  /**
+   * Set this variable to the number of threads a single copy of a CSV File Input step parses its files with. The files
+   * are cut in chunks at line feeds, the rows of the chunks are passed on in the order of the file.
+   * Like when running in parallel, fields can't contain new lines, also not enclosed ones. Files with a multi-byte
+   * encoding are parsed on the step thread. This can be set per transformation. (default = 0, parse on the step thread)
+   */
+  public static final String KETTLE_CSV_INPUT_PARSER_THREADS = "KETTLE_CSV_INPUT_PARSER_THREADS";
+
+  /**
+   * Set this variable to the number of threads a Text File Output step compresses its GZip or Snappy files with. The
+   * data is compressed in blocks of a megabyte, every block into a gzip member or Snappy stream of its own, and written
+   * in the order of the rows. This can be set per transformation. (default = 0, compress on the step thread)
+   */
+  public static final String KETTLE_TEXT_FILE_OUTPUT_COMPRESSION_THREADS =
+    "KETTLE_TEXT_FILE_OUTPUT_COMPRESSION_THREADS";
+
+  /**
+   * Set this variable to the number of sub-transformations a Transformation Executor step keeps prepared to execute its
+   * groups of rows with, instead of creating a new sub-transformation for every group. The sub-transformations run with
+   * the single threaded engine, groups are executed on that number of threads at the same time and their results are
+   * passed on in the order of the groups. Parameters are set once, when a sub-transformation is prepared, so a step
+   * that sets parameters from fields or executes a sub-transformation with a step without input, other than "Get
+   * rows from result", still creates a new sub-transformation for every group. This can be set per transformation.
+   * (default = 0, a new sub-transformation for every group)
+   */
+  public static final String KETTLE_TRANS_EXECUTOR_WARM_INSTANCES = "KETTLE_TRANS_EXECUTOR_WARM_INSTANCES";
+
+  /**
+   * Set this variable to the number of sub-transformations a streaming step like JMS or MQTT Consumer keeps prepared to
+   * execute its windows with, instead of creating a new sub-transformation for every window. The sub-transformations
+   * run with the single threaded engine. This can be set per transformation. (default = 0, a new sub-transformation for
+   * every window)
+   */
+  public static final String KETTLE_STREAMING_WARM_SUBTRANS_INSTANCES = "KETTLE_STREAMING_WARM_SUBTRANS_INSTANCES";
+
+  /**
+   * Set this variable to the maximum number of bytes of rows a streaming step like JMS or MQTT Consumer takes in before
+   * its sub-transformation processed them, on top of the prefetch count. The size of a row is estimated. This can be
+   * set per transformation. (default = 0, only the prefetch count limits the rows taken in)
+   */
+  public static final String KETTLE_STREAMING_BUFFER_MAX_BYTES = "KETTLE_STREAMING_BUFFER_MAX_BYTES";
+
+  /**
+   * Set this variable to Y to have MQTT and JMS Consumer acknowledge messages after the sub-transformation processed
+   * the window they are in, instead of as they are received. Messages of windows that weren't processed are delivered
+   * again. JMS can only acknowledge all messages received so far at once, so JMS Consumer acknowledges whenever every
+   * message it received was processed. This can be set per transformation. (default = N)
+   */
+  public static final String KETTLE_STREAMING_ACKNOWLEDGE_PROCESSED = "KETTLE_STREAMING_ACKNOWLEDGE_PROCESSED";
+
+  /**
+   * Set this variable to the name of a compression provider (None, GZip or Snappy) to have the remote steps of a
+   * clustered transformation send their rows in compressed batches instead of one at a time. Only the sending slave
+   * needs the variable, receiving slaves recognize batches, but they need a version that does. (default = empty, rows
+   * are sent one at a time, compressed with GZip when the cluster schema says so)
+   */
+  public static final String KETTLE_REMOTE_STEP_BATCH_COMPRESSION = "KETTLE_REMOTE_STEP_BATCH_COMPRESSION";
+
   /**
    * Set this variable to limit max number of files the Text File Output step can have open at one time.
    */
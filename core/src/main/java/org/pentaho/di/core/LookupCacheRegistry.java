@@ -0,0 +1,351 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2020 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.core;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.LongSupplier;
+
+import com.google.common.annotations.VisibleForTesting;
+import org.pentaho.di.core.database.DatabaseMeta;
+import org.pentaho.di.core.exception.KettleDatabaseException;
+import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.util.EnvUtil;
+import org.pentaho.di.core.variables.VariableSpace;
+
+/**
+ * A JVM-wide registry of lookup caches, so that step copies, transformations and consecutive runs reading the same
+ * table don't all load their own copy of it. A cache is identified by the connection, the table and the query (the
+ * SQL, key fields and whatever else determines the content of the cache).<br>
+ * <br>
+ * Steps attach to a cache and release it when they are done. The first one to attach loads the cache, the others wait
+ * for it and share the result. A released cache stays around until its time to live has passed, so the next run can
+ * use it warm. Only a limited number of unused caches is kept, the least recently used ones are removed first.
+ * Writers invalidate the caches of the tables they wrote to once they committed, listeners are told when a cache is
+ * removed.<br>
+ * <br>
+ * The cached objects are shared between threads, it's up to the steps to only share objects that are thread-safe.
+ */
+public class LookupCacheRegistry {
+
+  private static final int DEFAULT_MAXIMUM_IDLE_CACHES = 10;
+
+  private static LookupCacheRegistry registry;
+
+  /**
+   * Loads the content of a cache.
+   */
+  public interface Loader<T> {
+    T load() throws KettleException;
+  }
+
+  /**
+   * Is told when a cache is removed from the registry because it expired, was invalidated or was evicted.
+   */
+  public interface Listener {
+    void cacheRemoved( String connection, String table, String query );
+  }
+
+  private final Map<String, Entry> entries = new HashMap<>();
+  private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+  private final int maximumIdleCaches;
+
+  @VisibleForTesting
+  LongSupplier clock = System::currentTimeMillis;
+
+  @VisibleForTesting
+  LookupCacheRegistry( int maximumIdleCaches ) {
+    this.maximumIdleCaches = maximumIdleCaches;
+  }
+
+  public static synchronized LookupCacheRegistry getInstance() {
+    if ( registry == null ) {
+      registry = new LookupCacheRegistry( Const.toInt(
+        EnvUtil.getSystemProperty( Const.KETTLE_SHARED_LOOKUP_CACHE_MAX_IDLE ), DEFAULT_MAXIMUM_IDLE_CACHES ) );
+    }
+    return registry;
+  }
+
+  /**
+   * @return the identification of a connection: the URL and the user name, the same way a database connects
+   */
+  public static String getConnection( DatabaseMeta databaseMeta, VariableSpace space, String partitionId )
+    throws KettleDatabaseException {
+    String url = space.environmentSubstitute( databaseMeta.getURL( partitionId ) );
+    return url + " as " + space.environmentSubstitute( databaseMeta.getUsername() );
+  }
+
+  /**
+   * Attach to a cache, loading it if it isn't registered yet or if it expired.
+   *
+   * @param connection
+   *          the identification of the database, the URL and user name for example
+   * @param table
+   *          the table the cache is read from
+   * @param query
+   *          everything else that determines the content of the cache
+   * @param timeToLive
+   *          the number of milliseconds after loading when the cache expires, 0 or less to never expire
+   * @param loader
+   *          loads the cache, it runs at most once at a time for the same cache
+   * @return the reference to release when the cache is no longer used
+   * @throws KettleException
+   *           in case the cache can't be loaded
+   */
+  @SuppressWarnings( "unchecked" )
+  public <T> Reference<T> attach( String connection, String table, String query, long timeToLive,
+    Loader<T> loader ) throws KettleException {
+    String name = getName( connection, table, query );
+    List<Entry> removed = new ArrayList<>();
+    Entry entry;
+    synchronized ( this ) {
+      removeExpired( removed );
+      entry = entries.get( name );
+      if ( entry == null ) {
+        entry = new Entry( connection, table, query, timeToLive );
+        entries.put( name, entry );
+      }
+      entry.references++;
+    }
+    notifyRemoved( removed );
+
+    try {
+      return new Reference<>( entry, (T) entry.getValue( loader ) );
+    } catch ( KettleException | RuntimeException e ) {
+      synchronized ( this ) {
+        entry.references--;
+        if ( !entry.isLoaded() && entries.get( name ) == entry ) {
+          entries.remove( name );
+        }
+      }
+      throw e;
+    }
+  }
+
+  /**
+   * Remove the caches of a table. Steps that are attached keep using what they have, the next ones load it again.
+   */
+  public void invalidateTable( String connection, String table ) {
+    List<Entry> removed = new ArrayList<>();
+    synchronized ( this ) {
+      Iterator<Entry> iterator = entries.values().iterator();
+      while ( iterator.hasNext() ) {
+        Entry entry = iterator.next();
+        if ( entry.connection.equals( connection ) && entry.table.equals( table ) ) {
+          iterator.remove();
+          removed.add( entry );
+        }
+      }
+    }
+    notifyRemoved( removed );
+  }
+
+  /**
+   * Remove the caches of the tables a step wrote to through a connection. Writers call it once they committed, so
+   * that the lookups that attach next read what was written.
+   *
+   * @param tables
+   *          the quoted schema and table combinations, the same way the lookups register them
+   */
+  public void invalidateTables( DatabaseMeta databaseMeta, VariableSpace space, String partitionId,
+    Collection<String> tables ) throws KettleDatabaseException {
+    if ( size() == 0 || tables.isEmpty() ) {
+      return;
+    }
+    String connection = getConnection( databaseMeta, space, partitionId );
+    for ( String table : tables ) {
+      invalidateTable( connection, table );
+    }
+  }
+
+  /**
+   * Remove all the caches read from a connection.
+   */
+  public void invalidateConnection( String connection ) {
+    List<Entry> removed = new ArrayList<>();
+    synchronized ( this ) {
+      Iterator<Entry> iterator = entries.values().iterator();
+      while ( iterator.hasNext() ) {
+        Entry entry = iterator.next();
+        if ( entry.connection.equals( connection ) ) {
+          iterator.remove();
+          removed.add( entry );
+        }
+      }
+    }
+    notifyRemoved( removed );
+  }
+
+  /**
+   * Remove all the caches.
+   */
+  public void clear() {
+    List<Entry> removed;
+    synchronized ( this ) {
+      removed = new ArrayList<>( entries.values() );
+      entries.clear();
+    }
+    notifyRemoved( removed );
+  }
+
+  /**
+   * @return the number of registered caches, used or not
+   */
+  public synchronized int size() {
+    return entries.size();
+  }
+
+  public void addListener( Listener listener ) {
+    listeners.add( listener );
+  }
+
+  public void removeListener( Listener listener ) {
+    listeners.remove( listener );
+  }
+
+  private void release( Entry entry ) {
+    List<Entry> removed = new ArrayList<>();
+    synchronized ( this ) {
+      entry.references--;
+      entry.lastUsed = clock.getAsLong();
+      removeExpired( removed );
+      evictIdle( removed );
+    }
+    notifyRemoved( removed );
+  }
+
+  private void removeExpired( List<Entry> removed ) {
+    long now = clock.getAsLong();
+    Iterator<Entry> iterator = entries.values().iterator();
+    while ( iterator.hasNext() ) {
+      Entry entry = iterator.next();
+      if ( entry.isExpired( now ) ) {
+        iterator.remove();
+        removed.add( entry );
+      }
+    }
+  }
+
+  /**
+   * Remove the least recently used caches nobody is attached to until there are no more than the maximum.
+   */
+  private void evictIdle( List<Entry> removed ) {
+    List<Entry> idle = new ArrayList<>();
+    for ( Entry entry : entries.values() ) {
+      if ( entry.references == 0 ) {
+        idle.add( entry );
+      }
+    }
+    if ( idle.size() <= maximumIdleCaches ) {
+      return;
+    }
+    idle.sort( ( e1, e2 ) -> Long.compare( e1.lastUsed, e2.lastUsed ) );
+    for ( int i = 0; i < idle.size() - maximumIdleCaches; i++ ) {
+      Entry entry = idle.get( i );
+      entries.remove( getName( entry.connection, entry.table, entry.query ) );
+      removed.add( entry );
+    }
+  }
+
+  private void notifyRemoved( List<Entry> removed ) {
+    for ( Entry entry : removed ) {
+      for ( Listener listener : listeners ) {
+        listener.cacheRemoved( entry.connection, entry.table, entry.query );
+      }
+    }
+  }
+
+  private static String getName( String connection, String table, String query ) {
+    return connection + "|" + table + "|" + query;
+  }
+
+  private class Entry {
+    private final String connection;
+    private final String table;
+    private final String query;
+    private final long timeToLive;
+
+    private volatile Object value;
+    private volatile long loaded;
+
+    /** Protected by the registry lock */
+    private int references;
+    private long lastUsed;
+
+    private Entry( String connection, String table, String query, long timeToLive ) {
+      this.connection = connection;
+      this.table = table;
+      this.query = query;
+      this.timeToLive = timeToLive;
+    }
+
+    private synchronized Object getValue( Loader<?> loader ) throws KettleException {
+      if ( value == null ) {
+        value = loader.load();
+        loaded = clock.getAsLong();
+      }
+      return value;
+    }
+
+    private boolean isLoaded() {
+      return value != null;
+    }
+
+    private boolean isExpired( long now ) {
+      return timeToLive > 0 && value != null && now - loaded >= timeToLive;
+    }
+  }
+
+  /**
+   * A step's hold on a shared cache.
+   */
+  public class Reference<T> {
+    private final Entry entry;
+    private final T value;
+    private boolean released;
+
+    private Reference( Entry entry, T value ) {
+      this.entry = entry;
+      this.value = value;
+    }
+
+    public T getValue() {
+      return value;
+    }
+
+    /**
+     * Detach from the cache, it can be called more than once.
+     */
+    public synchronized void release() {
+      if ( !released ) {
+        released = true;
+        LookupCacheRegistry.this.release( entry );
+      }
+    }
+  }
+}
@@ -0,0 +1,282 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2020 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.core;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.pentaho.di.core.row.RowMetaInterface;
+
+/**
+ * A bounded row buffer for hops with exactly one producing and one consuming thread. Rows are handed over through a
+ * lock-free ring: the producer only ever writes the tail index, the consumer only ever writes the head index. When the
+ * ring is full (or empty) the waiting side first spins, then yields and finally parks for short periods until the
+ * other side signals progress or the timeout expires.
+ *
+ * This row set is NOT safe for more than one concurrent producer or more than one concurrent consumer.
+ */
+public class RingBufferRowSet extends BaseRowSet implements Comparable<RowSet>, RowSet {
+  private static final int SPIN_TRIES = 128;
+  private static final int YIELD_TRIES = 16;
+
+  /**
+   * Parking is bounded so that a missed wake-up signal costs at most this long.
+   */
+  private static final long MAX_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos( 500 );
+
+  private final Object[][] buffer;
+  private final int mask;
+  private final int capacity;
+
+  /** The next slot to read, only written by the consumer */
+  private final AtomicLong head = new AtomicLong( 0L );
+
+  /** The next slot to write, only written by the producer */
+  private final AtomicLong tail = new AtomicLong( 0L );
+
+  /** The producer's last known value of head, avoids reading the consumer's index on every put */
+  private long cachedHead;
+
+  /** The consumer's last known value of tail, avoids reading the producer's index on every get */
+  private long cachedTail;
+
+  private volatile Thread waitingProducer;
+  private volatile Thread waitingConsumer;
+
+  private int timeoutPut;
+  private int timeoutGet;
+
+  /**
+   * Create a new ring buffer row set that holds at most maxSize rows.
+   *
+   * @param maxSize
+   */
+  public RingBufferRowSet( int maxSize ) {
+    super();
+
+    capacity = Math.max( 1, maxSize );
+    int length = Integer.highestOneBit( capacity );
+    if ( length < capacity ) {
+      length <<= 1;
+    }
+    buffer = new Object[length][];
+    mask = length - 1;
+
+    timeoutGet = Const.toInt( System.getProperty( Const.KETTLE_ROWSET_GET_TIMEOUT ), Const.TIMEOUT_GET_MILLIS );
+    timeoutPut = Const.toInt( System.getProperty( Const.KETTLE_ROWSET_PUT_TIMEOUT ), Const.TIMEOUT_PUT_MILLIS );
+  }
+
+  @Override
+  public boolean putRow( RowMetaInterface rowMeta, Object[] rowData ) {
+    return putRowWait( rowMeta, rowData, timeoutPut, TimeUnit.MILLISECONDS );
+  }
+
+  @Override
+  public boolean putRowWait( RowMetaInterface rowMeta, Object[] rowData, long time, TimeUnit tu ) {
+    this.rowMeta = rowMeta;
+    if ( rowData == null ) {
+      return false;
+    }
+
+    long t = tail.get();
+    if ( t - cachedHead >= capacity ) {
+      cachedHead = head.get();
+      if ( t - cachedHead >= capacity && !awaitSpace( t, tu.toNanos( time ) ) ) {
+        return false;
+      }
+    }
+
+    buffer[(int) ( t & mask )] = rowData;
+    tail.lazySet( t + 1 );
+
+    Thread consumer = waitingConsumer;
+    if ( consumer != null ) {
+      LockSupport.unpark( consumer );
+    }
+    return true;
+  }
+
+  @Override
+  public Object[] getRow() {
+    return getRowWait( timeoutGet, TimeUnit.MILLISECONDS );
+  }
+
+  @Override
+  public Object[] getRowImmediate() {
+    long h = head.get();
+    if ( h >= cachedTail ) {
+      cachedTail = tail.get();
+      if ( h >= cachedTail ) {
+        return null;
+      }
+    }
+    return take( h );
+  }
+
+  @Override
+  public Object[] getRowWait( long timeout, TimeUnit tu ) {
+    long h = head.get();
+    if ( h >= cachedTail ) {
+      cachedTail = tail.get();
+      if ( h >= cachedTail && !awaitRow( h, tu.toNanos( timeout ) ) ) {
+        return null;
+      }
+    }
+    return take( h );
+  }
+
+  private Object[] take( long h ) {
+    int index = (int) ( h & mask );
+    Object[] row = buffer[index];
+    buffer[index] = null;
+    head.lazySet( h + 1 );
+
+    Thread producer = waitingProducer;
+    if ( producer != null ) {
+      LockSupport.unpark( producer );
+    }
+    return row;
+  }
+
+  /**
+   * Wait for the consumer to free up a slot.
+   *
+   * @return true if there is room for slot t, false if we timed out or were interrupted.
+   */
+  private boolean awaitSpace( long t, long timeoutNanos ) {
+    long deadline = System.nanoTime() + timeoutNanos;
+    int tries = 0;
+    while ( true ) {
+      cachedHead = head.get();
+      if ( t - cachedHead < capacity ) {
+        return true;
+      }
+      if ( tries < SPIN_TRIES ) {
+        tries++;
+        continue;
+      }
+      long remaining = deadline - System.nanoTime();
+      if ( remaining <= 0 ) {
+        return false;
+      }
+      if ( tries < SPIN_TRIES + YIELD_TRIES ) {
+        tries++;
+        Thread.yield();
+        continue;
+      }
+
+      waitingProducer = Thread.currentThread();
+      try {
+        cachedHead = head.get();
+        if ( t - cachedHead < capacity ) {
+          return true;
+        }
+        LockSupport.parkNanos( this, Math.min( remaining, MAX_PARK_NANOS ) );
+      } finally {
+        waitingProducer = null;
+      }
+      if ( Thread.interrupted() ) {
+        return false;
+      }
+    }
+  }
+
+  /**
+   * Wait for the producer to publish a row.
+   *
+   * @return true if slot h holds a row, false if we timed out or were interrupted.
+   */
+  private boolean awaitRow( long h, long timeoutNanos ) {
+    long deadline = System.nanoTime() + timeoutNanos;
+    int tries = 0;
+    while ( true ) {
+      cachedTail = tail.get();
+      if ( h < cachedTail ) {
+        return true;
+      }
+      if ( tries < SPIN_TRIES ) {
+        tries++;
+        continue;
+      }
+      long remaining = deadline - System.nanoTime();
+      if ( remaining <= 0 ) {
+        return false;
+      }
+      if ( tries < SPIN_TRIES + YIELD_TRIES ) {
+        tries++;
+        Thread.yield();
+        continue;
+      }
+
+      waitingConsumer = Thread.currentThread();
+      try {
+        cachedTail = tail.get();
+        if ( h < cachedTail ) {
+          return true;
+        }
+        LockSupport.parkNanos( this, Math.min( remaining, MAX_PARK_NANOS ) );
+      } finally {
+        waitingConsumer = null;
+      }
+      if ( Thread.interrupted() ) {
+        return false;
+      }
+    }
+  }
+
+  @Override
+  public void setDone() {
+    super.setDone();
+
+    // Don't let a parked consumer sit out its park interval when there's nothing more to come
+    //
+    Thread consumer = waitingConsumer;
+    if ( consumer != null ) {
+      LockSupport.unpark( consumer );
+    }
+  }
+
+  @Override
+  public int size() {
+    // Read head first: it can only grow, so the difference is never negative.
+    //
+    long h = head.get();
+    return (int) ( tail.get() - h );
+  }
+
+  /**
+   * Removes all rows and the "done" flag. This is not meant to be called while the producer or consumer is active.
+   */
+  @Override
+  public void clear() {
+    long t = tail.get();
+    for ( long h = head.get(); h < t; h++ ) {
+      buffer[(int) ( h & mask )] = null;
+    }
+    head.set( t );
+    cachedHead = t;
+    cachedTail = t;
+    done.set( false );
+  }
+}
@@ -22,6 +22,8 @@
 
 package org.pentaho.di.core;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 
 import org.pentaho.di.core.row.RowMetaInterface;
@@ -78,6 +80,55 @@ public interface RowSet {
    */
   Object[] getRowWait( long timeout, TimeUnit tu );
 
+  /**
+   * Offer a batch of rows to this rowset. Every row is offered as with {@link #putRow(RowMetaInterface, Object[])}, the
+   * first row that can't be added in time stops the batch.
+   *
+   * @param rowMeta
+   *          The description of the row data
+   * @param rows
+   *          the rows of data
+   * @return the number of rows, counted from the start of the list, that were added to the rowset.
+   */
+  default int putRows( RowMetaInterface rowMeta, List<Object[]> rows ) {
+    int nrPut = 0;
+    for ( Object[] row : rows ) {
+      if ( !putRow( rowMeta, row ) ) {
+        break;
+      }
+      nrPut++;
+    }
+    return nrPut;
+  }
+
+  /**
+   * Get up to max rows from the input buffer. It blocks for a short period until the first row becomes available,
+   * further rows are only returned if they are available immediately.
+   *
+   * @param max
+   *          the maximum number of rows to return
+   * @return the rows of data, an empty list if no row is available.
+   */
+  default List<Object[]> getRows( int max ) {
+    List<Object[]> rows = new ArrayList<>( Math.min( max, 64 ) );
+    Object[] row = max > 0 ? getRow() : null;
+    while ( row != null ) {
+      rows.add( row );
+      if ( rows.size() >= max ) {
+        break;
+      }
+      row = getRowImmediate();
+    }
+    return rows;
+  }
+
+  /**
+   * Make all rows that were offered so far available to the consumer. Row sets that hand over every row immediately
+   * don't need to do anything here. Only the producing thread should call this method.
+   */
+  default void flush() {
+  }
+
   /**
    * @return Set indication that there is no more input
    */
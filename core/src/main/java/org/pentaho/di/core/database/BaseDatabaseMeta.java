@@ -3,7 +3,7 @@
  *
  * Pentaho Data Integration
  *
- * Copyright (C) 2002-2019 by Hitachi Vantara : http://www.pentaho.com
+ * Copyright (C) 2002-2020 by Hitachi Vantara : http://www.pentaho.com
  *
  *******************************************************************************
  *
@@ -2338,4 +2338,42 @@ public abstract class BaseDatabaseMeta implements Cloneable, DatabaseInterfaceEx
   public String getNamedCluster() {
     return getAttribute( NAMED_CLUSTER_ID, "" );
   }
+
+  /**
+   * Build an ANSI SQL MERGE statement, for the databases that support one. The arguments are the same as for
+   * getSQLMergeFromTable().
+   *
+   * @return the MERGE statement, without a terminating semicolon
+   */
+  protected String getSQLAnsiMerge( String targetTable, String sourceTable, String[] keyFields,
+    String[] insertFields, String[] updateFields ) {
+    StringBuilder sql = new StringBuilder( 256 );
+    sql.append( "MERGE INTO " ).append( targetTable ).append( " t USING " ).append( sourceTable ).append( " s ON ( " );
+    for ( int i = 0; i < keyFields.length; i++ ) {
+      if ( i > 0 ) {
+        sql.append( " AND " );
+      }
+      sql.append( "t." ).append( keyFields[i] ).append( " = s." ).append( keyFields[i] );
+    }
+    sql.append( " )" );
+    if ( updateFields.length > 0 ) {
+      sql.append( " WHEN MATCHED THEN UPDATE SET " );
+      for ( int i = 0; i < updateFields.length; i++ ) {
+        if ( i > 0 ) {
+          sql.append( ", " );
+        }
+        sql.append( updateFields[i] ).append( " = s." ).append( updateFields[i] );
+      }
+    }
+    sql.append( " WHEN NOT MATCHED THEN INSERT ( " ).append( String.join( ", ", insertFields ) );
+    sql.append( " ) VALUES ( " );
+    for ( int i = 0; i < insertFields.length; i++ ) {
+      if ( i > 0 ) {
+        sql.append( ", " );
+      }
+      sql.append( "s." ).append( insertFields[i] );
+    }
+    sql.append( " )" );
+    return sql.toString();
+  }
 }
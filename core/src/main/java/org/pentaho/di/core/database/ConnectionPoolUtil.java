@@ -30,6 +30,7 @@ import org.pentaho.di.core.database.util.DatabaseUtil;
 import org.pentaho.di.core.encryption.Encr;
 import org.pentaho.di.core.exception.KettleDatabaseException;
 import org.pentaho.di.core.logging.LogChannelInterface;
+import org.pentaho.di.core.logging.Metrics;
 import org.pentaho.di.i18n.BaseMessages;
 
 import javax.sql.DataSource;
@@ -39,6 +40,7 @@ import java.util.Iterator;
 import java.util.Properties;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.ReentrantLock;
 
 public class ConnectionPoolUtil {
@@ -100,7 +102,28 @@ public class ConnectionPoolUtil {
       lock.unlock();
     }
     BasicDataSource ds = dataSources.get( getDataSourceName( dbMeta, partitionId ) );
-    return ds.getConnection();
+    long start = System.nanoTime();
+    Connection connection = ds.getConnection();
+    snapPoolMetrics( log, dbMeta, partitionId, ds, System.nanoTime() - start );
+    return connection;
+  }
+
+  /**
+   * Send the time it took to get a connection and the number of active and idle connections in the pool to the metrics
+   * of the log channel.
+   */
+  private static void snapPoolMetrics( LogChannelInterface log, DatabaseMeta dbMeta, String partitionId,
+      BasicDataSource ds, long waitNanos ) {
+    if ( log == null || !log.isGatheringMetrics() ) {
+      return;
+    }
+    String subject = Utils.isEmpty( partitionId ) ? dbMeta.getName() : dbMeta.getName() + "/" + partitionId;
+    long waitMillis = TimeUnit.NANOSECONDS.toMillis( waitNanos );
+    log.snap( Metrics.METRIC_DATABASE_POOL_WAIT_TIME, subject, waitMillis );
+    log.snap( Metrics.METRIC_DATABASE_POOL_WAIT_MAX_TIME, subject, waitMillis );
+    log.snap( Metrics.METRIC_DATABASE_POOL_CONNECTIONS, subject );
+    log.snap( Metrics.METRIC_DATABASE_POOL_ACTIVE, subject, ds.getNumActive() );
+    log.snap( Metrics.METRIC_DATABASE_POOL_IDLE, subject, ds.getNumIdle() );
   }
 
   // BACKLOG-674
@@ -143,6 +166,7 @@ public class ConnectionPoolUtil {
     Properties connectionPoolProperties = new Properties( databaseMeta.getConnectionPoolingProperties() );
     connectionPoolProperties = environmentSubstitute( connectionPoolProperties, databaseMeta );
     setPoolProperties( ds, connectionPoolProperties, initialSize, maximumSize );
+    setStatementCache( ds, connectionPoolProperties, databaseMeta );
     setCredentials( ds, databaseMeta, partitionId );
 
     // add url/driver class
@@ -155,11 +179,48 @@ public class ConnectionPoolUtil {
     ds.setDriverClassName( clazz );
   }
 
+  /**
+   * Have the connections of the pool keep their prepared statements open for reuse when
+   * KETTLE_CONNECTION_POOL_STATEMENT_CACHE_SIZE is set, unless the pooling parameters say otherwise.
+   */
+  private static void setStatementCache( BasicDataSource ds, Properties properties, DatabaseMeta databaseMeta ) {
+    if ( !Utils.isEmpty( properties.getProperty( POOL_PREPARED_STATEMENTS ) ) ) {
+      return;
+    }
+    int cacheSize = Const.toInt( databaseMeta.getVariable( Const.KETTLE_CONNECTION_POOL_STATEMENT_CACHE_SIZE ), 0 );
+    if ( cacheSize > 0 ) {
+      ds.setPoolPreparedStatements( true );
+      ds.setMaxOpenPreparedStatements( cacheSize );
+    }
+  }
+
+  /**
+   * @return true if the pooled connections of the database keep their prepared statements open for reuse, either
+   *         because the pooling parameters say so or because KETTLE_CONNECTION_POOL_STATEMENT_CACHE_SIZE is set.
+   */
+  public static boolean isCachingStatements( DatabaseMeta databaseMeta ) {
+    Properties properties = databaseMeta.getConnectionPoolingProperties();
+    String value = properties == null ? null : properties.getProperty( POOL_PREPARED_STATEMENTS );
+    if ( !Utils.isEmpty( value ) ) {
+      return Boolean.valueOf( databaseMeta.environmentSubstitute( value ) );
+    }
+    return Const.toInt( databaseMeta.getVariable( Const.KETTLE_CONNECTION_POOL_STATEMENT_CACHE_SIZE ), 0 ) > 0;
+  }
+
   private static void setCredentials( BasicDataSource ds, DatabaseMeta databaseMeta, String partitionId )
     throws KettleDatabaseException {
 
     String userName = databaseMeta.environmentSubstitute( databaseMeta.getUsername() );
     String password = databaseMeta.environmentSubstitute( databaseMeta.getPassword() );
+
+    // A partition can have credentials of its own
+    if ( databaseMeta.isPartitioned() && !Utils.isEmpty( partitionId ) ) {
+      PartitionDatabaseMeta partition = databaseMeta.getPartitionMeta( partitionId );
+      if ( partition != null && !Utils.isEmpty( partition.getUsername() ) ) {
+        userName = databaseMeta.environmentSubstitute( partition.getUsername() );
+        password = databaseMeta.environmentSubstitute( partition.getPassword() );
+      }
+    }
     password = Encr.decryptPasswordOptionallyEncrypted( password );
 
     ds.addConnectionProperty( "user", Const.NVL( userName, "" ) );
@@ -147,6 +147,7 @@ public class Database implements VariableSpace, LoggingObjectInterface, Closeabl
   private PreparedStatement prepStatementInsert;
   private PreparedStatement pstmtSeq;
   private CallableStatement cstmt;
+  private Boolean cachingStatements; // prepared statements can come from the statement cache of a connection pool
 
   private DatabaseMetaData dbmd;
 
@@ -461,13 +462,18 @@ public class Database implements VariableSpace, LoggingObjectInterface, Closeabl
             databaseMeta.setNeedUpdate( false );
           }
           try {
-            try {
-              this.connection = dsp.getNamedDataSource( name, DatasourceType.POOLED ).getConnection();
-            } catch ( UnsupportedOperationException | NullPointerException e ) {
-              // UnsupportedOperationException is happen at DatabaseUtil doesn't support pooled DS, use legacy routine
-              // NullPointerException is happen when we will try to run the transformation on the remote server but
-              // server does not have such databases, so will using legacy routine as well
+            if ( databaseMeta.isPartitioned() && !Utils.isEmpty( partitionId ) ) {
+              // A named data source doesn't know about partitions, every partition gets a pool of its own
               this.connection = ConnectionPoolUtil.getConnection( log, databaseMeta, partitionId );
+            } else {
+              try {
+                this.connection = dsp.getNamedDataSource( name, DatasourceType.POOLED ).getConnection();
+              } catch ( UnsupportedOperationException | NullPointerException e ) {
+                // UnsupportedOperationException is happen at DatabaseUtil doesn't support pooled DS, use legacy
+                // routine. NullPointerException is happen when we will try to run the transformation on the remote
+                // server but server does not have such databases, so will using legacy routine as well
+                this.connection = ConnectionPoolUtil.getConnection( log, databaseMeta, partitionId );
+              }
             }
             if ( getConnection().getAutoCommit() != isAutoCommit() ) {
               setAutoCommit( isAutoCommit() );
@@ -985,15 +991,46 @@ public class Database implements VariableSpace, LoggingObjectInterface, Closeabl
 
     try {
       if ( returnKeys && supportsAutoGeneratedKeys ) {
-        return connection.prepareStatement( databaseMeta.stripCR( sql ), Statement.RETURN_GENERATED_KEYS );
+        return resetCachedStatement(
+          connection.prepareStatement( databaseMeta.stripCR( sql ), Statement.RETURN_GENERATED_KEYS ) );
       } else {
-        return connection.prepareStatement( databaseMeta.stripCR( sql ) );
+        return resetCachedStatement( connection.prepareStatement( databaseMeta.stripCR( sql ) ) );
       }
     } catch ( SQLException ex ) {
       throw new KettleDatabaseException( "Couldn't prepare statement:" + Const.CR + sql, ex );
     }
   }
 
+  /**
+   * A pooled connection with a statement cache can hand out a statement that another step prepared with the same SQL,
+   * with the row limit, fetch size and timeout that step set. Put them back to the defaults of a new statement.
+   */
+  private PreparedStatement resetCachedStatement( PreparedStatement ps ) throws SQLException {
+    if ( !isCachingStatements() ) {
+      return ps;
+    }
+    try {
+      ps.setMaxRows( 0 );
+      ps.setQueryTimeout( 0 );
+      if ( databaseMeta.isFetchSizeSupported() ) {
+        ps.setFetchSize( 0 );
+        ps.setFetchDirection( ResultSet.FETCH_FORWARD );
+      }
+    } catch ( SQLException e ) {
+      ps.close();
+      throw e;
+    }
+    return ps;
+  }
+
+  private boolean isCachingStatements() {
+    if ( cachingStatements == null ) {
+      cachingStatements =
+        databaseMeta.isUsingConnectionPool() && ConnectionPoolUtil.isCachingStatements( databaseMeta );
+    }
+    return cachingStatements;
+  }
+
   public void closeLookup() throws KettleDatabaseException {
     closePreparedStatement( pstmt );
     pstmt = null;
@@ -1167,7 +1204,8 @@ public class Database implements VariableSpace, LoggingObjectInterface, Closeabl
     try {
       if ( pstmtSeq == null ) {
         pstmtSeq =
-          connection.prepareStatement( databaseMeta.getSeqNextvalSQL( databaseMeta.stripCR( schemaSequence ) ) );
+          resetCachedStatement(
+            connection.prepareStatement( databaseMeta.getSeqNextvalSQL( databaseMeta.stripCR( schemaSequence ) ) ) );
       }
       ResultSet rs = null;
       try {
@@ -1536,7 +1574,8 @@ public class Database implements VariableSpace, LoggingObjectInterface, Closeabl
       boolean resultSet;
       int count;
       if ( params != null ) {
-        try ( PreparedStatement prepStmt = connection.prepareStatement( databaseMeta.stripCR( sql ) ) ) {
+        try ( PreparedStatement prepStmt =
+                resetCachedStatement( connection.prepareStatement( databaseMeta.stripCR( sql ) ) ) ) {
           setValues( params, data, prepStmt ); // set the parameters!
           resultSet = prepStmt.execute();
           count = prepStmt.getUpdateCount();
@@ -1716,8 +1755,8 @@ public class Database implements VariableSpace, LoggingObjectInterface, Closeabl
       if ( params != null ) {
         log.snap( Metrics.METRIC_DATABASE_PREPARE_SQL_START, databaseMeta.getName() );
         pstmt =
-          connection.prepareStatement(
-            databaseMeta.stripCR( sql ), ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY );
+          resetCachedStatement( connection.prepareStatement(
+            databaseMeta.stripCR( sql ), ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY ) );
         log.snap( Metrics.METRIC_DATABASE_PREPARE_SQL_STOP, databaseMeta.getName() );
 
         log.snap( Metrics.METRIC_DATABASE_SQL_VALUES_START, databaseMeta.getName() );
@@ -2162,6 +2201,50 @@ public class Database implements VariableSpace, LoggingObjectInterface, Closeabl
     return databaseMeta.getDatabaseInterface().checkIndexExists( this, schemaName, tableName, idxFields );
   }
 
+  /**
+   * Check if a primary key or unique index on exactly the given fields of a table exists.
+   *
+   * @param schemaName The schema of the table, can be empty
+   * @param tableName  The table on which the index is checked, not quoted
+   * @param idxFields  The fields of the index, in any order
+   * @return True if the table has a unique index on these fields and no others
+   */
+  public boolean checkUniqueIndexExists( String schemaName, String tableName, String[] idxFields )
+    throws KettleDatabaseException {
+    Set<String> fields = new HashSet<>();
+    for ( String idxField : idxFields ) {
+      fields.add( idxField.toUpperCase() );
+    }
+    try {
+      DatabaseMetaData metaData = getDatabaseMetaData();
+      String schema = Utils.isEmpty( schemaName ) ? null : schemaName;
+      String table = tableName;
+      // Unquoted names are stored in the case of the database
+      if ( metaData.storesUpperCaseIdentifiers() ) {
+        schema = schema == null ? null : schema.toUpperCase();
+        table = table.toUpperCase();
+      } else if ( metaData.storesLowerCaseIdentifiers() ) {
+        schema = schema == null ? null : schema.toLowerCase();
+        table = table.toLowerCase();
+      }
+
+      Map<String, Set<String>> indexes = new HashMap<>();
+      try ( ResultSet indexList = metaData.getIndexInfo( null, schema, table, true, true ) ) {
+        while ( indexList.next() ) {
+          String indexName = indexList.getString( "INDEX_NAME" );
+          String column = indexList.getString( "COLUMN_NAME" );
+          if ( indexName != null && column != null ) {
+            indexes.computeIfAbsent( indexName, name -> new HashSet<>() ).add( column.toUpperCase() );
+          }
+        }
+      }
+      return indexes.containsValue( fields );
+    } catch ( SQLException e ) {
+      throw new KettleDatabaseException( "Unable to determine if a unique index exists on table [" + tableName + "]",
+        e );
+    }
+  }
+
   public String getCreateIndexStatement( String tablename, String indexname, String[] idxFields, boolean tk,
                                          boolean unique, boolean bitmap, boolean semiColon ) {
     return getCreateIndexStatement( null, tablename, indexname, idxFields, tk, unique, bitmap, semiColon );
@@ -2433,9 +2516,9 @@ public class Database implements VariableSpace, LoggingObjectInterface, Closeabl
   }
 
   public RowMetaInterface getQueryFieldsFromPreparedStatement( String sql ) throws Exception {
-    try ( PreparedStatement preparedStatement = connection
+    try ( PreparedStatement preparedStatement = resetCachedStatement( connection
       .prepareStatement( databaseMeta.stripCR( sql ), ResultSet.TYPE_FORWARD_ONLY,
-        ResultSet.CONCUR_READ_ONLY ) ) {
+        ResultSet.CONCUR_READ_ONLY ) ) ) {
       preparedStatement.setMaxRows( 1 );
       ResultSetMetaData rsmd = preparedStatement.getMetaData();
       return getRowInfo( rsmd, false, false );
@@ -2536,7 +2619,7 @@ public class Database implements VariableSpace, LoggingObjectInterface, Closeabl
           selStmt = null;
         }
       } else {
-        PreparedStatement ps = connection.prepareStatement( databaseMeta.stripCR( sql ) );
+        PreparedStatement ps = resetCachedStatement( connection.prepareStatement( databaseMeta.stripCR( sql ) ) );
         try {
           if ( param ) {
             RowMetaInterface par = inform;
@@ -2773,6 +2856,25 @@ public class Database implements VariableSpace, LoggingObjectInterface, Closeabl
     }
   }
 
+  /**
+   * Read the rows of a query opened on this database on a background thread. The fetch size of the result set is
+   * adapted to the width of the rows, if the database supports it. Close the reader before closing the query.
+   *
+   * @param rs         The resultset to read, as returned by openQuery()
+   * @param bufferRows The approximate number of rows to read ahead
+   * @return the reader to get the rows from
+   */
+  public PrefetchingRowReader getPrefetchingRowReader( ResultSet rs, int bufferRows ) throws KettleDatabaseException {
+    if ( rowMeta == null ) {
+      try {
+        rowMeta = getRowInfo( rs.getMetaData(), false, false );
+      } catch ( SQLException e ) {
+        throw new KettleDatabaseException( "Unable to retrieve metadata from resultset", e );
+      }
+    }
+    return new PrefetchingRowReader( this, log, rs, rowMeta, bufferRows, databaseMeta.isFetchSizeSupported() );
+  }
+
   public void printSQLException( SQLException ex ) {
     log.logError( "==> SQLException: " );
     while ( ex != null ) {
@@ -2844,7 +2946,8 @@ public class Database implements VariableSpace, LoggingObjectInterface, Closeabl
         if ( log.isDetailed() ) {
           log.logDetailed( "Setting preparedStatement to [" + sql + "]" );
         }
-        prepStatementLookup = connection.prepareStatement( databaseMeta.stripCR( sql.toString() ) );
+        prepStatementLookup =
+          resetCachedStatement( connection.prepareStatement( databaseMeta.stripCR( sql.toString() ) ) );
         if ( !checkForMultipleResults && databaseMeta.supportsSetMaxRows() ) {
           prepStatementLookup.setMaxRows( 1 ); // alywas get only 1 line back!
         }
@@ -2901,7 +3004,7 @@ public class Database implements VariableSpace, LoggingObjectInterface, Closeabl
         if ( log.isDetailed() ) {
           log.logDetailed( "Setting update preparedStatement to [" + s + "]" );
         }
-        prepStatementUpdate = connection.prepareStatement( databaseMeta.stripCR( s ) );
+        prepStatementUpdate = resetCachedStatement( connection.prepareStatement( databaseMeta.stripCR( s ) ) );
       } catch ( SQLException ex ) {
         printSQLException( ex );
         return false;
@@ -2962,7 +3065,8 @@ public class Database implements VariableSpace, LoggingObjectInterface, Closeabl
         if ( log.isDetailed() ) {
           log.logDetailed( "Setting update preparedStatement to [" + sql + "]" );
         }
-        prepStatementUpdate = connection.prepareStatement( databaseMeta.stripCR( sql.toString() ) );
+        prepStatementUpdate =
+          resetCachedStatement( connection.prepareStatement( databaseMeta.stripCR( sql.toString() ) ) );
       } catch ( SQLException ex ) {
         printSQLException( ex );
         return false;
@@ -3117,6 +3221,38 @@ public class Database implements VariableSpace, LoggingObjectInterface, Closeabl
     }
   }
 
+  /**
+   * Run a prepared query and read all the rows it returns. Unlike openQuery() this leaves the metadata returned by
+   * getReturnRowMeta() alone, so the lookups prepared on this database keep working in between.
+   *
+   * @param ps     The prepared query
+   * @param params The metadata of the parameters
+   * @param data   The parameter values
+   * @param rows   The list to add the rows to
+   * @return the metadata of the rows
+   * @throws KettleDatabaseException in case the query fails
+   */
+  public RowMetaInterface getRows( PreparedStatement ps, RowMetaInterface params, Object[] data, List<Object[]> rows )
+    throws KettleDatabaseException {
+    log.snap( Metrics.METRIC_DATABASE_GET_LOOKUP_START, databaseMeta.getName() );
+    try {
+      setValues( params, data, ps );
+      try ( ResultSet res = ps.executeQuery() ) {
+        RowMetaInterface rowInfo = getRowInfo( res.getMetaData(), databaseMeta.isMySQLVariant(), false );
+        Object[] row = getRow( res, null, rowInfo );
+        while ( row != null ) {
+          rows.add( row );
+          row = getRow( res, null, rowInfo );
+        }
+        return rowInfo;
+      }
+    } catch ( SQLException ex ) {
+      throw new KettleDatabaseException( "Error looking up rows in database", ex );
+    } finally {
+      log.snap( Metrics.METRIC_DATABASE_GET_LOOKUP_STOP, databaseMeta.getName() );
+    }
+  }
+
   public DatabaseMetaData getDatabaseMetaData() throws KettleDatabaseException {
     if ( dbmd == null ) {
       try {
@@ -3641,7 +3777,7 @@ public class Database implements VariableSpace, LoggingObjectInterface, Closeabl
         + databaseMeta.quoteField( "LOGDATE" ) + " DESC, " + databaseMeta.quoteField( "ENDDATE" ) + " DESC";
 
     try {
-      pstmt = connection.prepareStatement( databaseMeta.stripCR( sql ) );
+      pstmt = resetCachedStatement( connection.prepareStatement( databaseMeta.stripCR( sql ) ) );
 
       RowMetaInterface r = new RowMeta();
       r.addValueMeta( new ValueMetaString( "TRANSNAME", 255, -1 ) );
@@ -2,7 +2,7 @@
  *
  * Pentaho Data Integration
  *
- * Copyright (C) 2002-2019 by Hitachi Vantara : http://www.pentaho.com
+ * Copyright (C) 2002-2020 by Hitachi Vantara : http://www.pentaho.com
  *
  *******************************************************************************
  *
@@ -1294,4 +1294,56 @@ public interface DatabaseInterface extends Cloneable {
   default List<String> getNamedClusterList() {
     return null;
   }
+
+  /**
+   * @param name
+   *          the base name of the temporary table
+   * @return the name to use for a temporary table, private to the connection, with the given base name
+   */
+  default String getTemporaryTableName( String name ) {
+    return name;
+  }
+
+  /**
+   * @param tableName
+   *          the name of the temporary table, as returned by getTemporaryTableName()
+   * @param query
+   *          the query defining the columns of the temporary table, it returns no rows
+   * @return the SQL to create a temporary table, private to the connection, with the columns of the query or null if
+   *         temporary tables are not supported
+   */
+  default String getSQLCreateTemporaryTable( String tableName, String query ) {
+    return null;
+  }
+
+  /**
+   * Get the SQL to insert or update all rows of a source table into a target table in a single statement. Rows of the
+   * source table that match a row of the target table on all key fields update that row, the others are inserted.
+   *
+   * @param targetTable
+   *          the schema-table name to merge into
+   * @param sourceTable
+   *          the name of the table holding the rows to merge
+   * @param keyFields
+   *          the quoted names of the fields to match the rows on, the same in both tables
+   * @param insertFields
+   *          the quoted names of the fields to insert, the same in both tables
+   * @param updateFields
+   *          the quoted names of the fields to update, none of the key fields. When empty, matching rows are left
+   *          alone.
+   * @return the merge (upsert) statement or null if the database doesn't support one
+   */
+  default String getSQLMergeFromTable( String targetTable, String sourceTable, String[] keyFields,
+    String[] insertFields, String[] updateFields ) {
+    return null;
+  }
+
+  /**
+   * @return true if the statement of {@link #getSQLMergeFromTable(String, String, String[], String[], String[])} only
+   *         matches rows through a primary key or unique index of the target table, so the key fields need one. The
+   *         default is false.
+   */
+  default boolean requiresUniqueIndexForMerge() {
+    return false;
+  }
 }
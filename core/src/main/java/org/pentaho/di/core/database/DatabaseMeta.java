@@ -2992,6 +2992,51 @@ public class DatabaseMeta extends SharedObjectBase implements Cloneable, XMLInte
     return databaseInterface.getSQLInsertAutoIncUnknownDimensionRow( schemaTable, keyField, versionField );
   }
 
+  /**
+   * @param name
+   *          the base name of the temporary table
+   * @return the name to use for a temporary table, private to the connection
+   */
+  public String getTemporaryTableName( String name ) {
+    return databaseInterface.getTemporaryTableName( name );
+  }
+
+  /**
+   * @param tableName
+   *          the name of the temporary table, as returned by getTemporaryTableName()
+   * @param query
+   *          the query defining the columns of the temporary table
+   * @return the SQL to create the temporary table or null if temporary tables are not supported
+   */
+  public String getSQLCreateTemporaryTable( String tableName, String query ) {
+    return databaseInterface.getSQLCreateTemporaryTable( tableName, query );
+  }
+
+  /**
+   * @param targetTable
+   *          the schema-table name to merge into
+   * @param sourceTable
+   *          the name of the table holding the rows to merge
+   * @param keyFields
+   *          the quoted names of the fields to match the rows on
+   * @param insertFields
+   *          the quoted names of the fields to insert
+   * @param updateFields
+   *          the quoted names of the fields to update when a row matches
+   * @return the merge (upsert) statement or null if the database doesn't support one
+   */
+  public String getSQLMergeFromTable( String targetTable, String sourceTable, String[] keyFields,
+    String[] insertFields, String[] updateFields ) {
+    return databaseInterface.getSQLMergeFromTable( targetTable, sourceTable, keyFields, insertFields, updateFields );
+  }
+
+  /**
+   * @return true if the merge statement only matches rows through a primary key or unique index on the key fields
+   */
+  public boolean requiresUniqueIndexForMerge() {
+    return databaseInterface.requiresUniqueIndexForMerge();
+  }
+
   /**
    * @return true if this is a relational database you can explore. Return false for SAP, PALO, etc.
    */
@@ -2,7 +2,7 @@
  *
  * Pentaho Data Integration
  *
- * Copyright (C) 2002-2017 by Hitachi Vantara : http://www.pentaho.com
+ * Copyright (C) 2002-2020 by Hitachi Vantara : http://www.pentaho.com
  *
  *******************************************************************************
  *
@@ -46,4 +46,13 @@ public class GreenplumDatabaseMeta extends PostgreSQLDatabaseMeta implements Dat
   public boolean supportsErrorHandlingOnBatchUpdates() {
     return false;
   }
+
+  /**
+   * Greenplum is based on a PostgreSQL version without INSERT ... ON CONFLICT.
+   */
+  @Override
+  public String getSQLMergeFromTable( String targetTable, String sourceTable, String[] keyFields,
+    String[] insertFields, String[] updateFields ) {
+    return null;
+  }
 }
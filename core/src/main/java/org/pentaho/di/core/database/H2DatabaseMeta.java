@@ -2,7 +2,7 @@
  *
  * Pentaho Data Integration
  *
- * Copyright (C) 2002-2019 by Hitachi Vantara : http://www.pentaho.com
+ * Copyright (C) 2002-2020 by Hitachi Vantara : http://www.pentaho.com
  *
  *******************************************************************************
  *
@@ -285,4 +285,18 @@ public class H2DatabaseMeta extends BaseDatabaseMeta implements DatabaseInterfac
     return false;
   }
 
+  @Override
+  public String getSQLCreateTemporaryTable( String tableName, String query ) {
+    return "CREATE LOCAL TEMPORARY TABLE " + tableName + " AS " + query;
+  }
+
+  /**
+   * The standard MERGE ... USING syntax, available since H2 1.4.198.
+   */
+  @Override
+  public String getSQLMergeFromTable( String targetTable, String sourceTable, String[] keyFields,
+    String[] insertFields, String[] updateFields ) {
+    return getSQLAnsiMerge( targetTable, sourceTable, keyFields, insertFields, updateFields );
+  }
+
 }
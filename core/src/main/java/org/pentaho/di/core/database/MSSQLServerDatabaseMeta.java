@@ -2,7 +2,7 @@
  *
  * Pentaho Data Integration
  *
- * Copyright (C) 2002-2019 by Hitachi Vantara : http://www.pentaho.com
+ * Copyright (C) 2002-2020 by Hitachi Vantara : http://www.pentaho.com
  *
  *******************************************************************************
  *
@@ -540,4 +540,23 @@ public class MSSQLServerDatabaseMeta extends BaseDatabaseMeta implements Databas
     return 8000;
   }
 
+  @Override
+  public String getTemporaryTableName( String name ) {
+    return "#" + name;
+  }
+
+  @Override
+  public String getSQLCreateTemporaryTable( String tableName, String query ) {
+    return "SELECT * INTO " + tableName + " FROM ( " + query + " ) q";
+  }
+
+  /**
+   * SQL Server requires a MERGE statement to be terminated by a semicolon.
+   */
+  @Override
+  public String getSQLMergeFromTable( String targetTable, String sourceTable, String[] keyFields,
+    String[] insertFields, String[] updateFields ) {
+    return getSQLAnsiMerge( targetTable, sourceTable, keyFields, insertFields, updateFields ) + ";";
+  }
+
 }
@@ -539,4 +539,39 @@ public class MySQLDatabaseMeta extends BaseDatabaseMeta implements DatabaseInter
       throw new KettleDatabaseException( String.format( "%s: %s", BaseMessages.getString( PKG, "MySQLDatabaseMeta.Exception.LegacyColumnNameException" ), e.getMessage() ), e );
     }
   }
+
+  @Override
+  public String getSQLCreateTemporaryTable( String tableName, String query ) {
+    return "CREATE TEMPORARY TABLE " + tableName + " AS " + query;
+  }
+
+  /**
+   * INSERT ... ON DUPLICATE KEY UPDATE: a row matches when it violates a primary key or unique index of the target
+   * table, so the key fields need one.
+   */
+  @Override
+  public String getSQLMergeFromTable( String targetTable, String sourceTable, String[] keyFields,
+    String[] insertFields, String[] updateFields ) {
+    String fields = String.join( ", ", insertFields );
+    StringBuilder sql = new StringBuilder( 256 );
+    sql.append( "INSERT INTO " ).append( targetTable ).append( " ( " ).append( fields ).append( " ) SELECT " )
+      .append( fields ).append( " FROM " ).append( sourceTable ).append( " ON DUPLICATE KEY UPDATE " );
+    if ( updateFields.length == 0 ) {
+      // Leave matching rows alone without ignoring other errors like INSERT IGNORE does
+      sql.append( keyFields[0] ).append( " = " ).append( keyFields[0] );
+    } else {
+      for ( int i = 0; i < updateFields.length; i++ ) {
+        if ( i > 0 ) {
+          sql.append( ", " );
+        }
+        sql.append( updateFields[i] ).append( " = VALUES(" ).append( updateFields[i] ).append( ")" );
+      }
+    }
+    return sql.toString();
+  }
+
+  @Override
+  public boolean requiresUniqueIndexForMerge() {
+    return true;
+  }
 }
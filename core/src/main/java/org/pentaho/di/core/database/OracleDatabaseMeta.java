@@ -2,7 +2,7 @@
  *
  * Pentaho Data Integration
  *
- * Copyright (C) 2002-2019 by Hitachi Vantara : http://www.pentaho.com
+ * Copyright (C) 2002-2020 by Hitachi Vantara : http://www.pentaho.com
  *
  *******************************************************************************
  *
@@ -678,4 +678,18 @@ public class OracleDatabaseMeta extends BaseDatabaseMeta implements DatabaseInte
   public void setStrictBigNumberInterpretation( boolean strictBigNumberInterpretation ) {
     getAttributes().setProperty( STRICT_BIGNUMBER_INTERPRETATION, strictBigNumberInterpretation ? "Y" : "N" );
   }
+
+  /**
+   * A global temporary table: the definition stays until it is dropped, the rows are private to the session.
+   */
+  @Override
+  public String getSQLCreateTemporaryTable( String tableName, String query ) {
+    return "CREATE GLOBAL TEMPORARY TABLE " + tableName + " ON COMMIT PRESERVE ROWS AS " + query;
+  }
+
+  @Override
+  public String getSQLMergeFromTable( String targetTable, String sourceTable, String[] keyFields,
+    String[] insertFields, String[] updateFields ) {
+    return getSQLAnsiMerge( targetTable, sourceTable, keyFields, insertFields, updateFields );
+  }
 }
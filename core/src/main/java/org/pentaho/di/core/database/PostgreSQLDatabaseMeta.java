@@ -2,7 +2,7 @@
  *
  * Pentaho Data Integration
  *
- * Copyright (C) 2002-2019 by Hitachi Vantara : http://www.pentaho.com
+ * Copyright (C) 2002-2020 by Hitachi Vantara : http://www.pentaho.com
  *
  *******************************************************************************
  *
@@ -572,4 +572,40 @@ public class PostgreSQLDatabaseMeta extends BaseDatabaseMeta implements Database
   public int getMaxTextFieldLength() {
     return GB_LIMIT;
   }
+
+  @Override
+  public String getSQLCreateTemporaryTable( String tableName, String query ) {
+    return "CREATE TEMPORARY TABLE " + tableName + " AS " + query;
+  }
+
+  /**
+   * INSERT ... ON CONFLICT, available since PostgreSQL 9.5. The key fields need a unique index or constraint on the
+   * target table.
+   */
+  @Override
+  public String getSQLMergeFromTable( String targetTable, String sourceTable, String[] keyFields,
+    String[] insertFields, String[] updateFields ) {
+    String fields = String.join( ", ", insertFields );
+    StringBuilder sql = new StringBuilder( 256 );
+    sql.append( "INSERT INTO " ).append( targetTable ).append( " ( " ).append( fields ).append( " ) SELECT " )
+      .append( fields ).append( " FROM " ).append( sourceTable );
+    sql.append( " ON CONFLICT ( " ).append( String.join( ", ", keyFields ) ).append( " ) DO " );
+    if ( updateFields.length == 0 ) {
+      sql.append( "NOTHING" );
+    } else {
+      sql.append( "UPDATE SET " );
+      for ( int i = 0; i < updateFields.length; i++ ) {
+        if ( i > 0 ) {
+          sql.append( ", " );
+        }
+        sql.append( updateFields[i] ).append( " = EXCLUDED." ).append( updateFields[i] );
+      }
+    }
+    return sql.toString();
+  }
+
+  @Override
+  public boolean requiresUniqueIndexForMerge() {
+    return true;
+  }
 }
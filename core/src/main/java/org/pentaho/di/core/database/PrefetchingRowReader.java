@@ -0,0 +1,345 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2020 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.core.database;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.pentaho.di.core.exception.KettleDatabaseException;
+import org.pentaho.di.core.logging.LogChannelInterface;
+import org.pentaho.di.core.logging.Metrics;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.util.ExecutorUtil;
+
+/**
+ * Reads the rows of a result set on a background thread into a bounded buffer, so the JDBC driver can wait for the
+ * network and convert values while the step works on the rows it has already got.<br>
+ * <br>
+ * The reader adapts the fetch size of the result set as it goes: it aims at a number of bytes per round trip to the
+ * database, derived from the measured width of the rows. When round trips are slow, more bytes are fetched at once.
+ * The statistics are sent to the metrics of the database log channel when the reader is closed.<br>
+ * <br>
+ * Only the thread that opened the reader calls getRow() and close(). Nothing else should use the result set until the
+ * reader is closed.
+ */
+public class PrefetchingRowReader {
+
+  /** The maximum number of rows handed over at once */
+  private static final int BLOCK_SIZE = 256;
+
+  /** A call to the driver taking longer than this is considered to be a round trip to the database */
+  private static final long ROUND_TRIP_NANOS = TimeUnit.MICROSECONDS.toNanos( 200 );
+
+  private static final long BASE_BYTES_PER_FETCH = 512 * 1024;
+  private static final long MAXIMUM_BYTES_PER_FETCH = 8 * 1024 * 1024;
+  private static final int MINIMUM_FETCH_SIZE = 100;
+  private static final int MAXIMUM_FETCH_SIZE = 50000;
+
+  /** The width of one in so many rows is measured */
+  private static final int WIDTH_SAMPLE_RATE = 16;
+
+  private static final List<Object[]> END = Collections.emptyList();
+
+  private final Database database;
+  private final LogChannelInterface log;
+  private final ResultSet resultSet;
+  private final RowMetaInterface rowMeta;
+  private final BlockingQueue<List<Object[]>> queue;
+  private final Future<?> reader;
+
+  private volatile boolean stopped;
+  private volatile KettleDatabaseException exception;
+
+  private List<Object[]> block = Collections.emptyList();
+  private int blockIndex;
+  private boolean finished;
+
+  // Statistics, written by the background thread
+  //
+  private volatile boolean adaptingFetchSize;
+  private volatile int fetchSize;
+  private volatile long rowsRead;
+  private volatile long roundTrips;
+  private volatile long roundTripNanos;
+  private volatile long bufferFullNanos;
+  private long sampledRows;
+  private long sampledBytes;
+
+  /** Time the caller waited for rows, only used by the calling thread */
+  private long waitNanos;
+
+  /**
+   * Start reading.
+   *
+   * @param database
+   *          the database the result set was opened on
+   * @param log
+   *          the channel to send the metrics to
+   * @param resultSet
+   *          the result set to read
+   * @param rowMeta
+   *          the metadata of the rows in the result set
+   * @param bufferRows
+   *          the approximate number of rows to read ahead
+   * @param adaptFetchSize
+   *          true if the fetch size of the result set can be changed
+   */
+  public PrefetchingRowReader( Database database, LogChannelInterface log, ResultSet resultSet,
+    RowMetaInterface rowMeta, int bufferRows, boolean adaptFetchSize ) {
+    this.database = database;
+    this.log = log;
+    this.resultSet = resultSet;
+    this.rowMeta = rowMeta;
+    this.queue = new ArrayBlockingQueue<>( Math.max( 2, bufferRows / BLOCK_SIZE ) );
+
+    try {
+      fetchSize = resultSet.getFetchSize();
+    } catch ( SQLException e ) {
+      fetchSize = 0;
+    }
+    // A negative fetch size asks MySQL to stream the rows, leave that alone
+    adaptingFetchSize = adaptFetchSize && fetchSize >= 0;
+
+    reader = ExecutorUtil.getExecutor().submit( this::readRows );
+  }
+
+  /**
+   * @return the next row or null when all rows are read
+   * @throws KettleDatabaseException
+   *           the error reading the rows
+   */
+  public Object[] getRow() throws KettleDatabaseException {
+    if ( blockIndex >= block.size() ) {
+      if ( finished ) {
+        return null;
+      }
+      long start = System.nanoTime();
+      try {
+        block = queue.take();
+      } catch ( InterruptedException e ) {
+        Thread.currentThread().interrupt();
+        throw new KettleDatabaseException( "Interrupted while waiting for rows from the database", e );
+      } finally {
+        waitNanos += System.nanoTime() - start;
+      }
+      blockIndex = 0;
+      if ( block == END ) {
+        finished = true;
+        if ( exception != null ) {
+          throw exception;
+        }
+        return null;
+      }
+    }
+    return block.get( blockIndex++ );
+  }
+
+  /**
+   * Stop reading and wait for the background thread, the result set can be closed afterwards. The statistics are sent
+   * to the metrics of the log channel.
+   */
+  public void close() {
+    stopped = true;
+    queue.clear(); // let the background thread put its last block
+    try {
+      while ( true ) {
+        try {
+          reader.get( 100, TimeUnit.MILLISECONDS );
+          break;
+        } catch ( TimeoutException e ) {
+          queue.clear();
+        }
+      }
+    } catch ( InterruptedException e ) {
+      Thread.currentThread().interrupt();
+    } catch ( ExecutionException e ) {
+      // The error is reported by getRow()
+    }
+    queue.clear();
+    finished = true;
+    block = Collections.emptyList();
+
+    if ( log != null && log.isGatheringMetrics() ) {
+      String subject = database.getDatabaseMeta().getName();
+      log.snap( Metrics.METRIC_DATABASE_PREFETCH_WAIT_TIME, subject, TimeUnit.NANOSECONDS.toMillis( waitNanos ) );
+      log.snap( Metrics.METRIC_DATABASE_PREFETCH_BUFFER_FULL_TIME, subject,
+        TimeUnit.NANOSECONDS.toMillis( bufferFullNanos ) );
+      log.snap( Metrics.METRIC_DATABASE_PREFETCH_ROUND_TRIPS, subject, roundTrips );
+      log.snap( Metrics.METRIC_DATABASE_PREFETCH_FETCH_SIZE, subject, fetchSize );
+    }
+    if ( log != null && log.isDetailed() ) {
+      log.logDetailed( "Prefetched " + rowsRead + " rows in " + roundTrips + " round trips, fetch size "
+        + fetchSize + ", average row width " + getAverageRowWidth() + " bytes, waited "
+        + TimeUnit.NANOSECONDS.toMillis( waitNanos ) + " ms for rows" );
+    }
+  }
+
+  private void readRows() {
+    List<Object[]> rows = new ArrayList<>( BLOCK_SIZE );
+    try {
+      while ( !stopped ) {
+        long start = System.nanoTime();
+        Object[] row = database.getRow( resultSet, null, rowMeta );
+        long time = System.nanoTime() - start;
+        if ( time > ROUND_TRIP_NANOS ) {
+          roundTrips++;
+          roundTripNanos += time;
+        }
+        if ( row == null ) {
+          break;
+        }
+        rowsRead++;
+        if ( rowsRead % WIDTH_SAMPLE_RATE == 1 ) {
+          sampledBytes += estimateWidth( row );
+          sampledRows++;
+        }
+        rows.add( row );
+
+        // Hand over full blocks, or whatever there is when the caller is waiting for rows
+        if ( rows.size() >= BLOCK_SIZE || queue.isEmpty() ) {
+          put( rows );
+          rows = new ArrayList<>( BLOCK_SIZE );
+          adaptFetchSize();
+        }
+      }
+    } catch ( KettleDatabaseException e ) {
+      exception = e;
+    } catch ( RuntimeException e ) {
+      exception = new KettleDatabaseException( "Unexpected error reading rows from the database", e );
+    } catch ( InterruptedException e ) {
+      Thread.currentThread().interrupt();
+      return;
+    }
+
+    // The rows read before the end or the error, then the end
+    try {
+      if ( !rows.isEmpty() ) {
+        put( rows );
+      }
+      put( END );
+    } catch ( InterruptedException e ) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private void put( List<Object[]> rows ) throws InterruptedException {
+    if ( stopped ) {
+      queue.offer( rows );
+      return;
+    }
+    if ( !queue.offer( rows ) ) {
+      long start = System.nanoTime();
+      while ( !stopped && !queue.offer( rows, 100, TimeUnit.MILLISECONDS ) ) {
+        // Wait for the caller to take rows or to close the reader
+      }
+      bufferFullNanos += System.nanoTime() - start;
+    }
+  }
+
+  /**
+   * Set the fetch size so that one round trip brings in about the targeted number of bytes. The target grows with the
+   * time a round trip takes.
+   */
+  private void adaptFetchSize() {
+    if ( !adaptingFetchSize || sampledRows == 0 || roundTrips == 0 ) {
+      return;
+    }
+    long averageLatencyMillis = TimeUnit.NANOSECONDS.toMillis( roundTripNanos / roundTrips );
+    long targetBytes = Math.min( MAXIMUM_BYTES_PER_FETCH, BASE_BYTES_PER_FETCH * Math.max( 1, averageLatencyMillis ) );
+    long size = targetBytes / Math.max( 1, getAverageRowWidth() );
+    int target = (int) Math.max( MINIMUM_FETCH_SIZE, Math.min( MAXIMUM_FETCH_SIZE, size ) );
+
+    // Only change it when it makes a difference
+    if ( Math.abs( target - fetchSize ) * 4 > Math.max( fetchSize, 1 ) ) {
+      try {
+        resultSet.setFetchSize( target );
+        fetchSize = target;
+      } catch ( SQLException | RuntimeException e ) {
+        adaptingFetchSize = false;
+      }
+    }
+  }
+
+  /**
+   * @return a rough estimate of the memory taken by the values of a row
+   */
+  private long estimateWidth( Object[] row ) {
+    long width = 0;
+    for ( int i = 0; i < rowMeta.size() && i < row.length; i++ ) {
+      Object value = row[i];
+      if ( value instanceof String ) {
+        width += 2L * ( (String) value ).length();
+      } else if ( value instanceof byte[] ) {
+        width += ( (byte[]) value ).length;
+      } else if ( value != null ) {
+        width += 8;
+      }
+      width += 4;
+    }
+    return width;
+  }
+
+  /**
+   * @return the number of rows read from the result set
+   */
+  public long getRowsRead() {
+    return rowsRead;
+  }
+
+  /**
+   * @return the current fetch size of the result set
+   */
+  public int getFetchSize() {
+    return fetchSize;
+  }
+
+  /**
+   * @return the number of times the driver had to go to the database for rows
+   */
+  public long getRoundTrips() {
+    return roundTrips;
+  }
+
+  /**
+   * @return the estimated average width of a row in bytes
+   */
+  public long getAverageRowWidth() {
+    return sampledRows == 0 ? 0 : sampledBytes / sampledRows;
+  }
+
+  /**
+   * @return the number of milliseconds the caller waited for rows
+   */
+  public long getWaitTime() {
+    return TimeUnit.NANOSECONDS.toMillis( waitNanos );
+  }
+}
@@ -2,7 +2,7 @@
  *
  * Pentaho Data Integration
  *
- * Copyright (C) 2002-2019 by Hitachi Vantara : http://www.pentaho.com
+ * Copyright (C) 2002-2020 by Hitachi Vantara : http://www.pentaho.com
  *
  *******************************************************************************
  *
@@ -148,6 +148,15 @@ public class RedshiftDatabaseMeta extends PostgreSQLDatabaseMeta {
     return "redshift";
   }
 
+  /**
+   * Redshift doesn't support INSERT ... ON CONFLICT.
+   */
+  @Override
+  public String getSQLMergeFromTable( String targetTable, String sourceTable, String[] keyFields,
+    String[] insertFields, String[] updateFields ) {
+    return null;
+  }
+
   private String getParamIfSet( String param, String val ) {
     if ( !isEmpty( val ) ) {
       return "&" + param + "=" + val;
@@ -0,0 +1,262 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2020 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+
+package org.pentaho.di.core.hash;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A hash map from byte[] keys, typically serialized rows, to int values. The keys are copied back to back into large
+ * byte slabs, the values are kept in a primitive array next to the open-addressing index. This is useful to number
+ * distinct keys and keep whatever belongs to them in a list.
+ *
+ * Entries can be replaced but not removed. This class is not thread-safe.
+ */
+public class ByteArrayIntHashMap {
+
+  private static final int STANDARD_INDEX_SIZE = 512;
+  private static final float STANDARD_LOAD_FACTOR = 0.7f;
+  private static final int MAXIMUM_INDEX_SIZE = 1 << 30;
+
+  /** The first slab is small, the next ones double in size until they reach the maximum */
+  private static final int MINIMUM_SLAB_SIZE = 4 * 1024;
+  private static final int MAXIMUM_SLAB_SIZE = 1024 * 1024;
+
+  /** A record holds the key length and the key */
+  private static final int RECORD_HEADER_SIZE = 4;
+
+  private final List<byte[]> slabs = new ArrayList<>();
+  private byte[] currentSlab;
+  private int currentSlabIndex;
+  private int slabPosition;
+  private long dataSize;
+
+  /** The record address + 1 per slot: slab index in the high, offset in the low 32 bits. 0 marks an empty slot. */
+  private long[] addresses;
+  private int[] hashCodes;
+  private int[] values;
+  private int size;
+  private int resizeThreshold;
+
+  /**
+   * Create a new map
+   *
+   * @param size
+   *          the initial size of the index
+   */
+  public ByteArrayIntHashMap( int size ) {
+    // Find a suitable capacity being a factor of 2:
+    int factor2Size = 2;
+    while ( factor2Size < size && factor2Size < MAXIMUM_INDEX_SIZE ) {
+      factor2Size <<= 1; // Multiply by 2
+    }
+    allocateIndex( factor2Size );
+  }
+
+  public ByteArrayIntHashMap() {
+    this( STANDARD_INDEX_SIZE );
+  }
+
+  /**
+   * @return the number of entries in the map
+   */
+  public int size() {
+    return size;
+  }
+
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  /**
+   * @return the number of bytes of keys and record headers stored in the slabs
+   */
+  public long getDataSize() {
+    return dataSize;
+  }
+
+  /**
+   * @return the value stored for the key or the default value if there is none
+   */
+  public int get( byte[] key, int defaultValue ) {
+    int slot = findSlot( key, hash( key ) );
+    return addresses[slot] == 0L ? defaultValue : values[slot];
+  }
+
+  public boolean containsKey( byte[] key ) {
+    return addresses[findSlot( key, hash( key ) )] != 0L;
+  }
+
+  /**
+   * Store the value for the key, replacing a previous value if there is one.
+   */
+  public void put( byte[] key, int value ) {
+    int hashCode = hash( key );
+    int slot = findSlot( key, hashCode );
+    values[slot] = value;
+    if ( addresses[slot] == 0L ) {
+      addresses[slot] = append( key ) + 1;
+      hashCodes[slot] = hashCode;
+      size++;
+      if ( size >= resizeThreshold ) {
+        resize();
+      }
+    }
+  }
+
+  /**
+   * Remove all entries and release the slabs.
+   */
+  public void clear() {
+    slabs.clear();
+    currentSlab = null;
+    slabPosition = 0;
+    dataSize = 0L;
+    Arrays.fill( addresses, 0L );
+    size = 0;
+  }
+
+  /**
+   * @return the slot holding the key or the empty slot where it belongs.
+   */
+  private int findSlot( byte[] key, int hashCode ) {
+    int mask = addresses.length - 1;
+    int slot = hashCode & mask;
+    long address = addresses[slot];
+    while ( address != 0L && ( hashCodes[slot] != hashCode || !equalsKey( address - 1, key ) ) ) {
+      slot = ( slot + 1 ) & mask;
+      address = addresses[slot];
+    }
+    return slot;
+  }
+
+  private boolean equalsKey( long address, byte[] key ) {
+    byte[] slab = slabs.get( (int) ( address >>> 32 ) );
+    int offset = (int) address;
+    if ( readInt( slab, offset ) != key.length ) {
+      return false;
+    }
+    offset += RECORD_HEADER_SIZE;
+    for ( int i = 0; i < key.length; i++ ) {
+      if ( slab[offset + i] != key[i] ) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Copy the key into a slab.
+   *
+   * @return the address of the new record
+   */
+  private long append( byte[] key ) {
+    int recordSize = RECORD_HEADER_SIZE + key.length;
+    if ( recordSize < 0 ) {
+      throw new IllegalArgumentException( "Key is too large: " + key.length );
+    }
+
+    byte[] slab;
+    int slabIndex;
+    int offset;
+    if ( recordSize > MAXIMUM_SLAB_SIZE ) {
+      // A record this large gets a slab of its own, leaving the current one to be filled up
+      //
+      slab = new byte[recordSize];
+      slabIndex = slabs.size();
+      slabs.add( slab );
+      offset = 0;
+    } else {
+      if ( currentSlab == null || slabPosition + recordSize > currentSlab.length ) {
+        int slabSize = currentSlab == null ? MINIMUM_SLAB_SIZE : Math.min( currentSlab.length * 2, MAXIMUM_SLAB_SIZE );
+        currentSlab = new byte[Math.max( slabSize, recordSize )];
+        currentSlabIndex = slabs.size();
+        slabs.add( currentSlab );
+        slabPosition = 0;
+      }
+      slab = currentSlab;
+      slabIndex = currentSlabIndex;
+      offset = slabPosition;
+      slabPosition += recordSize;
+    }
+
+    writeInt( slab, offset, key.length );
+    System.arraycopy( key, 0, slab, offset + RECORD_HEADER_SIZE, key.length );
+    dataSize += recordSize;
+
+    return ( (long) slabIndex << 32 ) | offset;
+  }
+
+  private void allocateIndex( int indexSize ) {
+    addresses = new long[indexSize];
+    hashCodes = new int[indexSize];
+    values = new int[indexSize];
+    resizeThreshold = indexSize >= MAXIMUM_INDEX_SIZE ? indexSize - 1 : (int) ( indexSize * STANDARD_LOAD_FACTOR );
+  }
+
+  private void resize() {
+    if ( addresses.length >= MAXIMUM_INDEX_SIZE ) {
+      throw new IllegalStateException( "The hash map is full: " + size + " entries" );
+    }
+
+    long[] oldAddresses = addresses;
+    int[] oldHashCodes = hashCodes;
+    int[] oldValues = values;
+    allocateIndex( oldAddresses.length * 2 );
+
+    // The hash codes are kept in the index so the keys don't need to be looked at
+    //
+    int mask = addresses.length - 1;
+    for ( int i = 0; i < oldAddresses.length; i++ ) {
+      if ( oldAddresses[i] != 0L ) {
+        int slot = oldHashCodes[i] & mask;
+        while ( addresses[slot] != 0L ) {
+          slot = ( slot + 1 ) & mask;
+        }
+        addresses[slot] = oldAddresses[i];
+        hashCodes[slot] = oldHashCodes[i];
+        values[slot] = oldValues[i];
+      }
+    }
+  }
+
+  private static int hash( byte[] key ) {
+    // Spread the bits, linear probing doesn't cope well with clustered hash codes
+    int h = Arrays.hashCode( key ) * 0x9E3779B9;
+    return h ^ ( h >>> 16 );
+  }
+
+  private static int readInt( byte[] slab, int offset ) {
+    return ( ( slab[offset] & 0xFF ) << 24 ) | ( ( slab[offset + 1] & 0xFF ) << 16 )
+      | ( ( slab[offset + 2] & 0xFF ) << 8 ) | ( slab[offset + 3] & 0xFF );
+  }
+
+  private static void writeInt( byte[] slab, int offset, int value ) {
+    slab[offset] = (byte) ( value >>> 24 );
+    slab[offset + 1] = (byte) ( value >>> 16 );
+    slab[offset + 2] = (byte) ( value >>> 8 );
+    slab[offset + 3] = (byte) value;
+  }
+}
@@ -0,0 +1,306 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2020 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+
+package org.pentaho.di.core.hash;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A hash map with byte[] keys and values, typically serialized rows. Keys and values are copied back to back into large
+ * byte slabs, the table itself is an open-addressing index of slab addresses and hash codes. An entry costs 12 bytes of
+ * index plus its data, instead of an entry object and two arrays.
+ *
+ * Entries can be replaced but not removed. This class is not thread-safe.
+ */
+public class ByteArraySlabHashMap {
+
+  private static final int STANDARD_INDEX_SIZE = 512;
+  private static final float STANDARD_LOAD_FACTOR = 0.7f;
+  private static final int MAXIMUM_INDEX_SIZE = 1 << 30;
+
+  /** The first slab is small, the next ones double in size until they reach the maximum */
+  private static final int MINIMUM_SLAB_SIZE = 4 * 1024;
+  private static final int MAXIMUM_SLAB_SIZE = 1024 * 1024;
+
+  /** A record holds the key length, the value length, the key and the value */
+  private static final int RECORD_HEADER_SIZE = 8;
+
+  private final List<byte[]> slabs = new ArrayList<>();
+  private byte[] currentSlab;
+  private int currentSlabIndex;
+  private int slabPosition;
+  private long dataSize;
+
+  /** The record address + 1 per slot: slab index in the high, offset in the low 32 bits. 0 marks an empty slot. */
+  private long[] addresses;
+  private int[] hashCodes;
+  private int size;
+  private int resizeThreshold;
+
+  /**
+   * Create a new map
+   *
+   * @param size
+   *          the initial size of the index
+   */
+  public ByteArraySlabHashMap( int size ) {
+    // Find a suitable capacity being a factor of 2:
+    int factor2Size = 2;
+    while ( factor2Size < size && factor2Size < MAXIMUM_INDEX_SIZE ) {
+      factor2Size <<= 1; // Multiply by 2
+    }
+    allocateIndex( factor2Size );
+  }
+
+  public ByteArraySlabHashMap() {
+    this( STANDARD_INDEX_SIZE );
+  }
+
+  /**
+   * @return the number of entries in the map
+   */
+  public int size() {
+    return size;
+  }
+
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  /**
+   * @return the number of bytes of keys, values and record headers stored in the slabs
+   */
+  public long getDataSize() {
+    return dataSize;
+  }
+
+  /**
+   * @return a copy of the value stored for the key or null if there is none
+   */
+  public byte[] get( byte[] key ) {
+    long address = addresses[findSlot( key, hash( key ) )];
+    if ( address == 0L ) {
+      return null;
+    }
+    return readValue( address - 1 );
+  }
+
+  public boolean containsKey( byte[] key ) {
+    return addresses[findSlot( key, hash( key ) )] != 0L;
+  }
+
+  /**
+   * Store the value for the key, replacing a previous value if there is one.
+   */
+  public void put( byte[] key, byte[] value ) {
+    int hashCode = hash( key );
+    int slot = findSlot( key, hashCode );
+    long address = addresses[slot];
+    if ( address == 0L ) {
+      insert( slot, hashCode, key, value );
+    } else if ( !replaceValue( address - 1, value ) ) {
+      // The new value doesn't fit in the old record, the old record is simply abandoned
+      //
+      addresses[slot] = append( key, value ) + 1;
+    }
+  }
+
+  /**
+   * Store the value for the key unless the key is already in the map.
+   *
+   * @return true if the key was added, false if it was already in the map
+   */
+  public boolean putIfAbsent( byte[] key, byte[] value ) {
+    int hashCode = hash( key );
+    int slot = findSlot( key, hashCode );
+    if ( addresses[slot] != 0L ) {
+      return false;
+    }
+    insert( slot, hashCode, key, value );
+    return true;
+  }
+
+  /**
+   * Remove all entries and release the slabs.
+   */
+  public void clear() {
+    slabs.clear();
+    currentSlab = null;
+    slabPosition = 0;
+    dataSize = 0L;
+    Arrays.fill( addresses, 0L );
+    size = 0;
+  }
+
+  private void insert( int slot, int hashCode, byte[] key, byte[] value ) {
+    addresses[slot] = append( key, value ) + 1;
+    hashCodes[slot] = hashCode;
+    size++;
+    if ( size >= resizeThreshold ) {
+      resize();
+    }
+  }
+
+  /**
+   * @return the slot holding the key or the empty slot where it belongs.
+   */
+  private int findSlot( byte[] key, int hashCode ) {
+    int mask = addresses.length - 1;
+    int slot = hashCode & mask;
+    long address = addresses[slot];
+    while ( address != 0L && ( hashCodes[slot] != hashCode || !equalsKey( address - 1, key ) ) ) {
+      slot = ( slot + 1 ) & mask;
+      address = addresses[slot];
+    }
+    return slot;
+  }
+
+  private boolean equalsKey( long address, byte[] key ) {
+    byte[] slab = slabs.get( (int) ( address >>> 32 ) );
+    int offset = (int) address;
+    if ( readInt( slab, offset ) != key.length ) {
+      return false;
+    }
+    offset += RECORD_HEADER_SIZE;
+    for ( int i = 0; i < key.length; i++ ) {
+      if ( slab[offset + i] != key[i] ) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private byte[] readValue( long address ) {
+    byte[] slab = slabs.get( (int) ( address >>> 32 ) );
+    int offset = (int) address;
+    int start = offset + RECORD_HEADER_SIZE + readInt( slab, offset );
+    return Arrays.copyOfRange( slab, start, start + readInt( slab, offset + 4 ) );
+  }
+
+  /**
+   * Overwrite the value of a record if the new value has the same length.
+   */
+  private boolean replaceValue( long address, byte[] value ) {
+    byte[] slab = slabs.get( (int) ( address >>> 32 ) );
+    int offset = (int) address;
+    if ( readInt( slab, offset + 4 ) != value.length ) {
+      return false;
+    }
+    System.arraycopy( value, 0, slab, offset + RECORD_HEADER_SIZE + readInt( slab, offset ), value.length );
+    return true;
+  }
+
+  /**
+   * Copy the key and value into a slab.
+   *
+   * @return the address of the new record
+   */
+  private long append( byte[] key, byte[] value ) {
+    int recordSize = RECORD_HEADER_SIZE + key.length + value.length;
+    if ( recordSize < 0 ) {
+      throw new IllegalArgumentException( "Key and value are too large: " + key.length + " + " + value.length );
+    }
+
+    byte[] slab;
+    int slabIndex;
+    int offset;
+    if ( recordSize > MAXIMUM_SLAB_SIZE ) {
+      // A record this large gets a slab of its own, leaving the current one to be filled up
+      //
+      slab = new byte[recordSize];
+      slabIndex = slabs.size();
+      slabs.add( slab );
+      offset = 0;
+    } else {
+      if ( currentSlab == null || slabPosition + recordSize > currentSlab.length ) {
+        int slabSize = currentSlab == null ? MINIMUM_SLAB_SIZE : Math.min( currentSlab.length * 2, MAXIMUM_SLAB_SIZE );
+        currentSlab = new byte[Math.max( slabSize, recordSize )];
+        currentSlabIndex = slabs.size();
+        slabs.add( currentSlab );
+        slabPosition = 0;
+      }
+      slab = currentSlab;
+      slabIndex = currentSlabIndex;
+      offset = slabPosition;
+      slabPosition += recordSize;
+    }
+
+    writeInt( slab, offset, key.length );
+    writeInt( slab, offset + 4, value.length );
+    System.arraycopy( key, 0, slab, offset + RECORD_HEADER_SIZE, key.length );
+    System.arraycopy( value, 0, slab, offset + RECORD_HEADER_SIZE + key.length, value.length );
+    dataSize += recordSize;
+
+    return ( (long) slabIndex << 32 ) | offset;
+  }
+
+  private void allocateIndex( int indexSize ) {
+    addresses = new long[indexSize];
+    hashCodes = new int[indexSize];
+    resizeThreshold = indexSize >= MAXIMUM_INDEX_SIZE ? indexSize - 1 : (int) ( indexSize * STANDARD_LOAD_FACTOR );
+  }
+
+  private void resize() {
+    if ( addresses.length >= MAXIMUM_INDEX_SIZE ) {
+      throw new IllegalStateException( "The hash map is full: " + size + " entries" );
+    }
+
+    long[] oldAddresses = addresses;
+    int[] oldHashCodes = hashCodes;
+    allocateIndex( oldAddresses.length * 2 );
+
+    // The hash codes are kept in the index so the keys don't need to be looked at
+    //
+    int mask = addresses.length - 1;
+    for ( int i = 0; i < oldAddresses.length; i++ ) {
+      if ( oldAddresses[i] != 0L ) {
+        int slot = oldHashCodes[i] & mask;
+        while ( addresses[slot] != 0L ) {
+          slot = ( slot + 1 ) & mask;
+        }
+        addresses[slot] = oldAddresses[i];
+        hashCodes[slot] = oldHashCodes[i];
+      }
+    }
+  }
+
+  private static int hash( byte[] key ) {
+    // Spread the bits, linear probing doesn't cope well with clustered hash codes
+    int h = Arrays.hashCode( key ) * 0x9E3779B9;
+    return h ^ ( h >>> 16 );
+  }
+
+  private static int readInt( byte[] slab, int offset ) {
+    return ( ( slab[offset] & 0xFF ) << 24 ) | ( ( slab[offset + 1] & 0xFF ) << 16 )
+      | ( ( slab[offset + 2] & 0xFF ) << 8 ) | ( slab[offset + 3] & 0xFF );
+  }
+
+  private static void writeInt( byte[] slab, int offset, int value ) {
+    slab[offset] = (byte) ( value >>> 24 );
+    slab[offset + 1] = (byte) ( value >>> 16 );
+    slab[offset + 2] = (byte) ( value >>> 8 );
+    slab[offset + 3] = (byte) value;
+  }
+}
@@ -0,0 +1,156 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2020 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+
+package org.pentaho.di.core.hash;
+
+import java.util.Arrays;
+
+/**
+ * A set of int values in a single primitive array using open addressing, so there are no entry objects and no boxing.
+ * Value 0 marks an empty slot in the array and is kept aside.
+ *
+ * Values can not be removed. This class is not thread-safe.
+ */
+public class IntHashSet {
+
+  private static final int STANDARD_INDEX_SIZE = 512;
+  private static final float STANDARD_LOAD_FACTOR = 0.7f;
+  private static final int MAXIMUM_INDEX_SIZE = 1 << 30;
+
+  private static final int FREE_VALUE = 0;
+
+  private int[] values;
+  private int size;
+  private int resizeThreshold;
+  private boolean hasFreeValue;
+
+  /**
+   * Create a new int hash set
+   *
+   * @param size
+   *          the initial size of the index
+   */
+  public IntHashSet( int size ) {
+    // Find a suitable capacity being a factor of 2:
+    int factor2Size = 2;
+    while ( factor2Size < size && factor2Size < MAXIMUM_INDEX_SIZE ) {
+      factor2Size <<= 1; // Multiply by 2
+    }
+    allocate( factor2Size );
+  }
+
+  /**
+   * Create a new int hash set
+   */
+  public IntHashSet() {
+    this( STANDARD_INDEX_SIZE );
+  }
+
+  /**
+   * @return the number of values in the set
+   */
+  public int size() {
+    return size;
+  }
+
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  public boolean contains( int value ) {
+    if ( value == FREE_VALUE ) {
+      return hasFreeValue;
+    }
+    return values[findSlot( value )] != FREE_VALUE;
+  }
+
+  /**
+   * @return true if the value was added, false if it was already in the set
+   */
+  public boolean add( int value ) {
+    if ( value == FREE_VALUE ) {
+      if ( hasFreeValue ) {
+        return false;
+      }
+      hasFreeValue = true;
+      size++;
+      return true;
+    }
+
+    int slot = findSlot( value );
+    if ( values[slot] != FREE_VALUE ) {
+      return false;
+    }
+    values[slot] = value;
+    size++;
+    if ( size >= resizeThreshold ) {
+      resize();
+    }
+    return true;
+  }
+
+  /**
+   * Remove all values.
+   */
+  public void clear() {
+    Arrays.fill( values, FREE_VALUE );
+    hasFreeValue = false;
+    size = 0;
+  }
+
+  /**
+   * @return the slot holding the value or the empty slot where it belongs.
+   */
+  private int findSlot( int value ) {
+    int mask = values.length - 1;
+    int slot = hash( value ) & mask;
+    while ( values[slot] != FREE_VALUE && values[slot] != value ) {
+      slot = ( slot + 1 ) & mask;
+    }
+    return slot;
+  }
+
+  private void allocate( int indexSize ) {
+    values = new int[indexSize];
+    resizeThreshold = indexSize >= MAXIMUM_INDEX_SIZE ? indexSize - 1 : (int) ( indexSize * STANDARD_LOAD_FACTOR );
+  }
+
+  private void resize() {
+    if ( values.length >= MAXIMUM_INDEX_SIZE ) {
+      throw new IllegalStateException( "The hash set is full: " + size + " values" );
+    }
+
+    int[] oldValues = values;
+    allocate( oldValues.length * 2 );
+    for ( int value : oldValues ) {
+      if ( value != FREE_VALUE ) {
+        values[findSlot( value )] = value;
+      }
+    }
+  }
+
+  private static int hash( int value ) {
+    int h = value * 0x9E3779B9;
+    return h ^ ( h >>> 16 );
+  }
+}
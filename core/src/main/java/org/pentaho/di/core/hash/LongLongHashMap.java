@@ -0,0 +1,186 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2020 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+
+package org.pentaho.di.core.hash;
+
+import java.util.Arrays;
+
+/**
+ * A long to long hash map that keeps its keys and values in two primitive arrays using open addressing, so there are no
+ * entry objects and no boxing. Key 0 marks an empty slot in the arrays and is kept aside.
+ *
+ * Entries can be replaced but not removed. This class is not thread-safe.
+ */
+public class LongLongHashMap {
+
+  private static final int STANDARD_INDEX_SIZE = 512;
+  private static final float STANDARD_LOAD_FACTOR = 0.7f;
+  private static final int MAXIMUM_INDEX_SIZE = 1 << 30;
+
+  private static final long FREE_KEY = 0L;
+
+  private long[] keys;
+  private long[] values;
+  private int size;
+  private int resizeThreshold;
+
+  private boolean hasFreeKey;
+  private long freeKeyValue;
+
+  /**
+   * Create a new long/long hash map
+   *
+   * @param size
+   *          the initial size of the index
+   */
+  public LongLongHashMap( int size ) {
+    // Find a suitable capacity being a factor of 2:
+    int factor2Size = 2;
+    while ( factor2Size < size && factor2Size < MAXIMUM_INDEX_SIZE ) {
+      factor2Size <<= 1; // Multiply by 2
+    }
+    allocate( factor2Size );
+  }
+
+  /**
+   * Create a new long/long hash map
+   */
+  public LongLongHashMap() {
+    this( STANDARD_INDEX_SIZE );
+  }
+
+  /**
+   * @return the number of entries in the map
+   */
+  public int size() {
+    return size;
+  }
+
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  public boolean containsKey( long key ) {
+    if ( key == FREE_KEY ) {
+      return hasFreeKey;
+    }
+    return keys[findSlot( key )] != FREE_KEY;
+  }
+
+  /**
+   * @return the value stored for the key or null if there is none
+   */
+  public Long get( long key ) {
+    if ( key == FREE_KEY ) {
+      return hasFreeKey ? Long.valueOf( freeKeyValue ) : null;
+    }
+    int slot = findSlot( key );
+    return keys[slot] == FREE_KEY ? null : Long.valueOf( values[slot] );
+  }
+
+  /**
+   * @return the value stored for the key or the default value if there is none
+   */
+  public long get( long key, long defaultValue ) {
+    if ( key == FREE_KEY ) {
+      return hasFreeKey ? freeKeyValue : defaultValue;
+    }
+    int slot = findSlot( key );
+    return keys[slot] == FREE_KEY ? defaultValue : values[slot];
+  }
+
+  /**
+   * Store the value for the key, replacing a previous value if there is one.
+   */
+  public void put( long key, long value ) {
+    if ( key == FREE_KEY ) {
+      if ( !hasFreeKey ) {
+        hasFreeKey = true;
+        size++;
+      }
+      freeKeyValue = value;
+      return;
+    }
+
+    int slot = findSlot( key );
+    values[slot] = value;
+    if ( keys[slot] == FREE_KEY ) {
+      keys[slot] = key;
+      size++;
+      if ( size >= resizeThreshold ) {
+        resize();
+      }
+    }
+  }
+
+  /**
+   * Remove all entries.
+   */
+  public void clear() {
+    Arrays.fill( keys, FREE_KEY );
+    hasFreeKey = false;
+    size = 0;
+  }
+
+  /**
+   * @return the slot holding the key or the empty slot where it belongs.
+   */
+  private int findSlot( long key ) {
+    int mask = keys.length - 1;
+    int slot = hash( key ) & mask;
+    while ( keys[slot] != FREE_KEY && keys[slot] != key ) {
+      slot = ( slot + 1 ) & mask;
+    }
+    return slot;
+  }
+
+  private void allocate( int indexSize ) {
+    keys = new long[indexSize];
+    values = new long[indexSize];
+    resizeThreshold = indexSize >= MAXIMUM_INDEX_SIZE ? indexSize - 1 : (int) ( indexSize * STANDARD_LOAD_FACTOR );
+  }
+
+  private void resize() {
+    if ( keys.length >= MAXIMUM_INDEX_SIZE ) {
+      throw new IllegalStateException( "The hash map is full: " + size + " entries" );
+    }
+
+    long[] oldKeys = keys;
+    long[] oldValues = values;
+    allocate( oldKeys.length * 2 );
+
+    for ( int i = 0; i < oldKeys.length; i++ ) {
+      if ( oldKeys[i] != FREE_KEY ) {
+        int slot = findSlot( oldKeys[i] );
+        keys[slot] = oldKeys[i];
+        values[slot] = oldValues[i];
+      }
+    }
+  }
+
+  private static int hash( long key ) {
+    // Sequential keys are common, spread them over the table
+    long h = key * 0x9E3779B97F4A7C15L;
+    return (int) ( h ^ ( h >>> 32 ) );
+  }
+}
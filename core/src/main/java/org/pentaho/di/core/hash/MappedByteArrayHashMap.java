@@ -0,0 +1,361 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2020 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+
+package org.pentaho.di.core.hash;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.pentaho.di.core.exception.KettleFileException;
+
+/**
+ * A hash map with byte[] keys and values, typically serialized rows, that lives in memory-mapped temp files instead of
+ * the heap. The records are appended to a data file, the hashed directory is an open-addressing table of record
+ * addresses and hash codes in an index file. The pages are cached by the operating system, the heap only holds the
+ * buffer objects.
+ *
+ * Entries can be replaced but not removed. This class is not thread-safe. Call close() to delete the files.
+ */
+public class MappedByteArrayHashMap implements Closeable {
+
+  private static final int STANDARD_INDEX_SIZE = 1 << 16;
+  private static final float STANDARD_LOAD_FACTOR = 0.7f;
+  /** A mapped buffer can't exceed 2GB, which is where the index stops growing */
+  private static final int MAXIMUM_INDEX_SIZE = 1 << 27;
+
+  /** A slot holds the record address + 1 (0 marks an empty slot) and the hash code of the key */
+  private static final int SLOT_SIZE = 12;
+
+  /** The data file is mapped in chunks, a record never crosses a chunk boundary */
+  private static final int CHUNK_BITS = 26;
+  private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+
+  /** A record holds the key length, the value length, the key and the value */
+  private static final int RECORD_HEADER_SIZE = 8;
+
+  private final File directory;
+  private final String prefix;
+
+  private File dataFile;
+  private RandomAccessFile data;
+  private final List<MappedByteBuffer> chunks = new ArrayList<>();
+  private long dataPosition;
+
+  private File indexFile;
+  private RandomAccessFile index;
+  private MappedByteBuffer slots;
+  private int indexSize;
+  private int size;
+  private int resizeThreshold;
+
+  /**
+   * Create a new map in temp files
+   *
+   * @param directory
+   *          the directory to create the files in
+   * @param prefix
+   *          the prefix of the file names
+   * @param size
+   *          the initial size of the index
+   */
+  public MappedByteArrayHashMap( File directory, String prefix, int size ) throws KettleFileException {
+    this.directory = directory;
+    this.prefix = prefix;
+
+    // Find a suitable capacity being a factor of 2:
+    int factor2Size = 2;
+    while ( factor2Size < size && factor2Size < MAXIMUM_INDEX_SIZE ) {
+      factor2Size <<= 1; // Multiply by 2
+    }
+
+    try {
+      dataFile = File.createTempFile( prefix, ".dat", directory );
+      data = new RandomAccessFile( dataFile, "rw" );
+      allocateIndex( factor2Size );
+    } catch ( IOException e ) {
+      close();
+      throw new KettleFileException( "Unable to create memory-mapped hash map in " + directory, e );
+    }
+  }
+
+  public MappedByteArrayHashMap( File directory, String prefix ) throws KettleFileException {
+    this( directory, prefix, STANDARD_INDEX_SIZE );
+  }
+
+  /**
+   * @return the number of entries in the map
+   */
+  public int size() {
+    return size;
+  }
+
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  /**
+   * @return the number of bytes of keys, values and record headers written to the data file
+   */
+  public long getDataSize() {
+    return dataPosition;
+  }
+
+  /**
+   * @return a copy of the value stored for the key or null if there is none
+   */
+  public byte[] get( byte[] key ) {
+    long address = getAddress( findSlot( key, hash( key ) ) );
+    if ( address == 0L ) {
+      return null;
+    }
+    MappedByteBuffer chunk = chunks.get( (int) ( ( address - 1 ) >>> CHUNK_BITS ) );
+    int offset = (int) ( ( address - 1 ) & ( CHUNK_SIZE - 1 ) );
+    byte[] value = new byte[chunk.getInt( offset + 4 )];
+    int start = offset + RECORD_HEADER_SIZE + chunk.getInt( offset );
+    for ( int i = 0; i < value.length; i++ ) {
+      value[i] = chunk.get( start + i );
+    }
+    return value;
+  }
+
+  public boolean containsKey( byte[] key ) {
+    return getAddress( findSlot( key, hash( key ) ) ) != 0L;
+  }
+
+  /**
+   * Store the value for the key, replacing a previous value if there is one.
+   */
+  public void put( byte[] key, byte[] value ) throws KettleFileException {
+    int hashCode = hash( key );
+    int slot = findSlot( key, hashCode );
+    long address = getAddress( slot );
+    if ( address != 0L && replaceValue( address - 1, value ) ) {
+      return;
+    }
+
+    // New keys and values that don't fit in the old record get a new record, the old one is simply abandoned
+    //
+    setSlot( slot, append( key, value ) + 1, hashCode );
+    if ( address == 0L ) {
+      size++;
+      if ( size >= resizeThreshold ) {
+        resize();
+      }
+    }
+  }
+
+  /**
+   * Release the mapped buffers and delete the files. On platforms that don't allow deleting a file while it's mapped,
+   * the files are deleted when the JVM exits.
+   */
+  @Override
+  public void close() {
+    chunks.clear();
+    slots = null;
+    closeQuietly( data );
+    closeQuietly( index );
+    data = null;
+    index = null;
+    deleteQuietly( dataFile );
+    deleteQuietly( indexFile );
+    dataFile = null;
+    indexFile = null;
+  }
+
+  /**
+   * @return the slot holding the key or the empty slot where it belongs.
+   */
+  private int findSlot( byte[] key, int hashCode ) {
+    int mask = indexSize - 1;
+    int slot = hashCode & mask;
+    long address = getAddress( slot );
+    while ( address != 0L && ( getHashCode( slot ) != hashCode || !equalsKey( address - 1, key ) ) ) {
+      slot = ( slot + 1 ) & mask;
+      address = getAddress( slot );
+    }
+    return slot;
+  }
+
+  private long getAddress( int slot ) {
+    return slots.getLong( slot * SLOT_SIZE );
+  }
+
+  private int getHashCode( int slot ) {
+    return slots.getInt( slot * SLOT_SIZE + 8 );
+  }
+
+  private void setSlot( int slot, long address, int hashCode ) {
+    slots.putLong( slot * SLOT_SIZE, address );
+    slots.putInt( slot * SLOT_SIZE + 8, hashCode );
+  }
+
+  private boolean equalsKey( long address, byte[] key ) {
+    MappedByteBuffer chunk = chunks.get( (int) ( address >>> CHUNK_BITS ) );
+    int offset = (int) ( address & ( CHUNK_SIZE - 1 ) );
+    if ( chunk.getInt( offset ) != key.length ) {
+      return false;
+    }
+    offset += RECORD_HEADER_SIZE;
+    for ( int i = 0; i < key.length; i++ ) {
+      if ( chunk.get( offset + i ) != key[i] ) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Overwrite the value of a record if the new value has the same length.
+   */
+  private boolean replaceValue( long address, byte[] value ) {
+    MappedByteBuffer chunk = chunks.get( (int) ( address >>> CHUNK_BITS ) );
+    int offset = (int) ( address & ( CHUNK_SIZE - 1 ) );
+    if ( chunk.getInt( offset + 4 ) != value.length ) {
+      return false;
+    }
+    int start = offset + RECORD_HEADER_SIZE + chunk.getInt( offset );
+    for ( int i = 0; i < value.length; i++ ) {
+      chunk.put( start + i, value[i] );
+    }
+    return true;
+  }
+
+  /**
+   * Write the key and value to the data file, mapping another chunk when needed.
+   *
+   * @return the address of the new record
+   */
+  private long append( byte[] key, byte[] value ) throws KettleFileException {
+    long recordSize = (long) RECORD_HEADER_SIZE + key.length + value.length;
+    if ( recordSize > CHUNK_SIZE ) {
+      throw new IllegalArgumentException( "Key and value are too large: " + key.length + " + " + value.length );
+    }
+
+    int offset = (int) ( dataPosition & ( CHUNK_SIZE - 1 ) );
+    if ( offset + recordSize > CHUNK_SIZE ) {
+      // Skip the rest of this chunk
+      dataPosition += CHUNK_SIZE - offset;
+      offset = 0;
+    }
+    int chunkIndex = (int) ( dataPosition >>> CHUNK_BITS );
+    if ( chunkIndex == chunks.size() ) {
+      try {
+        chunks.add( data.getChannel().map( FileChannel.MapMode.READ_WRITE, (long) chunkIndex * CHUNK_SIZE,
+          CHUNK_SIZE ) );
+      } catch ( IOException e ) {
+        throw new KettleFileException( "Unable to extend memory-mapped file " + dataFile, e );
+      }
+    }
+
+    MappedByteBuffer chunk = chunks.get( chunkIndex );
+    chunk.putInt( offset, key.length );
+    chunk.putInt( offset + 4, value.length );
+    int start = offset + RECORD_HEADER_SIZE;
+    for ( int i = 0; i < key.length; i++ ) {
+      chunk.put( start + i, key[i] );
+    }
+    start += key.length;
+    for ( int i = 0; i < value.length; i++ ) {
+      chunk.put( start + i, value[i] );
+    }
+
+    long address = dataPosition;
+    dataPosition += recordSize;
+    return address;
+  }
+
+  /**
+   * Create an empty index in a new file. A freshly mapped file region reads as zeros, so all slots are empty.
+   */
+  private void allocateIndex( int newIndexSize ) throws IOException {
+    indexFile = File.createTempFile( prefix, ".idx", directory );
+    index = new RandomAccessFile( indexFile, "rw" );
+    slots = index.getChannel().map( FileChannel.MapMode.READ_WRITE, 0L, (long) newIndexSize * SLOT_SIZE );
+    indexSize = newIndexSize;
+    resizeThreshold =
+      newIndexSize >= MAXIMUM_INDEX_SIZE ? newIndexSize - 1 : (int) ( newIndexSize * STANDARD_LOAD_FACTOR );
+  }
+
+  private void resize() throws KettleFileException {
+    if ( indexSize >= MAXIMUM_INDEX_SIZE ) {
+      throw new IllegalStateException( "The hash map is full: " + size + " entries" );
+    }
+
+    File oldIndexFile = indexFile;
+    RandomAccessFile oldIndex = index;
+    MappedByteBuffer oldSlots = slots;
+    int oldIndexSize = indexSize;
+    try {
+      allocateIndex( oldIndexSize * 2 );
+    } catch ( IOException e ) {
+      throw new KettleFileException( "Unable to grow memory-mapped hash map index in " + directory, e );
+    }
+
+    // The hash codes are kept in the index so the keys don't need to be looked at
+    //
+    int mask = indexSize - 1;
+    for ( int i = 0; i < oldIndexSize; i++ ) {
+      long address = oldSlots.getLong( i * SLOT_SIZE );
+      if ( address != 0L ) {
+        int hashCode = oldSlots.getInt( i * SLOT_SIZE + 8 );
+        int slot = hashCode & mask;
+        while ( getAddress( slot ) != 0L ) {
+          slot = ( slot + 1 ) & mask;
+        }
+        setSlot( slot, address, hashCode );
+      }
+    }
+
+    closeQuietly( oldIndex );
+    deleteQuietly( oldIndexFile );
+  }
+
+  private static int hash( byte[] key ) {
+    // Spread the bits, linear probing doesn't cope well with clustered hash codes
+    int h = Arrays.hashCode( key ) * 0x9E3779B9;
+    return h ^ ( h >>> 16 );
+  }
+
+  private static void closeQuietly( Closeable closeable ) {
+    if ( closeable != null ) {
+      try {
+        closeable.close();
+      } catch ( IOException e ) {
+        // Ignore, we're cleaning up
+      }
+    }
+  }
+
+  private static void deleteQuietly( File file ) {
+    if ( file != null && file.exists() && !file.delete() ) {
+      file.deleteOnExit();
+    }
+  }
+}
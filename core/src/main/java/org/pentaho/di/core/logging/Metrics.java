@@ -2,7 +2,7 @@
  *
  * Pentaho Data Integration
  *
- * Copyright (C) 2002-2017 by Hitachi Vantara : http://www.pentaho.com
+ * Copyright (C) 2002-2020 by Hitachi Vantara : http://www.pentaho.com
  *
  *******************************************************************************
  *
@@ -94,6 +94,25 @@ public class Metrics implements MetricsInterface {
   public static Metrics METRIC_DATABASE_GET_ROW_MAX_TIME = new Metrics(
     MetricsSnapshotType.MAX, "METRIC_DATABASE_GET_ROW_MAX_TIME", "Get row from DB (max time)" );
 
+  public static Metrics METRIC_DATABASE_PREFETCH_WAIT_TIME = new Metrics(
+    MetricsSnapshotType.SUM, "METRIC_DATABASE_PREFETCH_WAIT_TIME", "Wait for prefetched rows (total time)" );
+  public static Metrics METRIC_DATABASE_PREFETCH_BUFFER_FULL_TIME = new Metrics(
+    MetricsSnapshotType.SUM, "METRIC_DATABASE_PREFETCH_BUFFER_FULL_TIME", "Prefetch buffer full (total time)" );
+  public static Metrics METRIC_DATABASE_PREFETCH_ROUND_TRIPS = new Metrics(
+    MetricsSnapshotType.SUM, "METRIC_DATABASE_PREFETCH_ROUND_TRIPS", "Prefetch round trips to DB (count)" );
+  public static Metrics METRIC_DATABASE_PREFETCH_FETCH_SIZE = new Metrics(
+    MetricsSnapshotType.MAX, "METRIC_DATABASE_PREFETCH_FETCH_SIZE", "Prefetch fetch size (max)" );
+  public static Metrics METRIC_DATABASE_POOL_WAIT_TIME = new Metrics(
+    MetricsSnapshotType.SUM, "METRIC_DATABASE_POOL_WAIT_TIME", "Wait for a pooled connection (total time)" );
+  public static Metrics METRIC_DATABASE_POOL_WAIT_MAX_TIME = new Metrics(
+    MetricsSnapshotType.MAX, "METRIC_DATABASE_POOL_WAIT_MAX_TIME", "Wait for a pooled connection (max time)" );
+  public static Metrics METRIC_DATABASE_POOL_CONNECTIONS = new Metrics(
+    MetricsSnapshotType.COUNT, "METRIC_DATABASE_POOL_CONNECTIONS", "Connections taken from a pool (count)" );
+  public static Metrics METRIC_DATABASE_POOL_ACTIVE = new Metrics(
+    MetricsSnapshotType.MAX, "METRIC_DATABASE_POOL_ACTIVE", "Active pooled connections (max)" );
+  public static Metrics METRIC_DATABASE_POOL_IDLE = new Metrics(
+    MetricsSnapshotType.MIN, "METRIC_DATABASE_POOL_IDLE", "Idle pooled connections (min)" );
+
   // Plugin registry...
   //
   public static Metrics METRIC_PLUGIN_REGISTRY_REGISTER_EXTENSIONS_START = new Metrics(
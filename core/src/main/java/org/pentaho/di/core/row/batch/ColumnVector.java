@@ -0,0 +1,133 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2020 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+
+package org.pentaho.di.core.row.batch;
+
+import java.util.Arrays;
+
+import org.pentaho.di.core.row.ValueMetaInterface;
+
+/**
+ * One column of a {@link RowBatch}. Nulls are tracked in a bitmap that is only allocated once the first null value is
+ * added, so columns without nulls don't pay for it.
+ */
+public abstract class ColumnVector {
+  protected final ValueMetaInterface valueMeta;
+  protected int size;
+  private long[] nulls;
+
+  protected ColumnVector( ValueMetaInterface valueMeta ) {
+    this.valueMeta = valueMeta;
+  }
+
+  /**
+   * Creates the most compact vector for the given value metadata. Integers and numbers in normal storage are kept in
+   * primitive arrays, normal strings are dictionary encoded and everything else is kept as is.
+   *
+   * @param valueMeta
+   *          the metadata of the column
+   * @param capacity
+   *          the initial number of values the vector can hold
+   * @return a new, empty column vector
+   */
+  public static ColumnVector create( ValueMetaInterface valueMeta, int capacity ) {
+    if ( valueMeta.isStorageNormal() ) {
+      switch ( valueMeta.getType() ) {
+        case ValueMetaInterface.TYPE_INTEGER:
+          return new LongColumnVector( valueMeta, capacity );
+        case ValueMetaInterface.TYPE_NUMBER:
+          return new DoubleColumnVector( valueMeta, capacity );
+        case ValueMetaInterface.TYPE_STRING:
+          return new StringDictionaryColumnVector( valueMeta, capacity );
+        default:
+          break;
+      }
+    }
+    return new ObjectColumnVector( valueMeta, capacity );
+  }
+
+  /**
+   * @return the metadata of the values in this column
+   */
+  public ValueMetaInterface getValueMeta() {
+    return valueMeta;
+  }
+
+  /**
+   * @return the number of values in this column
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * @param index
+   *          the position of the value
+   * @return true if the value at the given position is null
+   */
+  public boolean isNull( int index ) {
+    return nulls != null && ( nulls[index >>> 6] & ( 1L << index ) ) != 0;
+  }
+
+  /**
+   * @return true if there is at least one null value in this column
+   */
+  public boolean hasNulls() {
+    return nulls != null;
+  }
+
+  protected void markNull( int index ) {
+    if ( nulls == null ) {
+      nulls = new long[Math.max( 1, ( capacity() + 63 ) >>> 6 )];
+    } else if ( ( index >>> 6 ) >= nulls.length ) {
+      nulls = Arrays.copyOf( nulls, Math.max( nulls.length << 1, ( index >>> 6 ) + 1 ) );
+    }
+    nulls[index >>> 6] |= 1L << index;
+  }
+
+  /**
+   * Appends a value in the native (normal storage) format of the column's metadata.
+   *
+   * @param value
+   *          the value to add, can be null
+   */
+  public abstract void addObject( Object value );
+
+  /**
+   * Returns the value at the given position in the native format of the column's metadata, the format rows use.
+   *
+   * @param index
+   *          the position of the value
+   * @return the value or null
+   */
+  public abstract Object getObject( int index );
+
+  /**
+   * @return the number of values this vector can hold before it needs to grow
+   */
+  protected abstract int capacity();
+
+  protected static int grow( int capacity ) {
+    return Math.max( 16, capacity + ( capacity >> 1 ) );
+  }
+}
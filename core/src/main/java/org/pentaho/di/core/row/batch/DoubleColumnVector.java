@@ -0,0 +1,93 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2020 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+
+package org.pentaho.di.core.row.batch;
+
+import java.util.Arrays;
+
+import org.pentaho.di.core.row.ValueMetaInterface;
+
+/**
+ * A column of Number values kept in a primitive double array.
+ */
+public class DoubleColumnVector extends ColumnVector {
+  private double[] values;
+
+  public DoubleColumnVector( ValueMetaInterface valueMeta, int capacity ) {
+    super( valueMeta );
+    values = new double[Math.max( 1, capacity )];
+  }
+
+  /**
+   * @param value
+   *          the value to add
+   */
+  public void add( double value ) {
+    if ( size == values.length ) {
+      values = Arrays.copyOf( values, grow( values.length ) );
+    }
+    values[size++] = value;
+  }
+
+  public void addNull() {
+    markNull( size );
+    add( 0d );
+  }
+
+  /**
+   * @param index
+   *          the position of the value
+   * @return the value, 0 for nulls.
+   */
+  public double get( int index ) {
+    return values[index];
+  }
+
+  /**
+   * Gives direct access to the values for tight loops, only the first {@link #size()} entries are valid.
+   *
+   * @return the backing array
+   */
+  public double[] getValues() {
+    return values;
+  }
+
+  @Override
+  public void addObject( Object value ) {
+    if ( value == null ) {
+      addNull();
+    } else {
+      add( ( (Double) value ).doubleValue() );
+    }
+  }
+
+  @Override
+  public Object getObject( int index ) {
+    return isNull( index ) ? null : Double.valueOf( values[index] );
+  }
+
+  @Override
+  protected int capacity() {
+    return values.length;
+  }
+}
@@ -0,0 +1,61 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2020 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+
+package org.pentaho.di.core.row.batch;
+
+import java.util.Arrays;
+
+import org.pentaho.di.core.row.ValueMetaInterface;
+
+/**
+ * A column of values that have no primitive representation (dates, big numbers, binary strings, ...), kept as is.
+ */
+public class ObjectColumnVector extends ColumnVector {
+  private Object[] values;
+
+  public ObjectColumnVector( ValueMetaInterface valueMeta, int capacity ) {
+    super( valueMeta );
+    values = new Object[Math.max( 1, capacity )];
+  }
+
+  @Override
+  public void addObject( Object value ) {
+    if ( value == null ) {
+      markNull( size );
+    }
+    if ( size == values.length ) {
+      values = Arrays.copyOf( values, grow( values.length ) );
+    }
+    values[size++] = value;
+  }
+
+  @Override
+  public Object getObject( int index ) {
+    return values[index];
+  }
+
+  @Override
+  protected int capacity() {
+    return values.length;
+  }
+}
@@ -0,0 +1,167 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2020 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+
+package org.pentaho.di.core.row.batch;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.pentaho.di.core.row.RowDataUtil;
+import org.pentaho.di.core.row.RowMetaInterface;
+
+/**
+ * A batch of rows in columnar form: one {@link ColumnVector} per field of the row metadata. Integers and numbers are
+ * kept in primitive arrays and strings are dictionary encoded, so steps that work on a batch don't need a boxed object
+ * per value.
+ * <p>
+ * Steps that don't work on batches keep using Object[] rows; {@link #fromRows(RowMetaInterface, List)} and
+ * {@link #toRows()} convert between both forms at the boundary.
+ */
+public class RowBatch {
+  private final RowMetaInterface rowMeta;
+  private final ColumnVector[] columns;
+  private int size;
+
+  /**
+   * Creates a new empty batch.
+   *
+   * @param rowMeta
+   *          the metadata of the rows in the batch
+   * @param capacity
+   *          the expected number of rows
+   */
+  public RowBatch( RowMetaInterface rowMeta, int capacity ) {
+    this.rowMeta = rowMeta;
+    columns = new ColumnVector[rowMeta.size()];
+    for ( int i = 0; i < columns.length; i++ ) {
+      columns[i] = ColumnVector.create( rowMeta.getValueMeta( i ), capacity );
+    }
+  }
+
+  private RowBatch( RowMetaInterface rowMeta, ColumnVector[] columns, int size ) {
+    this.rowMeta = rowMeta;
+    this.columns = columns;
+    this.size = size;
+  }
+
+  /**
+   * Converts rows into a batch.
+   *
+   * @param rowMeta
+   *          the metadata of the rows
+   * @param rows
+   *          the rows to convert
+   * @return a new batch with all the rows
+   */
+  public static RowBatch fromRows( RowMetaInterface rowMeta, List<Object[]> rows ) {
+    RowBatch batch = new RowBatch( rowMeta, rows.size() );
+    for ( Object[] row : rows ) {
+      batch.addRow( row );
+    }
+    return batch;
+  }
+
+  /**
+   * Adds a row at the end of the batch.
+   *
+   * @param row
+   *          the row, described by the batch's row metadata
+   */
+  public void addRow( Object[] row ) {
+    for ( int i = 0; i < columns.length; i++ ) {
+      columns[i].addObject( row[i] );
+    }
+    size++;
+  }
+
+  /**
+   * Rebuilds a row from the batch.
+   *
+   * @param index
+   *          the position of the row in the batch
+   * @return a newly allocated row
+   */
+  public Object[] getRow( int index ) {
+    Object[] row = RowDataUtil.allocateRowData( columns.length );
+    for ( int i = 0; i < columns.length; i++ ) {
+      row[i] = columns[i].getObject( index );
+    }
+    return row;
+  }
+
+  /**
+   * @return all rows of this batch, in order.
+   */
+  public List<Object[]> toRows() {
+    List<Object[]> rows = new ArrayList<>( size );
+    for ( int r = 0; r < size; r++ ) {
+      rows.add( getRow( r ) );
+    }
+    return rows;
+  }
+
+  /**
+   * Selects columns of this batch, in the given order, without copying them. The new batch shares the column vectors
+   * with this one, so rows should no longer be added to either of them.
+   *
+   * @param rowMeta
+   *          the metadata of the selected fields, one field per column number
+   * @param columnNrs
+   *          the indexes of the columns to select
+   * @return a new batch with the selected columns
+   */
+  public RowBatch select( RowMetaInterface rowMeta, int[] columnNrs ) {
+    ColumnVector[] selected = new ColumnVector[columnNrs.length];
+    for ( int i = 0; i < columnNrs.length; i++ ) {
+      selected[i] = columns[columnNrs[i]];
+    }
+    return new RowBatch( rowMeta, selected, size );
+  }
+
+  /**
+   * @param index
+   *          the field index in the row metadata
+   * @return the column vector of the field
+   */
+  public ColumnVector getColumn( int index ) {
+    return columns[index];
+  }
+
+  /**
+   * @return the metadata of the rows in the batch
+   */
+  public RowMetaInterface getRowMeta() {
+    return rowMeta;
+  }
+
+  /**
+   * @return the number of rows in the batch
+   */
+  public int size() {
+    return size;
+  }
+
+  public boolean isEmpty() {
+    return size == 0;
+  }
+}
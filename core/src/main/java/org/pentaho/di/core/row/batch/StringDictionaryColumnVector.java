@@ -0,0 +1,117 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2020 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+
+package org.pentaho.di.core.row.batch;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.pentaho.di.core.row.ValueMetaInterface;
+
+/**
+ * A column of String values stored as codes into a dictionary of distinct values. Repeated values share a single
+ * String instance and comparisons of codes replace comparisons of strings.
+ */
+public class StringDictionaryColumnVector extends ColumnVector {
+  private static final int NULL_CODE = -1;
+
+  private int[] codes;
+  private final List<String> dictionary;
+  private final Map<String, Integer> lookup;
+
+  public StringDictionaryColumnVector( ValueMetaInterface valueMeta, int capacity ) {
+    super( valueMeta );
+    codes = new int[Math.max( 1, capacity )];
+    dictionary = new ArrayList<>();
+    lookup = new HashMap<>();
+  }
+
+  /**
+   * @param value
+   *          the value to add, can be null
+   */
+  public void add( String value ) {
+    int code;
+    if ( value == null ) {
+      markNull( size );
+      code = NULL_CODE;
+    } else {
+      Integer existing = lookup.get( value );
+      if ( existing == null ) {
+        code = dictionary.size();
+        dictionary.add( value );
+        lookup.put( value, code );
+      } else {
+        code = existing;
+      }
+    }
+    if ( size == codes.length ) {
+      codes = Arrays.copyOf( codes, grow( codes.length ) );
+    }
+    codes[size++] = code;
+  }
+
+  /**
+   * @param index
+   *          the position of the value
+   * @return the dictionary code of the value, -1 for nulls.
+   */
+  public int getCode( int index ) {
+    return codes[index];
+  }
+
+  /**
+   * @param index
+   *          the position of the value
+   * @return the value or null
+   */
+  public String get( int index ) {
+    int code = codes[index];
+    return code == NULL_CODE ? null : dictionary.get( code );
+  }
+
+  /**
+   * @return the distinct values in this column, in order of appearance. The position is the code.
+   */
+  public List<String> getDictionary() {
+    return dictionary;
+  }
+
+  @Override
+  public void addObject( Object value ) {
+    add( (String) value );
+  }
+
+  @Override
+  public Object getObject( int index ) {
+    return get( index );
+  }
+
+  @Override
+  protected int capacity() {
+    return codes.length;
+  }
+}
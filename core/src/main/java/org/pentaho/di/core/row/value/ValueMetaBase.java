@@ -3,7 +3,7 @@
  *
  * Pentaho Data Integration
  *
- * Copyright (C) 2002-2019 by Hitachi Vantara : http://www.pentaho.com
+ * Copyright (C) 2002-2020 by Hitachi Vantara : http://www.pentaho.com
  *
  *******************************************************************************
  *
@@ -811,6 +811,13 @@ public class ValueMetaBase implements ValueMetaInterface {
     }
   }
 
+  /**
+   * @return the comparator that compares the values instead of the data type, null if the data type compares them
+   */
+  public Comparator<Object> getComparator() {
+    return comparator;
+  }
+
   /**
    * @return the sortedDescending
    */
@@ -0,0 +1,317 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2020 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.pentaho.di.core.row.RowMeta;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.value.ValueMetaInteger;
+import org.pentaho.di.junit.rules.RestorePDIEnvironment;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class AdaptiveBatchingRowSetTest {
+  @ClassRule public static RestorePDIEnvironment env = new RestorePDIEnvironment();
+
+  private RowMetaInterface createRowMetaInterface() {
+    RowMetaInterface rm = new RowMeta();
+    rm.addValueMeta( new ValueMetaInteger( "ROWNR" ) );
+    return rm;
+  }
+
+  @Test
+  public void testBasicCreation() {
+    RowSet set = new AdaptiveBatchingRowSet( 10 );
+
+    assertFalse( set.isDone() );
+    assertEquals( 0, set.size() );
+    assertNull( set.getRowImmediate() );
+  }
+
+  @Test
+  public void testPartialBatchIsHeldUntilFlush() {
+    // A long latency so that only the flush publishes the batch
+    AdaptiveBatchingRowSet set = new AdaptiveBatchingRowSet( 1000, 100, 60000 );
+    RowMetaInterface rm = createRowMetaInterface();
+
+    assertTrue( set.putRow( rm, new Object[] { 1L } ) );
+    assertTrue( set.putRow( rm, new Object[] { 2L } ) );
+    assertEquals( 0, set.size() );
+    assertNull( set.getRowImmediate() );
+
+    set.flush();
+    assertEquals( 2, set.size() );
+    assertEquals( 1L, set.getRowImmediate()[0] );
+    assertEquals( 2L, set.getRowImmediate()[0] );
+    assertNull( set.getRowImmediate() );
+    assertEquals( 0, set.size() );
+  }
+
+  @Test
+  public void testPutRowsStopsAtTheFirstRowThatDoesNotFit() {
+    System.setProperty( Const.KETTLE_ROWSET_PUT_TIMEOUT, "1" );
+    AdaptiveBatchingRowSet set;
+    try {
+      set = new AdaptiveBatchingRowSet( 4, 2, 60000 );
+    } finally {
+      System.clearProperty( Const.KETTLE_ROWSET_PUT_TIMEOUT );
+    }
+    RowMetaInterface rm = createRowMetaInterface();
+    List<Object[]> rows = new ArrayList<>();
+    for ( long i = 0; i < 6; i++ ) {
+      rows.add( new Object[] { i } );
+    }
+
+    assertEquals( 4, set.putRows( rm, rows ) );
+    set.flush();
+    for ( long i = 0; i < 4; i++ ) {
+      assertEquals( i, set.getRowImmediate()[0] );
+    }
+    assertNull( set.getRowImmediate() );
+  }
+
+  @Test
+  public void testSetDonePublishesPartialBatch() {
+    AdaptiveBatchingRowSet set = new AdaptiveBatchingRowSet( 1000, 100, 60000 );
+    RowMetaInterface rm = createRowMetaInterface();
+
+    set.putRow( rm, new Object[] { 1L } );
+    set.setDone();
+
+    assertTrue( set.isDone() );
+    assertEquals( 1, set.size() );
+    assertEquals( 1L, set.getRow()[0] );
+    assertNull( set.getRowWait( 1, TimeUnit.MILLISECONDS ) );
+  }
+
+  @Test
+  public void testSetDoneFromAnotherThreadPublishesPartialBatch() throws Exception {
+    AdaptiveBatchingRowSet set = new AdaptiveBatchingRowSet( 1000, 100, 60000 );
+    RowMetaInterface rm = createRowMetaInterface();
+
+    set.putRow( rm, new Object[] { 1L } );
+    Thread stopper = new Thread( set::setDone );
+    stopper.start();
+    stopper.join();
+
+    assertTrue( set.isDone() );
+    assertEquals( 1L, set.getRowImmediate()[0] );
+  }
+
+  @Test
+  public void testConsumerPublishesBatchOlderThanLatency() throws Exception {
+    AdaptiveBatchingRowSet set = new AdaptiveBatchingRowSet( 1000, 100, 1 );
+    RowMetaInterface rm = createRowMetaInterface();
+
+    set.putRow( rm, new Object[] { 1L } );
+    set.putRow( rm, new Object[] { 2L } );
+    Thread.sleep( 10 );
+
+    // No more rows are put, the consumer hands out the old batch itself
+    assertEquals( 1L, set.getRowImmediate()[0] );
+    assertEquals( 2L, set.getRowImmediate()[0] );
+  }
+
+  @Test
+  public void testWaitingConsumerTakesPartialBatch() {
+    AdaptiveBatchingRowSet set = new AdaptiveBatchingRowSet( 1000, 100, 60000 );
+    RowMetaInterface rm = createRowMetaInterface();
+
+    set.putRow( rm, new Object[] { 1L } );
+    assertNull( set.getRowImmediate() );
+
+    Object[] row = set.getRowWait( 1, TimeUnit.SECONDS );
+    assertEquals( 1L, row[0] );
+  }
+
+  @Test
+  public void testZeroLatencyPublishesEveryRow() {
+    AdaptiveBatchingRowSet set = new AdaptiveBatchingRowSet( 1000, 100, 0 );
+    RowMetaInterface rm = createRowMetaInterface();
+
+    set.putRow( rm, new Object[] { 1L } );
+    assertEquals( 1, set.size() );
+    assertEquals( 1L, set.getRowImmediate()[0] );
+  }
+
+  @Test
+  public void testCapacityIncludesUnpublishedRows() {
+    AdaptiveBatchingRowSet set = new AdaptiveBatchingRowSet( 4, 100, 60000 );
+    RowMetaInterface rm = createRowMetaInterface();
+
+    for ( long i = 0; i < 4; i++ ) {
+      assertTrue( set.putRow( rm, new Object[] { i } ) );
+    }
+    assertFalse( set.putRowWait( rm, new Object[] { 4L }, 1, TimeUnit.MILLISECONDS ) );
+
+    // Running into the limit published the rows
+    assertEquals( 4, set.size() );
+    assertEquals( 0L, set.getRow()[0] );
+    assertTrue( set.putRowWait( rm, new Object[] { 4L }, 1, TimeUnit.MILLISECONDS ) );
+  }
+
+  @Test
+  public void testBulkMethods() {
+    AdaptiveBatchingRowSet set = new AdaptiveBatchingRowSet( 1000, 100, 60000 );
+    RowMetaInterface rm = createRowMetaInterface();
+
+    List<Object[]> rows = Arrays.asList( new Object[] { 1L }, new Object[] { 2L }, new Object[] { 3L } );
+    assertEquals( 3, set.putRows( rm, rows ) );
+    set.flush();
+
+    List<Object[]> first = set.getRows( 2 );
+    assertEquals( 2, first.size() );
+    assertEquals( 1L, first.get( 0 )[0] );
+    assertEquals( 2L, first.get( 1 )[0] );
+    assertEquals( 1, set.size() );
+
+    List<Object[]> rest = set.getRows( 10 );
+    assertEquals( 1, rest.size() );
+    assertEquals( 3L, rest.get( 0 )[0] );
+    assertEquals( 0, set.size() );
+  }
+
+  @Test
+  public void testClear() {
+    AdaptiveBatchingRowSet set = new AdaptiveBatchingRowSet( 10, 100, 0 );
+    RowMetaInterface rm = createRowMetaInterface();
+    set.putRow( rm, new Object[] { 1L } );
+    set.setDone();
+
+    set.clear();
+
+    assertFalse( set.isDone() );
+    assertEquals( 0, set.size() );
+    assertNull( set.getRowImmediate() );
+    set.putRow( rm, new Object[] { 2L } );
+    assertEquals( 2L, set.getRowImmediate()[0] );
+  }
+
+  @Test( timeout = 30000 )
+  public void testProducerConsumerKeepsOrder() throws Exception {
+    final AdaptiveBatchingRowSet set = new AdaptiveBatchingRowSet( 100 );
+    final RowMetaInterface rm = createRowMetaInterface();
+    final long nrRows = 200000L;
+    final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+    Thread producer = new Thread( () -> {
+      for ( long i = 0; i < nrRows; i++ ) {
+        Object[] row = new Object[] { i };
+        while ( !set.putRow( rm, row ) ) {
+          // retry, just like BaseStep does
+        }
+      }
+      set.setDone();
+    } );
+
+    Thread consumer = new Thread( () -> {
+      try {
+        long expected = 0;
+        List<Object[]> rows = set.getRows( 50 );
+        while ( !rows.isEmpty() || !set.isDone() || set.size() > 0 ) {
+          for ( Object[] row : rows ) {
+            assertEquals( expected++, row[0] );
+          }
+          rows = set.getRows( 50 );
+        }
+        assertEquals( nrRows, expected );
+      } catch ( Throwable t ) {
+        failure.set( t );
+      }
+    } );
+
+    producer.start();
+    consumer.start();
+    producer.join();
+    consumer.join();
+
+    if ( failure.get() != null ) {
+      throw new AssertionError( failure.get() );
+    }
+  }
+
+  @Test( timeout = 30000 )
+  public void testSeveralProducersKeepEveryRow() throws Exception {
+    final AdaptiveBatchingRowSet set = new AdaptiveBatchingRowSet( 100 );
+    final RowMetaInterface rm = createRowMetaInterface();
+    final int nrProducers = 4;
+    final long nrRows = 50000L;
+    final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+    Thread[] producers = new Thread[nrProducers];
+    for ( int p = 0; p < nrProducers; p++ ) {
+      final long producer = p;
+      producers[p] = new Thread( () -> {
+        for ( long i = 0; i < nrRows; i++ ) {
+          Object[] row = new Object[] { producer, i };
+          while ( !set.putRow( rm, row ) ) {
+            // retry, just like BaseStep does
+          }
+        }
+      } );
+    }
+
+    Thread consumer = new Thread( () -> {
+      try {
+        long[] expected = new long[nrProducers];
+        List<Object[]> rows = set.getRows( 50 );
+        while ( !rows.isEmpty() || !set.isDone() || set.size() > 0 ) {
+          for ( Object[] row : rows ) {
+            int producer = ( (Long) row[0] ).intValue();
+            assertEquals( expected[producer]++, row[1] );
+          }
+          rows = set.getRows( 50 );
+        }
+        for ( int p = 0; p < nrProducers; p++ ) {
+          assertEquals( nrRows, expected[p] );
+        }
+      } catch ( Throwable t ) {
+        failure.set( t );
+      }
+    } );
+
+    consumer.start();
+    for ( Thread producer : producers ) {
+      producer.start();
+    }
+    for ( Thread producer : producers ) {
+      producer.join();
+    }
+    set.setDone();
+    consumer.join();
+
+    if ( failure.get() != null ) {
+      throw new AssertionError( failure.get() );
+    }
+  }
+}
@@ -0,0 +1,177 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2020 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.core;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.pentaho.di.core.database.DatabaseMeta;
+import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.variables.Variables;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class LookupCacheRegistryTest {
+
+  private LookupCacheRegistry registry;
+  private long now;
+  private AtomicInteger loads;
+
+  @Before
+  public void setUp() {
+    registry = new LookupCacheRegistry( 2 );
+    registry.clock = () -> now;
+    loads = new AtomicInteger();
+  }
+
+  private LookupCacheRegistry.Reference<String> attach( String table, String query, long timeToLive )
+    throws KettleException {
+    return registry.attach( "db", table, query, timeToLive, () -> table + query + loads.incrementAndGet() );
+  }
+
+  @Test
+  public void sharesTheLoadedCache() throws KettleException {
+    LookupCacheRegistry.Reference<String> first = attach( "t", "q", 0L );
+    LookupCacheRegistry.Reference<String> second = attach( "t", "q", 0L );
+    assertSame( first.getValue(), second.getValue() );
+    assertEquals( 1, loads.get() );
+
+    LookupCacheRegistry.Reference<String> other = attach( "t", "other", 0L );
+    assertEquals( "tother2", other.getValue() );
+    assertEquals( 2, registry.size() );
+  }
+
+  @Test
+  public void keepsReleasedCacheWarm() throws KettleException {
+    attach( "t", "q", 0L ).release();
+    assertEquals( 1, registry.size() );
+    assertEquals( "tq1", attach( "t", "q", 0L ).getValue() );
+    assertEquals( 1, loads.get() );
+  }
+
+  @Test
+  public void reloadsExpiredCache() throws KettleException {
+    LookupCacheRegistry.Reference<String> first = attach( "t", "q", 1000L );
+    now = 999L;
+    assertEquals( "tq1", attach( "t", "q", 1000L ).getValue() );
+    now = 1000L;
+    assertEquals( "tq2", attach( "t", "q", 1000L ).getValue() );
+
+    // The step that was attached keeps what it has
+    assertEquals( "tq1", first.getValue() );
+  }
+
+  @Test
+  public void evictsLeastRecentlyUsedIdleCaches() throws KettleException {
+    LookupCacheRegistry.Reference<String> used = attach( "t", "used", 0L );
+    for ( int i = 0; i < 3; i++ ) {
+      now = i;
+      attach( "t", "q" + i, 0L ).release();
+    }
+    assertEquals( 3, registry.size() );
+
+    // q0 was removed, q1 is still there
+    attach( "t", "q1", 0L );
+    assertEquals( 4, loads.get() );
+    attach( "t", "q0", 0L );
+    assertEquals( 5, loads.get() );
+    assertEquals( "tused1", used.getValue() );
+  }
+
+  @Test
+  public void releaseIsIdempotent() throws KettleException {
+    LookupCacheRegistry.Reference<String> first = attach( "t", "q", 0L );
+    LookupCacheRegistry.Reference<String> second = attach( "t", "q", 0L );
+    first.release();
+    first.release();
+    for ( int i = 0; i < 3; i++ ) {
+      attach( "t", "q" + i, 0L ).release();
+    }
+    // Still attached by the second reference, only idle caches are evicted
+    attach( "t", "q", 0L );
+    assertEquals( 4, loads.get() );
+    second.release();
+  }
+
+  @Test
+  public void invalidatesTableAndConnection() throws KettleException {
+    List<String> removed = new ArrayList<>();
+    registry.addListener( ( connection, table, query ) -> removed.add( connection + "." + table + "." + query ) );
+
+    attach( "t1", "q", 0L );
+    attach( "t2", "q", 0L );
+    registry.attach( "other", "t1", "q", 0L, () -> "x" );
+
+    registry.invalidateTable( "db", "t1" );
+    assertEquals( 2, registry.size() );
+    assertEquals( "[db.t1.q]", removed.toString() );
+    attach( "t1", "q", 0L );
+    assertEquals( 3, loads.get() );
+
+    registry.invalidateConnection( "db" );
+    assertEquals( 1, registry.size() );
+
+    registry.clear();
+    assertEquals( 0, registry.size() );
+    assertEquals( 4, removed.size() );
+  }
+
+  @Test
+  public void invalidatesTheTablesWrittenThroughAConnection() throws KettleException {
+    DatabaseMeta databaseMeta = mock( DatabaseMeta.class );
+    when( databaseMeta.getURL( null ) ).thenReturn( "jdbc:h2:mem:db" );
+    when( databaseMeta.getUsername() ).thenReturn( "sa" );
+    String connection = LookupCacheRegistry.getConnection( databaseMeta, new Variables(), null );
+
+    registry.attach( connection, "t1", "q", 0L, () -> "1" );
+    registry.attach( connection, "t2", "q", 0L, () -> "2" );
+    registry.attach( "other", "t1", "q", 0L, () -> "3" );
+
+    registry.invalidateTables( databaseMeta, new Variables(), null, Arrays.asList( "t1", "t3" ) );
+    assertEquals( 2, registry.size() );
+    assertEquals( "2", registry.attach( connection, "t2", "q", 0L, () -> "reloaded" ).getValue() );
+    assertEquals( "3", registry.attach( "other", "t1", "q", 0L, () -> "reloaded" ).getValue() );
+  }
+
+  @Test
+  public void failedLoadIsNotRegistered() throws KettleException {
+    try {
+      registry.attach( "db", "t", "q", 0L, () -> {
+        throw new KettleException( "no database" );
+      } );
+      fail( "Exception expected" );
+    } catch ( KettleException e ) {
+      // expected
+    }
+    assertEquals( 0, registry.size() );
+    assertEquals( "tq1", attach( "t", "q", 0L ).getValue() );
+  }
+}
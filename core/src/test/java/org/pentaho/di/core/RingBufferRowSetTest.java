@@ -0,0 +1,157 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2020 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.core;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.pentaho.di.core.row.RowMeta;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.value.ValueMetaInteger;
+import org.pentaho.di.junit.rules.RestorePDIEnvironment;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class RingBufferRowSetTest {
+  @ClassRule public static RestorePDIEnvironment env = new RestorePDIEnvironment();
+
+  private RowMetaInterface createRowMetaInterface() {
+    RowMetaInterface rm = new RowMeta();
+    rm.addValueMeta( new ValueMetaInteger( "ROWNR" ) );
+    return rm;
+  }
+
+  @Test
+  public void testBasicCreation() {
+    RowSet set = new RingBufferRowSet( 10 );
+
+    assertFalse( set.isDone() );
+    assertEquals( 0, set.size() );
+    assertNull( set.getRowImmediate() );
+  }
+
+  @Test
+  public void testCapacityIsExact() {
+    RowSet set = new RingBufferRowSet( 3 );
+    RowMetaInterface rm = createRowMetaInterface();
+
+    assertTrue( set.putRow( rm, new Object[] { 1L } ) );
+    assertTrue( set.putRow( rm, new Object[] { 2L } ) );
+    assertTrue( set.putRow( rm, new Object[] { 3L } ) );
+    assertEquals( 3, set.size() );
+
+    // The ring is rounded up to 4 slots internally, but may only hold 3 rows
+    assertFalse( set.putRowWait( rm, new Object[] { 4L }, 1, TimeUnit.MILLISECONDS ) );
+    assertEquals( 3, set.size() );
+
+    assertEquals( 1L, set.getRow()[0] );
+    assertTrue( set.putRowWait( rm, new Object[] { 4L }, 1, TimeUnit.MILLISECONDS ) );
+    assertEquals( 2L, set.getRow()[0] );
+    assertEquals( 3L, set.getRow()[0] );
+    assertEquals( 4L, set.getRow()[0] );
+    assertNull( set.getRowWait( 1, TimeUnit.MILLISECONDS ) );
+    assertEquals( 0, set.size() );
+    assertEquals( rm, set.getRowMeta() );
+  }
+
+  @Test
+  public void testNullRowIsRejected() {
+    RowSet set = new RingBufferRowSet( 3 );
+    assertFalse( set.putRow( createRowMetaInterface(), null ) );
+    assertEquals( 0, set.size() );
+  }
+
+  @Test
+  public void testClear() {
+    RowSet set = new RingBufferRowSet( 2 );
+    RowMetaInterface rm = createRowMetaInterface();
+    set.putRow( rm, new Object[] { 1L } );
+    set.putRow( rm, new Object[] { 2L } );
+    set.setDone();
+
+    set.clear();
+
+    assertFalse( set.isDone() );
+    assertEquals( 0, set.size() );
+    assertNull( set.getRowImmediate() );
+    assertTrue( set.putRow( rm, new Object[] { 3L } ) );
+    assertEquals( 3L, set.getRowImmediate()[0] );
+  }
+
+  @Test
+  public void testNames() {
+    RowSet set = new RingBufferRowSet( 3 );
+
+    set.setThreadNameFromToCopy( "from", 2, "to", 3 );
+
+    assertEquals( "from.2 - to.3", set.getName() );
+  }
+
+  @Test( timeout = 30000 )
+  public void testProducerConsumerKeepsOrder() throws Exception {
+    final RowSet set = new RingBufferRowSet( 16 );
+    final RowMetaInterface rm = createRowMetaInterface();
+    final long nrRows = 200000L;
+    final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+    Thread producer = new Thread( () -> {
+      for ( long i = 0; i < nrRows; i++ ) {
+        Object[] row = new Object[] { i };
+        while ( !set.putRow( rm, row ) ) {
+          // retry, just like BaseStep does
+        }
+      }
+      set.setDone();
+    } );
+
+    Thread consumer = new Thread( () -> {
+      try {
+        long expected = 0;
+        Object[] row = set.getRow();
+        while ( row != null || !set.isDone() || set.size() > 0 ) {
+          if ( row != null ) {
+            assertEquals( expected++, row[0] );
+          }
+          row = set.getRow();
+        }
+        assertEquals( nrRows, expected );
+      } catch ( Throwable t ) {
+        failure.set( t );
+      }
+    } );
+
+    producer.start();
+    consumer.start();
+    producer.join();
+    consumer.join();
+
+    if ( failure.get() != null ) {
+      throw new AssertionError( failure.get() );
+    }
+  }
+}
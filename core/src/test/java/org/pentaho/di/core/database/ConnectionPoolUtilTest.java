@@ -31,10 +31,12 @@ import org.junit.runner.RunWith;
 import org.mockito.Answers;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
+import org.pentaho.di.core.Const;
 import org.pentaho.di.core.KettleClientEnvironment;
 import org.pentaho.di.core.exception.KettleDatabaseException;
 import org.pentaho.di.core.exception.KettleException;
 import org.pentaho.di.core.logging.LogChannelInterface;
+import org.pentaho.di.core.logging.Metrics;
 
 import java.sql.Connection;
 import java.sql.Driver;
@@ -212,6 +214,58 @@ public class ConnectionPoolUtilTest implements Driver {
     verify( dataSource ).setMaxActive( MAX_SIZE );
   }
 
+  @Test
+  public void testGetConnectionSnapsPoolMetrics() throws Exception {
+    when( dbMeta.getName() ).thenReturn( "CP4" );
+    when( dbMeta.getPassword() ).thenReturn( PASSWORD );
+    when( logChannelInterface.isGatheringMetrics() ).thenReturn( true );
+    Connection conn = ConnectionPoolUtil.getConnection( logChannelInterface, dbMeta, "", 1, 2 );
+    assertTrue( conn != null );
+
+    verify( logChannelInterface ).snap( eq( Metrics.METRIC_DATABASE_POOL_CONNECTIONS ), eq( "CP4" ) );
+    verify( logChannelInterface ).snap( eq( Metrics.METRIC_DATABASE_POOL_ACTIVE ), eq( "CP4" ), eq( 1L ) );
+  }
+
+  @Test
+  public void testConfigureDataSourceWithStatementCache() throws KettleDatabaseException {
+    when( dbMeta.getVariable( Const.KETTLE_CONNECTION_POOL_STATEMENT_CACHE_SIZE ) ).thenReturn( "50" );
+    ConnectionPoolUtil.configureDataSource(
+      dataSource, dbMeta, "partId", INITIAL_SIZE, MAX_SIZE );
+    verify( dataSource ).setPoolPreparedStatements( true );
+    verify( dataSource ).setMaxOpenPreparedStatements( 50 );
+  }
+
+  @Test
+  public void testIsCachingStatements() {
+    assertFalse( ConnectionPoolUtil.isCachingStatements( dbMeta ) );
+
+    when( dbMeta.getVariable( Const.KETTLE_CONNECTION_POOL_STATEMENT_CACHE_SIZE ) ).thenReturn( "50" );
+    assertTrue( ConnectionPoolUtil.isCachingStatements( dbMeta ) );
+
+    // The pooling parameters win over the variable
+    Properties properties = new Properties();
+    properties.setProperty( ConnectionPoolUtil.POOL_PREPARED_STATEMENTS, "false" );
+    when( dbMeta.getConnectionPoolingProperties() ).thenReturn( properties );
+    assertFalse( ConnectionPoolUtil.isCachingStatements( dbMeta ) );
+  }
+
+  @Test
+  public void testConfigureDataSourceWithPartitionCredentials() throws KettleDatabaseException {
+    PartitionDatabaseMeta partition = new PartitionDatabaseMeta( "partId", "server", "111", "db" );
+    partition.setUsername( "bob" );
+    partition.setPassword( "secret" );
+    when( dbMeta.isPartitioned() ).thenReturn( true );
+    when( dbMeta.getPartitionMeta( "partId" ) ).thenReturn( partition );
+    when( dbMeta.getUsername() ).thenReturn( "suzy" );
+    when( dbMeta.getPassword() ).thenReturn( "password" );
+
+    ConnectionPoolUtil.configureDataSource(
+      dataSource, dbMeta, "partId", INITIAL_SIZE, MAX_SIZE );
+
+    verify( dataSource ).addConnectionProperty( "user", "bob" );
+    verify( dataSource ).addConnectionProperty( "password", "secret" );
+  }
+
   @Test
   public void testConfigureDataSourceWhenNoDatabaseInterface() throws KettleDatabaseException {
     when( dbMeta.getDatabaseInterface() ).thenReturn( null );
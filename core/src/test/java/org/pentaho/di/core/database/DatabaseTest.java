@@ -31,6 +31,7 @@ import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.eq;
 import static org.mockito.AdditionalMatchers.aryEq;
@@ -448,6 +449,41 @@ public class DatabaseTest {
     verify( databaseInterface, times( 2 ) ).supportsAutoGeneratedKeys();
   }
 
+  @Test
+  public void testPrepareSQLResetsStatementFromPoolCache() throws Exception {
+    doReturn( databaseInterface ).when( meta ).getDatabaseInterface();
+    doReturn( "SELECT * FROM DUMMY" ).when( meta ).stripCR( anyString() );
+    doReturn( true ).when( meta ).isUsingConnectionPool();
+    doReturn( true ).when( meta ).isFetchSizeSupported();
+    doReturn( "50" ).when( meta ).getVariable( Const.KETTLE_CONNECTION_POOL_STATEMENT_CACHE_SIZE );
+    Connection connection = mockConnection( dbMetaData );
+    when( connection.prepareStatement( anyString() ) ).thenReturn( ps );
+
+    // Another step limited the rows of the cached statement
+    Database db = new Database( log, meta );
+    db.setConnection( connection );
+    db.prepareSQL( "SELECT * FROM DUMMY" );
+
+    verify( ps ).setMaxRows( 0 );
+    verify( ps ).setQueryTimeout( 0 );
+    verify( ps ).setFetchSize( 0 );
+  }
+
+  @Test
+  public void testPrepareSQLLeavesStatementWithoutPoolCache() throws Exception {
+    doReturn( databaseInterface ).when( meta ).getDatabaseInterface();
+    doReturn( "SELECT * FROM DUMMY" ).when( meta ).stripCR( anyString() );
+    doReturn( true ).when( meta ).isUsingConnectionPool();
+    Connection connection = mockConnection( dbMetaData );
+    when( connection.prepareStatement( anyString() ) ).thenReturn( ps );
+
+    Database db = new Database( log, meta );
+    db.setConnection( connection );
+    db.prepareSQL( "SELECT * FROM DUMMY" );
+
+    verify( ps, never() ).setMaxRows( anyInt() );
+  }
+
   @Test
   public void testGetCreateTableStatement() throws Exception {
     ValueMetaInterface v = mock( ValueMetaInterface.class );
@@ -956,5 +992,33 @@ public class DatabaseTest {
     verify( db, times( 1 ) ).getTableFieldsMetaByDbMeta( any(), any() );
   }
 
+  @Test
+  public void checkUniqueIndexExistsOnlyMatchesAnIndexOnExactlyTheFields() throws Exception {
+    ResultSet indexes = mock( ResultSet.class );
+    when( indexes.next() ).thenReturn( true, true, true, false );
+    when( indexes.getString( "INDEX_NAME" ) ).thenReturn( "PK", "UK", "UK" );
+    when( indexes.getString( "COLUMN_NAME" ) ).thenReturn( "id", "code", "version" );
+    when( dbMetaData.storesLowerCaseIdentifiers() ).thenReturn( true );
+    when( dbMetaData.getIndexInfo( null, null, "target", true, true ) ).thenReturn( indexes );
+
+    Database db = new Database( log, meta );
+    db.setConnection( mockConnection( dbMetaData ) );
+
+    assertTrue( db.checkUniqueIndexExists( null, "TARGET", new String[] { "VERSION", "CODE" } ) );
+    verify( indexes ).close();
+  }
+
+  @Test
+  public void checkUniqueIndexExistsRejectsAnIndexOnPartOfTheFields() throws Exception {
+    ResultSet indexes = mock( ResultSet.class );
+    when( indexes.next() ).thenReturn( true, false );
+    when( indexes.getString( "INDEX_NAME" ) ).thenReturn( "PK" );
+    when( indexes.getString( "COLUMN_NAME" ) ).thenReturn( "ID" );
+    when( dbMetaData.getIndexInfo( null, "S", "TARGET", true, true ) ).thenReturn( indexes );
+
+    Database db = new Database( log, meta );
+    db.setConnection( mockConnection( dbMetaData ) );
 
+    assertFalse( db.checkUniqueIndexExists( "S", "TARGET", new String[] { "ID", "CODE" } ) );
+  }
 }
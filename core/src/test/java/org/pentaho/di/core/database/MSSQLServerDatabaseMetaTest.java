@@ -2,7 +2,7 @@
  *
  * Pentaho Data Integration
  *
- * Copyright (C) 2002-2018 by Hitachi Vantara : http://www.pentaho.com
+ * Copyright (C) 2002-2020 by Hitachi Vantara : http://www.pentaho.com
  *
  *******************************************************************************
  *
@@ -276,4 +276,15 @@ public class MSSQLServerDatabaseMetaTest {
 
   }
 
+  @Test
+  public void testMergeFromTable() {
+    assertEquals( "#STG", nativeMeta.getTemporaryTableName( "STG" ) );
+    assertEquals( "SELECT * INTO #STG FROM ( SELECT A FROM FOO WHERE 1=0 ) q",
+      nativeMeta.getSQLCreateTemporaryTable( "#STG", "SELECT A FROM FOO WHERE 1=0" ) );
+    assertEquals( "MERGE INTO FOO t USING #STG s ON ( t.ID = s.ID )"
+        + " WHEN MATCHED THEN UPDATE SET A = s.A"
+        + " WHEN NOT MATCHED THEN INSERT ( ID, A ) VALUES ( s.ID, s.A );",
+      nativeMeta.getSQLMergeFromTable( "FOO", "#STG", new String[] { "ID" }, new String[] { "ID", "A" },
+        new String[] { "A" } ) );
+  }
 }
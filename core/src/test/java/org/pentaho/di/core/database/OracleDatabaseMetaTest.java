@@ -2,7 +2,7 @@
  *
  * Pentaho Data Integration
  *
- * Copyright (C) 2002-2018 by Hitachi Vantara : http://www.pentaho.com
+ * Copyright (C) 2002-2020 by Hitachi Vantara : http://www.pentaho.com
  *
  *******************************************************************************
  *
@@ -317,4 +317,18 @@ public class OracleDatabaseMetaTest {
       nativeMeta.getAddColumnStatement( "FOO", new ValueMetaTimestamp( "FOO" ), "", false, "", false ) );
   }
 
+  @Test
+  public void testMergeFromTable() {
+    assertEquals( "CREATE GLOBAL TEMPORARY TABLE STG ON COMMIT PRESERVE ROWS AS SELECT A FROM FOO WHERE 1=0",
+      nativeMeta.getSQLCreateTemporaryTable( "STG", "SELECT A FROM FOO WHERE 1=0" ) );
+    assertEquals( "MERGE INTO FOO t USING STG s ON ( t.ID = s.ID AND t.NR = s.NR )"
+        + " WHEN MATCHED THEN UPDATE SET A = s.A"
+        + " WHEN NOT MATCHED THEN INSERT ( ID, NR, A ) VALUES ( s.ID, s.NR, s.A )",
+      nativeMeta.getSQLMergeFromTable( "FOO", "STG", new String[] { "ID", "NR" }, new String[] { "ID", "NR", "A" },
+        new String[] { "A" } ) );
+    assertEquals( "MERGE INTO FOO t USING STG s ON ( t.ID = s.ID )"
+        + " WHEN NOT MATCHED THEN INSERT ( ID ) VALUES ( s.ID )",
+      nativeMeta.getSQLMergeFromTable( "FOO", "STG", new String[] { "ID" }, new String[] { "ID" },
+        new String[0] ) );
+  }
 }
@@ -0,0 +1,137 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2020 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.core.database;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.pentaho.di.core.exception.KettleDatabaseException;
+import org.pentaho.di.core.row.RowMeta;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.value.ValueMetaString;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class PrefetchingRowReaderTest {
+
+  private Database database;
+  private ResultSet resultSet;
+  private RowMetaInterface rowMeta;
+  private AtomicInteger counter;
+
+  @Before
+  public void setUp() throws Exception {
+    database = mock( Database.class );
+    resultSet = mock( ResultSet.class );
+    rowMeta = new RowMeta();
+    rowMeta.addValueMeta( new ValueMetaString( "name" ) );
+    counter = new AtomicInteger();
+  }
+
+  private void returnRows( int count, KettleDatabaseException error, boolean slow ) throws Exception {
+    when( database.getRow( eq( resultSet ), any( ResultSetMetaData.class ), eq( rowMeta ) ) ).thenAnswer(
+      invocation -> {
+        int nr = counter.getAndIncrement();
+        if ( slow && nr % 100 == 0 ) {
+          Thread.sleep( 1 );
+        }
+        if ( nr < count ) {
+          return new Object[] { "row" + nr };
+        }
+        if ( error != null ) {
+          throw error;
+        }
+        return null;
+      } );
+  }
+
+  @Test
+  public void readsAllRowsInOrder() throws Exception {
+    returnRows( 1000, null, false );
+    PrefetchingRowReader reader = new PrefetchingRowReader( database, null, resultSet, rowMeta, 512, false );
+
+    for ( int i = 0; i < 1000; i++ ) {
+      assertEquals( "row" + i, reader.getRow()[0] );
+    }
+    assertNull( reader.getRow() );
+    assertNull( reader.getRow() );
+    reader.close();
+    assertEquals( 1000, reader.getRowsRead() );
+  }
+
+  @Test
+  public void reportsErrorsAfterTheRowsBeforeIt() throws Exception {
+    KettleDatabaseException error = new KettleDatabaseException( "connection lost" );
+    returnRows( 3, error, false );
+    PrefetchingRowReader reader = new PrefetchingRowReader( database, null, resultSet, rowMeta, 512, false );
+
+    for ( int i = 0; i < 3; i++ ) {
+      assertEquals( "row" + i, reader.getRow()[0] );
+    }
+    try {
+      reader.getRow();
+      fail( "Exception expected" );
+    } catch ( KettleDatabaseException e ) {
+      assertSame( error, e );
+    }
+    reader.close();
+  }
+
+  @Test
+  public void closeStopsReading() throws Exception {
+    returnRows( Integer.MAX_VALUE, null, false );
+    PrefetchingRowReader reader = new PrefetchingRowReader( database, null, resultSet, rowMeta, 512, false );
+
+    assertEquals( "row0", reader.getRow()[0] );
+    reader.close();
+    assertNull( reader.getRow() );
+  }
+
+  @Test
+  public void adaptsTheFetchSizeToTheRowWidth() throws Exception {
+    when( resultSet.getFetchSize() ).thenReturn( 10 );
+    returnRows( 2000, null, true );
+    PrefetchingRowReader reader = new PrefetchingRowReader( database, null, resultSet, rowMeta, 512, true );
+
+    while ( reader.getRow() != null ) {
+      // read everything
+    }
+    reader.close();
+
+    // Narrow rows: a lot more of them per round trip
+    assertTrue( reader.getFetchSize() >= 10000 );
+    verify( resultSet ).setFetchSize( reader.getFetchSize() );
+  }
+}
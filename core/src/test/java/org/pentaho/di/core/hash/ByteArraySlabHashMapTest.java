@@ -0,0 +1,120 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2020 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.core.hash;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+/**
+ * Test class for the basic functionality of ByteArraySlabHashMap.
+ */
+public class ByteArraySlabHashMapTest {
+
+  private static byte[] bytes( String string ) {
+    return string.getBytes( StandardCharsets.UTF_8 );
+  }
+
+  @Test
+  public void testPutAndGet() {
+    ByteArraySlabHashMap map = new ByteArraySlabHashMap();
+    map.put( bytes( "one" ), bytes( "1" ) );
+    map.put( bytes( "two" ), bytes( "2" ) );
+
+    assertEquals( 2, map.size() );
+    assertArrayEquals( bytes( "1" ), map.get( bytes( "one" ) ) );
+    assertArrayEquals( bytes( "2" ), map.get( bytes( "two" ) ) );
+    assertNull( map.get( bytes( "three" ) ) );
+    assertTrue( map.containsKey( bytes( "one" ) ) );
+    assertFalse( map.containsKey( bytes( "three" ) ) );
+  }
+
+  @Test
+  public void testReplaceValue() {
+    ByteArraySlabHashMap map = new ByteArraySlabHashMap();
+    map.put( bytes( "key" ), bytes( "a" ) );
+    map.put( bytes( "key" ), bytes( "b" ) );
+    assertArrayEquals( bytes( "b" ), map.get( bytes( "key" ) ) );
+
+    // A value of another length doesn't fit in the old record
+    map.put( bytes( "key" ), bytes( "longer" ) );
+    assertArrayEquals( bytes( "longer" ), map.get( bytes( "key" ) ) );
+    map.put( bytes( "key" ), new byte[0] );
+    assertArrayEquals( new byte[0], map.get( bytes( "key" ) ) );
+    assertEquals( 1, map.size() );
+  }
+
+  @Test
+  public void testPutIfAbsent() {
+    ByteArraySlabHashMap map = new ByteArraySlabHashMap();
+    assertTrue( map.putIfAbsent( bytes( "key" ), bytes( "a" ) ) );
+    assertFalse( map.putIfAbsent( bytes( "key" ), bytes( "b" ) ) );
+    assertArrayEquals( bytes( "a" ), map.get( bytes( "key" ) ) );
+    assertEquals( 1, map.size() );
+  }
+
+  @Test
+  public void testEmptyKey() {
+    ByteArraySlabHashMap map = new ByteArraySlabHashMap();
+    map.put( new byte[0], bytes( "empty" ) );
+    assertArrayEquals( bytes( "empty" ), map.get( new byte[0] ) );
+  }
+
+  @Test
+  public void testManyEntriesAndLargeRecords() {
+    ByteArraySlabHashMap map = new ByteArraySlabHashMap( 0 );
+    int count = 100000;
+    for ( int i = 0; i < count; i++ ) {
+      map.put( bytes( "key-" + i ), bytes( "value-" + i ) );
+    }
+    byte[] large = new byte[2 * 1024 * 1024];
+    large[large.length - 1] = 42;
+    map.put( bytes( "large" ), large );
+
+    assertEquals( count + 1, map.size() );
+    for ( int i = 0; i < count; i++ ) {
+      assertArrayEquals( bytes( "value-" + i ), map.get( bytes( "key-" + i ) ) );
+    }
+    assertArrayEquals( large, map.get( bytes( "large" ) ) );
+    assertTrue( map.getDataSize() > large.length );
+  }
+
+  @Test
+  public void testClear() {
+    ByteArraySlabHashMap map = new ByteArraySlabHashMap();
+    map.put( bytes( "key" ), bytes( "value" ) );
+    map.clear();
+    assertTrue( map.isEmpty() );
+    assertEquals( 0L, map.getDataSize() );
+    assertNull( map.get( bytes( "key" ) ) );
+
+    map.put( bytes( "key" ), bytes( "other" ) );
+    assertArrayEquals( bytes( "other" ), map.get( bytes( "key" ) ) );
+  }
+}
@@ -0,0 +1,99 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2020 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.core.hash;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Test class for the basic functionality of LongLongHashMap and IntHashSet.
+ */
+public class LongLongHashMapTest {
+
+  @Test
+  public void testPutAndGet() {
+    LongLongHashMap map = new LongLongHashMap();
+    map.put( 1L, 10L );
+    map.put( -1L, -10L );
+    map.put( Long.MAX_VALUE, Long.MIN_VALUE );
+
+    assertEquals( 3, map.size() );
+    assertEquals( Long.valueOf( 10L ), map.get( 1L ) );
+    assertEquals( Long.valueOf( -10L ), map.get( -1L ) );
+    assertEquals( Long.MIN_VALUE, map.get( Long.MAX_VALUE, 0L ) );
+    assertNull( map.get( 2L ) );
+    assertEquals( 7L, map.get( 2L, 7L ) );
+  }
+
+  @Test
+  public void testZeroKey() {
+    LongLongHashMap map = new LongLongHashMap();
+    assertFalse( map.containsKey( 0L ) );
+    map.put( 0L, 5L );
+    map.put( 0L, 6L );
+    assertTrue( map.containsKey( 0L ) );
+    assertEquals( Long.valueOf( 6L ), map.get( 0L ) );
+    assertEquals( 1, map.size() );
+
+    map.clear();
+    assertNull( map.get( 0L ) );
+    assertTrue( map.isEmpty() );
+  }
+
+  @Test
+  public void testManySequentialKeys() {
+    LongLongHashMap map = new LongLongHashMap( 0 );
+    int count = 100000;
+    for ( long i = 0; i < count; i++ ) {
+      map.put( i, i * 2 );
+    }
+    map.put( 10L, -1L );
+
+    assertEquals( count, map.size() );
+    for ( long i = 0; i < count; i++ ) {
+      assertEquals( i == 10L ? -1L : i * 2, map.get( i, 0L ) );
+    }
+  }
+
+  @Test
+  public void testIntHashSet() {
+    IntHashSet set = new IntHashSet( 0 );
+    int count = 100000;
+    for ( int i = -count; i < count; i++ ) {
+      assertTrue( set.add( i * 31 ) );
+    }
+    assertFalse( set.add( 0 ) );
+    assertFalse( set.add( -31 ) );
+    assertEquals( 2 * count, set.size() );
+    assertTrue( set.contains( 0 ) );
+    assertFalse( set.contains( 1 ) );
+
+    set.clear();
+    assertTrue( set.isEmpty() );
+    assertFalse( set.contains( 0 ) );
+  }
+}
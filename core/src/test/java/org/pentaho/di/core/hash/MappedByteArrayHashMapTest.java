@@ -0,0 +1,104 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2016 - 2017 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.core.hash;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Test class for the basic functionality of MappedByteArrayHashMap.
+ */
+public class MappedByteArrayHashMapTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private static byte[] bytes( String string ) {
+    return string.getBytes( StandardCharsets.UTF_8 );
+  }
+
+  @Test
+  public void testPutGetAndReplace() throws Exception {
+    MappedByteArrayHashMap map = new MappedByteArrayHashMap( folder.getRoot(), "test" );
+    try {
+      map.put( bytes( "one" ), bytes( "1" ) );
+      map.put( bytes( "two" ), bytes( "2" ) );
+      map.put( bytes( "one" ), bytes( "3" ) );
+      map.put( bytes( "two" ), bytes( "longer" ) );
+
+      assertEquals( 2, map.size() );
+      assertArrayEquals( bytes( "3" ), map.get( bytes( "one" ) ) );
+      assertArrayEquals( bytes( "longer" ), map.get( bytes( "two" ) ) );
+      assertNull( map.get( bytes( "three" ) ) );
+      assertTrue( map.containsKey( bytes( "one" ) ) );
+      assertFalse( map.containsKey( bytes( "three" ) ) );
+    } finally {
+      map.close();
+    }
+  }
+
+  @Test
+  public void testGrowIndexAndDataFile() throws Exception {
+    MappedByteArrayHashMap map = new MappedByteArrayHashMap( folder.getRoot(), "test", 0 );
+    try {
+      int count = 100000;
+      for ( int i = 0; i < count; i++ ) {
+        map.put( bytes( "key-" + i ), bytes( "value-" + i ) );
+      }
+      // Records don't cross the boundaries of the mapped chunks
+      byte[] large = new byte[40 * 1024 * 1024];
+      large[large.length - 1] = 42;
+      map.put( bytes( "large-1" ), large );
+      map.put( bytes( "large-2" ), large );
+
+      assertEquals( count + 2, map.size() );
+      for ( int i = 0; i < count; i++ ) {
+        assertArrayEquals( bytes( "value-" + i ), map.get( bytes( "key-" + i ) ) );
+      }
+      assertArrayEquals( large, map.get( bytes( "large-1" ) ) );
+      assertArrayEquals( large, map.get( bytes( "large-2" ) ) );
+    } finally {
+      map.close();
+    }
+  }
+
+  @Test
+  public void testCloseDeletesFiles() throws Exception {
+    File directory = folder.newFolder();
+    MappedByteArrayHashMap map = new MappedByteArrayHashMap( directory, "test" );
+    map.put( bytes( "key" ), bytes( "value" ) );
+    assertEquals( 2, directory.list().length );
+    map.close();
+    assertEquals( 0, directory.list().length );
+  }
+}
@@ -0,0 +1,169 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2020 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+
+package org.pentaho.di.core.row.batch;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.Test;
+import org.pentaho.di.core.row.RowMeta;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.value.ValueMetaBigNumber;
+import org.pentaho.di.core.row.value.ValueMetaDate;
+import org.pentaho.di.core.row.value.ValueMetaInteger;
+import org.pentaho.di.core.row.value.ValueMetaNumber;
+import org.pentaho.di.core.row.value.ValueMetaString;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class RowBatchTest {
+
+  private RowMetaInterface createRowMeta() {
+    RowMetaInterface rowMeta = new RowMeta();
+    rowMeta.addValueMeta( new ValueMetaInteger( "id" ) );
+    rowMeta.addValueMeta( new ValueMetaNumber( "amount" ) );
+    rowMeta.addValueMeta( new ValueMetaString( "country" ) );
+    rowMeta.addValueMeta( new ValueMetaDate( "date" ) );
+    rowMeta.addValueMeta( new ValueMetaBigNumber( "big" ) );
+    return rowMeta;
+  }
+
+  @Test
+  public void testColumnTypes() {
+    RowBatch batch = new RowBatch( createRowMeta(), 10 );
+
+    assertTrue( batch.getColumn( 0 ) instanceof LongColumnVector );
+    assertTrue( batch.getColumn( 1 ) instanceof DoubleColumnVector );
+    assertTrue( batch.getColumn( 2 ) instanceof StringDictionaryColumnVector );
+    assertTrue( batch.getColumn( 3 ) instanceof ObjectColumnVector );
+    assertTrue( batch.getColumn( 4 ) instanceof ObjectColumnVector );
+    assertTrue( batch.isEmpty() );
+  }
+
+  @Test
+  public void testRoundTrip() {
+    RowMetaInterface rowMeta = createRowMeta();
+    Date date = new Date();
+    List<Object[]> rows = Arrays.asList(
+      new Object[] { 1L, 1.5d, "BE", date, new BigDecimal( "1.1" ) },
+      new Object[] { null, null, null, null, null },
+      new Object[] { 3L, 3.5d, "BE", date, new BigDecimal( "3.3" ), "extra" } );
+
+    RowBatch batch = RowBatch.fromRows( rowMeta, rows );
+    assertEquals( 3, batch.size() );
+
+    List<Object[]> result = batch.toRows();
+    assertEquals( 3, result.size() );
+    for ( int r = 0; r < rows.size(); r++ ) {
+      for ( int i = 0; i < rowMeta.size(); i++ ) {
+        assertEquals( rows.get( r )[i], result.get( r )[i] );
+      }
+    }
+  }
+
+  @Test
+  public void testPrimitiveAccess() {
+    RowMetaInterface rowMeta = createRowMeta();
+    RowBatch batch = new RowBatch( rowMeta, 1 );
+    for ( long i = 0; i < 100; i++ ) {
+      batch.addRow( new Object[] { i, i * 2d, i % 2 == 0 ? "even" : "odd", null, null } );
+    }
+
+    LongColumnVector ids = (LongColumnVector) batch.getColumn( 0 );
+    DoubleColumnVector amounts = (DoubleColumnVector) batch.getColumn( 1 );
+    assertEquals( 100, ids.size() );
+    assertFalse( ids.hasNulls() );
+    long sum = 0;
+    double total = 0;
+    for ( int i = 0; i < ids.size(); i++ ) {
+      sum += ids.getValues()[i];
+      total += amounts.get( i );
+    }
+    assertEquals( 4950L, sum );
+    assertEquals( 9900d, total, 0d );
+  }
+
+  @Test
+  public void testNullBitmap() {
+    RowMetaInterface rowMeta = new RowMeta();
+    rowMeta.addValueMeta( new ValueMetaInteger( "id" ) );
+    RowBatch batch = new RowBatch( rowMeta, 2 );
+    for ( int i = 0; i < 200; i++ ) {
+      batch.addRow( new Object[] { i % 65 == 0 ? null : (long) i } );
+    }
+
+    LongColumnVector ids = (LongColumnVector) batch.getColumn( 0 );
+    assertTrue( ids.hasNulls() );
+    for ( int i = 0; i < 200; i++ ) {
+      assertEquals( i % 65 == 0, ids.isNull( i ) );
+    }
+    assertNull( ids.getObject( 130 ) );
+    assertEquals( 131L, ids.getObject( 131 ) );
+  }
+
+  @Test
+  public void testDictionaryEncoding() {
+    RowMetaInterface rowMeta = new RowMeta();
+    rowMeta.addValueMeta( new ValueMetaString( "country" ) );
+    RowBatch batch = RowBatch.fromRows( rowMeta, Arrays.asList(
+      new Object[] { "BE" }, new Object[] { "US" }, new Object[] { null }, new Object[] { "BE" } ) );
+
+    StringDictionaryColumnVector countries = (StringDictionaryColumnVector) batch.getColumn( 0 );
+    assertEquals( Arrays.asList( "BE", "US" ), countries.getDictionary() );
+    assertEquals( 0, countries.getCode( 0 ) );
+    assertEquals( 1, countries.getCode( 1 ) );
+    assertEquals( -1, countries.getCode( 2 ) );
+    assertEquals( 0, countries.getCode( 3 ) );
+    assertTrue( countries.isNull( 2 ) );
+    assertEquals( "BE", countries.get( 3 ) );
+  }
+
+  @Test
+  public void testSelectSharesTheColumns() {
+    RowMetaInterface rowMeta = createRowMeta();
+    RowBatch batch = RowBatch.fromRows( rowMeta, Arrays.asList(
+      new Object[] { 1L, 1.5d, "BE", null, null }, new Object[] { 2L, 2.5d, "US", null, null } ) );
+
+    RowMetaInterface selectedMeta = new RowMeta();
+    selectedMeta.addValueMeta( new ValueMetaString( "country" ) );
+    selectedMeta.addValueMeta( new ValueMetaInteger( "id" ) );
+    RowBatch selected = batch.select( selectedMeta, new int[] { 2, 0 } );
+
+    assertEquals( 2, selected.size() );
+    assertSame( selectedMeta, selected.getRowMeta() );
+    assertSame( batch.getColumn( 2 ), selected.getColumn( 0 ) );
+    assertSame( batch.getColumn( 0 ), selected.getColumn( 1 ) );
+    List<Object[]> rows = selected.toRows();
+    assertEquals( "BE", rows.get( 0 )[0] );
+    assertEquals( 1L, rows.get( 0 )[1] );
+    assertEquals( "US", rows.get( 1 )[0] );
+    assertEquals( 2L, rows.get( 1 )[1] );
+  }
+}
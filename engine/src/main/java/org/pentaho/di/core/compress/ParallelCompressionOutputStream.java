@@ -0,0 +1,197 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2020 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.core.compress;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import org.pentaho.di.core.compress.gzip.GZIPCompressionProvider;
+import org.pentaho.di.core.compress.snappy.SnappyCompressionProvider;
+import org.pentaho.di.core.util.ExecutorUtil;
+
+/**
+ * Compresses the data written to it in blocks, on a number of threads at the same time. Every block is compressed on
+ * its own into a complete compressed stream of the provider, the streams are written in order. A GZip file written this
+ * way consists of a number of gzip members, a Snappy file of a number of concatenated Snappy streams. Both are read as
+ * one stream by the decompressors.<br>
+ * <br>
+ * Only providers with output that can be concatenated are supported, see {@link #supports(CompressionProvider)}. Only
+ * one thread writes to the stream.
+ */
+public class ParallelCompressionOutputStream extends CompressionOutputStream {
+
+  public static final int DEFAULT_BLOCK_SIZE = 1024 * 1024;
+
+  private final int threads;
+  private final Deque<Future<byte[]>> blocks = new ArrayDeque<>();
+
+  private byte[] block;
+  private int blockLength;
+  private boolean closed;
+
+  /**
+   * @param out
+   *          the stream to write the compressed blocks to
+   * @param provider
+   *          the provider compressing the blocks
+   * @param threads
+   *          the number of blocks compressed at the same time
+   */
+  public ParallelCompressionOutputStream( OutputStream out, CompressionProvider provider, int threads ) {
+    this( out, provider, threads, DEFAULT_BLOCK_SIZE );
+  }
+
+  /**
+   * @param out
+   *          the stream to write the compressed blocks to
+   * @param provider
+   *          the provider compressing the blocks
+   * @param threads
+   *          the number of blocks compressed at the same time
+   * @param blockSize
+   *          the number of bytes compressed at once
+   */
+  public ParallelCompressionOutputStream( OutputStream out, CompressionProvider provider, int threads,
+    int blockSize ) {
+    super( out, provider );
+    this.threads = Math.max( 1, threads );
+    this.block = new byte[ blockSize ];
+  }
+
+  /**
+   * @param provider
+   *          the compression provider
+   * @return true if the output of the provider can be compressed in blocks
+   */
+  public static boolean supports( CompressionProvider provider ) {
+    return provider instanceof GZIPCompressionProvider || provider instanceof SnappyCompressionProvider;
+  }
+
+  @Override
+  public void write( int b ) throws IOException {
+    ensureOpen();
+    if ( blockLength == block.length ) {
+      submitBlock();
+    }
+    block[ blockLength++ ] = (byte) b;
+  }
+
+  @Override
+  public void write( byte[] b ) throws IOException {
+    write( b, 0, b.length );
+  }
+
+  @Override
+  public void write( byte[] b, int off, int len ) throws IOException {
+    ensureOpen();
+    while ( len > 0 ) {
+      if ( blockLength == block.length ) {
+        submitBlock();
+      }
+      int n = Math.min( len, block.length - blockLength );
+      System.arraycopy( b, off, block, blockLength, n );
+      blockLength += n;
+      off += n;
+      len -= n;
+    }
+  }
+
+  /**
+   * Compress and write everything written so far. As every flush ends a compressed stream, flushing often makes the
+   * compression less efficient.
+   */
+  @Override
+  public void flush() throws IOException {
+    if ( blockLength > 0 ) {
+      submitBlock();
+    }
+    while ( !blocks.isEmpty() ) {
+      writeOldestBlock();
+    }
+    delegate.flush();
+  }
+
+  @Override
+  public void close() throws IOException {
+    if ( closed ) {
+      return;
+    }
+    closed = true;
+    try {
+      flush();
+    } finally {
+      for ( Future<byte[]> future : blocks ) {
+        future.cancel( false );
+      }
+      blocks.clear();
+      delegate.close();
+    }
+  }
+
+  private void ensureOpen() throws IOException {
+    if ( closed ) {
+      throw new IOException( "Stream closed" );
+    }
+  }
+
+  private void submitBlock() throws IOException {
+    final byte[] data = block;
+    final int length = blockLength;
+    blocks.add( ExecutorUtil.getExecutor().submit( () -> compress( data, length ) ) );
+    block = new byte[ data.length ];
+    blockLength = 0;
+
+    // Don't keep more blocks in memory than there are threads compressing them
+    while ( blocks.size() > threads ) {
+      writeOldestBlock();
+    }
+  }
+
+  private byte[] compress( byte[] data, int length ) throws IOException {
+    ByteArrayOutputStream compressed = new ByteArrayOutputStream( length / 2 + 64 );
+    try ( CompressionOutputStream out = getCompressionProvider().createOutputStream( compressed ) ) {
+      out.write( data, 0, length );
+    }
+    return compressed.toByteArray();
+  }
+
+  private void writeOldestBlock() throws IOException {
+    try {
+      delegate.write( blocks.poll().get() );
+    } catch ( InterruptedException e ) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException( "Interrupted while waiting for a block to be compressed" );
+    } catch ( ExecutionException e ) {
+      if ( e.getCause() instanceof IOException ) {
+        throw (IOException) e.getCause();
+      }
+      throw new IOException( "Unable to compress a block", e.getCause() );
+    }
+  }
+}
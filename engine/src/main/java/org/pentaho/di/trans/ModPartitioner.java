@@ -2,7 +2,7 @@
  *
  * Pentaho Data Integration
  *
- * Copyright (C) 2002-2017 by Hitachi Vantara : http://www.pentaho.com
+ * Copyright (C) 2002-2020 by Hitachi Vantara : http://www.pentaho.com
  *
  *******************************************************************************
  *
@@ -63,6 +63,18 @@ public class ModPartitioner extends BasePartitioner {
   public int getPartition( RowMetaInterface rowMeta, Object[] row ) throws KettleException {
     init( rowMeta );
 
+    long value = getPartitionValue( rowMeta, row );
+
+    int targetLocation = (int) ( Math.abs( value ) % nrPartitions );
+
+    return targetLocation;
+  }
+
+  /**
+   * @return the number the partition of the row is the remainder of: the value of an integer field, else the hash code
+   *         of the value
+   */
+  protected long getPartitionValue( RowMetaInterface rowMeta, Object[] row ) throws KettleException {
     if ( partitionColumnIndex < 0 ) {
       partitionColumnIndex = rowMeta.indexOfValue( fieldName );
       if ( partitionColumnIndex < 0 ) {
@@ -93,9 +105,7 @@ public class ModPartitioner extends BasePartitioner {
      * value = rowMeta.getInteger(row, partitionColumnIndex);
      */
 
-    int targetLocation = (int) ( Math.abs( value ) % nrPartitions );
-
-    return targetLocation;
+    return value;
   }
 
   public String getDescription() {
@@ -0,0 +1,208 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2020 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+
+package org.pentaho.di.trans;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.exception.KettleXMLException;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.util.Utils;
+import org.pentaho.di.core.xml.XMLHandler;
+import org.pentaho.di.repository.ObjectId;
+import org.pentaho.di.repository.Repository;
+import org.w3c.dom.Node;
+
+/**
+ * Partitions like the {@link ModPartitioner}, but keeps track of the keys that occur most while rows pass. A key is a
+ * heavy key once it holds more rows than a partition would get if the rows were spread evenly.<br>
+ * <br>
+ * With "split heavy keys" the rows of a heavy key are spread over all partitions, the other keys stay in the partition
+ * of the mod partitioner. Only split heavy keys when the results of the partitioned step are combined per key
+ * afterwards, like the partial sums and counts of a partitioned "Memory group by" that a "Group by" adds up.<br>
+ * <br>
+ * Every {@value #SAMPLE_INTERVAL}th row is counted, in a table of a limited number of the most frequent keys. The
+ * heavy keys are decided again every {@value #REFRESH_INTERVAL} counted rows. The keys are the values the mod
+ * partitioner calculates the partition from, so keys with the same hash code are counted together.
+ */
+public class SkewAwarePartitioner extends ModPartitioner {
+
+  public static final int SAMPLE_INTERVAL = 16;
+  public static final int REFRESH_INTERVAL = 1024;
+
+  // The least number of counted rows before a key can be a heavy key
+  private static final int MIN_SAMPLE_SIZE = 1024;
+  private static final int MIN_COUNTERS = 64;
+
+  private boolean splitHeavyKeys;
+
+  private final AtomicLong rows = new AtomicLong();
+  private final AtomicInteger nextSplitPartition = new AtomicInteger();
+  private final Map<Long, long[]> counters = new HashMap<>();
+  private long sampledRows;
+  private volatile Set<Long> heavyKeys = Collections.emptySet();
+
+  public SkewAwarePartitioner() {
+    super();
+  }
+
+  @Override
+  public Partitioner getInstance() {
+    Partitioner partitioner = new SkewAwarePartitioner();
+    partitioner.setId( getId() );
+    partitioner.setDescription( getDescription() );
+    return partitioner;
+  }
+
+  @Override
+  public SkewAwarePartitioner clone() {
+    SkewAwarePartitioner partitioner = (SkewAwarePartitioner) super.clone();
+    partitioner.splitHeavyKeys = splitHeavyKeys;
+    return partitioner;
+  }
+
+  @Override
+  public String getDialogClassName() {
+    return "org.pentaho.di.ui.trans.dialog.SkewAwarePartitionerDialog";
+  }
+
+  @Override
+  public int getPartition( RowMetaInterface rowMeta, Object[] row ) throws KettleException {
+    init( rowMeta );
+
+    long value = getPartitionValue( rowMeta, row );
+    if ( rows.incrementAndGet() % SAMPLE_INTERVAL == 0 ) {
+      sample( value );
+    }
+
+    if ( splitHeavyKeys && nrPartitions > 1 && heavyKeys.contains( value ) ) {
+      return ( nextSplitPartition.getAndIncrement() & Integer.MAX_VALUE ) % nrPartitions;
+    }
+    return (int) ( Math.abs( value ) % nrPartitions );
+  }
+
+  /**
+   * Count a key with the frequent items algorithm of Misra and Gries: a table of at most a fixed number of keys, when a
+   * new key doesn't fit every count goes down by one. The count of a key is too low by at most the number of counted
+   * rows divided by the size of the table.
+   */
+  private synchronized void sample( long value ) {
+    sampledRows++;
+    long[] counter = counters.get( value );
+    if ( counter != null ) {
+      counter[ 0 ]++;
+    } else if ( counters.size() < getNrCounters() ) {
+      counters.put( value, new long[] { 1 } );
+    } else {
+      Iterator<long[]> iterator = counters.values().iterator();
+      while ( iterator.hasNext() ) {
+        if ( --iterator.next()[ 0 ] == 0 ) {
+          iterator.remove();
+        }
+      }
+    }
+
+    if ( sampledRows % REFRESH_INTERVAL == 0 ) {
+      heavyKeys = findHeavyKeys();
+    }
+  }
+
+  private Set<Long> findHeavyKeys() {
+    if ( sampledRows < MIN_SAMPLE_SIZE || nrPartitions < 2 ) {
+      return Collections.emptySet();
+    }
+    long threshold = sampledRows / nrPartitions;
+    Set<Long> keys = new HashSet<>();
+    for ( Map.Entry<Long, long[]> entry : counters.entrySet() ) {
+      if ( entry.getValue()[ 0 ] > threshold ) {
+        keys.add( entry.getKey() );
+      }
+    }
+    return keys.isEmpty() ? Collections.<Long>emptySet() : Collections.unmodifiableSet( keys );
+  }
+
+  // Enough counters to find every key with more rows than a partition gets
+  private int getNrCounters() {
+    return Math.max( MIN_COUNTERS, 4 * nrPartitions );
+  }
+
+  /**
+   * @return the keys, as the values the partition is calculated from, that hold more rows than a partition would get
+   *         if the rows were spread evenly
+   */
+  public Set<Long> getHeavyKeys() {
+    return heavyKeys;
+  }
+
+  @Override
+  public String getDescription() {
+    String description = "Skew aware partitioner";
+    if ( !Utils.isEmpty( getFieldName() ) ) {
+      description += "(" + getFieldName() + ")";
+    }
+    return description;
+  }
+
+  @Override
+  public String getXML() {
+    StringBuilder xml = new StringBuilder( 200 );
+    xml.append( super.getXML() );
+    xml.append( "           " ).append( XMLHandler.addTagValue( "split_heavy_keys", splitHeavyKeys ) );
+    return xml.toString();
+  }
+
+  @Override
+  public void loadXML( Node partitioningMethodNode ) throws KettleXMLException {
+    super.loadXML( partitioningMethodNode );
+    splitHeavyKeys = "Y".equalsIgnoreCase( XMLHandler.getTagValue( partitioningMethodNode, "split_heavy_keys" ) );
+  }
+
+  @Override
+  public void saveRep( Repository rep, ObjectId id_transformation, ObjectId id_step ) throws KettleException {
+    super.saveRep( rep, id_transformation, id_step );
+    rep.saveStepAttribute( id_transformation, id_step, "PARTITIONING_SPLIT_HEAVY_KEYS", splitHeavyKeys );
+  }
+
+  @Override
+  public void loadRep( Repository rep, ObjectId id_step ) throws KettleException {
+    super.loadRep( rep, id_step );
+    splitHeavyKeys = rep.getStepAttributeBoolean( id_step, "PARTITIONING_SPLIT_HEAVY_KEYS" );
+  }
+
+  public boolean isSplitHeavyKeys() {
+    return splitHeavyKeys;
+  }
+
+  public void setSplitHeavyKeys( boolean splitHeavyKeys ) {
+    this.splitHeavyKeys = splitHeavyKeys;
+  }
+
+}
@@ -37,6 +37,9 @@ import org.pentaho.di.trans.steps.TransStepUtil;
 import org.pentaho.di.trans.steps.transexecutor.TransExecutorParameters;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
@@ -60,6 +63,9 @@ public class SubtransExecutor {
   Set<Trans> running;
   private Semaphore semaphore;
   private final int prefetchCount;
+  private final Object bufferBytesLock = new Object();
+  private long maxBufferBytes;
+  private long bufferBytes;
 
   public SubtransExecutor( String subTransName, Trans parentTrans, TransMeta subtransMeta, boolean shareVariables,
                            TransExecutorParameters parameters, String subStep, int prefetchCount ) {
@@ -76,10 +82,29 @@ public class SubtransExecutor {
   }
 
   public Optional<Result> execute( List<RowMetaAndData> rows ) throws KettleException {
+    return execute( rows, rows.size() );
+  }
+
+  /**
+   * Execute the sub-transformation for a batch of rows, of which only some are new. Overlapping windows send a row in
+   * more than one batch, the prefetch buffer is released only once for every row.
+   *
+   * @param rows
+   *          the rows of the batch
+   * @param newRows
+   *          the number of rows of the batch that weren't in a previous batch
+   * @return the result of the sub-transformation, empty if there were no rows or the executor is stopped
+   * @throws KettleException
+   *           in case the sub-transformation couldn't be executed
+   */
+  public Optional<Result> execute( List<RowMetaAndData> rows, int newRows ) throws KettleException {
     if ( rows.isEmpty() || stopped ) {
       return Optional.empty();
     }
 
+    // Sub-transformation steps may change the rows, so measure them before they run
+    long newBytes = getBufferBytes( rows, newRows );
+
     Trans subtrans = this.createSubtrans();
     running.add( subtrans );
     parentTrans.addActiveSubTransformation( subTransName, subtrans );
@@ -109,11 +134,11 @@ public class SubtransExecutor {
 
     Result subtransResult = subtrans.getResult();
     subtransResult.setRows( rowMetaAndData  );
-    releaseBufferPermits( rows.size() );
+    releaseBuffer( newRows, newBytes );
     return Optional.of( subtransResult );
   }
 
-  private synchronized void updateStatuses( Trans subtrans ) {
+  protected synchronized void updateStatuses( Trans subtrans ) {
     List<StepMetaDataCombi> steps = subtrans.getSteps();
     for ( StepMetaDataCombi combi : steps ) {
       StepStatus stepStatus;
@@ -130,7 +155,11 @@ public class SubtransExecutor {
   }
 
   private Trans createSubtrans() {
-    Trans subTrans = new Trans( this.subtransMeta, this.parentTrans );
+    return createSubtrans( this.subtransMeta );
+  }
+
+  protected Trans createSubtrans( TransMeta transMeta ) {
+    Trans subTrans = new Trans( transMeta, this.parentTrans );
     subTrans.setParentTrans( this.parentTrans );
     subTrans.setRepository( this.parentTrans.getRepository() );
     subTrans.setLogLevel( this.parentTrans.getLogLevel() );
@@ -140,13 +169,13 @@ public class SubtransExecutor {
     }
 
     subTrans.setInternalKettleVariables( this.parentTrans );
-    subTrans.copyParametersFrom( this.subtransMeta );
+    subTrans.copyParametersFrom( transMeta );
     subTrans.setPreview( this.parentTrans.isPreview() );
     TransStepUtil.initServletConfig( this.parentTrans, subTrans );
     return subTrans;
   }
 
-  private void passParametersToTrans( Trans internalTrans, RowMetaAndData rowMetaAndData ) throws KettleException {
+  protected void passParametersToTrans( Trans internalTrans, RowMetaAndData rowMetaAndData ) throws KettleException {
     internalTrans.clearParameters();
     String[] parameterNames = internalTrans.listParameters();
 
@@ -179,6 +208,9 @@ public class SubtransExecutor {
 
   public void stop() {
     stopped = true;
+    synchronized ( bufferBytesLock ) {
+      bufferBytesLock.notifyAll();
+    }
     for ( Trans subTrans : running ) {
       subTrans.stopAll();
     }
@@ -196,14 +228,120 @@ public class SubtransExecutor {
     return parentTrans;
   }
 
-  private void releaseBufferPermits( int count ) {
+  public String getSubTransName() {
+    return subTransName;
+  }
+
+  public TransMeta getSubtransMeta() {
+    return subtransMeta;
+  }
+
+  public String getSubStep() {
+    return subStep;
+  }
+
+  public boolean isStopped() {
+    return stopped;
+  }
+
+  protected void releaseBufferPermits( int count ) {
     semaphore.release( count );
   }
 
+  /**
+   * Release the prefetch buffer of the new rows of a batch.
+   *
+   * @param count
+   *          the number of new rows
+   * @param bytes
+   *          the size of the new rows, see {@link #getBufferBytes(List, int)}
+   */
+  protected void releaseBuffer( int count, long bytes ) {
+    releaseBufferPermits( count );
+    if ( bytes > 0 ) {
+      synchronized ( bufferBytesLock ) {
+        bufferBytes = Math.max( 0, bufferBytes - bytes );
+        bufferBytesLock.notifyAll();
+      }
+    }
+  }
+
   public void acquireBufferPermit() throws InterruptedException {
     semaphore.acquire();
   }
 
+  /**
+   * Wait until there is room in the buffer for a row of the given size. Does nothing when there is no maximum number of
+   * bytes. A row larger than the maximum is let in when the buffer is empty.
+   *
+   * @param bytes
+   *          the size of the row, see {@link #estimateBufferBytes(Collection)}
+   * @throws InterruptedException
+   *           when interrupted while waiting
+   */
+  public void acquireBufferBytes( long bytes ) throws InterruptedException {
+    if ( maxBufferBytes <= 0 ) {
+      return;
+    }
+    synchronized ( bufferBytesLock ) {
+      while ( !stopped && bufferBytes > 0 && bufferBytes + bytes > maxBufferBytes ) {
+        bufferBytesLock.wait();
+      }
+      bufferBytes += bytes;
+    }
+  }
+
+  /**
+   * @return the size of the new rows of a batch, 0 when there is no maximum number of bytes. New rows are the last rows
+   *         of a batch.
+   */
+  protected long getBufferBytes( List<RowMetaAndData> rows, int newRows ) {
+    if ( maxBufferBytes <= 0 ) {
+      return 0;
+    }
+    long bytes = 0;
+    for ( int i = Math.max( 0, rows.size() - newRows ); i < rows.size(); i++ ) {
+      bytes += estimateBufferBytes( Arrays.asList( rows.get( i ).getData() ) );
+    }
+    return bytes;
+  }
+
+  /**
+   * Roughly estimate the memory a row with the given values takes.
+   *
+   * @param values
+   *          the values of the row
+   * @return the estimated number of bytes
+   */
+  public static long estimateBufferBytes( Collection<?> values ) {
+    long bytes = 16;
+    for ( Object value : values ) {
+      bytes += 8;
+      if ( value instanceof String ) {
+        bytes += 40 + 2L * ( (String) value ).length();
+      } else if ( value instanceof byte[] ) {
+        bytes += 16 + ( (byte[]) value ).length;
+      } else if ( value instanceof Number || value instanceof Boolean || value instanceof Date ) {
+        bytes += 24;
+      } else if ( value != null ) {
+        bytes += 64;
+      }
+    }
+    return bytes;
+  }
+
+  public long getMaxBufferBytes() {
+    return maxBufferBytes;
+  }
+
+  /**
+   * @param maxBufferBytes
+   *          the maximum size of the rows in the prefetch buffer, 0 for no maximum besides the prefetch count
+   */
+  public void setMaxBufferBytes( long maxBufferBytes ) {
+    this.maxBufferBytes = maxBufferBytes;
+  }
+
   public int getPrefetchCount() {
     return prefetchCount;
   }
@@ -57,6 +57,7 @@ import org.apache.commons.lang.StringUtils;
 import org.apache.commons.vfs2.FileName;
 import org.apache.commons.vfs2.FileObject;
 import org.pentaho.di.cluster.SlaveServer;
+import org.pentaho.di.core.AdaptiveBatchingRowSet;
 import org.pentaho.di.core.BlockingBatchingRowSet;
 import org.pentaho.di.core.BlockingRowSet;
 import org.pentaho.di.core.Const;
@@ -69,6 +70,7 @@ import org.pentaho.di.core.KettleEnvironment;
 import org.pentaho.di.core.QueueRowSet;
 import org.pentaho.di.core.Result;
 import org.pentaho.di.core.ResultFile;
+import org.pentaho.di.core.RingBufferRowSet;
 import org.pentaho.di.core.RowMetaAndData;
 import org.pentaho.di.core.RowSet;
 import org.pentaho.di.core.SingleRowRowSet;
@@ -928,8 +930,23 @@ public class Trans implements VariableSpace, NamedParams, HasLogChannelInterface
                 //
                 Boolean batchingRowSet =
                   ValueMetaString.convertStringToBoolean( System.getProperty( Const.KETTLE_BATCHING_ROWSET ) );
+                // Outside of N:M re-partitioning every rowset links exactly one source copy to one target copy. The
+                // ring buffer also needs a single producer thread, which isn't guaranteed: row listeners, row producers
+                // and steps with worker threads can write from other threads. So it has to be switched on.
+                //
+                Boolean ringBufferRowSet =
+                  ValueMetaString.convertStringToBoolean( getVariable( Const.KETTLE_RING_BUFFER_ROWSET ) );
+                Boolean adaptiveBatchingRowSet =
+                  ValueMetaString.convertStringToBoolean( getVariable( Const.KETTLE_ADAPTIVE_BATCHING_ROWSET ) );
                 if ( batchingRowSet != null && batchingRowSet.booleanValue() ) {
                   rowSet = new BlockingBatchingRowSet( transMeta.getSizeRowset() );
+                } else if ( adaptiveBatchingRowSet != null && adaptiveBatchingRowSet.booleanValue() ) {
+                  rowSet = new AdaptiveBatchingRowSet( transMeta.getSizeRowset(),
+                    AdaptiveBatchingRowSet.DEFAULT_MAX_BATCH_SIZE,
+                    Const.toInt( getVariable( Const.KETTLE_ADAPTIVE_BATCHING_ROWSET_LATENCY ),
+                      AdaptiveBatchingRowSet.DEFAULT_MAX_LATENCY_MILLIS ) );
+                } else if ( ringBufferRowSet != null && ringBufferRowSet.booleanValue() ) {
+                  rowSet = new RingBufferRowSet( transMeta.getSizeRowset() );
                 } else {
                   rowSet = new BlockingRowSet( transMeta.getSizeRowset() );
                 }
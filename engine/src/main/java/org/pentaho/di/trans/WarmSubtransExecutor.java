@@ -0,0 +1,139 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2020 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans;
+
+import org.pentaho.di.core.Result;
+import org.pentaho.di.core.RowMetaAndData;
+import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.trans.steps.transexecutor.TransExecutorParameters;
+import org.pentaho.di.trans.steps.transexecutor.TransExecutorWarmInstance;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Runs the given sub-transformation with the rows passed to execute, on a number of sub-transformations that are
+ * prepared once and then execute one batch after the other. See {@link TransExecutorWarmInstance} for what that means
+ * for the sub-transformation. Parameters are set from the first row of the batch a sub-transformation is prepared for.
+ */
+public class WarmSubtransExecutor extends SubtransExecutor {
+  private final int instances;
+  private final BlockingQueue<TransExecutorWarmInstance> idle = new LinkedBlockingQueue<>();
+  private TransMeta warmTransMeta;
+  private int created;
+
+  public WarmSubtransExecutor( String subTransName, Trans parentTrans, TransMeta subtransMeta,
+                               boolean shareVariables, TransExecutorParameters parameters, String subStep,
+                               int prefetchCount, int instances ) {
+    super( subTransName, parentTrans, subtransMeta, shareVariables, parameters, subStep, prefetchCount );
+    this.instances = Math.max( 1, instances );
+  }
+
+  @Override
+  public Optional<Result> execute( List<RowMetaAndData> rows, int newRows ) throws KettleException {
+    if ( rows.isEmpty() || isStopped() ) {
+      return Optional.empty();
+    }
+
+    long newBytes = getBufferBytes( rows, newRows );
+    TransExecutorWarmInstance instance = takeInstance( rows.get( 0 ) );
+    try {
+      Result result = instance.execute( rows );
+      updateStatuses( instance.getTrans() );
+      return Optional.of( result );
+    } finally {
+      idle.add( instance );
+      releaseBuffer( newRows, newBytes );
+      if ( isStopped() ) {
+        disposeIdleInstances();
+      }
+    }
+  }
+
+  /**
+   * @return an idle sub-transformation, a new one when there are less than the maximum, else the first one to become
+   *         idle
+   */
+  private TransExecutorWarmInstance takeInstance( RowMetaAndData firstRow ) throws KettleException {
+    while ( true ) {
+      TransExecutorWarmInstance instance = idle.poll();
+      if ( instance == null ) {
+        synchronized ( this ) {
+          if ( created < instances ) {
+            instance = createInstance( firstRow );
+            created++;
+            return instance;
+          }
+        }
+        try {
+          instance = idle.take();
+        } catch ( InterruptedException e ) {
+          Thread.currentThread().interrupt();
+          throw new KettleException( "Interrupted while waiting for a sub-transformation", e );
+        }
+      }
+      if ( !instance.isBroken() ) {
+        return instance;
+      }
+      dispose( instance );
+    }
+  }
+
+  private TransExecutorWarmInstance createInstance( RowMetaAndData firstRow ) throws KettleException {
+    if ( warmTransMeta == null ) {
+      warmTransMeta = TransExecutorWarmInstance.createTransMeta( getSubtransMeta() );
+    }
+    Trans subtrans = createSubtrans( warmTransMeta );
+    passParametersToTrans( subtrans, firstRow );
+    running.add( subtrans );
+    getParentTrans().addActiveSubTransformation( getSubTransName(), subtrans );
+    return new TransExecutorWarmInstance( subtrans, getSubtransMeta(), getSubStep() );
+  }
+
+  private void dispose( TransExecutorWarmInstance instance ) {
+    synchronized ( this ) {
+      created--;
+    }
+    running.remove( instance.getTrans() );
+    try {
+      instance.dispose();
+    } catch ( KettleException e ) {
+      instance.getTrans().getLogChannel().logError( "Error disposing of sub-transformation: ", e );
+    }
+  }
+
+  private void disposeIdleInstances() {
+    TransExecutorWarmInstance instance;
+    while ( ( instance = idle.poll() ) != null ) {
+      dispose( instance );
+    }
+  }
+
+  @Override
+  public void stop() {
+    super.stop();
+    disposeIdleInstances();
+  }
+}
@@ -66,6 +66,7 @@ import org.pentaho.di.core.row.RowDataUtil;
 import org.pentaho.di.core.row.RowMeta;
 import org.pentaho.di.core.row.RowMetaInterface;
 import org.pentaho.di.core.row.ValueMetaInterface;
+import org.pentaho.di.core.row.batch.RowBatch;
 import org.pentaho.di.core.row.value.ValueMetaDate;
 import org.pentaho.di.core.row.value.ValueMetaNumber;
 import org.pentaho.di.core.row.value.ValueMetaString;
@@ -366,6 +367,11 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
 
   private RowSet[] partitionNrRowSetList;
 
+  /**
+   * The number of rows sent to every partition of the next step, null if the rows aren't partitioned
+   */
+  private long[] partitionRowCounts;
+
   /**
    * A list of server sockets that need to be closed during transformation cleanup.
    */
@@ -1008,6 +1014,29 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
     }
   }
 
+  private void incrementPartitionRowCount( int partitionNr ) {
+    synchronized ( statusCountersLock ) {
+      if ( partitionRowCounts == null || partitionNr >= partitionRowCounts.length ) {
+        long[] counts = new long[ partitionNr + 1 ];
+        if ( partitionRowCounts != null ) {
+          System.arraycopy( partitionRowCounts, 0, counts, 0, partitionRowCounts.length );
+        }
+        partitionRowCounts = counts;
+      }
+      partitionRowCounts[ partitionNr ]++;
+    }
+  }
+
+  /**
+   * @return the number of rows sent to every partition of the next step, by partition number, or null if the rows
+   *         aren't partitioned
+   */
+  public long[] getPartitionRowCounts() {
+    synchronized ( statusCountersLock ) {
+      return partitionRowCounts == null ? null : partitionRowCounts.clone();
+    }
+  }
+
   /**
    * @return Returns the linesWritten.
    */
@@ -1268,6 +1297,57 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
     getRowHandler().putRow( rowMeta, row );
   }
 
+  /**
+   * putRows is used to pass a batch of rows on to the next step(s), in order. Every row is handled exactly like it is
+   * by {@link #putRow(RowMetaInterface, Object[])}. With a single output row set and nothing that needs to see the rows
+   * one at a time, the rows after the first one are handed to the row set in one go.
+   *
+   * @param rowMeta The row meta-data of the rows.
+   * @param rows    The rows to put to the destination rowset(s).
+   * @throws KettleStepException
+   */
+  public void putRows( RowMetaInterface rowMeta, List<Object[]> rows ) throws KettleStepException {
+    if ( rows.isEmpty() ) {
+      return;
+    }
+    // The first row is checked and waits for the transformation to run like any other
+    putRow( rowMeta, rows.get( 0 ) );
+    int nrPut = 1 + putBufferedRows( rowMeta, rows.subList( 1, rows.size() ) );
+    for ( Object[] row : rows.subList( nrPut, rows.size() ) ) {
+      putRow( rowMeta, row );
+    }
+  }
+
+  /**
+   * Puts the rows in the only output row set with one call to {@link RowSet#putRows(RowMetaInterface, List)}, the way
+   * {@link #putRow(RowMetaInterface, Object[])} would put them one by one. Does nothing if rows have to be put one at a
+   * time.
+   *
+   * @return the number of rows, counted from the start of the list, that were put.
+   */
+  private int putBufferedRows( RowMetaInterface rowMeta, List<Object[]> rows ) {
+    if ( rows.isEmpty() || !( getRowHandler() instanceof DefaultRowHandler ) || !rowListeners.isEmpty() || terminator
+      || repartitioning != StepPartitioningMeta.PARTITIONING_METHOD_NONE || ( distributed && rowDistribution != null )
+      || paused.get() || stopped.get() ) {
+      return 0;
+    }
+    int nrPut;
+    outputRowSetsLock.readLock().lock();
+    try {
+      if ( outputRowSets.size() != 1 ) {
+        return 0;
+      }
+      RowSet rowSet = outputRowSets.get( 0 );
+      nrPut = rowSet.putRows( rowSet.getRowMeta() == null ? rowMeta.clone() : rowSet.getRowMeta(), rows );
+    } finally {
+      outputRowSetsLock.readLock().unlock();
+    }
+    synchronized ( statusCountersLock ) {
+      linesWritten += nrPut;
+    }
+    return nrPut;
+  }
+
   private void handlePutRow( RowMetaInterface rowMeta, Object[] row ) throws KettleStepException {
     // Are we pausing the step? If so, stall forever...
     //
@@ -1385,6 +1465,7 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
       throw new KettleStepException(
         "Unable to convert a value to integer while calculating the partition number", e );
     }
+    incrementPartitionRowCount( partitionNr );
 
     RowSet selectedRowSet = null;
 
@@ -1597,13 +1678,28 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
       toBeSent = metaFromRs;
     }
 
-    while ( !rs.putRow( toBeSent, row ) ) {
+    while ( !putRowWaitingForSpace( rs, toBeSent, row ) ) {
       if ( isStopped() && !safeStopped.get() ) {
         return;
       }
     }
   }
 
+  /**
+   * Put a row in a row set, waiting a while if it's full. Before waiting, the rows that batching output row sets are
+   * still holding on to are handed over: the step that has to make room in the full row set may be waiting for those
+   * first, like a step reading from both ends of a diamond.
+   *
+   * @return true if the row was put in the row set
+   */
+  private boolean putRowWaitingForSpace( RowSet rowSet, RowMetaInterface rowMeta, Object[] row ) {
+    if ( rowSet.putRowWait( rowMeta, row, 0, TimeUnit.MILLISECONDS ) ) {
+      return true;
+    }
+    flushOutputRowSets();
+    return rowSet.putRow( rowMeta, row );
+  }
+
   /**
    * putRowTo is used to put a row in a certain specific RowSet.
    *
@@ -1653,7 +1749,7 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
 
     // Don't distribute or anything, only go to this rowset!
     //
-    while ( !rowSet.putRow( rowMeta, row ) ) {
+    while ( !putRowWaitingForSpace( rowSet, rowMeta, row ) ) {
       if ( isStopped() ) {
         break;
       }
@@ -1712,7 +1808,7 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
     }
 
     if ( errorRowSet != null ) {
-      while ( !errorRowSet.putRow( errorRowMeta, errorRowData ) ) {
+      while ( !putRowWaitingForSpace( errorRowSet, errorRowMeta, errorRowData ) ) {
         if ( isStopped() ) {
           break;
         }
@@ -1825,6 +1921,115 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
     return getRowHandler().getRow();
   }
 
+  /**
+   * Reads up to max rows from the input row sets. Like {@link #getRow()} this waits for the first row, but further rows
+   * are only read while the input row sets have them buffered. With a single input row set and nothing listening to
+   * the rows read, the buffered rows are taken from the row set in one go.
+   *
+   * @param max the maximum number of rows to read
+   * @return the rows read, an empty list if there is no more input.
+   * @throws KettleException
+   */
+  public List<Object[]> getRows( int max ) throws KettleException {
+    List<Object[]> rows = new ArrayList<>( Math.min( max, 64 ) );
+    Object[] row = max > 0 ? getRow() : null;
+    while ( row != null ) {
+      rows.add( row );
+      if ( rows.size() < max ) {
+        getBufferedRows( rows, max );
+      }
+      if ( rows.size() >= max || !hasBufferedInputRows() ) {
+        break;
+      }
+      row = getRow();
+    }
+    return rows;
+  }
+
+  /**
+   * Reads up to max rows from the input row sets as one columnar batch, see {@link #getRows(int)}.
+   *
+   * @param max the maximum number of rows in the batch
+   * @return the batch, null if there is no more input.
+   * @throws KettleException
+   */
+  public RowBatch getRowBatch( int max ) throws KettleException {
+    List<Object[]> rows = getRows( max );
+    if ( rows.isEmpty() ) {
+      return null;
+    }
+    return RowBatch.fromRows( getInputRowMeta(), rows );
+  }
+
+  /**
+   * Passes all rows of a columnar batch on to the next step(s), in order, see
+   * {@link #putRows(RowMetaInterface, List)}.
+   *
+   * @param batch The batch of rows to put
+   * @throws KettleStepException
+   */
+  public void putRowBatch( RowBatch batch ) throws KettleStepException {
+    putRows( batch.getRowMeta(), batch.toRows() );
+  }
+
+  /**
+   * Adds the rows buffered in the only input row set to the list, up to max rows in total, the way {@link #getRow()}
+   * would read them one by one. Does nothing if rows have to be read one at a time.
+   */
+  private void getBufferedRows( List<Object[]> rows, int max ) {
+    if ( !( getRowHandler() instanceof DefaultRowHandler ) || !rowListeners.isEmpty() || trans.isSafeModeEnabled()
+      || paused.get() || stopped.get() ) {
+      return;
+    }
+    List<Object[]> buffered;
+    inputRowSetsLock.readLock().lock();
+    try {
+      if ( inputRowSets.size() != 1 || inputRowSets.get( 0 ).size() == 0 ) {
+        return;
+      }
+      buffered = inputRowSets.get( 0 ).getRows( max - rows.size() );
+    } finally {
+      inputRowSetsLock.readLock().unlock();
+    }
+    rows.addAll( buffered );
+    blockPointer += buffered.size();
+    synchronized ( statusCountersLock ) {
+      linesRead += buffered.size();
+    }
+  }
+
+  private boolean hasBufferedInputRows() {
+    inputRowSetsLock.readLock().lock();
+    try {
+      for ( RowSet rowSet : inputRowSets ) {
+        if ( rowSet.size() > 0 ) {
+          return true;
+        }
+      }
+      return false;
+    } finally {
+      inputRowSetsLock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Hands over the rows that batching output row sets are still holding on to. Called when this step is about to wait
+   * for input, so that the next steps don't wait for rows we already produced.
+   */
+  private void flushOutputRowSets() {
+    outputRowSetsLock.readLock().lock();
+    try {
+      for ( RowSet rowSet : outputRowSets ) {
+        rowSet.flush();
+      }
+      if ( errorRowSet != null ) {
+        errorRowSet.flush();
+      }
+    } finally {
+      outputRowSetsLock.readLock().unlock();
+    }
+  }
+
 
   private Object[] handleGetRow() throws KettleException {
 
@@ -1911,6 +2116,7 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
       // rowset, then switch to another etc.
       // We can use timeouts to switch from one to another...
       //
+      boolean outputFlushed = false;
       while ( row == null && !isStopped() ) {
         // Get a row from the input in row set ...
         // Timeout immediately if nothing is there to read.
@@ -1921,6 +2127,12 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
           incrementLinesRead();
           blockPointer++;
         } else {
+          // We're waiting for input: don't keep the next steps waiting on batched output
+          //
+          if ( !outputFlushed ) {
+            flushOutputRowSets();
+            outputFlushed = true;
+          }
           // Try once more...
           // If row is still empty and the row set is done, we remove the row
           // set from
@@ -3461,11 +3673,11 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
     inputRowSetsLock.writeLock().lock();
     try {
       for ( int i = 0; i < inputRowSets.size(); i++ ) {
-        BlockingRowSet rs = (BlockingRowSet) inputRowSets.get( i );
+        RowSet rs = inputRowSets.get( i );
         if ( rs.getOriginStepName().equalsIgnoreCase( stepName ) ) {
           // swap this one and position 0...that means, the main stream is always stream 0 --> easy!
           //
-          BlockingRowSet zero = (BlockingRowSet) inputRowSets.get( 0 );
+          RowSet zero = inputRowSets.get( 0 );
           inputRowSets.set( 0, rs );
           inputRowSets.set( i, zero );
         }
@@ -0,0 +1,136 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2020 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+
+package org.pentaho.di.trans.step;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.pentaho.di.core.compress.CompressionProvider;
+import org.pentaho.di.core.compress.CompressionProviderFactory;
+import org.pentaho.di.core.compress.NoneCompressionProvider;
+import org.pentaho.di.core.exception.KettleEOFException;
+import org.pentaho.di.core.exception.KettleFileException;
+import org.pentaho.di.core.row.RowMetaInterface;
+
+/**
+ * Reads the rows a {@link RemoteStepRowBatchWriter} wrote, one batch at a time.
+ */
+public class RemoteStepRowBatchReader {
+
+  private final DataInputStream in;
+  private final RowMetaInterface rowMeta;
+  private final CompressionProvider provider;
+
+  private DataInputStream batchIn;
+  private int batchRows;
+  private boolean finished;
+
+  /**
+   * @param in
+   *          the stream to read the batches from, after the handshake and the row metadata
+   * @param rowMeta
+   *          the metadata of the rows
+   * @param provider
+   *          the provider the batches were compressed with
+   */
+  public RemoteStepRowBatchReader( DataInputStream in, RowMetaInterface rowMeta, CompressionProvider provider ) {
+    this.in = in;
+    this.rowMeta = rowMeta;
+    this.provider = provider;
+  }
+
+  /**
+   * Read the handshake of a stream of batches, if the stream starts with one.
+   *
+   * @param in
+   *          the stream as it comes from the socket, the position is reset if there is no handshake
+   * @return the provider the batches are compressed with, null if the rows come one at a time
+   * @throws IOException
+   *           in case the handshake can't be read or the compression isn't available
+   */
+  public static CompressionProvider readHandshake( BufferedInputStream in ) throws IOException {
+    in.mark( 4 );
+    DataInputStream handshake = new DataInputStream( in );
+    int magic;
+    try {
+      magic = handshake.readInt();
+    } catch ( EOFException e ) {
+      magic = 0;
+    }
+    if ( magic != RemoteStepRowBatchWriter.MAGIC ) {
+      in.reset();
+      return null;
+    }
+
+    int version = handshake.readInt();
+    if ( version != RemoteStepRowBatchWriter.VERSION ) {
+      throw new IOException( "Unsupported version " + version + " of the remote step batch transport" );
+    }
+    String name = handshake.readUTF();
+    CompressionProvider provider = CompressionProviderFactory.getInstance().getCompressionProviderByName( name );
+    if ( provider == null ) {
+      throw new IOException( "Compression '" + name + "' of the remote step batches isn't available" );
+    }
+    return provider;
+  }
+
+  /**
+   * @return the next row, null at the end of the stream
+   */
+  public Object[] readRow() throws KettleFileException, IOException {
+    while ( batchRows == 0 ) {
+      if ( finished || !readBatch() ) {
+        return null;
+      }
+    }
+    batchRows--;
+    try {
+      return rowMeta.readData( batchIn );
+    } catch ( KettleEOFException e ) {
+      throw new IOException( "Remote step batch ended before all of its rows were read", e );
+    }
+  }
+
+  private boolean readBatch() throws IOException {
+    int rows = in.readInt();
+    if ( rows == 0 ) {
+      finished = true;
+      return false;
+    }
+    byte[] data = new byte[ in.readInt() ];
+    in.readFully( data );
+
+    InputStream batch = new ByteArrayInputStream( data );
+    if ( !( provider instanceof NoneCompressionProvider ) ) {
+      batch = provider.createInputStream( batch );
+    }
+    batchIn = new DataInputStream( batch );
+    batchRows = rows;
+    return true;
+  }
+}
@@ -0,0 +1,149 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2020 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+
+package org.pentaho.di.trans.step;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.pentaho.di.core.compress.CompressionOutputStream;
+import org.pentaho.di.core.compress.CompressionProvider;
+import org.pentaho.di.core.compress.NoneCompressionProvider;
+import org.pentaho.di.core.compress.ParallelCompressionOutputStream;
+import org.pentaho.di.core.exception.KettleFileException;
+import org.pentaho.di.core.row.RowMetaInterface;
+
+/**
+ * Writes the rows of a remote step in batches instead of one at a time. Every batch is a frame: the number of rows,
+ * the length of the data and the data of the rows, compressed on its own. A frame without rows ends the stream.<br>
+ * <br>
+ * The stream starts with a handshake, see {@link #writeHandshake(OutputStream, CompressionProvider)}, which tells the
+ * {@link RemoteStepRowBatchReader} the rows come in batches and how they are compressed. The handshake is written
+ * before any other stream like encryption is opened, the row metadata is written once after it, as before.
+ */
+public class RemoteStepRowBatchWriter {
+
+  /** The first bytes of a stream of batches, "KRBT". A stream of rows one at a time starts with a field count. */
+  public static final int MAGIC = 0x4B524254;
+  public static final int VERSION = 1;
+  public static final int DEFAULT_BATCH_SIZE = 64 * 1024;
+
+  private final DataOutputStream out;
+  private final RowMetaInterface rowMeta;
+  private final CompressionProvider provider;
+  private final int batchSize;
+
+  private final ByteArrayOutputStream batch;
+  private final DataOutputStream batchOut;
+  private int batchRows;
+
+  /**
+   * @param out
+   *          the stream to write the batches to, after the handshake and the row metadata
+   * @param rowMeta
+   *          the metadata of the rows
+   * @param provider
+   *          the provider compressing the batches
+   * @param batchSize
+   *          the number of bytes of rows after which a batch is written
+   */
+  public RemoteStepRowBatchWriter( DataOutputStream out, RowMetaInterface rowMeta, CompressionProvider provider,
+    int batchSize ) {
+    this.out = out;
+    this.rowMeta = rowMeta;
+    this.provider = provider;
+    this.batchSize = batchSize;
+    this.batch = new ByteArrayOutputStream( batchSize + batchSize / 4 );
+    this.batchOut = new DataOutputStream( batch );
+  }
+
+  /**
+   * @param provider
+   *          a compression provider
+   * @return true if batches can be compressed with the provider: every batch has to be a complete compressed stream
+   */
+  public static boolean supports( CompressionProvider provider ) {
+    return provider instanceof NoneCompressionProvider || ParallelCompressionOutputStream.supports( provider );
+  }
+
+  /**
+   * Tell the reader the rows come in batches compressed by the given provider.
+   */
+  public static void writeHandshake( OutputStream out, CompressionProvider provider ) throws IOException {
+    DataOutputStream handshake = new DataOutputStream( out );
+    handshake.writeInt( MAGIC );
+    handshake.writeInt( VERSION );
+    handshake.writeUTF( provider.getName() );
+    handshake.flush();
+  }
+
+  /**
+   * Add a row to the batch, the batch is written once it is full.
+   */
+  public void addRow( Object[] rowData ) throws KettleFileException, IOException {
+    rowMeta.writeData( batchOut, rowData );
+    batchRows++;
+    if ( batch.size() >= batchSize ) {
+      flush();
+    }
+  }
+
+  /**
+   * Write the rows added so far, if any, and flush the stream. Call this before waiting for rows, so the rows already
+   * added aren't held back.
+   */
+  public void flush() throws IOException {
+    if ( batchRows == 0 ) {
+      return;
+    }
+    batchOut.flush();
+    byte[] data;
+    if ( provider instanceof NoneCompressionProvider ) {
+      data = batch.toByteArray();
+    } else {
+      ByteArrayOutputStream compressed = new ByteArrayOutputStream( batch.size() / 2 + 64 );
+      try ( CompressionOutputStream compressionOut = provider.createOutputStream( compressed ) ) {
+        batch.writeTo( compressionOut );
+      }
+      data = compressed.toByteArray();
+    }
+    out.writeInt( batchRows );
+    out.writeInt( data.length );
+    out.write( data );
+    out.flush();
+
+    batch.reset();
+    batchRows = 0;
+  }
+
+  /**
+   * Write the last rows and the end of the stream.
+   */
+  public void finish() throws IOException {
+    flush();
+    out.writeInt( 0 );
+    out.flush();
+  }
+}
@@ -2,7 +2,7 @@
  *
  * Pentaho Data Integration
  *
- * Copyright (C) 2002-2017 by Hitachi Vantara : http://www.pentaho.com
+ * Copyright (C) 2002-2020 by Hitachi Vantara : http://www.pentaho.com
  *
  *******************************************************************************
  *
@@ -61,6 +61,7 @@ public class StepStatus {
   private boolean stopped;
   private boolean paused;
   private long accumlatedRuntime;
+  private long[] partitionRows;
 
   private RowMetaInterface sampleRowMeta;
   private List<Object[]> sampleRows;
@@ -109,6 +110,9 @@ public class StepStatus {
       baseStep.isRunning() ? "   " + baseStep.rowsetInputSize() + "/" + baseStep.rowsetOutputSize() : "-";
     this.stopped = baseStep.isStopped();
     this.paused = baseStep.isPaused();
+    if ( baseStep instanceof BaseStep ) {
+      this.partitionRows = ( (BaseStep) baseStep ).getPartitionRowCounts();
+    }
   }
 
   public String getHTMLTableRow( boolean urlInStepname ) {
@@ -141,6 +145,9 @@ public class StepStatus {
       xml.append( XMLHandler.addTagValue( "priority", priority, false ) );
       xml.append( XMLHandler.addTagValue( "stopped", stopped, false ) );
       xml.append( XMLHandler.addTagValue( "paused", paused, false ) );
+      if ( partitionRows != null ) {
+        xml.append( XMLHandler.addTagValue( "partitionRows", toString( partitionRows ), false ) );
+      }
 
       if ( sampleRowMeta != null ) {
         xml.append( XMLHandler.openTag( "samples" ) );
@@ -182,6 +189,14 @@ public class StepStatus {
     priority = XMLHandler.getTagValue( node, "priority" );
     stopped = "Y".equalsIgnoreCase( XMLHandler.getTagValue( node, "stopped" ) );
     paused = "Y".equalsIgnoreCase( XMLHandler.getTagValue( node, "paused" ) );
+    String partitionRowsValue = XMLHandler.getTagValue( node, "partitionRows" );
+    if ( partitionRowsValue != null ) {
+      String[] counts = partitionRowsValue.split( "," );
+      partitionRows = new long[ counts.length ];
+      for ( int i = 0; i < counts.length; i++ ) {
+        partitionRows[ i ] = Long.parseLong( counts[ i ].trim() );
+      }
+    }
 
     Node samplesNode = XMLHandler.getSubNode( node, "samples" );
     if ( samplesNode != null ) {
@@ -492,6 +507,33 @@ public class StepStatus {
     this.paused = paused;
   }
 
+  private static String toString( long[] counts ) {
+    StringBuilder string = new StringBuilder();
+    for ( int i = 0; i < counts.length; i++ ) {
+      if ( i > 0 ) {
+        string.append( ',' );
+      }
+      string.append( counts[ i ] );
+    }
+    return string.toString();
+  }
+
+  /**
+   * @return the number of rows sent to every partition of the next step, by partition number, or null if the step
+   *         doesn't partition its rows
+   */
+  public long[] getPartitionRows() {
+    return partitionRows;
+  }
+
+  /**
+   * @param partitionRows
+   *          the number of rows sent to every partition of the next step, by partition number
+   */
+  public void setPartitionRows( long[] partitionRows ) {
+    this.partitionRows = partitionRows;
+  }
+
   public RowMetaInterface getSampleRowMeta() {
     return sampleRowMeta;
   }
@@ -72,6 +72,9 @@ import org.pentaho.di.trans.steps.textfileinput.TextFileInputMeta;
 public class CsvInput extends BaseStep implements StepInterface {
   private static Class<?> PKG = CsvInput.class; // for i18n purposes, needed by Translator2!!
 
+  /** The size of a chunk parsed by a thread of its own, in NIO buffers */
+  private static final int CHUNK_BUFFERS = 64;
+
   private CsvInputMeta meta;
   private CsvInputData data;
 
@@ -101,6 +104,10 @@ public class CsvInput extends BaseStep implements StepInterface {
       //
       data.parallel = meta.isRunningInParallel() && data.totalNumberOfSteps > 1;
 
+      // A single copy can parse the chunks of a file on a number of threads
+      //
+      data.parserThreads = data.parallel ? 0 : getParserThreads();
+
       // The conversion logic for when the lazy conversion is turned of is simple:
       // Pretend it's a lazy conversion object anyway and get the native type during conversion.
       //
@@ -150,7 +157,12 @@ public class CsvInput extends BaseStep implements StepInterface {
     }
 
     try {
-      Object[] outputRowData = readOneRow( false, false ); // get row, set busy!
+      Object[] outputRowData;
+      if ( data.parallelReader != null ) {
+        outputRowData = readParsedRow();
+      } else {
+        outputRowData = readOneRow( false, false ); // get row, set busy!
+      }
       // no more input to be expected...
       if ( outputRowData == null ) {
         if ( openNextFile() ) {
@@ -193,6 +205,74 @@ public class CsvInput extends BaseStep implements StepInterface {
     return true;
   }
 
+  private int getParserThreads() {
+    int threads = Const.toInt( getVariable( Const.KETTLE_CSV_INPUT_PARSER_THREADS ), 0 );
+    if ( threads <= 0 ) {
+      return 0;
+    }
+    if ( data.encodingType.getLength() > 1 || meta.isNewlinePossibleInFields() ) {
+      logBasic( BaseMessages.getString( PKG, "CsvInput.Log.ParallelParsingNotPossible" ) );
+      return 0;
+    }
+    return threads;
+  }
+
+  /**
+   * Get the next row parsed by the parallel reader. The rows are numbered and counted here, in the order of the file.
+   *
+   * @return the next row or null if the file is read
+   * @throws KettleException
+   *           the conversion error of the row, or an error reading the file
+   */
+  private Object[] readParsedRow() throws KettleException {
+    Object next = data.parallelReader.next();
+    if ( next == null ) {
+      return null;
+    }
+    KettleConversionException conversionException = null;
+    Object[] outputRowData;
+    if ( next instanceof KettleConversionException ) {
+      conversionException = (KettleConversionException) next;
+      outputRowData = conversionException.getRowData();
+    } else {
+      outputRowData = (Object[]) next;
+    }
+
+    if ( data.isAddingRowNumber ) {
+      outputRowData[ data.rownumFieldIndex ] = data.rowNumber++;
+    }
+    incrementLinesInput();
+
+    if ( conversionException != null ) {
+      throw conversionException;
+    }
+    return outputRowData;
+  }
+
+  /**
+   * Parse all rows of a chunk, this is called by the threads of the parallel reader.
+   *
+   * @param chunkData
+   *          the data pointing to the chunk
+   * @return the rows of the chunk, or the conversion errors for the rows that have them
+   * @throws KettleException
+   *           in case the chunk can't be parsed
+   */
+  List<Object> parseChunk( CsvInputData chunkData ) throws KettleException {
+    List<Object> rows = new ArrayList<>();
+    while ( true ) {
+      try {
+        Object[] row = readOneRow( chunkData, false, false );
+        if ( row == null ) {
+          return rows;
+        }
+        rows.add( row );
+      } catch ( KettleConversionException e ) {
+        rows.add( e );
+      }
+    }
+  }
+
   private void prepareToRunInParallel() throws KettleException {
     try {
       // At this point it doesn't matter if we have 1 or more files.
@@ -297,6 +377,11 @@ public class CsvInput extends BaseStep implements StepInterface {
 
   @Override
   public void dispose( StepMetaInterface smi, StepDataInterface sdi ) {
+    if ( data.parallelReader != null ) {
+      data.parallelReader.close();
+      data.parallelReader = null;
+    }
+
     try {
       // Close the previous file...
       //
@@ -398,6 +483,7 @@ public class CsvInput extends BaseStep implements StepInterface {
       // - If you have a header row checked and if you're not running in parallel
       // - If you're running in parallel, if a header row is checked, if you're at the beginning of a file
       //
+      long bytesRead = data.totalBytesRead;
       if ( meta.isHeaderPresent() ) {
         // Standard flat file : skip header
         if ( !data.parallel || data.bytesToSkipInFirstFile <= 0 ) {
@@ -416,6 +502,18 @@ public class CsvInput extends BaseStep implements StepInterface {
       //
       data.bytesToSkipInFirstFile = -1L;
 
+      // Parse the rest of the file on the parser threads
+      //
+      if ( data.parserThreads > 0 ) {
+        data.dataStartPosition = bomSize + data.totalBytesRead - bytesRead;
+        if ( log.isDetailed() ) {
+          logDetailed( BaseMessages.getString( PKG, "CsvInput.Log.ParallelParsing", data.filenames[ data.filenr - 1 ],
+            Integer.toString( data.parserThreads ) ) );
+        }
+        data.parallelReader = new ParallelCsvReader( this, data, data.fc, data.dataStartPosition, data.fc.size(),
+          data.parserThreads, CHUNK_BUFFERS * data.preferredBufferSize );
+      }
+
       return true;
     } catch ( KettleException e ) {
       throw e;
@@ -564,10 +662,25 @@ public class CsvInput extends BaseStep implements StepInterface {
    * @throws KettleException
    */
   private Object[] readOneRow( boolean skipRow, boolean ignoreEnclosures ) throws KettleException {
+    return readOneRow( data, skipRow, ignoreEnclosures );
+  }
+
+  /**
+   * Read a single row of data from the file or from the chunk of a file the data points to.
+   *
+   * @param csvData          the data with the buffer to read from
+   * @param skipRow          if row should be skipped: header row or part of row in case of parallel read
+   * @param ignoreEnclosures if enclosures should be ignored, i.e. in case of we need to skip part of the row during
+   *                         parallel read
+   * @return a row of data...
+   * @throws KettleException
+   */
+  private Object[] readOneRow( CsvInputData csvData, boolean skipRow, boolean ignoreEnclosures )
+    throws KettleException {
 
     try {
 
-      Object[] outputRowData = RowDataUtil.allocateRowData( data.outputRowMeta.size() );
+      Object[] outputRowData = RowDataUtil.allocateRowData( csvData.outputRowMeta.size() );
       int outputIndex = 0;
       boolean newLineFound = false;
       boolean endOfBuffer = false;
@@ -588,9 +701,9 @@ public class CsvInput extends BaseStep implements StepInterface {
       //
       // Let's start by looking where we left off reading.
       //
-      while ( !newLineFound && outputIndex < data.fieldsMapping.size() ) {
+      while ( !newLineFound && outputIndex < csvData.fieldsMapping.size() ) {
 
-        if ( data.resizeBufferIfNeeded() ) {
+        if ( csvData.resizeBufferIfNeeded() ) {
           // Last row was being discarded if the last item is null and
           // there is no end of line delimiter
           if ( outputRowData != null ) {
@@ -601,17 +714,20 @@ public class CsvInput extends BaseStep implements StepInterface {
               //
               if ( meta.isIncludingFilename() && !Utils.isEmpty( meta.getFilenameField() ) ) {
                 if ( meta.isLazyConversionActive() ) {
-                  outputRowData[ data.filenameFieldIndex ] = data.binaryFilename;
+                  outputRowData[ csvData.filenameFieldIndex ] = csvData.binaryFilename;
                 } else {
-                  outputRowData[ data.filenameFieldIndex ] = data.filenames[ data.filenr - 1 ];
+                  outputRowData[ csvData.filenameFieldIndex ] = csvData.filenames[ csvData.filenr - 1 ];
                 }
               }
 
-              if ( data.isAddingRowNumber ) {
-                outputRowData[data.rownumFieldIndex] = data.rowNumber++;
+              if ( csvData.isAddingRowNumber ) {
+                outputRowData[csvData.rownumFieldIndex] = csvData.rowNumber++;
               }
 
-              incrementLinesInput();
+              // The lines of a chunk are counted when they are passed on
+              if ( !csvData.isParsingChunk() ) {
+                incrementLinesInput();
+              }
               return outputRowData;
             }
           }
@@ -634,10 +750,10 @@ public class CsvInput extends BaseStep implements StepInterface {
           // If we find the first char, we might find others as well ;-)
           // Single byte delimiters only for now.
           //
-          if ( data.delimiterFound() ) {
+          if ( csvData.delimiterFound() ) {
             delimiterFound = true;
-          } else if ( ( !meta.isNewlinePossibleInFields() || outputIndex == data.fieldsMapping.size() - 1 )
-            && data.newLineFound() ) {
+          } else if ( ( !meta.isNewlinePossibleInFields() || outputIndex == csvData.fieldsMapping.size() - 1 )
+            && csvData.newLineFound() ) {
             // Perhaps we found a (pre-mature) new line?
             //
             // In case we are not using an enclosure and in case fields contain new lines
@@ -648,18 +764,18 @@ public class CsvInput extends BaseStep implements StepInterface {
             newLineFound = true;
 
             // Skip new line character
-            for ( int i = 0; i < data.encodingType.getLength(); i++ ) {
-              data.moveEndBufferPointer();
+            for ( int i = 0; i < csvData.encodingType.getLength(); i++ ) {
+              csvData.moveEndBufferPointer();
             }
 
             // Re-check for double new line (\r\n)...
-            if ( data.newLineFound() ) {
+            if ( csvData.newLineFound() ) {
               // Found another one, need to skip it later
               doubleLineEnd = true;
             }
-          } else if ( data.enclosureFound() && !ignoreEnclosuresInField ) {
-            int enclosurePosition = data.getEndBuffer();
-            int fieldFirstBytePosition = data.getStartBuffer();
+          } else if ( csvData.enclosureFound() && !ignoreEnclosuresInField ) {
+            int enclosurePosition = csvData.getEndBuffer();
+            int fieldFirstBytePosition = csvData.getStartBuffer();
             if ( fieldFirstBytePosition == enclosurePosition ) {
               // Perhaps we need to skip over an enclosed part?
               // We always expect exactly one enclosure character
@@ -669,24 +785,24 @@ public class CsvInput extends BaseStep implements StepInterface {
               enclosureFound = true;
               boolean keepGoing;
               do {
-                if ( data.moveEndBufferPointer() ) {
+                if ( csvData.moveEndBufferPointer() ) {
                   enclosureFound = false;
                   break;
                 }
-                keepGoing = !data.enclosureFound();
+                keepGoing = !csvData.enclosureFound();
                 if ( !keepGoing ) {
                   // We found an enclosure character.
                   // Read another byte...
-                  if ( !data.endOfBuffer() && data.moveEndBufferPointer() ) {
+                  if ( !csvData.endOfBuffer() && csvData.moveEndBufferPointer() ) {
                     break;
                   }
-                  if ( data.enclosure.length > 1 ) {
-                    data.moveEndBufferPointer();
+                  if ( csvData.enclosure.length > 1 ) {
+                    csvData.moveEndBufferPointer();
                   }
                   // If this character is also an enclosure, we can consider the enclosure "escaped".
                   // As such, if this is an enclosure, we keep going...
                   //
-                  keepGoing = data.enclosureFound();
+                  keepGoing = csvData.enclosureFound();
                   if ( keepGoing ) {
                     escapedEnclosureFound++;
                   }
@@ -695,7 +811,7 @@ public class CsvInput extends BaseStep implements StepInterface {
 
               // Did we reach the end of the buffer?
               //
-              if ( data.endOfBuffer() ) {
+              if ( csvData.endOfBuffer() ) {
                 endOfBuffer = true;
                 break;
               }
@@ -704,7 +820,7 @@ public class CsvInput extends BaseStep implements StepInterface {
               ignoreEnclosuresInField = true;
             }
           } else {
-            if ( data.moveEndBufferPointer() ) {
+            if ( csvData.moveEndBufferPointer() ) {
               endOfBuffer = true;
               break;
             }
@@ -720,7 +836,7 @@ public class CsvInput extends BaseStep implements StepInterface {
         // data.byteBuffer[data.startBuffer]
         //
 
-        byte[] field = data.getField( delimiterFound, enclosureFound, newLineFound, endOfBuffer );
+        byte[] field = csvData.getField( delimiterFound, enclosureFound, newLineFound, endOfBuffer );
 
         // Did we have any escaped characters in there?
         //
@@ -728,11 +844,11 @@ public class CsvInput extends BaseStep implements StepInterface {
           if ( log.isRowLevel() ) {
             logRowlevel( "Escaped enclosures found in " + new String( field ) );
           }
-          field = data.removeEscapedEnclosures( field, escapedEnclosureFound );
+          field = csvData.removeEscapedEnclosures( field, escapedEnclosureFound );
         }
 
         final int currentFieldIndex = outputIndex++;
-        final int actualFieldIndex = data.fieldsMapping.fieldMetaIndex( currentFieldIndex );
+        final int actualFieldIndex = csvData.fieldsMapping.fieldMetaIndex( currentFieldIndex );
         if ( actualFieldIndex != FieldsMapping.FIELD_DOES_NOT_EXIST ) {
           if ( !skipRow ) {
             if ( meta.isLazyConversionActive() ) {
@@ -742,7 +858,7 @@ public class CsvInput extends BaseStep implements StepInterface {
               // The convert object uses binary storage as such we just have to ask the native type from it.
               // That will do the actual conversion.
               //
-              ValueMetaInterface sourceValueMeta = data.convertRowMeta.getValueMeta( actualFieldIndex );
+              ValueMetaInterface sourceValueMeta = csvData.convertRowMeta.getValueMeta( actualFieldIndex );
               try {
                 outputRowData[actualFieldIndex] = sourceValueMeta.convertBinaryStringToNativeType( field );
               } catch ( KettleValueException e ) {
@@ -769,46 +885,46 @@ public class CsvInput extends BaseStep implements StepInterface {
         // this will prevent the endBuffer from being incremented twice (once by this block and once in the
         // do-while loop below) and possibly skipping a newline character. This can occur if there is an
         // empty column at the end of the row (see the Jira case for details)
-        if ( ( !newLineFound && outputIndex < data.fieldsMapping.size() ) || ( newLineFound && doubleLineEnd ) ) {
+        if ( ( !newLineFound && outputIndex < csvData.fieldsMapping.size() ) || ( newLineFound && doubleLineEnd ) ) {
 
           int i = 0;
-          while ( ( !data.newLineFound() && ( i < data.delimiter.length ) ) ) {
-            data.moveEndBufferPointer();
+          while ( ( !csvData.newLineFound() && ( i < csvData.delimiter.length ) ) ) {
+            csvData.moveEndBufferPointer();
             i++;
           }
 
           switch ( meta.getFileFormatTypeNr() ) {
             case TextFileInputMeta.FILE_FORMAT_DOS:
-              if ( data.newLineFound() ) {
+              if ( csvData.newLineFound() ) {
                 if ( doubleLineEnd == true ) {
-                  data.moveEndBufferPointerXTimes( data.encodingType.getLength() );
+                  csvData.moveEndBufferPointerXTimes( csvData.encodingType.getLength() );
                 } else {
                   //Re-check for a new Line
-                  data.moveEndBufferPointerXTimes( data.encodingType.getLength() );
-                  if ( !data.newLineFound() ) {
+                  csvData.moveEndBufferPointerXTimes( csvData.encodingType.getLength() );
+                  if ( !csvData.newLineFound() ) {
                     throw new KettleFileException( BaseMessages.getString( PKG, "TextFileInput.Log.SingleLineFound" ) );
                   }
                 }
               }
               break;
             case TextFileInputMeta.FILE_FORMAT_MIXED:
-              if ( data.isCarriageReturn() || doubleLineEnd ) {
-                data.moveEndBufferPointerXTimes( data.encodingType.getLength() );
+              if ( csvData.isCarriageReturn() || doubleLineEnd ) {
+                csvData.moveEndBufferPointerXTimes( csvData.encodingType.getLength() );
               }
               break;
           }
         }
 
-        data.setStartBuffer( data.getEndBuffer() );
+        csvData.setStartBuffer( csvData.getEndBuffer() );
       }
 
       // See if we reached the end of the line.
       // If not, we need to skip the remaining items on the line until the next newline...
       //
-      if ( !newLineFound && !data.resizeBufferIfNeeded() ) {
+      if ( !newLineFound && !csvData.resizeBufferIfNeeded() ) {
         do {
-          data.moveEndBufferPointer();
-          if ( data.resizeBufferIfNeeded() ) {
+          csvData.moveEndBufferPointer();
+          if ( csvData.resizeBufferIfNeeded() ) {
             break; // nothing more to read.
           }
 
@@ -816,36 +932,36 @@ public class CsvInput extends BaseStep implements StepInterface {
           // fields. (imagine that)
           // In that particular case we want to use the same logic we use above (refactored a bit) to skip these fields.
 
-        } while ( !data.newLineFound() );
+        } while ( !csvData.newLineFound() );
 
-        if ( !data.resizeBufferIfNeeded() ) {
-          while ( data.newLineFound() ) {
-            data.moveEndBufferPointer();
-            if ( data.resizeBufferIfNeeded() ) {
+        if ( !csvData.resizeBufferIfNeeded() ) {
+          while ( csvData.newLineFound() ) {
+            csvData.moveEndBufferPointer();
+            if ( csvData.resizeBufferIfNeeded() ) {
               break; // nothing more to read.
             }
           }
         }
 
         // Make sure we start at the right position the next time around.
-        data.setStartBuffer( data.getEndBuffer() );
+        csvData.setStartBuffer( csvData.getEndBuffer() );
       }
 
       // Optionally add the current filename to the mix as well...
       //
       if ( meta.isIncludingFilename() && !Utils.isEmpty( meta.getFilenameField() ) ) {
         if ( meta.isLazyConversionActive() ) {
-          outputRowData[ data.filenameFieldIndex ] = data.binaryFilename;
+          outputRowData[ csvData.filenameFieldIndex ] = csvData.binaryFilename;
         } else {
-          outputRowData[ data.filenameFieldIndex ] = data.filenames[ data.filenr - 1 ];
+          outputRowData[ csvData.filenameFieldIndex ] = csvData.filenames[ csvData.filenr - 1 ];
         }
       }
 
-      if ( data.isAddingRowNumber ) {
-        outputRowData[ data.rownumFieldIndex ] = data.rowNumber++;
+      if ( csvData.isAddingRowNumber ) {
+        outputRowData[ csvData.rownumFieldIndex ] = csvData.rowNumber++;
       }
 
-      if ( !ignoreEnclosures ) {
+      if ( !ignoreEnclosures && !csvData.isParsingChunk() ) {
         incrementLinesInput();
       }
 
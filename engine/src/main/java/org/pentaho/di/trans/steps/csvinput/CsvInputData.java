@@ -48,6 +48,7 @@ public class CsvInputData extends BaseStepData implements StepDataInterface {
   private int startBuffer;
   private int endBuffer;
   private int bufferSize;
+  private boolean parsingChunk;
 
   public byte[] delimiter;
   public byte[] enclosure;
@@ -83,6 +84,12 @@ public class CsvInputData extends BaseStepData implements StepDataInterface {
 
   public FieldsMapping fieldsMapping;
 
+  /** The number of threads parsing the chunks of a file, 0 to parse on the step thread */
+  public int parserThreads;
+  /** The position of the first row in the current file, after the byte order mark and the header */
+  public long dataStartPosition;
+  public ParallelCsvReader parallelReader;
+
   /**
    * Data class for CsvInput step
    *
@@ -170,6 +177,11 @@ public class CsvInputData extends BaseStepData implements StepDataInterface {
    */
   boolean resizeBufferIfNeeded() throws IOException {
     if ( endOfBuffer() ) {
+      if ( parsingChunk ) {
+        // All there is to read is in the buffer already
+        return true;
+      }
+
       // Oops, we need to read more data...
       // Better resize this before we read other things in it...
       //
@@ -267,6 +279,10 @@ public class CsvInputData extends BaseStepData implements StepDataInterface {
   }
 
   void closeFile() throws KettleException {
+    if ( parallelReader != null ) {
+      parallelReader.close();
+      parallelReader = null;
+    }
     try {
       if ( fc != null ) {
         fc.close();
@@ -279,6 +295,51 @@ public class CsvInputData extends BaseStepData implements StepDataInterface {
     }
   }
 
+  /**
+   * Create the data to parse a chunk of the current file with on another thread. The delimiters, matchers and field
+   * mapping are shared, the metadata to convert the fields with is not as it isn't thread safe.
+   *
+   * @return the data for a chunk, the bytes of the chunk are set with {@link #setChunk(byte[], int)}
+   */
+  CsvInputData createChunkData() {
+    CsvInputData chunkData = new CsvInputData();
+    chunkData.outputRowMeta = outputRowMeta;
+    chunkData.convertRowMeta = convertRowMeta.clone();
+    chunkData.delimiter = delimiter;
+    chunkData.enclosure = enclosure;
+    chunkData.preferredBufferSize = preferredBufferSize;
+    chunkData.filenames = filenames;
+    chunkData.filenr = filenr;
+    chunkData.binaryFilename = binaryFilename;
+    chunkData.filenameFieldIndex = filenameFieldIndex;
+    chunkData.rownumFieldIndex = rownumFieldIndex;
+    chunkData.encodingType = encodingType;
+    chunkData.delimiterMatcher = delimiterMatcher;
+    chunkData.enclosureMatcher = enclosureMatcher;
+    chunkData.crLfMatcher = crLfMatcher;
+    chunkData.fieldsMapping = fieldsMapping;
+    chunkData.parsingChunk = true;
+    return chunkData;
+  }
+
+  /**
+   * Parse the given bytes instead of reading from a file. The array has to be a bit longer than the chunk so the
+   * delimiter can be matched at the end of it.
+   *
+   * @param bytes  the bytes of the chunk
+   * @param length the length of the chunk
+   */
+  void setChunk( byte[] bytes, int length ) {
+    byteBuffer = bytes;
+    bufferSize = length;
+    startBuffer = 0;
+    endBuffer = 0;
+  }
+
+  boolean isParsingChunk() {
+    return parsingChunk;
+  }
+
   int getStartBuffer() {
     return startBuffer;
   }
@@ -317,7 +378,7 @@ public class CsvInputData extends BaseStepData implements StepDataInterface {
    * @param bytesNeeded bytes to ensure are present in the buffer
    */
   private void checkMinimumBytesAvailable( int bytesNeeded ) throws IOException {
-    if ( bufferSize - endBuffer < bytesNeeded ) {
+    if ( !parsingChunk && bufferSize - endBuffer < bytesNeeded ) {
 
       int newSize = bufferSize - startBuffer + Math.max( preferredBufferSize, bytesNeeded );
       byte[] newByteBuffer = new byte[ newSize + 100 ];
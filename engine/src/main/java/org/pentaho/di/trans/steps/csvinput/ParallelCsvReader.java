@@ -0,0 +1,215 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2020 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.steps.csvinput;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.exception.KettleFileException;
+import org.pentaho.di.core.util.ExecutorUtil;
+
+/**
+ * Parses a file in chunks on a number of threads and hands out the rows in the order of the file.<br>
+ * <br>
+ * The file is cut in chunks of about the same size, a chunk always ends right after a line feed. Every chunk is read
+ * into a buffer of its own with a positional read and parsed by a thread of its own, with the same parser the step uses
+ * to read a file on its own thread.
+ * As a consequence a line feed always ends a row: fields with new lines in them, also enclosed ones, aren't supported.
+ * Only encodings with a single byte line feed can be cut this way.<br>
+ * <br>
+ * Only the step thread calls next() and close().
+ */
+public class ParallelCsvReader {
+
+  /** The number of bytes read at once while looking for the end of a chunk */
+  private static final int PROBE_SIZE = 64 * 1024;
+
+  /** The largest chunk there can be, when a line is longer than that the file can't be read this way */
+  private static final long MAXIMUM_CHUNK_SIZE = Integer.MAX_VALUE / 2;
+
+  private static final byte LINE_FEED = '\n';
+
+  private final CsvInput step;
+  private final CsvInputData data;
+  private final FileChannel channel;
+  private final long end;
+  private final int threads;
+  private final int chunkSize;
+  private final Deque<Future<List<Object>>> chunks = new ArrayDeque<>();
+  private final ByteBuffer probe = ByteBuffer.allocate( PROBE_SIZE );
+
+  private long position;
+  private List<Object> rows = Collections.emptyList();
+  private int rowIndex;
+
+  /**
+   * Start parsing.
+   *
+   * @param step
+   *          the step to parse the chunks with
+   * @param data
+   *          the data of the step, pointing to the current file
+   * @param channel
+   *          the channel of the current file
+   * @param start
+   *          the position of the first row in the file
+   * @param end
+   *          the size of the file
+   * @param threads
+   *          the number of chunks parsed at the same time
+   * @param chunkSize
+   *          the approximate number of bytes in a chunk
+   * @throws KettleException
+   *           in case the file can't be read
+   */
+  public ParallelCsvReader( CsvInput step, CsvInputData data, FileChannel channel, long start, long end,
+    int threads, int chunkSize ) throws KettleException {
+    this.step = step;
+    this.data = data;
+    this.channel = channel;
+    this.position = start;
+    this.end = end;
+    this.threads = threads;
+    this.chunkSize = chunkSize;
+
+    submitChunks();
+  }
+
+  /**
+   * @return the next row, the conversion error of the next row or null when all rows are read
+   * @throws KettleException
+   *           in case a chunk couldn't be read or parsed
+   */
+  public Object next() throws KettleException {
+    while ( rowIndex >= rows.size() ) {
+      Future<List<Object>> chunk = chunks.poll();
+      if ( chunk == null ) {
+        return null;
+      }
+      // Keep the threads busy while waiting for the oldest chunk
+      submitChunks();
+      rows = getRows( chunk );
+      rowIndex = 0;
+    }
+    return rows.get( rowIndex++ );
+  }
+
+  /**
+   * Stop parsing. The chunks being parsed are waited for, so the file can be closed afterwards.
+   */
+  public void close() {
+    for ( Future<List<Object>> chunk : chunks ) {
+      chunk.cancel( false );
+    }
+    for ( Future<List<Object>> chunk : chunks ) {
+      try {
+        chunk.get();
+      } catch ( InterruptedException e ) {
+        Thread.currentThread().interrupt();
+        break;
+      } catch ( CancellationException | ExecutionException e ) {
+        // Nobody is interested in the rows anymore
+      }
+    }
+    chunks.clear();
+    rows = Collections.emptyList();
+    rowIndex = 0;
+  }
+
+  private void submitChunks() throws KettleException {
+    while ( chunks.size() < threads && position < end ) {
+      final long chunkStart = position;
+      final long chunkEnd = findChunkEnd( chunkStart );
+      final CsvInputData chunkData = data.createChunkData();
+      chunks.add( ExecutorUtil.getExecutor().submit( () -> parseChunk( chunkData, chunkStart, chunkEnd ) ) );
+      position = chunkEnd;
+    }
+  }
+
+  /**
+   * @return the position right after the first line feed at least a chunk size after the start of the chunk
+   */
+  private long findChunkEnd( long chunkStart ) throws KettleException {
+    long probePosition = chunkStart + chunkSize;
+    try {
+      while ( probePosition < end ) {
+        if ( probePosition - chunkStart > MAXIMUM_CHUNK_SIZE ) {
+          throw new KettleFileException( "No line feed found in " + MAXIMUM_CHUNK_SIZE + " bytes after position "
+            + chunkStart + " of file '" + data.filenames[ data.filenr - 1 ] + "'" );
+        }
+        probe.clear();
+        int n = channel.read( probe, probePosition );
+        if ( n <= 0 ) {
+          break;
+        }
+        for ( int i = 0; i < n; i++ ) {
+          if ( probe.get( i ) == LINE_FEED ) {
+            return probePosition + i + 1;
+          }
+        }
+        probePosition += n;
+      }
+    } catch ( IOException e ) {
+      throw new KettleFileException( "Unable to read file '" + data.filenames[ data.filenr - 1 ] + "'", e );
+    }
+    return end;
+  }
+
+  private List<Object> parseChunk( CsvInputData chunkData, long chunkStart, long chunkEnd ) throws Exception {
+    int length = (int) ( chunkEnd - chunkStart );
+    byte[] bytes = new byte[ length + chunkData.delimiter.length + 100 ];
+    ByteBuffer buffer = ByteBuffer.wrap( bytes, 0, length );
+    while ( buffer.hasRemaining() ) {
+      if ( channel.read( buffer, chunkStart + buffer.position() ) < 0 ) {
+        throw new KettleFileException( "Unexpected end of file '" + data.filenames[ data.filenr - 1 ] + "' at position "
+          + ( chunkStart + buffer.position() ) );
+      }
+    }
+    chunkData.setChunk( bytes, length );
+    return step.parseChunk( chunkData );
+  }
+
+  private List<Object> getRows( Future<List<Object>> chunk ) throws KettleException {
+    try {
+      return chunk.get();
+    } catch ( InterruptedException e ) {
+      Thread.currentThread().interrupt();
+      throw new KettleException( "Interrupted while waiting for a chunk of the file to be parsed", e );
+    } catch ( ExecutionException e ) {
+      if ( e.getCause() instanceof KettleException ) {
+        throw (KettleException) e.getCause();
+      }
+      throw new KettleFileException( "Unable to parse a chunk of file '" + data.filenames[ data.filenr - 1 ] + "'",
+        e.getCause() );
+    }
+  }
+}
@@ -22,10 +22,25 @@
 
 package org.pentaho.di.trans.steps.databasejoin;
 
+import java.sql.Connection;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Pattern;
 
+import org.pentaho.di.core.Const;
+import org.pentaho.di.core.RowMetaAndData;
 import org.pentaho.di.core.database.Database;
+import org.pentaho.di.core.exception.KettleDatabaseException;
 import org.pentaho.di.core.exception.KettleException;
 import org.pentaho.di.core.exception.KettleStepException;
 import org.pentaho.di.core.row.RowDataUtil;
@@ -49,6 +64,14 @@ import org.pentaho.di.trans.step.StepMetaInterface;
 public class DatabaseJoin extends BaseStep implements StepInterface {
   private static Class<?> PKG = DatabaseJoinMeta.class; // for i18n purposes, needed by Translator2!!
 
+  /** A batch holds at most this many times the batch size in rows, when many rows have the same parameters */
+  private static final int BATCH_ROWS_FACTOR = 10;
+
+  /** Databases limit the number of parameters of a statement */
+  private static final int MAXIMUM_BATCH_PARAMETERS = 1000;
+
+  private static final Pattern ORDER_BY = Pattern.compile( "\\bORDER\\s+BY\\b", Pattern.CASE_INSENSITIVE );
+
   private final ReentrantLock dbLock = new ReentrantLock();
 
   public DatabaseJoin( StepMeta stepMeta, StepDataInterface stepDataInterface, int copyNr, TransMeta transMeta,
@@ -63,36 +86,11 @@ public class DatabaseJoin extends BaseStep implements StepInterface {
     try {
       if ( first ) {
         first = false;
-
-        data.outputRowMeta = rowMeta.clone();
-        meta.getFields(
-            data.outputRowMeta, getStepname(), new RowMetaInterface[] { meta.getTableFields(), }, null, this,
-            repository, metaStore );
-
-        data.lookupRowMeta = new RowMeta();
-
-        if ( log.isDetailed() ) {
-          logDetailed( BaseMessages.getString( PKG, "DatabaseJoin.Log.CheckingRow" ) + rowMeta.getString( rowData ) );
-        }
-
-        data.keynrs = new int[meta.getParameterField().length];
-
-        for ( int i = 0; i < meta.getParameterField().length; i++ ) {
-          data.keynrs[i] = rowMeta.indexOfValue( meta.getParameterField()[i] );
-          if ( data.keynrs[i] < 0 ) {
-            throw new KettleStepException( BaseMessages.getString( PKG, "DatabaseJoin.Exception.FieldNotFound", meta
-                .getParameterField()[i] ) );
-          }
-
-          data.lookupRowMeta.addValueMeta( rowMeta.getValueMeta( data.keynrs[i] ).clone() );
-        }
+        initLookup( meta, data, rowMeta, rowData );
       }
 
       // Construct the parameters row...
-      Object[] lookupRowData = new Object[data.lookupRowMeta.size()];
-      for ( int i = 0; i < data.keynrs.length; i++ ) {
-        lookupRowData[i] = rowData[data.keynrs[i]];
-      }
+      Object[] lookupRowData = getParameters( data, rowData );
 
       // Set the values on the prepared statement (for faster exec.)
       rs = data.db.openQuery( data.pstmt, data.lookupRowMeta, lookupRowData );
@@ -149,19 +147,258 @@ public class DatabaseJoin extends BaseStep implements StepInterface {
     }
   }
 
-  public boolean processRow( StepMetaInterface smi, StepDataInterface sdi ) throws KettleException {
+  private void initLookup( DatabaseJoinMeta meta, DatabaseJoinData data, RowMetaInterface rowMeta,
+      Object[] rowData ) throws KettleException {
+    data.outputRowMeta = rowMeta.clone();
+    meta.getFields(
+        data.outputRowMeta, getStepname(), new RowMetaInterface[] { meta.getTableFields(), }, null, this,
+        repository, metaStore );
 
-    boolean sendToErrorRow = false;
-    String errorMessage = null;
+    data.lookupRowMeta = new RowMeta();
+
+    if ( log.isDetailed() ) {
+      logDetailed( BaseMessages.getString( PKG, "DatabaseJoin.Log.CheckingRow" ) + rowMeta.getString( rowData ) );
+    }
+
+    data.keynrs = new int[meta.getParameterField().length];
+
+    for ( int i = 0; i < meta.getParameterField().length; i++ ) {
+      data.keynrs[i] = rowMeta.indexOfValue( meta.getParameterField()[i] );
+      if ( data.keynrs[i] < 0 ) {
+        throw new KettleStepException( BaseMessages.getString( PKG, "DatabaseJoin.Exception.FieldNotFound", meta
+            .getParameterField()[i] ) );
+      }
+
+      data.lookupRowMeta.addValueMeta( rowMeta.getValueMeta( data.keynrs[i] ).clone() );
+    }
+  }
+
+  private Object[] getParameters( DatabaseJoinData data, Object[] rowData ) {
+    Object[] lookupRowData = new Object[data.lookupRowMeta.size()];
+    for ( int i = 0; i < data.keynrs.length; i++ ) {
+      lookupRowData[i] = rowData[data.keynrs[i]];
+    }
+    return lookupRowData;
+  }
+
+  /**
+   * Hold an input row until the query is run for its batch.
+   */
+  private void addToBatch( DatabaseJoinMeta meta, DatabaseJoinData data, RowMetaInterface rowMeta,
+      Object[] rowData ) throws KettleException {
+    if ( first ) {
+      first = false;
+      initLookup( meta, data, rowMeta, rowData );
+    }
+    data.batchRows.add( rowData );
+    data.batchParameters.putIfAbsent( new RowMetaAndData( data.lookupRowMeta, getParameters( data, rowData ) ),
+      data.batchParameters.size() );
+  }
+
+  /**
+   * Run the query for the distinct parameters of the batch, then join the input rows in their original order.
+   *
+   * @return false if the step has to stop
+   */
+  private boolean joinBatch( DatabaseJoinMeta meta, DatabaseJoinData data ) throws KettleException {
+    List<Object[]> rows = data.batchRows;
+    Map<RowMetaAndData, Integer> parameters = data.batchParameters;
+    data.batchRows = new ArrayList<>();
+    data.batchParameters = new LinkedHashMap<>();
+
+    Map<Integer, List<Object[]>> results = queryBatchOrStopBatching( data, new ArrayList<>( parameters.keySet() ) );
+    if ( results == null && data.isCanceled ) {
+      setOutputDone(); // signal end to receiver(s)
+      return false;
+    }
+
+    for ( Object[] row : rows ) {
+      List<Object[]> result = null;
+      if ( results != null ) {
+        Integer index = parameters.get( new RowMetaAndData( data.lookupRowMeta, getParameters( data, row ) ) );
+        result = results.getOrDefault( index, Collections.<Object[]>emptyList() );
+      }
+      if ( !joinRow( meta, data, row, result ) ) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Run the query for the parameter rows of a batch. If that fails the batch is rolled back, so the transaction can
+   * still be used, and the step stops batching: a statement the database rejects once is rejected for every batch.
+   * The query is then run for every row, which reports the error on the right row.
+   *
+   * @return the rows found for the parameter rows, null if the query has to be run for every row
+   */
+  Map<Integer, List<Object[]>> queryBatchOrStopBatching( DatabaseJoinData data, List<RowMetaAndData> parameters )
+    throws KettleException {
+    Savepoint savepoint = data.batchSavepoints ? data.db.setSavepoint() : null;
+    Map<Integer, List<Object[]>> results;
+    try {
+      results = queryBatch( data, parameters );
+    } catch ( KettleException e ) {
+      if ( data.isCanceled ) {
+        return null;
+      }
+      if ( savepoint != null ) {
+        data.db.rollback( savepoint );
+      } else if ( data.batchInTransaction ) {
+        data.db.rollback();
+      }
+      logBasic( BaseMessages.getString( PKG, "DatabaseJoin.Log.BatchQueryFailed" ) + e.getMessage() );
+      data.batchSize = 0;
+      return null;
+    }
+    if ( savepoint != null && data.db.getDatabaseMeta().getDatabaseInterface().releaseSavepoint() ) {
+      data.db.releaseSavepoint( savepoint );
+    }
+    return results;
+  }
+
+  /**
+   * Run the query for a list of parameter rows, as many as fit in a statement at a time. Every parameter row gets its
+   * own copy of the query in a UNION ALL, its rows are tagged with its position.
+   *
+   * @return the rows found for the parameter rows, by position in the list
+   */
+  Map<Integer, List<Object[]>> queryBatch( DatabaseJoinData data, List<RowMetaAndData> parameters )
+    throws KettleException {
+    Map<Integer, List<Object[]>> results = new HashMap<>();
+    int parameterCount = data.lookupRowMeta.size();
+
+    for ( int start = 0; start < parameters.size(); start += data.batchSize ) {
+      int count = Math.min( data.batchSize, parameters.size() - start );
+      RowMetaInterface parameterMeta = new RowMeta();
+      Object[] parameterData = new Object[count * parameterCount];
+      for ( int k = 0; k < count; k++ ) {
+        RowMetaAndData parameterRow = parameters.get( start + k );
+        for ( int i = 0; i < parameterCount; i++ ) {
+          parameterMeta.addValueMeta( data.lookupRowMeta.getValueMeta( i ).clone() );
+          parameterData[k * parameterCount + i] = parameterRow.getData()[i];
+        }
+      }
+
+      List<Object[]> rows = new ArrayList<>();
+      PreparedStatement statement;
+      dbLock.lock();
+      try {
+        statement = getBatchStatement( data, count );
+      } finally {
+        dbLock.unlock();
+      }
+      // Not holding the lock while the query runs lets stopRunning() cancel it
+      data.db.getRows( statement, parameterMeta, parameterData, rows );
+      for ( Object[] row : rows ) {
+        int index = start + ( (Number) row[0] ).intValue();
+        results.computeIfAbsent( index, k -> new ArrayList<>() ).add( Arrays.copyOfRange( row, 1, row.length ) );
+      }
+    }
+    return results;
+  }
+
+  /**
+   * @return the statement running the query for a number of parameter rows, prepared the first time it's needed
+   */
+  private PreparedStatement getBatchStatement( DatabaseJoinData data, int count ) throws KettleDatabaseException {
+    PreparedStatement statement = data.batchStatements.get( count );
+    if ( statement == null ) {
+      StringBuilder sql = new StringBuilder();
+      for ( int k = 0; k < count; k++ ) {
+        if ( k > 0 ) {
+          sql.append( " UNION ALL " );
+        }
+        // The line break ends a trailing comment in the query
+        sql.append( "SELECT " ).append( k ).append( " AS KETTLE_BATCH_ROW, q" ).append( k ).append( ".* FROM ( " )
+          .append( data.batchSQL ).append( "\n) q" ).append( k );
+      }
+      statement = data.db.prepareSQL( sql.toString() );
+      data.batchStatements.put( count, statement );
+    }
+    return statement;
+  }
+
+  /**
+   * Add the rows found for an input row and pass them on.
+   */
+  private void putBatchResult( DatabaseJoinMeta meta, DatabaseJoinData data, RowMetaInterface rowMeta,
+      Object[] rowData, List<Object[]> result ) throws KettleException {
+    incrementLinesInput();
+    for ( Object[] add : result ) {
+      Object[] newRow = RowDataUtil.resizeArray( rowData, data.outputRowMeta.size() );
+      int newIndex = rowMeta.size();
+      for ( int i = 0; i < add.length; i++ ) {
+        newRow[newIndex++] = add[i];
+      }
+      // we have to clone, otherwise we only get the last new value
+      putRow( data.outputRowMeta, data.outputRowMeta.cloneRow( newRow ) );
+      incrementLinesInput();
+
+      if ( log.isRowLevel() ) {
+        logRowlevel( BaseMessages.getString( PKG, "DatabaseJoin.Log.PutoutRow" )
+            + data.outputRowMeta.getString( newRow ) );
+      }
+    }
+
+    // Nothing found? Perhaps we have to put something out after all?
+    if ( result.isEmpty() && meta.isOuterJoin() ) {
+      Object[] newRow = RowDataUtil.resizeArray( rowData, data.outputRowMeta.size() );
+      for ( int i = rowMeta.size(); i < newRow.length; i++ ) {
+        newRow[i] = null;
+      }
+      putRow( data.outputRowMeta, newRow );
+    }
+  }
+
+  public boolean processRow( StepMetaInterface smi, StepDataInterface sdi ) throws KettleException {
+    DatabaseJoinMeta meta = (DatabaseJoinMeta) smi;
+    DatabaseJoinData data = (DatabaseJoinData) sdi;
 
     Object[] r = getRow(); // Get row from input rowset & set row busy!
     if ( r == null ) { // no more input to be expected...
+      if ( !data.batchRows.isEmpty() && !joinBatch( meta, data ) ) {
+        return false;
+      }
       setOutputDone();
       return false;
     }
 
+    if ( data.batchSize > 0 ) {
+      try {
+        addToBatch( meta, data, getInputRowMeta(), r );
+      } catch ( KettleException e ) {
+        logError( BaseMessages.getString( PKG, "DatabaseJoin.Log.ErrorInStepRunning" ) + e.getMessage(), e );
+        setErrors( 1 );
+        stopAll();
+        setOutputDone(); // signal end to receiver(s)
+        return false;
+      }
+      if ( data.batchParameters.size() >= data.batchSize
+        || data.batchRows.size() >= BATCH_ROWS_FACTOR * data.batchSize ) {
+        return joinBatch( meta, data );
+      }
+      return true;
+    }
+    return joinRow( meta, data, r, null );
+  }
+
+  /**
+   * Join an input row with the rows found in the database, run the query for it unless the batch found them.
+   *
+   * @return false if the step has to stop
+   */
+  private boolean joinRow( DatabaseJoinMeta meta, DatabaseJoinData data, Object[] r, List<Object[]> batchResult )
+    throws KettleException {
+    boolean sendToErrorRow = false;
+    String errorMessage = null;
+
     try {
-      lookupValues( (DatabaseJoinMeta) smi, (DatabaseJoinData) sdi, getInputRowMeta(), r ); // add new values to the row in rowset[0].
+      if ( batchResult != null ) {
+        putBatchResult( meta, data, getInputRowMeta(), r, batchResult );
+      } else {
+        lookupValues( meta, data, getInputRowMeta(), r ); // add new values to the row in rowset[0].
+      }
       if ( checkFeedback( getLinesRead() ) ) {
         if ( log.isBasic() ) {
           logBasic( BaseMessages.getString( PKG, "DatabaseJoin.Log.LineNumber" ) + getLinesRead() );
@@ -207,6 +444,9 @@ public class DatabaseJoin extends BaseStep implements StepInterface {
     try {
       if ( data.db != null && data.db.getConnection() != null && !data.isCanceled ) {
         data.db.cancelStatement( data.pstmt );
+        for ( PreparedStatement statement : data.batchStatements.values() ) {
+          data.db.cancelStatement( statement );
+        }
         setStopped( true );
         data.isCanceled = true;
       }
@@ -254,6 +494,7 @@ public class DatabaseJoin extends BaseStep implements StepInterface {
             logDebug( BaseMessages.getString( PKG, "DatabaseJoin.Log.SQLStatement", sql ) );
           }
           data.db.setQueryLimit( meta.getRowLimit() );
+          initBatch( meta, data, sql );
 
           return true;
         } catch ( KettleException e ) {
@@ -270,11 +511,51 @@ public class DatabaseJoin extends BaseStep implements StepInterface {
     return false;
   }
 
+  /**
+   * Run the query for several input rows at once if the variable KETTLE_DATABASE_LOOKUP_BATCH_SIZE is set. The order
+   * of the rows found for an input row would get lost, so queries with an ORDER BY are run for every row. So are
+   * queries with a row limit.
+   */
+  private void initBatch( DatabaseJoinMeta meta, DatabaseJoinData data, String sql ) throws KettleDatabaseException {
+    data.batchSize = Const.toInt( getVariable( Const.KETTLE_DATABASE_LOOKUP_BATCH_SIZE ), 0 );
+    if ( data.batchSize <= 0 || meta.getRowLimit() > 0 || sql == null || ORDER_BY.matcher( sql ).find() ) {
+      data.batchSize = 0;
+      return;
+    }
+    int parameterCount = meta.getParameterField().length;
+    data.batchSize =
+      Math.max( 1, Math.min( data.batchSize, MAXIMUM_BATCH_PARAMETERS / Math.max( 1, parameterCount ) ) );
+
+    String query = sql.trim();
+    while ( query.endsWith( ";" ) ) {
+      query = query.substring( 0, query.length() - 1 ).trim();
+    }
+    data.batchSQL = query;
+    try {
+      Connection connection = data.db.getConnection();
+      data.batchInTransaction = !connection.getAutoCommit();
+      data.batchSavepoints = data.batchInTransaction && connection.getMetaData().supportsSavepoints();
+    } catch ( SQLException e ) {
+      throw new KettleDatabaseException( e );
+    }
+    if ( log.isDetailed() ) {
+      logDetailed( BaseMessages.getString( PKG, "DatabaseJoin.Log.BatchQuery", String.valueOf( data.batchSize ) ) );
+    }
+  }
+
   public void dispose( StepMetaInterface smi, StepDataInterface sdi ) {
     final DatabaseJoinData data = (DatabaseJoinData) sdi;
     dbLock.lock();
     try {
       if ( data.db != null ) {
+        for ( PreparedStatement statement : data.batchStatements.values() ) {
+          try {
+            data.db.closePreparedStatement( statement );
+          } catch ( KettleDatabaseException e ) {
+            logError( e.getMessage() );
+          }
+        }
+        data.batchStatements.clear();
         data.db.disconnect();
       }
       super.dispose( smi, sdi );
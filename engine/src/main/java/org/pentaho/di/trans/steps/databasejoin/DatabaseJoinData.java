@@ -23,7 +23,13 @@
 package org.pentaho.di.trans.steps.databasejoin;
 
 import java.sql.PreparedStatement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
+import org.pentaho.di.core.RowMetaAndData;
 import org.pentaho.di.core.database.Database;
 import org.pentaho.di.core.row.RowMetaInterface;
 import org.pentaho.di.trans.step.BaseStepData;
@@ -44,6 +50,16 @@ public class DatabaseJoinData extends BaseStepData implements StepDataInterface
   public Object[] notfound; // Values in case nothing is found...
   public boolean isCanceled;
 
+  // Batched queries
+  //
+  public int batchSize; // the number of parameter rows to run the query for at once, 0 to run it for every row
+  public String batchSQL;
+  public Map<Integer, PreparedStatement> batchStatements = new HashMap<>(); // by number of parameter rows
+  public List<Object[]> batchRows = new ArrayList<>(); // the input rows waiting for their batch
+  public Map<RowMetaAndData, Integer> batchParameters = new LinkedHashMap<>(); // the distinct parameter rows
+  public boolean batchInTransaction; // a failed batch has to be rolled back before the query is run for every row
+  public boolean batchSavepoints; // the batch is rolled back to a savepoint instead of rolling back the transaction
+
   public DatabaseJoinData() {
     super();
   }
@@ -22,11 +22,19 @@
 
 package org.pentaho.di.trans.steps.databaselookup;
 
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.pentaho.di.core.Const;
+import org.pentaho.di.core.LookupCacheRegistry;
+import org.pentaho.di.core.RowMetaAndData;
 import org.pentaho.di.core.row.value.ValueMetaBase;
 import org.pentaho.di.core.util.Utils;
 import org.pentaho.di.core.database.Database;
@@ -61,6 +69,15 @@ import com.google.common.annotations.VisibleForTesting;
 public class DatabaseLookup extends BaseStep implements StepInterface {
   private static Class<?> PKG = DatabaseLookupMeta.class; // for i18n purposes, needed by Translator2!!
 
+  /** A batch holds at most this many times the batch size in rows, when most keys are found in the cache */
+  private static final int BATCH_ROWS_FACTOR = 10;
+
+  /** Databases limit the number of parameters of a statement, Oracle takes at most 1000 values in an IN list */
+  private static final int MAXIMUM_BATCH_PARAMETERS = 1000;
+
+  static final Object[] NOT_FOUND = new Object[ 0 ];
+  static final Object[] MULTIPLE_RESULTS = new Object[ 0 ];
+
   private DatabaseLookupMeta meta;
   private DatabaseLookupData data;
 
@@ -79,49 +96,12 @@ public class DatabaseLookup extends BaseStep implements StepInterface {
   @VisibleForTesting
   synchronized Object[] lookupValues( RowMetaInterface inputRowMeta, Object[] row ) throws KettleException {
     Object[] outputRow = RowDataUtil.resizeArray( row, data.outputRowMeta.size() );
-
-    Object[] lookupRow = new Object[ data.lookupMeta.size() ];
-    int lookupIndex = 0;
-
-    for ( int i = 0; i < meta.getStreamKeyField1().length; i++ ) {
-      if ( data.keynrs[ i ] >= 0 ) {
-        ValueMetaInterface input = inputRowMeta.getValueMeta( data.keynrs[ i ] );
-        ValueMetaInterface value = data.lookupMeta.getValueMeta( lookupIndex );
-        lookupRow[ lookupIndex ] = row[ data.keynrs[ i ] ];
-
-        // Try to convert type if needed
-        if ( input.getType() != value.getType()
-          || ValueMetaInterface.STORAGE_TYPE_BINARY_STRING == input.getStorageType() ) {
-          lookupRow[ lookupIndex ] = value.convertData( input, lookupRow[ lookupIndex ] );
-          value.setStorageType( ValueMetaInterface.STORAGE_TYPE_NORMAL );
-        }
-
-        //If input is of type date and its mask does not contain time then we should trim the time part from the date
-        //otherwise we will clog the database lookup cache with to many entries
-        if ( input.getType() == ValueMetaInterface.TYPE_DATE && isTimelessMask( input.getConversionMask() ) ) {
-          lookupRow[lookupIndex] = Const.trimDate( (Date) lookupRow[lookupIndex] );
-        }
-
-        lookupIndex++;
-      }
-      if ( data.keynrs2[ i ] >= 0 ) {
-        ValueMetaInterface input = inputRowMeta.getValueMeta( data.keynrs2[ i ] );
-        ValueMetaInterface value = data.lookupMeta.getValueMeta( lookupIndex );
-        lookupRow[ lookupIndex ] = row[ data.keynrs2[ i ] ];
-
-        // Try to convert type if needed
-        if ( input.getType() != value.getType()
-          || ValueMetaInterface.STORAGE_TYPE_BINARY_STRING == input.getStorageType() ) {
-          lookupRow[ lookupIndex ] = value.convertData( input, lookupRow[ lookupIndex ] );
-          value.setStorageType( ValueMetaInterface.STORAGE_TYPE_NORMAL );
-        }
-        lookupIndex++;
-      }
-    }
+    Object[] lookupRow = getLookupRow( inputRowMeta, row );
 
     Object[] add;
     boolean cache_now = false;
     boolean cacheHit = false;
+    RowMetaInterface returnRowMeta = null;
 
     // First, check if we looked up before
     if ( meta.isCached() ) {
@@ -138,15 +118,29 @@ public class DatabaseLookup extends BaseStep implements StepInterface {
         // database when all rows
         // are in (exception LIKE
         // operator)
-        if ( log.isRowLevel() ) {
-          logRowlevel( BaseMessages.getString( PKG, "DatabaseLookup.Log.AddedValuesToLookupRow1" )
-            + meta.getStreamKeyField1().length
-            + BaseMessages.getString( PKG, "DatabaseLookup.Log.AddedValuesToLookupRow2" )
-            + data.lookupMeta.getString( lookupRow ) );
+        Object[] batchResult = null;
+        if ( data.batchResults != null ) {
+          batchResult = data.batchResults.get( new RowMetaAndData( data.lookupMeta, lookupRow ) );
         }
+        if ( batchResult == MULTIPLE_RESULTS ) {
+          throw new KettleDatabaseException(
+            "Only 1 row was expected as a result of a lookup, and at least 2 were found!" );
+        } else if ( batchResult != null ) {
+          // Found in the batch, the same result can be used for several rows
+          add = batchResult == NOT_FOUND ? null : batchResult.clone();
+          returnRowMeta = data.batchReturnMeta;
+        } else {
+          if ( log.isRowLevel() ) {
+            logRowlevel( BaseMessages.getString( PKG, "DatabaseLookup.Log.AddedValuesToLookupRow1" )
+              + meta.getStreamKeyField1().length
+              + BaseMessages.getString( PKG, "DatabaseLookup.Log.AddedValuesToLookupRow2" )
+              + data.lookupMeta.getString( lookupRow ) );
+          }
 
-        data.db.setValuesLookup( data.lookupMeta, lookupRow );
-        add = data.db.getLookup( meta.isFailingOnMultipleResults() );
+          data.db.setValuesLookup( data.lookupMeta, lookupRow );
+          add = data.db.getLookup( meta.isFailingOnMultipleResults() );
+          returnRowMeta = data.db.getReturnRowMeta();
+        }
         cache_now = true;
       }
     }
@@ -191,7 +185,7 @@ public class DatabaseLookup extends BaseStep implements StepInterface {
         // that should not be a problem.
         //
         for ( int i = 0; i < types.length; i++ ) {
-          ValueMetaInterface returned = data.db.getReturnRowMeta().getValueMeta( i );
+          ValueMetaInterface returned = returnRowMeta.getValueMeta( i );
           ValueMetaInterface expected = data.returnMeta.getValueMeta( i );
 
           if ( returned != null && types[ i ] > 0 && types[ i ] != returned.getType() ) {
@@ -216,6 +210,51 @@ public class DatabaseLookup extends BaseStep implements StepInterface {
     return outputRow;
   }
 
+  /**
+   * @return the key values of an input row, converted to the types of the table
+   */
+  private Object[] getLookupRow( RowMetaInterface inputRowMeta, Object[] row ) throws KettleException {
+    Object[] lookupRow = new Object[ data.lookupMeta.size() ];
+    int lookupIndex = 0;
+
+    for ( int i = 0; i < meta.getStreamKeyField1().length; i++ ) {
+      if ( data.keynrs[ i ] >= 0 ) {
+        ValueMetaInterface input = inputRowMeta.getValueMeta( data.keynrs[ i ] );
+        ValueMetaInterface value = data.lookupMeta.getValueMeta( lookupIndex );
+        lookupRow[ lookupIndex ] = row[ data.keynrs[ i ] ];
+
+        // Try to convert type if needed
+        if ( input.getType() != value.getType()
+          || ValueMetaInterface.STORAGE_TYPE_BINARY_STRING == input.getStorageType() ) {
+          lookupRow[ lookupIndex ] = value.convertData( input, lookupRow[ lookupIndex ] );
+          value.setStorageType( ValueMetaInterface.STORAGE_TYPE_NORMAL );
+        }
+
+        //If input is of type date and its mask does not contain time then we should trim the time part from the date
+        //otherwise we will clog the database lookup cache with to many entries
+        if ( input.getType() == ValueMetaInterface.TYPE_DATE && isTimelessMask( input.getConversionMask() ) ) {
+          lookupRow[lookupIndex] = Const.trimDate( (Date) lookupRow[lookupIndex] );
+        }
+
+        lookupIndex++;
+      }
+      if ( data.keynrs2[ i ] >= 0 ) {
+        ValueMetaInterface input = inputRowMeta.getValueMeta( data.keynrs2[ i ] );
+        ValueMetaInterface value = data.lookupMeta.getValueMeta( lookupIndex );
+        lookupRow[ lookupIndex ] = row[ data.keynrs2[ i ] ];
+
+        // Try to convert type if needed
+        if ( input.getType() != value.getType()
+          || ValueMetaInterface.STORAGE_TYPE_BINARY_STRING == input.getStorageType() ) {
+          lookupRow[ lookupIndex ] = value.convertData( input, lookupRow[ lookupIndex ] );
+          value.setStorageType( ValueMetaInterface.STORAGE_TYPE_NORMAL );
+        }
+        lookupIndex++;
+      }
+    }
+    return lookupRow;
+  }
+
   @VisibleForTesting
   boolean isTimelessMask( String dateMask ) {
     if ( dateMask == null ) {
@@ -357,6 +396,10 @@ public class DatabaseLookup extends BaseStep implements StepInterface {
   public boolean processRow( StepMetaInterface smi, StepDataInterface sdi ) throws KettleException {
     Object[] r = getRow(); // Get row from input rowset & set row busy!
     if ( r == null ) { // no more input to be expected...
+      data = (DatabaseLookupData) sdi;
+      if ( !data.batchRows.isEmpty() && !lookupBatch() ) {
+        return false;
+      }
       setOutputDone();
       return false;
     }
@@ -413,10 +456,6 @@ public class DatabaseLookup extends BaseStep implements StepInterface {
         }
       }
 
-      if ( meta.isCached() ) {
-        data.cache = DefaultCache.newCache( data, meta.getCacheSize() );
-      }
-
       determineFieldsTypesQueryingDb();
 
       initNullIf();
@@ -425,12 +464,15 @@ public class DatabaseLookup extends BaseStep implements StepInterface {
 
       initReturnMeta();
 
-      // If the user selected to load all data into the cache at startup, that's what we do now...
-      //
-      if ( meta.isCached() && meta.isLoadingAllDataInCache() ) {
-        loadAllTableDataIntoTheCache();
+      if ( meta.isCached() ) {
+        if ( isSharingCache() ) {
+          attachSharedCache();
+        } else {
+          data.cache = loadCache( data );
+        }
       }
 
+      initBatch();
     }
 
     if ( log.isRowLevel() ) {
@@ -438,6 +480,22 @@ public class DatabaseLookup extends BaseStep implements StepInterface {
         + getInputRowMeta().getString( r ) );
     }
 
+    if ( data.batchSize > 0 ) {
+      addToBatch( r );
+      if ( data.batchKeys.size() >= data.batchSize || data.batchRows.size() >= BATCH_ROWS_FACTOR * data.batchSize ) {
+        return lookupBatch();
+      }
+      return true;
+    }
+    return processLookupRow( r );
+  }
+
+  /**
+   * Look up the values of an input row and pass it on, or send it to the error handling.
+   *
+   * @return false if the step has to stop
+   */
+  private boolean processLookupRow( Object[] r ) throws KettleException {
     try {
       // add new lookup values to the row
       Object[] outputRow = lookupValues( getInputRowMeta(), r );
@@ -470,7 +528,295 @@ public class DatabaseLookup extends BaseStep implements StepInterface {
     return true;
   }
 
-  private void loadAllTableDataIntoTheCache() throws KettleException {
+  /**
+   * Look up several keys at once if the variable KETTLE_DATABASE_LOOKUP_BATCH_SIZE is set: only keys compared with "="
+   * can be looked up with a list of values. The query is prepared for a full batch, the last key is repeated to fill
+   * it up.
+   */
+  private void initBatch() throws KettleException {
+    data.batchSize = Const.toInt( getVariable( Const.KETTLE_DATABASE_LOOKUP_BATCH_SIZE ), 0 );
+    if ( data.batchSize <= 0 || data.lookupMeta.size() == 0
+      || ( meta.isCached() && meta.isLoadingAllDataInCache() ) ) {
+      data.batchSize = 0;
+      return;
+    }
+    for ( int i = 0; i < data.conditions.length; i++ ) {
+      if ( data.conditions[ i ] != DatabaseLookupMeta.CONDITION_EQ ) {
+        data.batchSize = 0;
+        return;
+      }
+    }
+
+    int keyCount = data.lookupMeta.size();
+    data.batchSize = Math.max( 1, Math.min( data.batchSize, MAXIMUM_BATCH_PARAMETERS / keyCount ) );
+
+    DatabaseMeta dbMeta = meta.getDatabaseMeta();
+    String[] keyFields = meta.getTableKeyField();
+    StringBuilder sql = new StringBuilder( "SELECT " );
+    for ( int i = 0; i < keyFields.length; i++ ) {
+      sql.append( dbMeta.quoteField( keyFields[ i ] ) ).append( ", " );
+    }
+    for ( int i = 0; i < meta.getReturnValueField().length; i++ ) {
+      if ( i > 0 ) {
+        sql.append( ", " );
+      }
+      sql.append( dbMeta.quoteField( meta.getReturnValueField()[ i ] ) );
+    }
+    sql.append( " FROM " ).append( dbMeta.getQuotedSchemaTableCombination(
+      environmentSubstitute( meta.getSchemaName() ), environmentSubstitute( meta.getTablename() ) ) );
+    sql.append( " WHERE " );
+
+    data.batchParameterMeta = new RowMeta();
+    if ( keyCount == 1 ) {
+      sql.append( dbMeta.quoteField( keyFields[ 0 ] ) ).append( " IN ( " );
+      for ( int k = 0; k < data.batchSize; k++ ) {
+        sql.append( k == 0 ? "?" : ", ?" );
+        data.batchParameterMeta.addValueMeta( data.lookupMeta.getValueMeta( 0 ).clone() );
+      }
+      sql.append( " )" );
+    } else {
+      for ( int k = 0; k < data.batchSize; k++ ) {
+        sql.append( k == 0 ? "( " : " OR ( " );
+        for ( int i = 0; i < keyCount; i++ ) {
+          if ( i > 0 ) {
+            sql.append( " AND " );
+          }
+          sql.append( dbMeta.quoteField( keyFields[ i ] ) ).append( " = ?" );
+          data.batchParameterMeta.addValueMeta( data.lookupMeta.getValueMeta( i ).clone() );
+        }
+        sql.append( " )" );
+      }
+    }
+    String orderBy = meta.getOrderByClause();
+    if ( !Utils.isEmpty( orderBy ) ) {
+      sql.append( " ORDER BY " ).append( orderBy );
+    }
+
+    data.batchStatement = data.db.prepareSQL( sql.toString() );
+    try {
+      Connection connection = data.db.getConnection();
+      data.batchInTransaction = !connection.getAutoCommit();
+      data.batchSavepoints = data.batchInTransaction && connection.getMetaData().supportsSavepoints();
+    } catch ( SQLException e ) {
+      throw new KettleDatabaseException( e );
+    }
+    if ( log.isDetailed() ) {
+      logDetailed( BaseMessages.getString( PKG, "DatabaseLookup.Log.BatchLookup", String.valueOf( data.batchSize ) ) );
+    }
+  }
+
+  /**
+   * Hold an input row until its batch is looked up. The keys that aren't in the cache are looked up with the batch.
+   */
+  private void addToBatch( Object[] r ) throws KettleException {
+    data.batchRows.add( r );
+    Object[] lookupRow;
+    try {
+      lookupRow = getLookupRow( getInputRowMeta(), r );
+    } catch ( KettleException e ) {
+      return; // the error is reported when the row is looked up on its own
+    }
+    if ( meta.isCached() && data.cache.getRowFromCache( data.lookupMeta, lookupRow ) != null ) {
+      return;
+    }
+    data.batchKeys.putIfAbsent( new RowMetaAndData( data.lookupMeta, lookupRow ), lookupRow );
+  }
+
+  /**
+   * Look up the keys of the batch, then the input rows in their original order.
+   *
+   * @return false if the step has to stop
+   */
+  private boolean lookupBatch() throws KettleException {
+    data.batchResults = queryBatchOrStopBatching();
+
+    List<Object[]> rows = data.batchRows;
+    data.batchRows = new ArrayList<>();
+    data.batchKeys.clear();
+    try {
+      for ( Object[] row : rows ) {
+        if ( !processLookupRow( row ) ) {
+          return false;
+        }
+      }
+    } finally {
+      data.batchResults = null;
+    }
+    return true;
+  }
+
+  /**
+   * Query the keys of the batch. If that fails the batch is rolled back, so the transaction can still be used, and the
+   * step stops batching: a statement the database rejects once is rejected for every batch. The rows are then looked
+   * up on their own, which reports the error on the right row.
+   *
+   * @return the results of the batch, null if the rows have to be looked up on their own
+   */
+  @VisibleForTesting
+  Map<RowMetaAndData, Object[]> queryBatchOrStopBatching() throws KettleException {
+    Savepoint savepoint = data.batchSavepoints ? data.db.setSavepoint() : null;
+    Map<RowMetaAndData, Object[]> results;
+    try {
+      results = queryBatch();
+    } catch ( KettleException e ) {
+      if ( savepoint != null ) {
+        data.db.rollback( savepoint );
+      } else if ( data.batchInTransaction ) {
+        data.db.rollback();
+      }
+      logBasic( BaseMessages.getString( PKG, "DatabaseLookup.Log.BatchLookupFailed" ) + e.getMessage() );
+      data.batchSize = 0;
+      return null;
+    }
+    if ( savepoint != null && meta.getDatabaseMeta().getDatabaseInterface().releaseSavepoint() ) {
+      data.db.releaseSavepoint( savepoint );
+    }
+    return results;
+  }
+
+  /**
+   * Query the keys of the batch, as many as fit in a statement at a time.
+   *
+   * @return the first row found for every key, NOT_FOUND for keys without one and MULTIPLE_RESULTS for keys with
+   *         several if that isn't allowed. Keys without a result are looked up on their own.
+   */
+  @VisibleForTesting
+  Map<RowMetaAndData, Object[]> queryBatch() throws KettleException {
+    Map<RowMetaAndData, Object[]> results = new HashMap<>();
+    int keyCount = data.lookupMeta.size();
+
+    List<Object[]> keys = new ArrayList<>( data.batchKeys.size() );
+    for ( Map.Entry<RowMetaAndData, Object[]> entry : data.batchKeys.entrySet() ) {
+      if ( hasNullValue( entry.getValue() ) ) {
+        results.put( entry.getKey(), NOT_FOUND ); // NULL = NULL is never true
+      } else {
+        keys.add( entry.getValue() );
+      }
+    }
+
+    for ( int start = 0; start < keys.size(); start += data.batchSize ) {
+      int end = Math.min( start + data.batchSize, keys.size() );
+      Object[] parameters = new Object[ data.batchParameterMeta.size() ];
+      for ( int k = 0; k < data.batchSize; k++ ) {
+        Object[] key = keys.get( Math.min( start + k, end - 1 ) );
+        System.arraycopy( key, 0, parameters, k * keyCount, keyCount );
+      }
+
+      List<Object[]> rows = new ArrayList<>();
+      RowMetaInterface rowMeta = data.db.getRows( data.batchStatement, data.batchParameterMeta, parameters, rows );
+      if ( data.batchReturnMeta == null ) {
+        data.batchReturnMeta = new RowMeta();
+        for ( int i = keyCount; i < rowMeta.size(); i++ ) {
+          data.batchReturnMeta.addValueMeta( rowMeta.getValueMeta( i ) );
+        }
+      }
+
+      boolean allMatched = true;
+      for ( Object[] row : rows ) {
+        Object[] key = new Object[ keyCount ];
+        for ( int i = 0; i < keyCount; i++ ) {
+          key[ i ] = data.lookupMeta.getValueMeta( i ).convertData( rowMeta.getValueMeta( i ), row[ i ] );
+        }
+        RowMetaAndData rowKey = new RowMetaAndData( data.lookupMeta, key );
+        if ( !data.batchKeys.containsKey( rowKey ) ) {
+          // The database considers values equal that aren't here, e.g. blank padded or case insensitive
+          allMatched = false;
+          continue;
+        }
+        Object[] previous = results.get( rowKey );
+        if ( previous == null ) {
+          results.put( rowKey, Arrays.copyOfRange( row, keyCount, row.length ) );
+        } else if ( meta.isFailingOnMultipleResults() ) {
+          results.put( rowKey, MULTIPLE_RESULTS );
+        }
+      }
+      if ( allMatched ) {
+        for ( int k = start; k < end; k++ ) {
+          results.putIfAbsent( new RowMetaAndData( data.lookupMeta, keys.get( k ) ), NOT_FOUND );
+        }
+      }
+    }
+    return results;
+  }
+
+  private static boolean hasNullValue( Object[] key ) {
+    for ( Object value : key ) {
+      if ( value == null ) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private boolean isSharingCache() {
+    Boolean sharing = ValueMetaBase.convertStringToBoolean( getVariable( Const.KETTLE_SHARED_LOOKUP_CACHE ) );
+    return sharing != null && sharing.booleanValue();
+  }
+
+  /**
+   * Create the cache and, if the user selected to load all data into the cache at startup, fill it.
+   *
+   * @param cacheData the lookup settings the cache works with
+   */
+  private DatabaseLookupData.Cache loadCache( DatabaseLookupData cacheData ) throws KettleException {
+    data.cache = DefaultCache.newCache( cacheData, meta.getCacheSize() );
+    if ( meta.isLoadingAllDataInCache() ) {
+      loadAllTableDataIntoTheCache( cacheData );
+    }
+    return data.cache;
+  }
+
+  /**
+   * Use the cache of the JVM-wide registry, only the first step copy or run to get there loads it. Everything that
+   * determines what ends up in the cache is part of its identification.
+   */
+  private void attachSharedCache() throws KettleException {
+    DatabaseMeta dbMeta = meta.getDatabaseMeta();
+    String connection = LookupCacheRegistry.getConnection( dbMeta, this, getPartitionID() );
+    String table = dbMeta.getQuotedSchemaTableCombination(
+      environmentSubstitute( meta.getSchemaName() ), environmentSubstitute( meta.getTablename() ) );
+
+    StringBuilder query = new StringBuilder();
+    query.append( Arrays.toString( meta.getTableKeyField() ) );
+    query.append( Arrays.toString( meta.getKeyCondition() ) );
+    query.append( Arrays.toString( data.keytypes ) );
+    query.append( Arrays.toString( meta.getReturnValueField() ) );
+    query.append( Arrays.toString( meta.getReturnValueDefault() ) );
+    query.append( data.returnMeta.toStringMeta() );
+    query.append( environmentSubstitute( meta.getOrderByClause() ) );
+    query.append( meta.isLoadingAllDataInCache() ).append( meta.getCacheSize() );
+    query.append( meta.isEatingRowOnLookupFailure() );
+
+    long timeToLive = Const.toLong( getVariable( Const.KETTLE_SHARED_LOOKUP_CACHE_TTL ), 600L );
+    data.sharedCache = LookupCacheRegistry.getInstance().attach( connection, table, query.toString(),
+      timeToLive * 1000L, this::loadSharedCache );
+    data.cache = data.sharedCache.getValue();
+
+    if ( log.isDetailed() ) {
+      logDetailed( "Attached to the shared lookup cache of " + table );
+    }
+  }
+
+  /**
+   * The shared cache outlives this step, so it gets its own copy of the lookup settings. A cache that keeps on growing
+   * after loading is used by several step copies at once.
+   */
+  private DatabaseLookupData.Cache loadSharedCache() throws KettleException {
+    DatabaseLookupData cacheData = new DatabaseLookupData();
+    cacheData.lookupMeta = data.lookupMeta.clone();
+    cacheData.returnMeta = data.returnMeta.clone();
+    cacheData.allEquals = data.allEquals;
+    cacheData.conditions = data.conditions;
+    cacheData.hasDBCondition = data.hasDBCondition;
+
+    DatabaseLookupData.Cache cache = loadCache( cacheData );
+    if ( !meta.isLoadingAllDataInCache() ) {
+      cache = new SynchronizedCache( cache );
+    }
+    return cache;
+  }
+
+  private void loadAllTableDataIntoTheCache( DatabaseLookupData cacheData ) throws KettleException {
     DatabaseMeta dbMeta = meta.getDatabaseMeta();
 
     Database db = getDatabase( dbMeta );
@@ -509,10 +855,10 @@ public class DatabaseLookup extends BaseStep implements StepInterface {
       //
       List<Object[]> rows = db.getRows( sql, 0 );
       if ( rows != null && rows.size() > 0 ) {
-        if ( data.allEquals ) {
+        if ( cacheData.allEquals ) {
           putToDefaultCache( db, rows );
         } else {
-          putToReadOnlyCache( db, rows );
+          putToReadOnlyCache( cacheData, db, rows );
         }
       }
     } catch ( Exception e ) {
@@ -562,8 +908,8 @@ public class DatabaseLookup extends BaseStep implements StepInterface {
     return result;
   }
 
-  private void putToReadOnlyCache( Database db, List<Object[]> rows ) {
-    ReadAllCache.Builder cacheBuilder = new ReadAllCache.Builder( data, rows.size() );
+  private void putToReadOnlyCache( DatabaseLookupData cacheData, Database db, List<Object[]> rows ) {
+    ReadAllCache.Builder cacheBuilder = new ReadAllCache.Builder( cacheData, rows.size() );
 
     // all keys have the same row meta,
     // it is useless to re-create it each time
@@ -652,12 +998,24 @@ public class DatabaseLookup extends BaseStep implements StepInterface {
     data = (DatabaseLookupData) sdi;
 
     if ( data.db != null ) {
+      if ( data.batchStatement != null ) {
+        try {
+          data.db.closePreparedStatement( data.batchStatement );
+        } catch ( KettleDatabaseException e ) {
+          logError( e.getMessage() );
+        }
+        data.batchStatement = null;
+      }
       data.db.disconnect();
     }
 
     // Recover memory immediately, allow in-memory data to be garbage collected
     //
     data.cache = null;
+    if ( data.sharedCache != null ) {
+      data.sharedCache.release();
+      data.sharedCache = null;
+    }
 
     super.dispose( smi, sdi );
   }
@@ -688,4 +1046,27 @@ public class DatabaseLookup extends BaseStep implements StepInterface {
       logDetailed( BaseMessages.getString( PKG, "DatabaseLookup.Log.ConnectedToDatabase" ) );
     }
   }
+
+  /**
+   * Serializes the access to a cache that is shared between step copies.
+   */
+  private static class SynchronizedCache implements DatabaseLookupData.Cache {
+    private final DatabaseLookupData.Cache cache;
+
+    SynchronizedCache( DatabaseLookupData.Cache cache ) {
+      this.cache = cache;
+    }
+
+    @Override
+    public synchronized Object[] getRowFromCache( RowMetaInterface lookupMeta, Object[] lookupRow )
+      throws KettleException {
+      return cache.getRowFromCache( lookupMeta, lookupRow );
+    }
+
+    @Override
+    public synchronized void storeRowInCache( DatabaseLookupMeta meta, RowMetaInterface lookupMeta,
+                                              Object[] lookupRow, Object[] add ) {
+      cache.storeRowInCache( meta, lookupMeta, lookupRow, add );
+    }
+  }
 }
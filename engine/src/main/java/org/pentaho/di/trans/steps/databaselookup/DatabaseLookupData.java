@@ -2,7 +2,7 @@
  *
  * Pentaho Data Integration
  *
- * Copyright (C) 2002-2017 by Hitachi Vantara : http://www.pentaho.com
+ * Copyright (C) 2002-2020 by Hitachi Vantara : http://www.pentaho.com
  *
  *******************************************************************************
  *
@@ -22,6 +22,14 @@
 
 package org.pentaho.di.trans.steps.databaselookup;
 
+import java.sql.PreparedStatement;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.pentaho.di.core.LookupCacheRegistry;
+import org.pentaho.di.core.RowMetaAndData;
 import org.pentaho.di.core.database.Database;
 import org.pentaho.di.core.exception.KettleException;
 import org.pentaho.di.core.row.RowMetaInterface;
@@ -34,6 +42,7 @@ import org.pentaho.di.trans.step.StepDataInterface;
  */
 public class DatabaseLookupData extends BaseStepData implements StepDataInterface {
   public Cache cache;
+  public LookupCacheRegistry.Reference<Cache> sharedCache;
   public Database db;
 
   public Object[] nullif; // Not found: default values...
@@ -49,6 +58,18 @@ public class DatabaseLookupData extends BaseStepData implements StepDataInterfac
   public int[] conditions;
   public boolean hasDBCondition;
 
+  // Batched lookups
+  //
+  public int batchSize; // the number of keys looked up with one query, 0 to look up one key at a time
+  public PreparedStatement batchStatement;
+  public RowMetaInterface batchParameterMeta;
+  public RowMetaInterface batchReturnMeta;
+  public List<Object[]> batchRows = new ArrayList<>(); // the input rows waiting for their batch
+  public Map<RowMetaAndData, Object[]> batchKeys = new LinkedHashMap<>(); // the keys to look up
+  public Map<RowMetaAndData, Object[]> batchResults; // the results of the batch being passed on
+  public boolean batchInTransaction; // a failed batch has to be rolled back before the rows are looked up on their own
+  public boolean batchSavepoints; // the batch is rolled back to a savepoint instead of rolling back the transaction
+
   public DatabaseLookupData() {
     super();
 
@@ -23,8 +23,10 @@
 package org.pentaho.di.trans.steps.delete;
 
 import java.sql.SQLException;
+import java.util.Collections;
 
 import org.pentaho.di.core.Const;
+import org.pentaho.di.core.LookupCacheRegistry;
 import org.pentaho.di.core.database.Database;
 import org.pentaho.di.core.database.DatabaseMeta;
 import org.pentaho.di.core.exception.KettleDatabaseException;
@@ -249,6 +251,18 @@ public class Delete extends BaseStep implements StepInterface {
     return false;
   }
 
+  /**
+   * Rows were deleted, the shared lookup caches of the table are stale.
+   */
+  private void invalidateSharedCaches() {
+    try {
+      LookupCacheRegistry.getInstance().invalidateTables( meta.getDatabaseMeta(), this, getPartitionID(),
+        Collections.singleton( data.schemaTable ) );
+    } catch ( KettleDatabaseException e ) {
+      logError( "Unable to invalidate the shared lookup caches of " + data.schemaTable, e );
+    }
+  }
+
   public void dispose( StepMetaInterface smi, StepDataInterface sdi ) {
     meta = (DeleteMeta) smi;
     data = (DeleteData) sdi;
@@ -271,6 +285,9 @@ public class Delete extends BaseStep implements StepInterface {
         data.db.disconnect();
       }
     }
+    if ( data.schemaTable != null && getLinesUpdated() > 0 ) {
+      invalidateSharedCaches();
+    }
     super.dispose( smi, sdi );
   }
 
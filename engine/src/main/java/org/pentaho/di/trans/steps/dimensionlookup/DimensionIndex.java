@@ -0,0 +1,413 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2020 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.steps.dimensionlookup;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.pentaho.di.core.RowMetaAndData;
+import org.pentaho.di.core.exception.KettleValueException;
+import org.pentaho.di.core.row.RowMetaInterface;
+
+/**
+ * All versions of a dimension in memory, indexed on the natural key.<br>
+ * <br>
+ * The versions read from the table are sorted on the natural key once they are loaded, a lookup is a binary search
+ * followed by a scan of the versions of the key. A single integer natural key is kept in a long[], other keys as rows.
+ * The start and end of the date range of every version are kept as milliseconds in long[] as well. Versions added
+ * afterwards are appended and found through a hash map on the natural key.<br>
+ * <br>
+ * A version is stored as the row the lookup query of the step returns: the technical key, the version number, the
+ * lookup fields and, if the step caches, the date range.
+ */
+public class DimensionIndex {
+
+  private static final int INITIAL_CAPACITY = 1024;
+
+  private final RowMetaInterface keyMeta;
+  private final RowMetaInterface rowMeta;
+  private final boolean integerKey;
+  private final boolean nullStartDate;
+  private final int fromDateColumn;
+  private final int toDateColumn;
+
+  private int size;
+  private int sortedSize;
+  private long[] integerKeys;
+  private Object[][] keys;
+  private long[] fromDates;
+  private long[] toDates;
+  private Object[][] rows;
+
+  /** The versions added after sorting, by natural key */
+  private final Map<Object, List<Integer>> addedVersions = new HashMap<>();
+
+  /**
+   * @param keyMeta
+   *          the natural key columns, in the data types of the table
+   * @param rowMeta
+   *          the columns of a version: technical key, version, lookup fields and optionally the date range
+   * @param nullStartDate
+   *          true if a version without a start date is valid from -oo, false if it is never valid
+   * @param fromDateColumn
+   *          the column of the start of the date range in the rows, or -1
+   * @param toDateColumn
+   *          the column of the end of the date range in the rows, or -1
+   */
+  public DimensionIndex( RowMetaInterface keyMeta, RowMetaInterface rowMeta, boolean nullStartDate,
+    int fromDateColumn, int toDateColumn ) {
+    this.keyMeta = keyMeta;
+    this.rowMeta = rowMeta;
+    this.integerKey = keyMeta.size() == 1 && keyMeta.getValueMeta( 0 ).isInteger();
+    this.nullStartDate = nullStartDate;
+    this.fromDateColumn = fromDateColumn;
+    this.toDateColumn = toDateColumn;
+
+    if ( integerKey ) {
+      integerKeys = new long[ INITIAL_CAPACITY ];
+    } else {
+      keys = new Object[ INITIAL_CAPACITY ][];
+    }
+    fromDates = new long[ INITIAL_CAPACITY ];
+    toDates = new long[ INITIAL_CAPACITY ];
+    rows = new Object[ INITIAL_CAPACITY ][];
+  }
+
+  /**
+   * Add a version read from the table. Call {@link #sort()} once all versions are loaded.
+   *
+   * @param key
+   *          the natural key of the version
+   * @param row
+   *          the version
+   * @param fromDate
+   *          the start of the date range
+   * @param toDate
+   *          the end of the date range
+   */
+  public void loadVersion( Object[] key, Object[] row, Date fromDate, Date toDate ) throws KettleValueException {
+    if ( hasNullValue( key ) ) {
+      return; // never found by the lookup query either
+    }
+    append( key, row, fromDate, toDate );
+  }
+
+  /**
+   * Sort the loaded versions on the natural key.
+   */
+  public void sort() throws KettleValueException {
+    int[] order = new int[ size ];
+    for ( int i = 0; i < size; i++ ) {
+      order[ i ] = i;
+    }
+    try {
+      sort( order, 0, size - 1 );
+    } catch ( IllegalStateException e ) {
+      throw (KettleValueException) e.getCause();
+    }
+
+    if ( integerKey ) {
+      long[] sortedKeys = new long[ integerKeys.length ];
+      for ( int i = 0; i < size; i++ ) {
+        sortedKeys[ i ] = integerKeys[ order[ i ] ];
+      }
+      integerKeys = sortedKeys;
+    } else {
+      keys = permute( keys, order );
+    }
+    rows = permute( rows, order );
+    long[] sortedFromDates = new long[ fromDates.length ];
+    long[] sortedToDates = new long[ toDates.length ];
+    for ( int i = 0; i < size; i++ ) {
+      sortedFromDates[ i ] = fromDates[ order[ i ] ];
+      sortedToDates[ i ] = toDates[ order[ i ] ];
+    }
+    fromDates = sortedFromDates;
+    toDates = sortedToDates;
+
+    sortedSize = size;
+    addedVersions.clear();
+  }
+
+  /**
+   * @param key
+   *          the natural key
+   * @param date
+   *          the date the version has to be valid on
+   * @return the version of the key valid on the date or -1 if there is none
+   */
+  public int lookup( Object[] key, Date date ) throws KettleValueException {
+    if ( hasNullValue( key ) ) {
+      return -1;
+    }
+    long time = date.getTime();
+    for ( int version : getVersions( key ) ) {
+      if ( fromDates[ version ] <= time && time < toDates[ version ] ) {
+        return version;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * @return the versions of a natural key, in no particular order
+   */
+  public List<Integer> getVersions( Object[] key ) throws KettleValueException {
+    List<Integer> versions = new ArrayList<>();
+    if ( hasNullValue( key ) ) {
+      return versions;
+    }
+    for ( int i = findFirst( key ); i < sortedSize && compareKey( i, key ) == 0; i++ ) {
+      versions.add( i );
+    }
+    versions.addAll( addedVersions.getOrDefault( getHashKey( key ), Collections.<Integer>emptyList() ) );
+    return versions;
+  }
+
+  /**
+   * @return the version of a natural key with a certain value in a column, e.g. the technical key or the version
+   *         number, or -1 if there is none
+   */
+  public int findVersion( Object[] key, int column, Long value ) throws KettleValueException {
+    for ( int version : getVersions( key ) ) {
+      Long versionValue = rowMeta.getInteger( rows[ version ], column );
+      if ( versionValue != null && versionValue.equals( value ) ) {
+        return version;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Add a version written to the dimension.
+   *
+   * @return the new version
+   */
+  public int addVersion( Object[] key, Object[] row, Date fromDate, Date toDate ) throws KettleValueException {
+    if ( hasNullValue( key ) ) {
+      return -1;
+    }
+    int version = append( key, row, fromDate, toDate );
+    addedVersions.computeIfAbsent( getHashKey( key ), k -> new ArrayList<>( 2 ) ).add( version );
+    return version;
+  }
+
+  /**
+   * @return the row of a version, the values can be changed in place
+   */
+  public Object[] getRow( int version ) {
+    return rows[ version ];
+  }
+
+  /**
+   * Change the end of the date range of a version.
+   */
+  public void setToDate( int version, Date toDate ) {
+    toDates[ version ] = getToTime( toDate );
+    if ( toDateColumn >= 0 ) {
+      rows[ version ][ toDateColumn ] = toDate;
+    }
+  }
+
+  /**
+   * @return the columns of the versions
+   */
+  public RowMetaInterface getRowMeta() {
+    return rowMeta;
+  }
+
+  /**
+   * @return the natural key columns
+   */
+  public RowMetaInterface getKeyMeta() {
+    return keyMeta;
+  }
+
+  /**
+   * @return the number of versions
+   */
+  public int size() {
+    return size;
+  }
+
+  private int append( Object[] key, Object[] row, Date fromDate, Date toDate ) throws KettleValueException {
+    if ( size == rows.length ) {
+      int capacity = rows.length + ( rows.length >> 1 );
+      if ( integerKey ) {
+        integerKeys = Arrays.copyOf( integerKeys, capacity );
+      } else {
+        keys = Arrays.copyOf( keys, capacity );
+      }
+      fromDates = Arrays.copyOf( fromDates, capacity );
+      toDates = Arrays.copyOf( toDates, capacity );
+      rows = Arrays.copyOf( rows, capacity );
+    }
+    if ( integerKey ) {
+      integerKeys[ size ] = keyMeta.getInteger( key, 0 );
+    } else {
+      keys[ size ] = key;
+    }
+    fromDates[ size ] = fromDate != null ? fromDate.getTime() : nullStartDate ? Long.MIN_VALUE : Long.MAX_VALUE;
+    toDates[ size ] = getToTime( toDate );
+    if ( fromDateColumn >= 0 ) {
+      row[ fromDateColumn ] = fromDate;
+    }
+    if ( toDateColumn >= 0 ) {
+      row[ toDateColumn ] = toDate;
+    }
+    rows[ size ] = row;
+    return size++;
+  }
+
+  /**
+   * A version without an end date is never valid, just like in the lookup query.
+   */
+  private static long getToTime( Date toDate ) {
+    return toDate != null ? toDate.getTime() : Long.MIN_VALUE;
+  }
+
+  private Object getHashKey( Object[] key ) throws KettleValueException {
+    if ( integerKey ) {
+      return keyMeta.getInteger( key, 0 );
+    }
+    return new RowMetaAndData( keyMeta, key );
+  }
+
+  /**
+   * @return the first sorted version with a natural key greater than or equal to the key
+   */
+  private int findFirst( Object[] key ) throws KettleValueException {
+    int low = 0;
+    int high = sortedSize;
+    while ( low < high ) {
+      int middle = ( low + high ) >>> 1;
+      if ( compareKey( middle, key ) < 0 ) {
+        low = middle + 1;
+      } else {
+        high = middle;
+      }
+    }
+    return low;
+  }
+
+  private int compareKey( int version, Object[] key ) throws KettleValueException {
+    if ( integerKey ) {
+      return Long.compare( integerKeys[ version ], keyMeta.getInteger( key, 0 ) );
+    }
+    return keyMeta.compare( keys[ version ], key );
+  }
+
+  private int compareVersions( int a, int b ) {
+    if ( integerKey ) {
+      return Long.compare( integerKeys[ a ], integerKeys[ b ] );
+    }
+    try {
+      return keyMeta.compare( keys[ a ], keys[ b ] );
+    } catch ( KettleValueException e ) {
+      throw new IllegalStateException( e );
+    }
+  }
+
+  /**
+   * A quicksort of the version numbers on their keys, with three-way partitioning for the versions of the same key.
+   * It recurses into the smaller part only, so the depth stays logarithmic.
+   */
+  private void sort( int[] order, int low, int high ) {
+    while ( low < high ) {
+      if ( high - low < 16 ) {
+        for ( int i = low + 1; i <= high; i++ ) {
+          int value = order[ i ];
+          int j = i - 1;
+          while ( j >= low && compareVersions( order[ j ], value ) > 0 ) {
+            order[ j + 1 ] = order[ j ];
+            j--;
+          }
+          order[ j + 1 ] = value;
+        }
+        return;
+      }
+      int pivot = order[ medianOfThree( order, low, ( low + high ) >>> 1, high ) ];
+      int lessThan = low;
+      int greaterThan = high;
+      int i = low;
+      while ( i <= greaterThan ) {
+        int cmp = compareVersions( order[ i ], pivot );
+        if ( cmp < 0 ) {
+          swap( order, lessThan++, i++ );
+        } else if ( cmp > 0 ) {
+          swap( order, i, greaterThan-- );
+        } else {
+          i++;
+        }
+      }
+      if ( lessThan - low < high - greaterThan ) {
+        sort( order, low, lessThan - 1 );
+        low = greaterThan + 1;
+      } else {
+        sort( order, greaterThan + 1, high );
+        high = lessThan - 1;
+      }
+    }
+  }
+
+  private int medianOfThree( int[] order, int a, int b, int c ) {
+    if ( compareVersions( order[ a ], order[ b ] ) < 0 ) {
+      if ( compareVersions( order[ b ], order[ c ] ) < 0 ) {
+        return b;
+      }
+      return compareVersions( order[ a ], order[ c ] ) < 0 ? c : a;
+    }
+    if ( compareVersions( order[ a ], order[ c ] ) < 0 ) {
+      return a;
+    }
+    return compareVersions( order[ b ], order[ c ] ) < 0 ? c : b;
+  }
+
+  private static void swap( int[] order, int a, int b ) {
+    int value = order[ a ];
+    order[ a ] = order[ b ];
+    order[ b ] = value;
+  }
+
+  private Object[][] permute( Object[][] values, int[] order ) {
+    Object[][] sorted = new Object[ values.length ][];
+    for ( int i = 0; i < size; i++ ) {
+      sorted[ i ] = values[ order[ i ] ];
+    }
+    return sorted;
+  }
+
+  private static boolean hasNullValue( Object[] key ) {
+    for ( Object value : key ) {
+      if ( value == null ) {
+        return true;
+      }
+    }
+    return false;
+  }
+}
@@ -2,7 +2,7 @@
  *
  * Pentaho Data Integration
  *
- * Copyright (C) 2002-2018 by Hitachi Vantara : http://www.pentaho.com
+ * Copyright (C) 2002-2020 by Hitachi Vantara : http://www.pentaho.com
  *
  *******************************************************************************
  *
@@ -22,6 +22,8 @@
 
 package org.pentaho.di.trans.steps.dimensionlookup;
 
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
@@ -31,6 +33,7 @@ import java.util.Date;
 import java.util.List;
 
 import org.pentaho.di.core.Const;
+import org.pentaho.di.core.LookupCacheRegistry;
 import org.pentaho.di.core.util.Utils;
 import org.pentaho.di.core.RowMetaAndData;
 import org.pentaho.di.core.database.Database;
@@ -43,6 +46,7 @@ import org.pentaho.di.core.hash.ByteArrayHashMap;
 import org.pentaho.di.core.row.RowMeta;
 import org.pentaho.di.core.row.RowMetaInterface;
 import org.pentaho.di.core.row.ValueMetaInterface;
+import org.pentaho.di.core.row.value.ValueMetaBase;
 import org.pentaho.di.core.row.value.ValueMetaBoolean;
 import org.pentaho.di.core.row.value.ValueMetaDate;
 import org.pentaho.di.core.row.value.ValueMetaFactory;
@@ -116,6 +120,7 @@ public class DimensionLookup extends BaseStep implements StepInterface {
 
     Object[] r = getRow(); // Get row from input rowset & set row busy!
     if ( r == null ) { // no more input to be expected...
+      executeBatches();
 
       setOutputDone(); // signal end to receiver(s)
       return false;
@@ -180,9 +185,12 @@ public class DimensionLookup extends BaseStep implements StepInterface {
 
       }
 
-      if ( !meta.isUpdate() && meta.isPreloadingCache() ) {
+      determineTechKeyCreation();
+
+      boolean indexed = isPreloadingIndex() && loadIndex();
+      if ( !indexed && !meta.isUpdate() && meta.isPreloadingCache() ) {
         preloadCache();
-      } else {
+      } else if ( !indexed ) {
         // Caching...
         //
         if ( data.cacheKeyRowMeta == null ) {
@@ -209,8 +217,6 @@ public class DimensionLookup extends BaseStep implements StepInterface {
       //
       data.valueDateNow = determineDimensionUpdatedDate( r );
 
-      determineTechKeyCreation();
-
       data.notFoundTk = new Long( meta.getDatabaseMeta().getNotFoundTK( isAutoIncrement() ) );
       // if (meta.getKeyRename()!=null && meta.getKeyRename().length()>0) data.notFoundTk.setName(meta.getKeyRename());
 
@@ -277,41 +283,24 @@ public class DimensionLookup extends BaseStep implements StepInterface {
    */
   private void preloadCache() throws KettleException {
     try {
-      DatabaseMeta databaseMeta = meta.getDatabaseMeta();
-
       // tk, version, from, to, natural keys, retrieval fields...
       //
-      String sql = "SELECT " + databaseMeta.quoteField( meta.getKeyField() );
-      // sql+=", "+databaseMeta.quoteField(meta.getVersionField());
-      for ( int i = 0; i < meta.getKeyLookup().length; i++ ) {
-        sql += ", " + meta.getKeyLookup()[ i ]; // the natural key field in the table
-      }
-      for ( int i = 0; i < meta.getFieldLookup().length; i++ ) {
-        sql += ", " + meta.getFieldLookup()[ i ]; // the extra fields to retrieve...
-      }
-      sql += ", " + databaseMeta.quoteField( meta.getDateFrom() ); // extra info in cache
-      sql += ", " + databaseMeta.quoteField( meta.getDateTo() ); // extra info in cache
-
-      sql += " FROM " + data.schemaTable;
-      logDetailed( "Pre-loading cache by reading from database with: " + Const.CR + sql + Const.CR );
-
-      List<Object[]> rows = data.db.getRows( sql, -1 );
-      RowMetaInterface rowMeta = data.db.getReturnRowMeta();
-
-      data.preloadKeyIndexes = new int[ meta.getKeyLookup().length ];
-      for ( int i = 0; i < data.preloadKeyIndexes.length; i++ ) {
-        data.preloadKeyIndexes[ i ] = rowMeta.indexOfValue( meta.getKeyLookup()[ i ] ); // the field in the table
+      final String sql = getPreloadSQL();
+      if ( isSharingCache() ) {
+        // The sorted rows are only read after loading, so step copies and later runs can use them as well
+        //
+        String connection = LookupCacheRegistry.getConnection( meta.getDatabaseMeta(), this, getPartitionID() );
+        long timeToLive = Const.toLong( getVariable( Const.KETTLE_SHARED_LOOKUP_CACHE_TTL ), 600L );
+        data.sharedCache = LookupCacheRegistry.getInstance().attach( connection, data.schemaTable, sql,
+          timeToLive * 1000L, () -> readDimensionCache( sql ) );
+        data.preloadCache = data.sharedCache.getValue();
+      } else {
+        data.preloadCache = readDimensionCache( sql );
       }
-      data.preloadFromDateIndex = rowMeta.indexOfValue( meta.getDateFrom() );
-      data.preloadToDateIndex = rowMeta.indexOfValue( meta.getDateTo() );
-
-      data.preloadCache =
-        new DimensionCache( rowMeta, data.preloadKeyIndexes, data.preloadFromDateIndex, data.preloadToDateIndex );
-      data.preloadCache.setRowCache( rows );
 
-      logDetailed( "Sorting the cache rows..." );
-      data.preloadCache.sortRows();
-      logDetailed( "Sorting of cached rows finished." );
+      data.preloadKeyIndexes = data.preloadCache.getKeyIndexes();
+      data.preloadFromDateIndex = data.preloadCache.getFromDateIndex();
+      data.preloadToDateIndex = data.preloadCache.getToDateIndex();
 
       // Also see what indexes to take to populate the lookup row...
       // We only ever compare indexes and the lookup date in the cache, the rest is not needed...
@@ -334,6 +323,272 @@ public class DimensionLookup extends BaseStep implements StepInterface {
     }
   }
 
+  private String getPreloadSQL() {
+    DatabaseMeta databaseMeta = meta.getDatabaseMeta();
+
+    String sql = "SELECT " + databaseMeta.quoteField( meta.getKeyField() );
+    // sql+=", "+databaseMeta.quoteField(meta.getVersionField());
+    for ( int i = 0; i < meta.getKeyLookup().length; i++ ) {
+      sql += ", " + meta.getKeyLookup()[ i ]; // the natural key field in the table
+    }
+    for ( int i = 0; i < meta.getFieldLookup().length; i++ ) {
+      sql += ", " + meta.getFieldLookup()[ i ]; // the extra fields to retrieve...
+    }
+    sql += ", " + databaseMeta.quoteField( meta.getDateFrom() ); // extra info in cache
+    sql += ", " + databaseMeta.quoteField( meta.getDateTo() ); // extra info in cache
+
+    sql += " FROM " + data.schemaTable;
+    return sql;
+  }
+
+  private DimensionCache readDimensionCache( String sql ) throws KettleException {
+    logDetailed( "Pre-loading cache by reading from database with: " + Const.CR + sql + Const.CR );
+
+    List<Object[]> rows = data.db.getRows( sql, -1 );
+    RowMetaInterface rowMeta = data.db.getReturnRowMeta();
+
+    int[] keyIndexes = new int[ meta.getKeyLookup().length ];
+    for ( int i = 0; i < keyIndexes.length; i++ ) {
+      keyIndexes[ i ] = rowMeta.indexOfValue( meta.getKeyLookup()[ i ] ); // the field in the table
+    }
+    int fromDateIndex = rowMeta.indexOfValue( meta.getDateFrom() );
+    int toDateIndex = rowMeta.indexOfValue( meta.getDateTo() );
+
+    DimensionCache cache = new DimensionCache( rowMeta, keyIndexes, fromDateIndex, toDateIndex );
+    cache.setRowCache( rows );
+
+    logDetailed( "Sorting the cache rows..." );
+    cache.sortRows();
+    logDetailed( "Sorting of cached rows finished." );
+
+    return cache;
+  }
+
+  private boolean isSharingCache() {
+    Boolean sharing = ValueMetaBase.convertStringToBoolean( getVariable( Const.KETTLE_SHARED_LOOKUP_CACHE ) );
+    return sharing != null && sharing.booleanValue();
+  }
+
+  private boolean isPreloadingIndex() {
+    Boolean preloading =
+      ValueMetaBase.convertStringToBoolean( getVariable( Const.KETTLE_DIMENSION_LOOKUP_PRELOAD_INDEX ) );
+    if ( preloading == null || !preloading.booleanValue() ) {
+      return false;
+    }
+    if ( meta.isUpdate() && isAutoIncrement() && !meta.getDatabaseMeta().supportsAutoGeneratedKeys() ) {
+      // The technical keys of the new versions would be unknown
+      logBasic( BaseMessages.getString( PKG, "DimensionLookup.Log.IndexNotPossible" ) );
+      return false;
+    }
+    return true;
+  }
+
+  /**
+   * Load all versions of the dimension into the index. The versions are read in the layout of the lookup query,
+   * followed by the date range and the natural key.<br>
+   * <br>
+   * When the step updates the dimension, a natural key that isn't in the index gets a new technical key. The index
+   * compares keys by value, the database with its collation: case insensitive, blank padded, ... Only natural keys of
+   * integer columns compare the same way, others are looked up in the database.
+   *
+   * @return false if the dimension can't be loaded into the index
+   * @throws KettleException in case there is a database problem.
+   */
+  private boolean loadIndex() throws KettleException {
+    DatabaseMeta databaseMeta = meta.getDatabaseMeta();
+    String sql = "SELECT " + getLookupColumns();
+    sql += ", " + databaseMeta.quoteField( meta.getDateFrom() ) + ", " + databaseMeta.quoteField( meta.getDateTo() );
+    for ( int i = 0; i < meta.getKeyLookup().length; i++ ) {
+      sql += ", " + databaseMeta.quoteField( meta.getKeyLookup()[ i ] );
+    }
+    sql += " FROM " + data.schemaTable;
+    logDetailed( "Loading the dimension index by reading from database with: " + Const.CR + sql + Const.CR );
+
+    ResultSet rs = data.db.openQuery( sql );
+    try {
+      RowMetaInterface rowMeta = data.db.getReturnRowMeta();
+      int keyCount = meta.getKeyLookup().length;
+      int columnCount = rowMeta.size() - 2 - keyCount;
+
+      // The technical key and the version are kept as integers, whatever the column types
+      //
+      RowMetaInterface indexRowMeta = new RowMeta();
+      for ( int i = 0; i < columnCount; i++ ) {
+        ValueMetaInterface valueMeta = rowMeta.getValueMeta( i );
+        if ( i < 2 && !valueMeta.isInteger() ) {
+          valueMeta = ValueMetaFactory.cloneValueMeta( valueMeta, ValueMetaInterface.TYPE_INTEGER );
+        }
+        indexRowMeta.addValueMeta( valueMeta );
+      }
+      RowMetaInterface keyMeta = new RowMeta();
+      for ( int i = 0; i < keyCount; i++ ) {
+        ValueMetaInterface valueMeta = rowMeta.getValueMeta( columnCount + 2 + i );
+        if ( meta.isUpdate() && !valueMeta.isInteger() ) {
+          logBasic( BaseMessages.getString( PKG, "DimensionLookup.Log.IndexKeyNotInteger", valueMeta.getName() ) );
+          return false;
+        }
+        keyMeta.addValueMeta( valueMeta );
+      }
+      boolean cachingDates = meta.getCacheSize() >= 0;
+      data.index = new DimensionIndex( keyMeta, indexRowMeta, isNullStartDatePossible(),
+        cachingDates ? columnCount - 2 : -1, cachingDates ? columnCount - 1 : -1 );
+
+      data.indexFieldColumns = new int[ meta.getFieldLookup().length ];
+      int column = 2;
+      for ( int i = 0; i < meta.getFieldLookup().length; i++ ) {
+        data.indexFieldColumns[ i ] = isLookupColumn( i ) ? column++ : -1;
+      }
+
+      Object[] row = data.db.getRow( rs );
+      while ( row != null ) {
+        Object[] indexRow = Arrays.copyOf( row, columnCount );
+        indexRow[ 0 ] = rowMeta.getInteger( row, 0 );
+        indexRow[ 1 ] = rowMeta.getInteger( row, 1 );
+        Object[] key = Arrays.copyOfRange( row, columnCount + 2, columnCount + 2 + keyCount );
+        data.index.loadVersion( key, indexRow, rowMeta.getDate( row, columnCount ),
+          rowMeta.getDate( row, columnCount + 1 ) );
+        row = data.db.getRow( rs );
+      }
+    } finally {
+      data.db.closeQuery( rs );
+    }
+    data.index.sort();
+
+    data.batchingWrites =
+      meta.isUpdate() && !isAutoIncrement() && meta.getCommitSize() > 0 && !data.db.isAutoCommit()
+        && data.db.getUseBatchInsert( true );
+    if ( log.isDetailed() ) {
+      logDetailed( BaseMessages.getString( PKG, "DimensionLookup.Log.IndexLoaded", String.valueOf( data.index
+        .size() ), String.valueOf( data.batchingWrites ) ) );
+    }
+    return true;
+  }
+
+  /**
+   * @return the natural key of a row in the data types of the index
+   */
+  private Object[] getIndexKey( RowMetaInterface rowMeta, Object[] row ) throws KettleValueException {
+    RowMetaInterface keyMeta = data.index.getKeyMeta();
+    Object[] key = new Object[ keyMeta.size() ];
+    for ( int i = 0; i < key.length; i++ ) {
+      key[ i ] =
+        keyMeta.getValueMeta( i ).convertData( rowMeta.getValueMeta( data.keynrs[ i ] ), row[ data.keynrs[ i ] ] );
+    }
+    return key;
+  }
+
+  /**
+   * Copy the lookup fields of a row to a version in the index.
+   *
+   * @param punchThroughOnly true to only copy the fields updated in all versions
+   */
+  private void setIndexFields( RowMetaInterface rowMeta, Object[] row, Object[] indexRow, boolean punchThroughOnly )
+    throws KettleValueException {
+    RowMetaInterface indexRowMeta = data.index.getRowMeta();
+    for ( int i = 0; i < data.indexFieldColumns.length; i++ ) {
+      int column = data.indexFieldColumns[ i ];
+      if ( column >= 0 && data.fieldnrs[ i ] >= 0
+        && ( !punchThroughOnly || meta.getFieldUpdate()[ i ] == DimensionLookupMeta.TYPE_UPDATE_DIM_PUNCHTHROUGH ) ) {
+        indexRow[ column ] =
+          indexRowMeta.getValueMeta( column ).convertData( rowMeta.getValueMeta( data.fieldnrs[ i ] ),
+            row[ data.fieldnrs[ i ] ] );
+      }
+    }
+  }
+
+  /**
+   * Write a row with a prepared insert or update statement, in a batch if the index serves the lookups. The batches
+   * are executed one statement after the other, see {@link #executeBatches()}. If a statement that runs earlier is
+   * used for a natural key with a write pending in a statement that runs later, the pending writes are sent to the
+   * database first: the later write has to win, e.g. for a "date updated" column set by both.
+   *
+   * @param row the input row the statement writes for
+   */
+  private void writeRow( PreparedStatement ps, Object[] row ) throws KettleDatabaseException {
+    if ( !data.batchingWrites ) {
+      data.db.insertRow( ps );
+      return;
+    }
+    int order = getBatchOrder( ps );
+    List<Object> key = new ArrayList<>( data.keynrs.length );
+    for ( int keynr : data.keynrs ) {
+      key.add( row[ keynr ] );
+    }
+    Integer pendingOrder = data.batchedKeys.get( key );
+    if ( pendingOrder != null && pendingOrder > order ) {
+      executeBatches();
+    }
+    data.db.insertRow( ps, true, false );
+    data.batchedStatements.add( ps );
+    data.batchedKeys.merge( key, order, Math::max );
+    data.batchedWrites++;
+    if ( data.batchedWrites >= meta.getCommitSize() ) {
+      executeBatches();
+    }
+  }
+
+  /**
+   * @return the position of a statement in the order the batches are executed in
+   */
+  private int getBatchOrder( PreparedStatement ps ) {
+    PreparedStatement[] statements = getBatchStatements();
+    for ( int i = 0; i < statements.length; i++ ) {
+      if ( statements[ i ] == ps ) {
+        return i;
+      }
+    }
+    return statements.length;
+  }
+
+  /**
+   * @return the statements in the order their batches are executed: the new versions are inserted first, the updates
+   *         may refer to them. The punch through updates change every version of a key and go last.
+   */
+  private PreparedStatement[] getBatchStatements() {
+    return new PreparedStatement[] { data.prepStatementInsert, data.prepStatementUpdate,
+      data.prepStatementDimensionUpdate, data.prepStatementPunchThrough, };
+  }
+
+  /**
+   * Send the batches to the database and commit, in the order of {@link #getBatchStatements()}.
+   * {@link #writeRow(PreparedStatement, Object[])} makes sure that order doesn't reorder the writes of a natural key.
+   */
+  private void executeBatches() throws KettleDatabaseException {
+    if ( data.batchedWrites == 0 ) {
+      return;
+    }
+    try {
+      for ( PreparedStatement statement : getBatchStatements() ) {
+        if ( statement != null && data.batchedStatements.contains( statement ) ) {
+          statement.executeBatch();
+          statement.clearBatch();
+        }
+      }
+    } catch ( SQLException e ) {
+      throw new KettleDatabaseException( "Error writing a batch of rows to dimension " + data.schemaTable, e );
+    }
+    data.batchedStatements.clear();
+    data.batchedKeys.clear();
+    data.batchedWrites = 0;
+    data.db.commit();
+  }
+
+  /**
+   * Rows were written to the dimension, the shared caches that other transformations read from it are stale.
+   */
+  private void invalidateSharedCaches() {
+    LookupCacheRegistry registry = LookupCacheRegistry.getInstance();
+    if ( registry.size() == 0 ) {
+      return;
+    }
+    try {
+      registry.invalidateTable(
+        LookupCacheRegistry.getConnection( meta.getDatabaseMeta(), this, getPartitionID() ), data.schemaTable );
+    } catch ( KettleDatabaseException e ) {
+      logError( "Unable to invalidate the shared lookup caches of " + data.schemaTable, e );
+    }
+  }
+
   private synchronized Object[] lookupValues( RowMetaInterface rowMeta, Object[] row ) throws KettleException {
     Object[] outputRow = new Object[ data.outputRowMeta.size() ];
 
@@ -354,7 +609,17 @@ public class DimensionLookup extends BaseStep implements StepInterface {
     //
     valueDate = determineDimensionUpdatedDate( row );
 
-    if ( !meta.isUpdate() && meta.isPreloadingCache() ) {
+    if ( data.index != null ) {
+      // Obtain a result row from the index...
+      //
+      lookupRowMeta = data.index.getKeyMeta();
+      lookupRow = getIndexKey( rowMeta, row );
+
+      int version = data.index.lookup( lookupRow, valueDate );
+      returnRow = version >= 0 ? data.index.getRow( version ) : null;
+      data.returnRowMeta = data.index.getRowMeta();
+
+    } else if ( !meta.isUpdate() && meta.isPreloadingCache() ) {
       // Obtain a result row from the pre-load cache...
       //
       // Create a row to compare with
@@ -697,7 +962,7 @@ public class DimensionLookup extends BaseStep implements StepInterface {
             incrementLinesUpdated();
 
             // We need to capture this change in the cache as well...
-            if ( meta.getCacheSize() >= 0 ) {
+            if ( data.index == null && meta.getCacheSize() >= 0 ) {
               Object[] values =
                 getCacheValues( rowMeta, row, technicalKey, valueVersion, valueDateFrom, valueDateTo );
               addToCache( lookupRow, values );
@@ -748,7 +1013,7 @@ public class DimensionLookup extends BaseStep implements StepInterface {
           incrementLinesOutput();
 
           // We need to capture this change in the cache as well...
-          if ( meta.getCacheSize() >= 0 ) {
+          if ( data.index == null && meta.getCacheSize() >= 0 ) {
             Object[] values =
               getCacheValues( rowMeta, row, technicalKey, valueNewVersion, valueDateFrom, valueDateTo );
             addToCache( lookupRow, values );
@@ -848,29 +1113,7 @@ public class DimensionLookup extends BaseStep implements StepInterface {
      * SELECT <tk>, <version>, ... , FROM <table> WHERE key1=keys[1] AND key2=keys[2] ... AND ( <datefrom> is null OR
      * <datefrom> <= <datefield> ) AND <dateto> >= <datefield>
      */
-    String sql =
-      "SELECT "
-        + databaseMeta.quoteField( meta.getKeyField() ) + ", "
-        + databaseMeta.quoteField( meta.getVersionField() );
-
-    if ( !Utils.isEmpty( meta.getFieldLookup() ) ) {
-      for ( int i = 0; i < meta.getFieldLookup().length; i++ ) {
-        // Don't retrieve the fields without input
-        if ( !Utils.isEmpty( meta.getFieldLookup()[ i ] )
-          && !DimensionLookupMeta.isUpdateTypeWithoutArgument( meta.isUpdate(), meta.getFieldUpdate()[ i ] ) ) {
-          sql += ", " + databaseMeta.quoteField( meta.getFieldLookup()[ i ] );
-
-          if ( !Utils.isEmpty( meta.getFieldStream()[ i ] )
-            && !meta.getFieldLookup()[ i ].equals( meta.getFieldStream()[ i ] ) ) {
-            sql += " AS " + databaseMeta.quoteField( meta.getFieldStream()[ i ] );
-          }
-        }
-      }
-    }
-    if ( meta.getCacheSize() >= 0 ) {
-      sql +=
-        ", " + databaseMeta.quoteField( meta.getDateFrom() ) + ", " + databaseMeta.quoteField( meta.getDateTo() );
-    }
+    String sql = "SELECT " + getLookupColumns();
 
     sql += " FROM " + data.schemaTable + " WHERE ";
 
@@ -885,9 +1128,7 @@ public class DimensionLookup extends BaseStep implements StepInterface {
     String dateFromField = databaseMeta.quoteField( meta.getDateFrom() );
     String dateToField = databaseMeta.quoteField( meta.getDateTo() );
 
-    if ( meta.isUsingStartDateAlternative()
-      && ( meta.getStartDateAlternative() == DimensionLookupMeta.START_DATE_ALTERNATIVE_NULL )
-      || ( meta.getStartDateAlternative() == DimensionLookupMeta.START_DATE_ALTERNATIVE_COLUMN_VALUE ) ) {
+    if ( isNullStartDatePossible() ) {
       // Null as a start date is possible...
       //
       sql += " AND ( " + dateFromField + " IS NULL OR " + dateFromField + " <= ? )" + Const.CR;
@@ -920,6 +1161,47 @@ public class DimensionLookup extends BaseStep implements StepInterface {
     }
   }
 
+  /**
+   * @return the columns the lookup query returns: the technical key, the version, the lookup fields and, if the step
+   *         caches, the date range
+   */
+  private String getLookupColumns() {
+    DatabaseMeta databaseMeta = meta.getDatabaseMeta();
+
+    String sql =
+      databaseMeta.quoteField( meta.getKeyField() ) + ", " + databaseMeta.quoteField( meta.getVersionField() );
+
+    if ( !Utils.isEmpty( meta.getFieldLookup() ) ) {
+      for ( int i = 0; i < meta.getFieldLookup().length; i++ ) {
+        // Don't retrieve the fields without input
+        if ( isLookupColumn( i ) ) {
+          sql += ", " + databaseMeta.quoteField( meta.getFieldLookup()[ i ] );
+
+          if ( !Utils.isEmpty( meta.getFieldStream()[ i ] )
+            && !meta.getFieldLookup()[ i ].equals( meta.getFieldStream()[ i ] ) ) {
+            sql += " AS " + databaseMeta.quoteField( meta.getFieldStream()[ i ] );
+          }
+        }
+      }
+    }
+    if ( meta.getCacheSize() >= 0 ) {
+      sql +=
+        ", " + databaseMeta.quoteField( meta.getDateFrom() ) + ", " + databaseMeta.quoteField( meta.getDateTo() );
+    }
+    return sql;
+  }
+
+  private boolean isLookupColumn( int fieldIndex ) {
+    return !Utils.isEmpty( meta.getFieldLookup()[ fieldIndex ] )
+      && !DimensionLookupMeta.isUpdateTypeWithoutArgument( meta.isUpdate(), meta.getFieldUpdate()[ fieldIndex ] );
+  }
+
+  private boolean isNullStartDatePossible() {
+    return meta.isUsingStartDateAlternative()
+      && ( meta.getStartDateAlternative() == DimensionLookupMeta.START_DATE_ALTERNATIVE_NULL )
+      || ( meta.getStartDateAlternative() == DimensionLookupMeta.START_DATE_ALTERNATIVE_COLUMN_VALUE );
+  }
+
   protected boolean isAutoIncrement() {
     return techKeyCreation == CREATION_METHOD_AUTOINC;
   }
@@ -1142,6 +1424,7 @@ public class DimensionLookup extends BaseStep implements StepInterface {
           PKG, "DimensionLookup.Exception.IllegalStartDateSelection", Integer.toString( data.startDateChoice ) ) );
     }
 
+    Date versionDateFrom = (Date) insertRow[ insertIndex - 1 ];
     insertRow[ insertIndex++ ] = dateTo;
 
     for ( int i = 0; i < data.keynrs.length; i++ ) {
@@ -1176,7 +1459,11 @@ public class DimensionLookup extends BaseStep implements StepInterface {
 
     // INSERT NEW VALUE!
     data.db.setValues( data.insertRowMeta, insertRow, data.prepStatementInsert );
-    data.db.insertRow( data.prepStatementInsert );
+    if ( technicalKey == null ) {
+      data.db.insertRow( data.prepStatementInsert ); // the generated key is needed right away
+    } else {
+      writeRow( data.prepStatementInsert, row );
+    }
 
     if ( isDebug() ) {
       logDebug( "Row inserted!" );
@@ -1196,6 +1483,7 @@ public class DimensionLookup extends BaseStep implements StepInterface {
       }
     }
 
+    Date previousVersionDateTo = null;
     if ( !newEntry ) { // we have to update the previous version in the dimension!
       /*
        * UPDATE d_customer SET dateto = val_datfrom , last_updated = <now> , last_version = false WHERE keylookup[] =
@@ -1225,6 +1513,8 @@ public class DimensionLookup extends BaseStep implements StepInterface {
             "DimensionLookup.Exception.IllegalStartDateSelection", Integer.toString( data.startDateChoice ) ) );
       }
 
+      previousVersionDateTo = (Date) updateRow[ 0 ];
+
       // The special update fields...
       //
       for ( int i = 0; i < meta.getFieldUpdate().length; i++ ) {
@@ -1261,12 +1551,27 @@ public class DimensionLookup extends BaseStep implements StepInterface {
       if ( isDebug() ) {
         logDebug( "Values set for update (" + data.updateRowMeta.size() + ")" );
       }
-      data.db.insertRow( data.prepStatementUpdate ); // do the actual update
+      writeRow( data.prepStatementUpdate, row ); // do the actual update
       if ( isDebug() ) {
         logDebug( "Row updated!" );
       }
     }
 
+    if ( data.index != null ) {
+      Object[] key = getIndexKey( inputRowMeta, row );
+      if ( !newEntry ) {
+        int previousVersion = data.index.findVersion( key, 1, versionNr - 1 );
+        if ( previousVersion >= 0 ) {
+          data.index.setToDate( previousVersion, previousVersionDateTo );
+        }
+      }
+      Object[] indexRow = new Object[ data.index.getRowMeta().size() ];
+      indexRow[ 0 ] = technicalKey;
+      indexRow[ 1 ] = versionNr;
+      setIndexFields( inputRowMeta, row, indexRow, false );
+      data.index.addVersion( key, indexRow, versionDateFrom, dateTo );
+    }
+
     return technicalKey;
   }
 
@@ -1370,7 +1675,18 @@ public class DimensionLookup extends BaseStep implements StepInterface {
     dimensionUpdateRow[ updateIndex++ ] = dimkey;
 
     data.db.setValues( data.dimensionUpdateRowMeta, dimensionUpdateRow, data.prepStatementDimensionUpdate );
-    data.db.insertRow( data.prepStatementDimensionUpdate );
+    writeRow( data.prepStatementDimensionUpdate, row );
+
+    if ( data.index != null ) {
+      try {
+        int version = data.index.findVersion( getIndexKey( rowMeta, row ), 0, dimkey );
+        if ( version >= 0 ) {
+          setIndexFields( rowMeta, row, data.index.getRow( version ), false );
+        }
+      } catch ( KettleValueException e ) {
+        throw new KettleDatabaseException( "Unable to update the dimension index", e );
+      }
+    }
   }
 
   // This updates all versions of a dimension entry.
@@ -1460,7 +1776,17 @@ public class DimensionLookup extends BaseStep implements StepInterface {
     // UPDATE VALUES
     data.db.setValues( data.punchThroughRowMeta, punchThroughRow, data.prepStatementPunchThrough ); // set values for
     // update
-    data.db.insertRow( data.prepStatementPunchThrough ); // do the actual punch through update
+    writeRow( data.prepStatementPunchThrough, row ); // do the actual punch through update
+
+    if ( data.index != null ) {
+      try {
+        for ( int version : data.index.getVersions( getIndexKey( rowMeta, row ) ) ) {
+          setIndexFields( rowMeta, row, data.index.getRow( version ), true );
+        }
+      } catch ( KettleValueException e ) {
+        throw new KettleDatabaseException( "Unable to update the dimension index", e );
+      }
+    }
   }
 
   /**
@@ -1746,6 +2072,7 @@ public class DimensionLookup extends BaseStep implements StepInterface {
       try {
         if ( !data.db.isAutoCommit() ) {
           if ( getErrors() == 0 ) {
+            executeBatches();
             data.db.commit();
           } else {
             data.db.rollback();
@@ -1757,6 +2084,13 @@ public class DimensionLookup extends BaseStep implements StepInterface {
         data.db.disconnect();
       }
     }
+    if ( data.sharedCache != null ) {
+      data.sharedCache.release();
+      data.sharedCache = null;
+    }
+    if ( meta.isUpdate() && data.schemaTable != null && ( getLinesOutput() > 0 || getLinesUpdated() > 0 ) ) {
+      invalidateSharedCaches();
+    }
     super.dispose( smi, sdi );
   }
 }
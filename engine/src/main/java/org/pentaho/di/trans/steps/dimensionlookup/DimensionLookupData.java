@@ -2,7 +2,7 @@
  *
  * Pentaho Data Integration
  *
- * Copyright (C) 2002-2017 by Hitachi Vantara : http://www.pentaho.com
+ * Copyright (C) 2002-2020 by Hitachi Vantara : http://www.pentaho.com
  *
  *******************************************************************************
  *
@@ -24,8 +24,13 @@ package org.pentaho.di.trans.steps.dimensionlookup;
 
 import java.sql.PreparedStatement;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
+import org.pentaho.di.core.LookupCacheRegistry;
 import org.pentaho.di.core.database.Database;
 import org.pentaho.di.core.hash.ByteArrayHashMap;
 import org.pentaho.di.core.row.RowMetaInterface;
@@ -88,11 +93,27 @@ public class DimensionLookupData extends BaseStepData implements StepDataInterfa
   public int preloadToDateIndex;
 
   public DimensionCache preloadCache;
+  public LookupCacheRegistry.Reference<DimensionCache> sharedCache;
 
   public List<Integer> preloadIndexes;
 
   public List<Integer> lazyList;
 
+  /**
+   * All versions of the dimension, if they are loaded at the start
+   */
+  public DimensionIndex index;
+
+  /**
+   * The column in the index of every lookup field, or -1
+   */
+  public int[] indexFieldColumns;
+
+  public boolean batchingWrites;
+  public int batchedWrites;
+  public Set<PreparedStatement> batchedStatements = new HashSet<>();
+  public Map<List<Object>, Integer> batchedKeys = new HashMap<>(); // the last statement of a natural key in the batch
+
   /**
    * The input row metadata, but converted to normal storage type
    */
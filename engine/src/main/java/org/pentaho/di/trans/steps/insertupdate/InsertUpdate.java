@@ -2,7 +2,7 @@
  *
  * Pentaho Data Integration
  *
- * Copyright (C) 2002-2017 by Hitachi Vantara : http://www.pentaho.com
+ * Copyright (C) 2002-2020 by Hitachi Vantara : http://www.pentaho.com
  *
  *******************************************************************************
  *
@@ -22,17 +22,24 @@
 
 package org.pentaho.di.trans.steps.insertupdate;
 
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.UUID;
 
 import org.apache.commons.lang.ArrayUtils;
 import org.pentaho.di.core.Const;
+import org.pentaho.di.core.LookupCacheRegistry;
 import org.pentaho.di.core.database.Database;
 import org.pentaho.di.core.database.DatabaseMeta;
 import org.pentaho.di.core.exception.KettleDatabaseException;
 import org.pentaho.di.core.exception.KettleException;
 import org.pentaho.di.core.exception.KettleStepException;
+import org.pentaho.di.core.exception.KettleValueException;
 import org.pentaho.di.core.row.RowMeta;
 import org.pentaho.di.core.row.RowMetaInterface;
 import org.pentaho.di.core.row.ValueMetaInterface;
@@ -185,6 +192,15 @@ public class InsertUpdate extends BaseStep implements StepInterface {
     if ( r == null ) {
       // no more input to be expected...
 
+      if ( data.mergeRows > 0 ) {
+        try {
+          mergeRows();
+        } catch ( KettleException e ) {
+          logError( BaseMessages.getString( PKG, "InsertUpdate.Log.ErrorInStep" ), e );
+          setErrors( 1 );
+          stopAll();
+        }
+      }
       setOutputDone();
       return false;
     }
@@ -293,12 +309,20 @@ public class InsertUpdate extends BaseStep implements StepInterface {
         }
         prepareUpdate( getInputRowMeta() );
       }
+
+      if ( data.mergeRows > 0 && !prepareMerge( getInputRowMeta() ) ) {
+        data.mergeRows = 0;
+      }
     }
 
     try {
-      lookupValues( getInputRowMeta(), r ); // add new values to the row in rowset[0].
-      putRow( data.outputRowMeta, r ); // Nothing changed to the input, return the same row, pass a "cloned" metadata
-                                       // row.
+      if ( data.mergeRows > 0 ) {
+        addMergeRow( getInputRowMeta(), r ); // the row is passed on once it is merged
+      } else {
+        lookupValues( getInputRowMeta(), r ); // add new values to the row in rowset[0].
+        putRow( data.outputRowMeta, r ); // Nothing changed to the input, return the same row, pass a "cloned" metadata
+                                         // row.
+      }
 
       if ( checkFeedback( getLinesRead() ) ) {
         if ( log.isBasic() ) {
@@ -464,6 +488,239 @@ public class InsertUpdate extends BaseStep implements StepInterface {
     }
   }
 
+  /**
+   * Prepare to merge the rows into the table through a temporary table, with a single MERGE or upsert statement per
+   * batch of rows. This is only possible when the database has such a statement, when all keys are compared with "="
+   * and when no rows need to be sent to the error handling. Databases with an upsert that matches rows on a unique
+   * index also need a unique index on exactly the key fields.
+   *
+   * @param rowMeta
+   *          the metadata of the input rows
+   * @return true if the rows can be merged, false if they have to be looked up one by one
+   * @throws KettleException
+   *           in case the temporary table can't be created
+   */
+  boolean prepareMerge( RowMetaInterface rowMeta ) throws KettleException {
+    DatabaseMeta databaseMeta = meta.getDatabaseMeta();
+
+    // The DDL could commit the work of other steps on Oracle
+    boolean possible = !getStepMeta().isDoingErrorHandling() && !getTransMeta().isUsingUniqueConnections()
+      && meta.getKeyLookup().length > 0;
+    for ( int i = 0; i < meta.getKeyCondition().length; i++ ) {
+      possible &= "=".equals( meta.getKeyCondition()[i] );
+    }
+
+    // The columns of the temporary table: the ones to insert and the keys
+    List<String> columns = new ArrayList<String>();
+    List<Integer> nrs = new ArrayList<Integer>();
+    for ( int i = 0; i < meta.getUpdateLookup().length; i++ ) {
+      columns.add( meta.getUpdateLookup()[i] );
+      nrs.add( data.valuenrs[i] );
+    }
+    String[] keyFields = new String[meta.getKeyLookup().length];
+    data.mergeKeynrs = new int[meta.getKeyLookup().length];
+    for ( int i = 0; i < meta.getKeyLookup().length; i++ ) {
+      int keynr = rowMeta.indexOfValue( meta.getKeyStream()[i] );
+      int index = indexOfColumn( columns, meta.getKeyLookup()[i] );
+      if ( index < 0 ) {
+        columns.add( meta.getKeyLookup()[i] );
+        nrs.add( keynr );
+      } else if ( nrs.get( index ) != keynr ) {
+        possible = false; // the key column is inserted from another field than the one it's looked up with
+      }
+      keyFields[i] = databaseMeta.quoteField( meta.getKeyLookup()[i] );
+      data.mergeKeynrs[i] = keynr;
+    }
+
+    String[] insertFields = new String[meta.getUpdateLookup().length];
+    List<String> updateFields = new ArrayList<String>();
+    for ( int i = 0; i < meta.getUpdateLookup().length; i++ ) {
+      insertFields[i] = databaseMeta.quoteField( meta.getUpdateLookup()[i] );
+      if ( !meta.isUpdateBypassed() && meta.getUpdate()[i].booleanValue()
+        && indexOfColumn( Arrays.asList( meta.getKeyLookup() ), meta.getUpdateLookup()[i] ) < 0 ) {
+        updateFields.add( insertFields[i] );
+      }
+    }
+    String[] quotedColumns = new String[columns.size()];
+    for ( int i = 0; i < columns.size(); i++ ) {
+      quotedColumns[i] = databaseMeta.quoteField( columns.get( i ) );
+    }
+
+    String stagingTable = databaseMeta.getTemporaryTableName( "KTL_IU_"
+      + UUID.randomUUID().toString().replace( "-", "" ).substring( 0, 12 ).toUpperCase() );
+    String mergeSQL = databaseMeta.getSQLMergeFromTable( data.schemaTable, stagingTable, keyFields, insertFields,
+      updateFields.toArray( new String[updateFields.size()] ) );
+    String createSQL = databaseMeta.getSQLCreateTemporaryTable( stagingTable, "SELECT "
+      + String.join( ", ", quotedColumns ) + " FROM " + data.schemaTable + " WHERE 1=0" );
+    if ( !possible || mergeSQL == null || createSQL == null ) {
+      if ( log.isBasic() ) {
+        logBasic( BaseMessages.getString( PKG, "InsertUpdate.Log.MergeNotPossible" ) );
+      }
+      return false;
+    }
+
+    // An upsert that matches rows on a unique index would insert duplicates, or fail, without one on the keys
+    if ( databaseMeta.requiresUniqueIndexForMerge() && !data.db.checkUniqueIndexExists(
+      environmentSubstitute( meta.getSchemaName() ), environmentSubstitute( meta.getTableName() ),
+      meta.getKeyLookup() ) ) {
+      if ( log.isBasic() ) {
+        logBasic( BaseMessages.getString( PKG, "InsertUpdate.Log.MergeNeedsUniqueIndex", data.schemaTable ) );
+      }
+      return false;
+    }
+
+    if ( log.isDetailed() ) {
+      logDetailed( "Creating temporary table with [" + createSQL + "]" );
+    }
+    data.db.execStatement( createSQL );
+    data.stagingTable = stagingTable;
+
+    data.stagingRowMeta = new RowMeta();
+    for ( int i = 0; i < columns.size(); i++ ) {
+      ValueMetaInterface stagingValue = rowMeta.getValueMeta( nrs.get( i ) ).clone();
+      stagingValue.setName( columns.get( i ) );
+      data.stagingRowMeta.addValueMeta( stagingValue );
+    }
+    data.stagingnrs = ArrayUtils.toPrimitive( nrs.toArray( new Integer[0] ) );
+
+    String sql = "INSERT INTO " + stagingTable + " ( " + String.join( ", ", quotedColumns ) + " ) VALUES ( ";
+    for ( int i = 0; i < columns.size(); i++ ) {
+      sql += i == 0 ? "?" : ", ?";
+    }
+    sql += " )";
+    data.prepStatementStaging = data.db.prepareSQL( sql );
+    data.mergeSQL = mergeSQL;
+    data.mergeBuffer = new ArrayList<Object[]>( data.mergeRows );
+
+    if ( log.isDetailed() ) {
+      logDetailed( BaseMessages.getString( PKG, "InsertUpdate.Log.Merging", data.schemaTable, stagingTable,
+        String.valueOf( data.mergeRows ) ) );
+      logDetailed( "Merging rows with [" + mergeSQL + "]" );
+    }
+    return true;
+  }
+
+  private static int indexOfColumn( List<String> columns, String column ) {
+    for ( int i = 0; i < columns.size(); i++ ) {
+      if ( columns.get( i ).equalsIgnoreCase( column ) ) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Add a row to the batch to merge. A merge statement can only match a row of the table once, so a row with the same
+   * key as a row in the batch starts a new batch.
+   */
+  void addMergeRow( RowMetaInterface rowMeta, Object[] row ) throws KettleException {
+    List<Object> key = getMergeKey( rowMeta, row );
+    if ( key != null && !data.mergeKeys.add( key ) ) {
+      mergeRows();
+      data.mergeKeys.add( key );
+    }
+    data.mergeBuffer.add( row );
+    if ( data.mergeBuffer.size() >= data.mergeRows ) {
+      mergeRows();
+    }
+  }
+
+  /**
+   * @return the key values of a row to compare with the other rows in the batch, or null if the row can't match any
+   */
+  private List<Object> getMergeKey( RowMetaInterface rowMeta, Object[] row ) throws KettleValueException {
+    List<Object> key = new ArrayList<Object>( data.mergeKeynrs.length );
+    for ( int keynr : data.mergeKeynrs ) {
+      ValueMetaInterface valueMeta = rowMeta.getValueMeta( keynr );
+      Object value = valueMeta.convertToNormalStorageType( row[keynr] );
+      if ( valueMeta.isNull( value ) ) {
+        return null; // NULL = NULL is never true, the row is inserted
+      }
+      // The database may consider more values equal than Java does, e.g. with case insensitive collations. Seeing
+      // too many duplicates only makes the batches smaller.
+      if ( value instanceof String ) {
+        value = ( (String) value ).trim().toLowerCase();
+      } else if ( value instanceof BigDecimal ) {
+        value = ( (BigDecimal) value ).stripTrailingZeros();
+      } else if ( value instanceof byte[] ) {
+        value = ByteBuffer.wrap( (byte[]) value );
+      }
+      key.add( value );
+    }
+    return key;
+  }
+
+  /**
+   * Write the batch of rows to the temporary table, merge them into the table and pass them on. The merge statement
+   * doesn't report which rows it inserted and which it updated, so every row counts as output. Rows that are already
+   * in the table with the same values are updated anyway instead of being skipped.
+   */
+  void mergeRows() throws KettleException {
+    if ( data.mergeBuffer == null || data.mergeBuffer.isEmpty() ) {
+      return;
+    }
+    boolean batch = meta.getDatabaseMeta().supportsBatchUpdates();
+    Object[] stagingRow = new Object[data.stagingnrs.length];
+    try {
+      for ( Object[] row : data.mergeBuffer ) {
+        for ( int i = 0; i < data.stagingnrs.length; i++ ) {
+          stagingRow[i] = row[data.stagingnrs[i]];
+        }
+        data.db.setValues( data.stagingRowMeta, stagingRow, data.prepStatementStaging );
+        if ( batch ) {
+          data.prepStatementStaging.addBatch();
+        } else {
+          data.prepStatementStaging.executeUpdate();
+        }
+      }
+      if ( batch ) {
+        data.prepStatementStaging.executeBatch();
+        data.prepStatementStaging.clearBatch();
+      }
+    } catch ( SQLException ex ) {
+      throw new KettleDatabaseException( "Unable to write rows to temporary table [" + data.stagingTable + "]", ex );
+    }
+
+    data.db.execStatement( data.mergeSQL );
+    data.db.execStatement( "DELETE FROM " + data.stagingTable );
+
+    data.mergedSinceCommit += data.mergeBuffer.size();
+    if ( !data.db.isAutoCommit() && data.mergedSinceCommit >= data.commitSize ) {
+      data.db.commit();
+      data.mergedSinceCommit = 0;
+    }
+
+    if ( log.isDetailed() ) {
+      logDetailed( BaseMessages.getString( PKG, "InsertUpdate.Log.MergedRows", String.valueOf( data.mergeBuffer
+        .size() ), data.schemaTable ) );
+    }
+    for ( Object[] row : data.mergeBuffer ) {
+      putRow( data.outputRowMeta, row );
+      incrementLinesOutput();
+    }
+    data.mergeBuffer.clear();
+    data.mergeKeys.clear();
+  }
+
+  private void dropStagingTable() {
+    if ( data.stagingTable == null ) {
+      return;
+    }
+    try {
+      // Oracle only drops a global temporary table the session no longer uses
+      data.db.execStatement( meta.getDatabaseMeta().getDatabaseInterface().getTruncateTableStatement(
+        data.stagingTable ) );
+      data.db.execStatement( "DROP TABLE " + data.stagingTable );
+      if ( !data.db.isAutoCommit() ) {
+        data.db.commit();
+      }
+    } catch ( KettleDatabaseException e ) {
+      logError( BaseMessages.getString( PKG, "InsertUpdate.Log.UnableToDropTemporaryTable", data.stagingTable )
+        + e.toString() );
+    }
+    data.stagingTable = null;
+  }
+
   public boolean init( StepMetaInterface smi, StepDataInterface sdi ) {
     meta = (InsertUpdateMeta) smi;
     data = (InsertUpdateData) sdi;
@@ -483,7 +740,9 @@ public class InsertUpdate extends BaseStep implements StepInterface {
         } else {
           data.db.connect( getPartitionID() );
         }
-        data.db.setCommit(  meta.getCommitSize( this ) );
+        data.commitSize = meta.getCommitSize( this );
+        data.db.setCommit( data.commitSize );
+        data.mergeRows = Math.max( 0, Const.toInt( getVariable( Const.KETTLE_INSERT_UPDATE_MERGE_ROWS ), 0 ) );
 
         return true;
       } catch ( KettleException ke ) {
@@ -494,6 +753,18 @@ public class InsertUpdate extends BaseStep implements StepInterface {
     return false;
   }
 
+  /**
+   * Rows were inserted or updated, the shared lookup caches of the table are stale.
+   */
+  private void invalidateSharedCaches() {
+    try {
+      LookupCacheRegistry.getInstance().invalidateTables( meta.getDatabaseMeta(), this, getPartitionID(),
+        Collections.singleton( data.schemaTable ) );
+    } catch ( KettleDatabaseException e ) {
+      logError( "Unable to invalidate the shared lookup caches of " + data.schemaTable, e );
+    }
+  }
+
   public void dispose( StepMetaInterface smi, StepDataInterface sdi ) {
     meta = (InsertUpdateMeta) smi;
     data = (InsertUpdateData) sdi;
@@ -509,13 +780,21 @@ public class InsertUpdate extends BaseStep implements StepInterface {
         }
         data.db.closeUpdate();
         data.db.closeInsert();
+        if ( data.prepStatementStaging != null ) {
+          data.db.closePreparedStatement( data.prepStatementStaging );
+          data.prepStatementStaging = null;
+        }
       } catch ( KettleDatabaseException e ) {
         logError( BaseMessages.getString( PKG, "InsertUpdate.Log.UnableToCommitConnection" ) + e.toString() );
         setErrors( 1 );
       } finally {
+        dropStagingTable();
         data.db.disconnect();
       }
     }
+    if ( data.schemaTable != null && ( getLinesOutput() > 0 || getLinesUpdated() > 0 ) ) {
+      invalidateSharedCaches();
+    }
     super.dispose( smi, sdi );
   }
 
@@ -2,7 +2,7 @@
  *
  * Pentaho Data Integration
  *
- * Copyright (C) 2002-2017 by Hitachi Vantara : http://www.pentaho.com
+ * Copyright (C) 2002-2020 by Hitachi Vantara : http://www.pentaho.com
  *
  *******************************************************************************
  *
@@ -23,6 +23,9 @@
 package org.pentaho.di.trans.steps.insertupdate;
 
 import java.sql.PreparedStatement;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 
 import org.pentaho.di.core.database.Database;
 import org.pentaho.di.core.row.RowMetaInterface;
@@ -54,6 +57,20 @@ public class InsertUpdateData extends BaseStepData implements StepDataInterface
   public RowMetaInterface lookupReturnRowMeta;
   public RowMetaInterface insertRowMeta;
 
+  // Merging rows through a temporary table
+  //
+  public int commitSize;
+  public int mergeRows; // the number of rows to merge at once, 0 to handle the rows one by one
+  public String stagingTable;
+  public PreparedStatement prepStatementStaging;
+  public RowMetaInterface stagingRowMeta;
+  public int[] stagingnrs; // Stream valuename nrs of the columns of the temporary table
+  public int[] mergeKeynrs; // Stream valuename nrs of the key values
+  public String mergeSQL;
+  public List<Object[]> mergeBuffer;
+  public Set<List<Object>> mergeKeys = new HashSet<>();
+  public int mergedSinceCommit;
+
   /**
    * Default constructor.
    */
@@ -22,8 +22,9 @@
 
 package org.pentaho.di.trans.steps.memgroupby;
 
+import java.math.BigDecimal;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Date;
 import java.util.List;
 import java.util.Set;
 import java.util.TreeSet;
@@ -43,6 +44,7 @@ import org.pentaho.di.core.row.value.ValueMetaBase;
 import org.pentaho.di.core.row.value.ValueMetaInteger;
 import org.pentaho.di.core.row.value.ValueMetaNumber;
 import org.pentaho.di.core.row.value.ValueMetaString;
+import org.pentaho.di.core.vfs.KettleVFS;
 import org.pentaho.di.i18n.BaseMessages;
 import org.pentaho.di.trans.Trans;
 import org.pentaho.di.trans.TransMeta;
@@ -51,7 +53,6 @@ import org.pentaho.di.trans.step.StepDataInterface;
 import org.pentaho.di.trans.step.StepInterface;
 import org.pentaho.di.trans.step.StepMeta;
 import org.pentaho.di.trans.step.StepMetaInterface;
-import org.pentaho.di.trans.steps.memgroupby.MemoryGroupByData.HashEntry;
 
 /**
  * Groups information based on aggregation rules. (sum, count, ...)
@@ -62,6 +63,16 @@ import org.pentaho.di.trans.steps.memgroupby.MemoryGroupByData.HashEntry;
 public class MemoryGroupBy extends BaseStep implements StepInterface {
   private static Class<?> PKG = MemoryGroupByMeta.class; // for i18n purposes, needed by Translator2!!
 
+  /**
+   * Rough memory estimates (in bytes) used to decide when to move groups to disk: a group's map slot, list entries,
+   * group and aggregate objects without the values (the serialized key comes on top), a reference and a small boxed
+   * value.
+   */
+  private static final long GROUP_OVERHEAD = 128L;
+  private static final long REFERENCE_SIZE = 8L;
+  private static final long BOXED_VALUE_SIZE = 16L;
+  private static final long TREE_NODE_SIZE = 40L;
+
   private MemoryGroupByMeta meta;
 
   private MemoryGroupByData data;
@@ -98,6 +109,14 @@ public class MemoryGroupBy extends BaseStep implements StepInterface {
       compatibilityMode = ValueMetaBase.convertStringToBoolean(
         getVariable( Const.KETTLE_COMPATIBILITY_MEMORY_GROUP_BY_SUM_AVERAGE_RETURN_NUMBER_TYPE, "N" ) );
 
+      // With a memory budget, partitions of groups are moved to disk when it is exceeded
+      //
+      data.maxMemory = Const.toLong( getVariable( Const.KETTLE_MEMORY_GROUP_BY_MAX_MEMORY, "0" ), 0L ) * 1024L * 1024L;
+      if ( data.maxMemory > 0 ) {
+        data.partitionMemory = new long[MemoryGroupByData.NR_PARTITIONS];
+        data.spilledPartitions = new SpilledPartition[MemoryGroupByData.NR_PARTITIONS];
+      }
+
       // What is the output looking like?
       //
       data.inputRowMeta = getInputRowMeta();
@@ -200,27 +219,28 @@ public class MemoryGroupBy extends BaseStep implements StepInterface {
   }
 
   private void handleLastOfGroup() throws KettleException {
+    boolean hasGroups = !data.groups.isEmpty();
+
     // Dump the content of the map...
     //
-    for ( HashEntry entry : data.map.keySet() ) {
-      Aggregate aggregate = data.map.get( entry );
-      Object[] aggregateResult = getAggregateResult( aggregate );
+    putGroups();
 
-      Object[] outputRowData = RowDataUtil.allocateRowData( data.outputRowMeta.size() );
-      int index = 0;
-      for ( int i = 0; i < data.groupMeta.size(); i++ ) {
-        outputRowData[index++] = data.groupMeta.getValueMeta( i ).convertToNormalStorageType( entry.getGroupData()[i] );
-      }
-      for ( int i = 0; i < data.aggMeta.size(); i++ ) {
-        outputRowData[index++] = data.aggMeta.getValueMeta( i ).convertToNormalStorageType( aggregateResult[i] );
+    // Then aggregate the partitions that were moved to disk, one at a time
+    //
+    if ( data.spilledPartitions != null ) {
+      for ( int partition = 0; partition < data.spilledPartitions.length; partition++ ) {
+        if ( data.spilledPartitions[partition] != null ) {
+          hasGroups = true;
+          aggregateSpilledPartition( partition );
+        }
       }
-      putRow( data.outputRowMeta, outputRowData );
     }
+    data.clearPartitions();
 
     // What if we always need to give back one row?
     // This means we give back 0 for count all, count distinct, null for everything else
     //
-    if ( data.map.isEmpty() && meta.isAlwaysGivingBackOneRow() ) {
+    if ( !hasGroups && meta.isAlwaysGivingBackOneRow() ) {
       Object[] outputRowData = RowDataUtil.allocateRowData( data.outputRowMeta.size() );
       int index = 0;
       for ( int i = 0; i < data.groupMeta.size(); i++ ) {
@@ -239,6 +259,157 @@ public class MemoryGroupBy extends BaseStep implements StepInterface {
     }
   }
 
+  /**
+   * Pass on the aggregation results of the groups in the map
+   */
+  private void putGroups() throws KettleException {
+    for ( int groupNr = 0; groupNr < data.groups.size(); groupNr++ ) {
+      Object[] groupData = data.groups.get( groupNr );
+      Object[] aggregateResult = getAggregateResult( data.aggregates.get( groupNr ) );
+
+      Object[] outputRowData = RowDataUtil.allocateRowData( data.outputRowMeta.size() );
+      int index = 0;
+      for ( int i = 0; i < data.groupMeta.size(); i++ ) {
+        outputRowData[index++] = data.groupMeta.getValueMeta( i ).convertToNormalStorageType( groupData[i] );
+      }
+      for ( int i = 0; i < data.aggMeta.size(); i++ ) {
+        outputRowData[index++] = data.aggMeta.getValueMeta( i ).convertToNormalStorageType( aggregateResult[i] );
+      }
+      putRow( data.outputRowMeta, outputRowData );
+    }
+  }
+
+  /**
+   * Read back the groups of a partition that was moved to disk, continue aggregating the rows that came in after that
+   * and pass on the results. The partition is aggregated in memory, whatever its size.
+   */
+  private void aggregateSpilledPartition( int partition ) throws KettleException {
+    if ( log.isDetailed() ) {
+      logDetailed( BaseMessages.getString( PKG, "MemoryGroupBy.Log.AggregatingSpilledPartition", partition ) );
+    }
+    SpilledPartition spilledPartition = data.spilledPartitions[partition];
+    data.spilledPartitions[partition] = null;
+
+    long maxMemory = data.maxMemory;
+    data.maxMemory = 0L;
+    data.clearGroups();
+    try {
+      spilledPartition.replay( data.inputRowMeta,
+        ( groupData, aggregate ) -> data.addGroup( data.getGroupKey( groupData ), groupData, aggregate ),
+        row -> addToAggregate( row ) );
+      putGroups();
+    } finally {
+      data.clearGroups();
+      data.maxMemory = maxMemory;
+      spilledPartition.delete();
+    }
+  }
+
+  /**
+   * Move the partition using the most memory to disk.
+   *
+   * @return false if there was nothing left to move.
+   */
+  private boolean spillLargestPartition() throws KettleException {
+    int largest = -1;
+    for ( int partition = 0; partition < data.partitionMemory.length; partition++ ) {
+      if ( data.spilledPartitions[partition] == null && data.partitionMemory[partition] > 0
+        && ( largest < 0 || data.partitionMemory[partition] > data.partitionMemory[largest] ) ) {
+        largest = partition;
+      }
+    }
+    if ( largest < 0 ) {
+      return false;
+    }
+    if ( log.isDetailed() ) {
+      logDetailed( BaseMessages.getString( PKG, "MemoryGroupBy.Log.SpillingPartition", data.memoryUsed, largest ) );
+    }
+
+    SpilledPartition spilledPartition = new SpilledPartition(
+      KettleVFS.createTempFile( "memgroupby", ".tmp", KettleVFS.TEMP_DIR, this ),
+      KettleVFS.createTempFile( "memgroupby", ".tmp", KettleVFS.TEMP_DIR, this ),
+      data.groupMeta, data.aggMeta, getDistinctMeta(), meta.getAggregateType() );
+    data.spilledPartitions[largest] = spilledPartition;
+
+    // Entries can't be removed from the map, the groups that stay in memory are added to a new one
+    //
+    List<Object[]> groups = data.groups;
+    List<Aggregate> aggregates = data.aggregates;
+    data.clearGroups();
+    for ( int groupNr = 0; groupNr < groups.size(); groupNr++ ) {
+      byte[] groupKey = data.getGroupKey( groups.get( groupNr ) );
+      if ( data.getPartition( groupKey ) == largest ) {
+        spilledPartition.writeGroup( groups.get( groupNr ), aggregates.get( groupNr ) );
+      } else {
+        data.addGroup( groupKey, groups.get( groupNr ), aggregates.get( groupNr ) );
+      }
+    }
+    spilledPartition.finishGroups();
+
+    data.memoryUsed -= data.partitionMemory[largest];
+    data.partitionMemory[largest] = 0L;
+    return true;
+  }
+
+  /**
+   * @return the metadata of the distinct values counted for every subject: its value in normal storage, binary values
+   *         are counted as strings.
+   */
+  private RowMetaInterface getDistinctMeta() {
+    RowMetaInterface distinctMeta = new RowMeta();
+    for ( int i = 0; i < data.subjectnrs.length; i++ ) {
+      ValueMetaInterface subjMeta = data.inputRowMeta.getValueMeta( data.subjectnrs[i] );
+      ValueMetaInterface valueMeta;
+      if ( subjMeta.isBinary() ) {
+        valueMeta = new ValueMetaString( subjMeta.getName() );
+      } else {
+        valueMeta = subjMeta.clone();
+        valueMeta.setStorageType( ValueMetaInterface.STORAGE_TYPE_NORMAL );
+      }
+      distinctMeta.addValueMeta( valueMeta );
+    }
+    return distinctMeta;
+  }
+
+  private void addMemory( int partition, long size ) {
+    data.partitionMemory[partition] += size;
+    data.memoryUsed += size;
+  }
+
+  /**
+   * @return a rough estimate of the memory used by a value
+   */
+  static long estimateSize( Object value ) {
+    if ( value == null ) {
+      return 0L;
+    }
+    if ( value instanceof String ) {
+      return 40L + 2L * ( (String) value ).length();
+    }
+    if ( value instanceof byte[] ) {
+      return 16L + ( (byte[]) value ).length;
+    }
+    if ( value instanceof Date ) {
+      return 24L;
+    }
+    if ( value instanceof BigDecimal ) {
+      return 64L;
+    }
+    return BOXED_VALUE_SIZE;
+  }
+
+  private long estimateGroupSize( byte[] groupKey, Object[] groupData, Object[] r ) {
+    long size = GROUP_OVERHEAD + groupKey.length + REFERENCE_SIZE * groupData.length
+      + 3 * REFERENCE_SIZE * data.subjectnrs.length;
+    for ( Object value : groupData ) {
+      size += estimateSize( value );
+    }
+    for ( int i = 0; i < data.subjectnrs.length; i++ ) {
+      size += estimateSize( r[data.subjectnrs[i]] );
+    }
+    return size;
+  }
+
   @VisibleForTesting
   void updateValueMeta() throws KettleException {
 
@@ -266,9 +437,20 @@ public class MemoryGroupBy extends BaseStep implements StepInterface {
     for ( int i = 0; i < data.groupnrs.length; i++ ) {
       groupData[i] = r[data.groupnrs[i]];
     }
-    HashEntry entry = data.getHashEntry( groupData );
+    byte[] groupKey = data.getGroupKey( groupData );
 
-    Aggregate aggregate = data.map.get( entry );
+    // With a memory budget the rows of a partition that was moved to disk go straight to its temp file
+    //
+    int partition = -1;
+    if ( data.maxMemory > 0 ) {
+      partition = data.getPartition( groupKey );
+      if ( data.spilledPartitions[partition] != null ) {
+        data.spilledPartitions[partition].writeRow( data.inputRowMeta, r );
+        return;
+      }
+    }
+
+    Aggregate aggregate = data.getAggregate( groupKey );
     if ( aggregate == null ) {
       // Create a new value...
       //
@@ -277,7 +459,10 @@ public class MemoryGroupBy extends BaseStep implements StepInterface {
 
       // Store it in the map!
       //
-      data.map.put( entry, aggregate );
+      data.addGroup( groupKey, groupData, aggregate );
+      if ( partition >= 0 ) {
+        addMemory( partition, estimateGroupSize( groupKey, groupData, r ) );
+      }
     }
 
     for ( int i = 0; i < data.subjectnrs.length; i++ ) {
@@ -300,6 +485,9 @@ public class MemoryGroupBy extends BaseStep implements StepInterface {
         case MemoryGroupByMeta.TYPE_GROUP_PERCENTILE:
           if ( !subjMeta.isNull( subj ) ) {
             ( (List<Double>) aggregate.agg[i] ).add( subjMeta.getNumber( subj ) );
+            if ( partition >= 0 ) {
+              addMemory( partition, BOXED_VALUE_SIZE + REFERENCE_SIZE );
+            }
           }
           break;
         case MemoryGroupByMeta.TYPE_GROUP_STANDARD_DEVIATION:
@@ -337,6 +525,9 @@ public class MemoryGroupBy extends BaseStep implements StepInterface {
             }
             if ( !aggregate.distinctObjs[i].contains( obj ) ) {
               aggregate.distinctObjs[i].add( obj );
+              if ( partition >= 0 ) {
+                addMemory( partition, TREE_NODE_SIZE + estimateSize( obj ) );
+              }
             }
           }
           aggregate.counts[i] = aggregate.distinctObjs[i].size();
@@ -387,10 +578,14 @@ public class MemoryGroupBy extends BaseStep implements StepInterface {
         case MemoryGroupByMeta.TYPE_GROUP_CONCAT_COMMA:
           if ( !( subj == null ) ) {
             StringBuilder sb = (StringBuilder) value;
-            if ( sb.length() > 0 ) {
+            int length = sb.length();
+            if ( length > 0 ) {
               sb.append( ", " );
             }
             sb.append( subjMeta.getString( subj ) );
+            if ( partition >= 0 ) {
+              addMemory( partition, 2L * ( sb.length() - length ) );
+            }
           }
           break;
         case MemoryGroupByMeta.TYPE_GROUP_CONCAT_STRING:
@@ -400,16 +595,26 @@ public class MemoryGroupBy extends BaseStep implements StepInterface {
               separator = environmentSubstitute( meta.getValueField()[i] );
             }
             StringBuilder sb = (StringBuilder) value;
-            if ( sb.length() > 0 ) {
+            int length = sb.length();
+            if ( length > 0 ) {
               sb.append( separator );
             }
             sb.append( subjMeta.getString( subj ) );
+            if ( partition >= 0 ) {
+              addMemory( partition, 2L * ( sb.length() - length ) );
+            }
           }
           break;
         default:
           break;
       }
     }
+
+    if ( partition >= 0 ) {
+      while ( data.memoryUsed > data.maxMemory && spillLargestPartition() ) {
+        // Keep moving partitions to disk until we're back under budget
+      }
+    }
   }
 
   /**
@@ -582,7 +787,7 @@ public class MemoryGroupBy extends BaseStep implements StepInterface {
     data = (MemoryGroupByData) sdi;
 
     if ( super.init( smi, sdi ) ) {
-      data.map = new HashMap<HashEntry, Aggregate>( 5000 );
+      data.clearGroups();
       return true;
     }
     return false;
@@ -602,7 +807,7 @@ public class MemoryGroupBy extends BaseStep implements StepInterface {
 
     // Clear the complete cache...
     //
-    data.map.clear();
+    data.clearGroups();
 
     data.newBatch = true;
   }
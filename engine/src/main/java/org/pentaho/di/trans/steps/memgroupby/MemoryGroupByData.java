@@ -2,7 +2,7 @@
  *
  * Pentaho Data Integration
  *
- * Copyright (C) 2002-2017 by Hitachi Vantara : http://www.pentaho.com
+ * Copyright (C) 2002-2020 by Hitachi Vantara : http://www.pentaho.com
  *
  *******************************************************************************
  *
@@ -22,9 +22,18 @@
 
 package org.pentaho.di.trans.steps.memgroupby;
 
-import java.util.HashMap;
-
-import org.pentaho.di.core.exception.KettleValueException;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.text.Collator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.exception.KettleFileException;
+import org.pentaho.di.core.hash.ByteArrayIntHashMap;
 import org.pentaho.di.core.row.RowMetaInterface;
 import org.pentaho.di.core.row.ValueMetaInterface;
 import org.pentaho.di.trans.step.BaseStepData;
@@ -36,46 +45,14 @@ import org.pentaho.di.trans.step.StepDataInterface;
  *
  */
 public class MemoryGroupByData extends BaseStepData implements StepDataInterface {
-  public class HashEntry {
-    private Object[] groupData;
-
-    public HashEntry( Object[] groupData ) {
-      this.groupData = groupData;
-    }
-
-    public Object[] getGroupData() {
-      return groupData;
-    }
-
-    public boolean equals( Object obj ) {
-      HashEntry entry = (HashEntry) obj;
-
-      try {
-        return groupMeta.compare( groupData, entry.groupData ) == 0;
-      } catch ( KettleValueException e ) {
-        throw new RuntimeException( e );
-      }
-    }
-
-    public int hashCode() {
-      try {
-        return groupMeta.hashCode( getHashValue() );
-      } catch ( KettleValueException e ) {
-        throw new RuntimeException( e );
-      }
-    }
-
-    private Object[] getHashValue() throws KettleValueException {
-      Object[] groupDataHash = new Object[groupMeta.size()];
-      for ( int i = 0; i < groupMeta.size(); i++ ) {
-        ValueMetaInterface valueMeta = groupMeta.getValueMeta( i );
-        groupDataHash[i] = valueMeta.convertToNormalStorageType( groupData[i] );
-      }
-      return groupDataHash;
-    }
-  }
+  /** The groups are divided over 2^PARTITION_BITS partitions which are moved to disk as a whole */
+  public static final int PARTITION_BITS = 6;
+  public static final int NR_PARTITIONS = 1 << PARTITION_BITS;
 
-  public HashMap<HashEntry, Aggregate> map;
+  /** The serialized group keys, mapped to the number of the group in groups and aggregates */
+  public ByteArrayIntHashMap map;
+  public List<Object[]> groups;
+  public List<Aggregate> aggregates;
 
   public RowMetaInterface aggMeta;
   public RowMetaInterface groupMeta;
@@ -99,19 +76,152 @@ public class MemoryGroupByData extends BaseStepData implements StepDataInterface
 
   public boolean newBatch;
 
+  /** The memory budget in bytes, 0 means the groups are always kept in memory */
+  public long maxMemory;
+  /** The estimated memory used by the groups in the map */
+  public long memoryUsed;
+  public long[] partitionMemory;
+  /** The partitions that were moved to disk, null for partitions in memory */
+  public SpilledPartition[] spilledPartitions;
+
   public MemoryGroupByData() {
     super();
 
   }
 
-  public HashEntry getHashEntry( Object[] groupData ) {
-    return new HashEntry( groupData );
+  /** The group metadata with normal storage, used to serialize the group keys */
+  private ValueMetaInterface[] groupKeyMeta;
+  /** The collators of the string group fields that compare with one, null for the other fields */
+  private Collator[] groupKeyCollators;
+  private final ByteArrayOutputStream groupKeyBuffer = new ByteArrayOutputStream();
+  private final DataOutputStream groupKeyOutput = new DataOutputStream( groupKeyBuffer );
+
+  /**
+   * Serialize the group values in normal storage, so that a value in binary storage gives the same key. Values that
+   * are considered null, like an empty string, are written as null. The other values are normalized first so that
+   * values the group metadata considers equal give the same key: strings are trimmed, case folded or replaced by their
+   * collation key as their metadata compares them, and big numbers lose their trailing zeros.
+   *
+   * @return the key of the group in the map
+   */
+  public byte[] getGroupKey( Object[] groupData ) throws KettleException {
+    if ( groupKeyMeta == null ) {
+      groupKeyMeta = new ValueMetaInterface[groupMeta.size()];
+      groupKeyCollators = new Collator[groupMeta.size()];
+      for ( int i = 0; i < groupKeyMeta.length; i++ ) {
+        ValueMetaInterface valueMeta = groupMeta.getValueMeta( i );
+        groupKeyMeta[i] = valueMeta.clone();
+        groupKeyMeta[i].setStorageType( ValueMetaInterface.STORAGE_TYPE_NORMAL );
+        if ( valueMeta.isString() && !valueMeta.isCollatorDisabled() ) {
+          groupKeyCollators[i] = Collator.getInstance( valueMeta.getCollatorLocale() );
+          groupKeyCollators[i].setStrength( valueMeta.getCollatorStrength() );
+        }
+      }
+    }
+
+    groupKeyBuffer.reset();
+    for ( int i = 0; i < groupKeyMeta.length; i++ ) {
+      ValueMetaInterface valueMeta = groupMeta.getValueMeta( i );
+      Object value = valueMeta.convertToNormalStorageType( groupData[i] );
+      if ( groupKeyMeta[i].isNull( value ) ) {
+        groupKeyMeta[i].writeData( groupKeyOutput, null );
+      } else if ( valueMeta.isString() ) {
+        writeGroupKeyString( i, groupKeyMeta[i].getString( value ) );
+      } else if ( valueMeta.isBigNumber() ) {
+        BigDecimal number = groupKeyMeta[i].getBigNumber( value );
+        groupKeyMeta[i].writeData( groupKeyOutput, number.signum() == 0 ? BigDecimal.ZERO : number
+          .stripTrailingZeros() );
+      } else {
+        groupKeyMeta[i].writeData( groupKeyOutput, value );
+      }
+    }
+    return groupKeyBuffer.toByteArray();
+  }
+
+  /**
+   * Write a string group value the way its metadata compares it, see ValueMetaBase.compare()
+   */
+  private void writeGroupKeyString( int index, String string ) throws KettleFileException {
+    ValueMetaInterface keyMeta = groupKeyMeta[index];
+    if ( keyMeta.isIgnoreWhitespace() ) {
+      string = string.trim();
+    }
+    if ( groupKeyCollators[index] != null ) {
+      byte[] collationKey = groupKeyCollators[index].getCollationKey( string ).toByteArray();
+      try {
+        groupKeyOutput.writeBoolean( false );
+        groupKeyOutput.writeInt( collationKey.length );
+        groupKeyOutput.write( collationKey );
+      } catch ( IOException e ) {
+        throw new KettleFileException( e );
+      }
+      return;
+    }
+    if ( keyMeta.isCaseInsensitive() ) {
+      // Same folding as String.compareToIgnoreCase()
+      char[] chars = string.toCharArray();
+      for ( int i = 0; i < chars.length; i++ ) {
+        chars[i] = Character.toLowerCase( Character.toUpperCase( chars[i] ) );
+      }
+      string = new String( chars );
+    }
+    keyMeta.writeData( groupKeyOutput, string );
+  }
+
+  /**
+   * @return the aggregate of the group or null if the group is not in memory
+   */
+  public Aggregate getAggregate( byte[] groupKey ) {
+    int groupNr = map.get( groupKey, -1 );
+    return groupNr < 0 ? null : aggregates.get( groupNr );
+  }
+
+  public void addGroup( byte[] groupKey, Object[] groupData, Aggregate aggregate ) {
+    map.put( groupKey, groups.size() );
+    groups.add( groupData );
+    aggregates.add( aggregate );
+  }
+
+  /**
+   * @return the partition of the group, uses the high bits of the hash code so that it doesn't correlate with the
+   *         slot in the map.
+   */
+  public int getPartition( byte[] groupKey ) {
+    return ( Arrays.hashCode( groupKey ) * 0x9E3779B9 ) >>> ( 32 - PARTITION_BITS );
+  }
+
+  /**
+   * Forget about the groups in memory, the map and its slabs are released rather than emptied.
+   */
+  public void clearGroups() {
+    map = new ByteArrayIntHashMap( 5000 );
+    groups = new ArrayList<Object[]>();
+    aggregates = new ArrayList<Aggregate>();
   }
 
   /**
    * Method responsible for clearing out memory hogs
    */
   public void clear() {
-    map = new HashMap<MemoryGroupByData.HashEntry, Aggregate>();
+    clearGroups();
+    clearPartitions();
+  }
+
+  /**
+   * Forget about the memory used and remove the temp files of the spilled partitions
+   */
+  public void clearPartitions() {
+    memoryUsed = 0L;
+    if ( partitionMemory != null ) {
+      Arrays.fill( partitionMemory, 0L );
+    }
+    if ( spilledPartitions != null ) {
+      for ( int i = 0; i < spilledPartitions.length; i++ ) {
+        if ( spilledPartitions[i] != null ) {
+          spilledPartitions[i].delete();
+          spilledPartitions[i] = null;
+        }
+      }
+    }
   }
 }
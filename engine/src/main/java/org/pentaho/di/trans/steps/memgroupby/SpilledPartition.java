@@ -0,0 +1,255 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2020 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.steps.memgroupby;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.apache.commons.vfs2.FileObject;
+import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.ValueMetaInterface;
+import org.pentaho.di.core.vfs.KettleVFS;
+import org.pentaho.di.trans.step.BaseStep;
+
+/**
+ * A partition of groups that was moved out of memory by the Memory Group By step. The partition is kept in two temp
+ * files: the aggregation state of the groups at the time the partition was spilled and the input rows for the
+ * partition that arrived after that. Replaying both in that order gives the same result as aggregating in memory.<br>
+ * <br>
+ * The values are written with the metadata of the group and the aggregates, like the rows. The aggregation state that
+ * isn't a value of the aggregate, a list of values for the median or the distinct values for a count, is written as a
+ * number of values followed by the values.
+ */
+public class SpilledPartition {
+
+  public interface GroupHandler {
+    void handle( Object[] groupData, Aggregate aggregate ) throws KettleException;
+  }
+
+  public interface RowHandler {
+    void handle( Object[] row ) throws KettleException;
+  }
+
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  private final FileObject stateFile;
+  private final FileObject rowsFile;
+  private final RowMetaInterface groupMeta;
+  private final RowMetaInterface aggMeta;
+  private final RowMetaInterface distinctMeta;
+  private final int[] aggregateTypes;
+
+  private DataOutputStream stateOut;
+  private DataOutputStream rowsOut;
+  private long nrRows;
+
+  /**
+   * @param groupMeta
+   *          the metadata of the group fields
+   * @param aggMeta
+   *          the metadata of the aggregates
+   * @param distinctMeta
+   *          the metadata of the distinct values counted for every aggregate, in normal storage
+   * @param aggregateTypes
+   *          the aggregation types, see {@link MemoryGroupByMeta#getAggregateType()}
+   */
+  public SpilledPartition( FileObject stateFile, FileObject rowsFile, RowMetaInterface groupMeta,
+    RowMetaInterface aggMeta, RowMetaInterface distinctMeta, int[] aggregateTypes ) throws KettleException {
+    this.stateFile = stateFile;
+    this.rowsFile = rowsFile;
+    this.groupMeta = groupMeta;
+    this.aggMeta = aggMeta;
+    this.distinctMeta = distinctMeta;
+    this.aggregateTypes = aggregateTypes;
+    try {
+      stateOut = new DataOutputStream( new BufferedOutputStream( KettleVFS.getOutputStream( stateFile, false ),
+        BUFFER_SIZE ) );
+      rowsOut = new DataOutputStream( new BufferedOutputStream( KettleVFS.getOutputStream( rowsFile, false ),
+        BUFFER_SIZE ) );
+    } catch ( IOException e ) {
+      delete();
+      throw new KettleException( "Unable to create temp files for group partition", e );
+    }
+  }
+
+  /**
+   * Save the aggregation state of a group. All groups have to be written before the first row.
+   */
+  @SuppressWarnings( "unchecked" )
+  public void writeGroup( Object[] groupData, Aggregate aggregate ) throws KettleException {
+    try {
+      stateOut.writeBoolean( true );
+      groupMeta.writeData( stateOut, groupData );
+      for ( int i = 0; i < aggregateTypes.length; i++ ) {
+        ValueMetaInterface valueMeta = aggMeta.getValueMeta( i );
+        stateOut.writeLong( aggregate.counts[i] );
+        stateOut.writeDouble( aggregate.mean[i] );
+        switch ( aggregateTypes[i] ) {
+          case MemoryGroupByMeta.TYPE_GROUP_MEDIAN:
+          case MemoryGroupByMeta.TYPE_GROUP_PERCENTILE:
+            List<Double> values = (List<Double>) aggregate.agg[i];
+            stateOut.writeInt( values.size() );
+            for ( Double value : values ) {
+              valueMeta.writeData( stateOut, value );
+            }
+            break;
+          case MemoryGroupByMeta.TYPE_GROUP_COUNT_DISTINCT:
+            Set<Object> distinctObjs = aggregate.distinctObjs == null ? null : aggregate.distinctObjs[i];
+            stateOut.writeInt( distinctObjs == null ? -1 : distinctObjs.size() );
+            if ( distinctObjs != null ) {
+              for ( Object distinctObj : distinctObjs ) {
+                distinctMeta.getValueMeta( i ).writeData( stateOut, distinctObj );
+              }
+            }
+            break;
+          case MemoryGroupByMeta.TYPE_GROUP_CONCAT_COMMA:
+          case MemoryGroupByMeta.TYPE_GROUP_CONCAT_STRING:
+            valueMeta.writeData( stateOut, aggregate.agg[i].toString() );
+            break;
+          default:
+            valueMeta.writeData( stateOut, aggregate.agg[i] );
+            break;
+        }
+      }
+    } catch ( IOException e ) {
+      throw new KettleException( "Unable to write group to temp file " + stateFile, e );
+    }
+  }
+
+  /**
+   * Called after the last group was written.
+   */
+  public void finishGroups() throws KettleException {
+    try {
+      stateOut.writeBoolean( false );
+      stateOut.close();
+      stateOut = null;
+    } catch ( IOException e ) {
+      throw new KettleException( "Unable to close temp file " + stateFile, e );
+    }
+  }
+
+  public void writeRow( RowMetaInterface rowMeta, Object[] row ) throws KettleException {
+    rowMeta.writeData( rowsOut, row );
+    nrRows++;
+  }
+
+  /**
+   * Read back the groups and then the rows of this partition.
+   */
+  @SuppressWarnings( "unchecked" )
+  public void replay( RowMetaInterface rowMeta, GroupHandler groupHandler, RowHandler rowHandler )
+    throws KettleException {
+    try {
+      rowsOut.close();
+      rowsOut = null;
+
+      try ( DataInputStream stateIn =
+              new DataInputStream( new BufferedInputStream( KettleVFS.getInputStream( stateFile ), BUFFER_SIZE ) ) ) {
+        while ( stateIn.readBoolean() ) {
+          Object[] groupData = groupMeta.readData( stateIn );
+          Aggregate aggregate = new Aggregate();
+          aggregate.agg = new Object[aggregateTypes.length];
+          aggregate.counts = new long[aggregateTypes.length];
+          aggregate.mean = new double[aggregateTypes.length];
+          for ( int i = 0; i < aggregateTypes.length; i++ ) {
+            ValueMetaInterface valueMeta = aggMeta.getValueMeta( i );
+            aggregate.counts[i] = stateIn.readLong();
+            aggregate.mean[i] = stateIn.readDouble();
+            switch ( aggregateTypes[i] ) {
+              case MemoryGroupByMeta.TYPE_GROUP_MEDIAN:
+              case MemoryGroupByMeta.TYPE_GROUP_PERCENTILE:
+                int nrValues = stateIn.readInt();
+                List<Double> values = new ArrayList<>( nrValues );
+                for ( int j = 0; j < nrValues; j++ ) {
+                  values.add( (Double) valueMeta.readData( stateIn ) );
+                }
+                aggregate.agg[i] = values;
+                break;
+              case MemoryGroupByMeta.TYPE_GROUP_COUNT_DISTINCT:
+                int nrDistinctObjs = stateIn.readInt();
+                if ( nrDistinctObjs >= 0 ) {
+                  if ( aggregate.distinctObjs == null ) {
+                    aggregate.distinctObjs = new Set[aggregateTypes.length];
+                  }
+                  aggregate.distinctObjs[i] = new TreeSet<>();
+                  for ( int j = 0; j < nrDistinctObjs; j++ ) {
+                    aggregate.distinctObjs[i].add( distinctMeta.getValueMeta( i ).readData( stateIn ) );
+                  }
+                }
+                break;
+              case MemoryGroupByMeta.TYPE_GROUP_CONCAT_COMMA:
+              case MemoryGroupByMeta.TYPE_GROUP_CONCAT_STRING:
+                String concat = (String) valueMeta.readData( stateIn );
+                aggregate.agg[i] = new StringBuilder( concat == null ? "" : concat );
+                break;
+              default:
+                aggregate.agg[i] = valueMeta.readData( stateIn );
+                break;
+            }
+          }
+          groupHandler.handle( groupData, aggregate );
+        }
+      }
+
+      try ( DataInputStream rowsIn =
+              new DataInputStream( new BufferedInputStream( KettleVFS.getInputStream( rowsFile ), BUFFER_SIZE ) ) ) {
+        for ( long i = 0; i < nrRows; i++ ) {
+          rowHandler.handle( rowMeta.readData( rowsIn ) );
+        }
+      }
+    } catch ( IOException e ) {
+      throw new KettleException( "Unable to read back group partition from temp files", e );
+    }
+  }
+
+  /**
+   * Close and remove the temp files.
+   */
+  public void delete() {
+    BaseStep.closeQuietly( stateOut );
+    BaseStep.closeQuietly( rowsOut );
+    stateOut = null;
+    rowsOut = null;
+    deleteQuietly( stateFile );
+    deleteQuietly( rowsFile );
+  }
+
+  private static void deleteQuietly( FileObject file ) {
+    try {
+      if ( file != null && file.exists() ) {
+        file.delete();
+      }
+    } catch ( IOException e ) {
+      // Ignore, we're cleaning up
+    }
+  }
+}
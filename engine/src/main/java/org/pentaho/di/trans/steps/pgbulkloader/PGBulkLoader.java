@@ -2,7 +2,7 @@
  *
  * Pentaho Data Integration
  *
- * Copyright (C) 2002-2019 by Hitachi Vantara : http://www.pentaho.com
+ * Copyright (C) 2002-2020 by Hitachi Vantara : http://www.pentaho.com
  *
  *******************************************************************************
  *
@@ -34,6 +34,7 @@ import java.math.BigDecimal;
 import java.nio.charset.Charset;
 import java.sql.Connection;
 import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
 import java.sql.Statement;
 
@@ -45,6 +46,7 @@ import org.pentaho.di.core.exception.KettleException;
 import org.pentaho.di.core.logging.LoggingObjectInterface;
 import org.pentaho.di.core.row.RowMetaInterface;
 import org.pentaho.di.core.row.ValueMetaInterface;
+import org.pentaho.di.core.row.value.ValueMetaBase;
 import org.pentaho.di.i18n.BaseMessages;
 import org.pentaho.di.trans.Trans;
 import org.pentaho.di.trans.TransMeta;
@@ -86,6 +88,28 @@ public class PGBulkLoader extends BaseStep implements StepInterface {
    * @return a string containing the control file contents
    */
   public String getCopyCommand( ) throws KettleException {
+    StringBuilder contents = getCopyTarget();
+
+    // The "FORMAT" clause
+    contents.append( " WITH CSV DELIMITER AS '" ).append( environmentSubstitute( meta.getDelimiter() ) )
+        .append( "' QUOTE AS '" ).append(
+      environmentSubstitute( meta.getEnclosure() ) ).append( "'" );
+    contents.append( ";" ).append( Const.CR );
+
+    return contents.toString();
+  }
+
+  /**
+   * @return the COPY command reading the binary format
+   */
+  String getBinaryCopyCommand() throws KettleException {
+    StringBuilder contents = getCopyTarget();
+    contents.append( " WITH BINARY" );
+    contents.append( ";" ).append( Const.CR );
+    return contents.toString();
+  }
+
+  private StringBuilder getCopyTarget() throws KettleException {
     DatabaseMeta dm = meta.getDatabaseMeta();
 
     StringBuilder contents = new StringBuilder( 500 );
@@ -128,13 +152,7 @@ public class PGBulkLoader extends BaseStep implements StepInterface {
     // The "FROM" filename
     contents.append( " FROM STDIN" ); // FIFO file
 
-    // The "FORMAT" clause
-    contents.append( " WITH CSV DELIMITER AS '" ).append( environmentSubstitute( meta.getDelimiter() ) )
-        .append( "' QUOTE AS '" ).append(
-      environmentSubstitute( meta.getEnclosure() ) ).append( "'" );
-    contents.append( ";" ).append( Const.CR );
-
-    return contents.toString();
+    return contents;
   }
 
   void checkClientEncoding() throws Exception {
@@ -170,14 +188,66 @@ public class PGBulkLoader extends BaseStep implements StepInterface {
 
       processTruncate();
 
+      int[] columnTypes = isBinaryCopy() ? getBinaryColumnTypes() : null;
+      if ( columnTypes != null ) {
+        copyCmd = getBinaryCopyCommand();
+      }
+
       logBasic( "Launching command: " + copyCmd );
       pgCopyOut = new PGCopyOutputStream( (PGConnection) data.db.getConnection(), copyCmd );
 
+      if ( columnTypes != null ) {
+        data.binaryWriter =
+          new PGCopyBinaryWriter( pgCopyOut, columnTypes, clientEncoding, PGCopyBinaryWriter.DEFAULT_BUFFER_SIZE );
+      }
     } catch ( Exception ex ) {
       throw new KettleException( "Error while preparing the COPY " + copyCmd, ex );
     }
   }
 
+  private boolean isBinaryCopy() {
+    Boolean binaryCopy = ValueMetaBase.convertStringToBoolean( getVariable( Const.KETTLE_PGBULKLOADER_BINARY_COPY ) );
+    return binaryCopy != null && binaryCopy.booleanValue();
+  }
+
+  /**
+   * The binary format has to match the column types exactly, so look them up in the table.
+   *
+   * @return the binary type of every column or null if one of them can't be written in binary format
+   */
+  int[] getBinaryColumnTypes() throws Exception {
+    DatabaseMeta dm = meta.getDatabaseMeta();
+    String tableName =
+      dm.getQuotedSchemaTableCombination(
+        environmentSubstitute( meta.getSchemaName() ), environmentSubstitute( meta.getTableName() ) );
+    String[] tableFields = meta.getFieldTable();
+
+    StringBuilder sql = new StringBuilder( "SELECT " );
+    for ( int i = 0; i < tableFields.length; i++ ) {
+      if ( i != 0 ) {
+        sql.append( ", " );
+      }
+      sql.append( dm.quoteField( tableFields[i] ) );
+    }
+    sql.append( " FROM " ).append( tableName ).append( " WHERE 1=0" );
+
+    int[] columnTypes = new int[tableFields.length];
+    try ( Statement statement = data.db.getConnection().createStatement();
+          ResultSet rs = statement.executeQuery( sql.toString() ) ) {
+      ResultSetMetaData metaData = rs.getMetaData();
+      for ( int i = 0; i < columnTypes.length; i++ ) {
+        String typeName = metaData.getColumnTypeName( i + 1 );
+        columnTypes[i] = PGCopyBinaryWriter.getColumnType( typeName );
+        if ( columnTypes[i] < 0 ) {
+          logBasic( "Column " + tableFields[i] + " has type " + typeName
+            + " which can't be loaded in binary format, using CSV instead" );
+          return null;
+        }
+      }
+    }
+    return columnTypes;
+  }
+
   @VisibleForTesting
   Database getDatabase( LoggingObjectInterface parentObject, PGBulkLoaderMeta pgBulkLoaderMeta ) {
     DatabaseMeta dbMeta = pgBulkLoaderMeta.getDatabaseMeta();
@@ -239,6 +309,10 @@ public class PGBulkLoader extends BaseStep implements StepInterface {
         // Close the output stream...
         // will be null if no records (empty stream)
         if ( data != null && pgCopyOut != null ) {
+          if ( data.binaryWriter != null ) {
+            data.binaryWriter.close();
+            data.binaryWriter = null;
+          }
           pgCopyOut.flush();
           pgCopyOut.endCopy();
 
@@ -266,7 +340,11 @@ public class PGBulkLoader extends BaseStep implements StepInterface {
         //
       }
 
-      writeRowToPostgres( getInputRowMeta(), r );
+      if ( data.binaryWriter != null ) {
+        data.binaryWriter.writeRow( getInputRowMeta(), r, data.keynrs );
+      } else {
+        writeRowToPostgres( getInputRowMeta(), r );
+      }
 
       putRow( getInputRowMeta(), r );
       incrementLinesOutput();
@@ -274,6 +352,10 @@ public class PGBulkLoader extends BaseStep implements StepInterface {
       return true;
     } catch ( Exception e ) {
       logError( BaseMessages.getString( PKG, "GPBulkLoader.Log.ErrorInStep" ), e );
+      if ( data != null && data.binaryWriter != null ) {
+        data.binaryWriter.abort();
+        data.binaryWriter = null;
+      }
       setErrors( 1 );
       stopAll();
       setOutputDone(); // signal end to receiver(s)
@@ -2,7 +2,7 @@
  *
  * Pentaho Data Integration
  *
- * Copyright (C) 2002-2017 by Hitachi Vantara : http://www.pentaho.com
+ * Copyright (C) 2002-2020 by Hitachi Vantara : http://www.pentaho.com
  *
  *******************************************************************************
  *
@@ -62,6 +62,9 @@ public class PGBulkLoaderData extends BaseStepData implements StepDataInterface
   public ValueMetaInterface dateMeta;
   public ValueMetaInterface dateTimeMeta;
 
+  /** Set when the rows are sent in binary format */
+  public PGCopyBinaryWriter binaryWriter;
+
   /**
    * Default constructor.
    */
@@ -0,0 +1,454 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2020 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.steps.pgbulkloader;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.nio.charset.Charset;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.exception.KettleValueException;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.ValueMetaInterface;
+import org.pentaho.di.core.util.ExecutorUtil;
+
+/**
+ * Writes rows in the binary format of the PostgreSQL COPY command. The values are encoded straight into the wire format
+ * of the target column types instead of being formatted as text.<br>
+ * <br>
+ * The rows are encoded into one buffer while the other one is written to the COPY stream by a background thread. When
+ * the writer falls behind, the step waits for it.
+ */
+public class PGCopyBinaryWriter {
+
+  /** The column types that can be written in binary format */
+  public static final int TYPE_TEXT = 0;
+  public static final int TYPE_INT2 = 1;
+  public static final int TYPE_INT4 = 2;
+  public static final int TYPE_INT8 = 3;
+  public static final int TYPE_FLOAT4 = 4;
+  public static final int TYPE_FLOAT8 = 5;
+  public static final int TYPE_NUMERIC = 6;
+  public static final int TYPE_DATE = 7;
+  public static final int TYPE_TIMESTAMP = 8;
+  public static final int TYPE_TIMESTAMPTZ = 9;
+  public static final int TYPE_BOOL = 10;
+
+  public static final int DEFAULT_BUFFER_SIZE = 1024 * 1024;
+
+  private static final byte[] SIGNATURE = { 'P', 'G', 'C', 'O', 'P', 'Y', '\n', (byte) 0xFF, '\r', '\n', 0 };
+
+  /** PostgreSQL counts days and microseconds from 2000-01-01 */
+  private static final long POSTGRES_EPOCH_DAYS = 10957L;
+  private static final long POSTGRES_EPOCH_MICROS = POSTGRES_EPOCH_DAYS * 86400L * 1000000L;
+
+  private static final int NUMERIC_NEG = 0x4000;
+
+  private static class Buffer {
+    private byte[] data;
+    private int length;
+
+    private Buffer( int size ) {
+      data = new byte[size];
+    }
+  }
+
+  /** Tells the background thread to stop */
+  private static final Buffer END = new Buffer( 0 );
+
+  private final OutputStream out;
+  private final int[] columnTypes;
+  private final Charset encoding;
+  private final ZoneId zone = ZoneId.systemDefault();
+
+  private final BlockingQueue<Buffer> free = new ArrayBlockingQueue<>( 2 );
+  private final BlockingQueue<Buffer> full = new ArrayBlockingQueue<>( 3 );
+  private final Future<?> writer;
+  private Buffer buffer;
+
+  private volatile IOException failure;
+  private volatile boolean aborted;
+
+  /**
+   * Start writing, the header of the COPY data is written right away.
+   *
+   * @param out
+   *          the COPY stream
+   * @param columnTypes
+   *          the type of every column, one of the TYPE_ constants
+   * @param encoding
+   *          the client encoding, used for text columns
+   * @param bufferSize
+   *          the size of each of the two buffers
+   */
+  public PGCopyBinaryWriter( OutputStream out, int[] columnTypes, Charset encoding, int bufferSize ) {
+    this.out = out;
+    this.columnTypes = columnTypes;
+    this.encoding = encoding;
+
+    buffer = new Buffer( bufferSize );
+    free.add( new Buffer( bufferSize ) );
+    writer = ExecutorUtil.getExecutor().submit( this::writeBuffers );
+
+    ensureCapacity( SIGNATURE.length + 8 );
+    System.arraycopy( SIGNATURE, 0, buffer.data, 0, SIGNATURE.length );
+    buffer.length = SIGNATURE.length;
+    putInt( 0 ); // flags
+    putInt( 0 ); // header extension length
+  }
+
+  /**
+   * @return the binary column type for the name of a PostgreSQL type or -1 if it can't be written in binary format
+   */
+  public static int getColumnType( String typeName ) {
+    if ( typeName == null ) {
+      return -1;
+    }
+    switch ( typeName.toLowerCase() ) {
+      case "text":
+      case "varchar":
+      case "bpchar":
+      case "name":
+        return TYPE_TEXT;
+      case "int2":
+        return TYPE_INT2;
+      case "int4":
+        return TYPE_INT4;
+      case "int8":
+        return TYPE_INT8;
+      case "float4":
+        return TYPE_FLOAT4;
+      case "float8":
+        return TYPE_FLOAT8;
+      case "numeric":
+        return TYPE_NUMERIC;
+      case "date":
+        return TYPE_DATE;
+      case "timestamp":
+        return TYPE_TIMESTAMP;
+      case "timestamptz":
+        return TYPE_TIMESTAMPTZ;
+      case "bool":
+        return TYPE_BOOL;
+      default:
+        return -1;
+    }
+  }
+
+  /**
+   * Encode the fields of a row.
+   *
+   * @param rowMeta
+   *          the metadata of the row
+   * @param row
+   *          the row
+   * @param fieldIndexes
+   *          the indexes of the fields to write, in the order of the columns
+   */
+  public void writeRow( RowMetaInterface rowMeta, Object[] row, int[] fieldIndexes ) throws KettleException {
+    ensureCapacity( 2 );
+    putShort( fieldIndexes.length );
+    for ( int i = 0; i < fieldIndexes.length; i++ ) {
+      ValueMetaInterface valueMeta = rowMeta.getValueMeta( fieldIndexes[i] );
+      Object valueData = row[fieldIndexes[i]];
+      if ( valueMeta.isNull( valueData ) ) {
+        ensureCapacity( 4 );
+        putInt( -1 );
+        continue;
+      }
+      writeValue( columnTypes[i], valueMeta, valueData );
+    }
+  }
+
+  /**
+   * Write the end of the COPY data and wait until everything is written to the stream.
+   */
+  public void close() throws KettleException {
+    ensureCapacity( 2 );
+    putShort( -1 );
+    try {
+      full.put( buffer );
+      full.put( END );
+      writer.get();
+    } catch ( InterruptedException e ) {
+      Thread.currentThread().interrupt();
+      throw new KettleException( "Interrupted while writing COPY data", e );
+    } catch ( ExecutionException e ) {
+      throw new KettleException( "Error writing COPY data", e.getCause() );
+    }
+    buffer = null;
+    if ( failure != null ) {
+      throw new KettleException( "Error writing COPY data", failure );
+    }
+  }
+
+  /**
+   * Stop the background thread without writing what is left.
+   */
+  public void abort() {
+    aborted = true;
+    full.offer( END );
+  }
+
+  private void writeValue( int columnType, ValueMetaInterface valueMeta, Object valueData ) throws KettleException {
+    switch ( columnType ) {
+      case TYPE_TEXT:
+        byte[] bytes = valueMeta.getString( valueData ).getBytes( encoding );
+        ensureCapacity( 4 + bytes.length );
+        putInt( bytes.length );
+        System.arraycopy( bytes, 0, buffer.data, buffer.length, bytes.length );
+        buffer.length += bytes.length;
+        break;
+      case TYPE_INT2:
+        ensureCapacity( 6 );
+        putInt( 2 );
+        putShort( (int) getInteger( valueMeta, valueData, Short.MIN_VALUE, Short.MAX_VALUE ) );
+        break;
+      case TYPE_INT4:
+        ensureCapacity( 8 );
+        putInt( 4 );
+        putInt( (int) getInteger( valueMeta, valueData, Integer.MIN_VALUE, Integer.MAX_VALUE ) );
+        break;
+      case TYPE_INT8:
+        ensureCapacity( 12 );
+        putInt( 8 );
+        putLong( valueMeta.getInteger( valueData ) );
+        break;
+      case TYPE_FLOAT4:
+        ensureCapacity( 8 );
+        putInt( 4 );
+        putInt( Float.floatToIntBits( valueMeta.getNumber( valueData ).floatValue() ) );
+        break;
+      case TYPE_FLOAT8:
+        ensureCapacity( 12 );
+        putInt( 8 );
+        putLong( Double.doubleToLongBits( valueMeta.getNumber( valueData ) ) );
+        break;
+      case TYPE_NUMERIC:
+        putNumeric( valueMeta.getBigNumber( valueData ) );
+        break;
+      case TYPE_DATE:
+        ensureCapacity( 8 );
+        putInt( 4 );
+        putInt( (int) ( toLocalDateTime( valueMeta.getDate( valueData ) ).toLocalDate().toEpochDay()
+          - POSTGRES_EPOCH_DAYS ) );
+        break;
+      case TYPE_TIMESTAMP:
+        // Without time zone: the wall clock time in the time zone of this JVM, as the text format does
+        LocalDateTime dateTime = toLocalDateTime( valueMeta.getDate( valueData ) );
+        ensureCapacity( 12 );
+        putInt( 8 );
+        putLong( dateTime.toEpochSecond( ZoneOffset.UTC ) * 1000000L + dateTime.getNano() / 1000
+          - POSTGRES_EPOCH_MICROS );
+        break;
+      case TYPE_TIMESTAMPTZ:
+        Instant instant = toInstant( valueMeta.getDate( valueData ) );
+        ensureCapacity( 12 );
+        putInt( 8 );
+        putLong( instant.getEpochSecond() * 1000000L + instant.getNano() / 1000 - POSTGRES_EPOCH_MICROS );
+        break;
+      case TYPE_BOOL:
+        ensureCapacity( 5 );
+        putInt( 1 );
+        buffer.data[buffer.length++] = (byte) ( valueMeta.getBoolean( valueData ) ? 1 : 0 );
+        break;
+      default:
+        throw new KettleException( "Unsupported binary COPY column type " + columnType );
+    }
+  }
+
+  private static long getInteger( ValueMetaInterface valueMeta, Object valueData, long min, long max )
+    throws KettleValueException {
+    long value = valueMeta.getInteger( valueData );
+    if ( value < min || value > max ) {
+      throw new KettleValueException( "Value " + value + " of field " + valueMeta.getName()
+        + " is out of range for its column" );
+    }
+    return value;
+  }
+
+  private Instant toInstant( Date date ) {
+    if ( date instanceof Timestamp ) {
+      return ( (Timestamp) date ).toInstant();
+    }
+    return Instant.ofEpochMilli( date.getTime() );
+  }
+
+  private LocalDateTime toLocalDateTime( Date date ) {
+    return LocalDateTime.ofInstant( toInstant( date ), zone );
+  }
+
+  /**
+   * A numeric is sent as base 10000 digits: the number of digits, the weight of the first digit, the sign, the number of
+   * decimals to show and the digits. Leading and trailing zero digits are left out.
+   */
+  private void putNumeric( BigDecimal value ) {
+    int sign = value.signum() < 0 ? NUMERIC_NEG : 0;
+    BigDecimal abs = value.abs();
+    if ( abs.scale() < 0 ) {
+      abs = abs.setScale( 0 );
+    }
+    int scale = abs.scale();
+    String unscaled = abs.unscaledValue().toString();
+
+    String integerPart = unscaled.length() > scale ? unscaled.substring( 0, unscaled.length() - scale ) : "";
+    String fractionPart = unscaled.length() > scale ? unscaled.substring( unscaled.length() - scale ) : unscaled;
+    integerPart = stripLeadingZeros( integerPart );
+    fractionPart = pad( fractionPart, scale, true );
+
+    // Align both parts on groups of 4 digits
+    //
+    int integerGroups = ( integerPart.length() + 3 ) / 4;
+    integerPart = pad( integerPart, integerGroups * 4, true );
+    int fractionGroups = ( fractionPart.length() + 3 ) / 4;
+    fractionPart = pad( fractionPart, fractionGroups * 4, false );
+
+    String digitString = integerPart + fractionPart;
+    short[] digits = new short[integerGroups + fractionGroups];
+    for ( int i = 0; i < digits.length; i++ ) {
+      digits[i] = Short.parseShort( digitString.substring( i * 4, i * 4 + 4 ) );
+    }
+
+    int weight = integerGroups - 1;
+    int first = 0;
+    int last = digits.length;
+    while ( first < last && digits[first] == 0 ) {
+      first++;
+      weight--;
+    }
+    while ( last > first && digits[last - 1] == 0 ) {
+      last--;
+    }
+    if ( first == last ) {
+      // Zero
+      weight = 0;
+      sign = 0;
+    }
+
+    int count = last - first;
+    ensureCapacity( 12 + count * 2 );
+    putInt( 8 + count * 2 );
+    putShort( count );
+    putShort( weight );
+    putShort( sign );
+    putShort( scale );
+    for ( int i = first; i < last; i++ ) {
+      putShort( digits[i] );
+    }
+  }
+
+  private static String stripLeadingZeros( String digits ) {
+    int i = 0;
+    while ( i < digits.length() && digits.charAt( i ) == '0' ) {
+      i++;
+    }
+    return digits.substring( i );
+  }
+
+  private static String pad( String digits, int length, boolean left ) {
+    if ( digits.length() >= length ) {
+      return digits;
+    }
+    char[] zeros = new char[length - digits.length()];
+    Arrays.fill( zeros, '0' );
+    return left ? new String( zeros ) + digits : digits + new String( zeros );
+  }
+
+  /**
+   * Make room for a number of bytes, handing the buffer to the writer when it's full. A buffer grows if a single value
+   * doesn't fit.
+   */
+  private void ensureCapacity( int size ) {
+    if ( buffer.length + size <= buffer.data.length ) {
+      return;
+    }
+    if ( buffer.length > 0 ) {
+      handOff();
+    }
+    if ( size > buffer.data.length ) {
+      buffer.data = new byte[size];
+    }
+  }
+
+  private void handOff() {
+    if ( failure != null ) {
+      throw new IllegalStateException( "Error writing COPY data", failure );
+    }
+    try {
+      full.put( buffer );
+      buffer = free.take();
+    } catch ( InterruptedException e ) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException( "Interrupted while writing COPY data", e );
+    }
+    buffer.length = 0;
+  }
+
+  private void writeBuffers() {
+    try {
+      Buffer next = full.take();
+      while ( next != END ) {
+        if ( failure == null && !aborted ) {
+          try {
+            out.write( next.data, 0, next.length );
+          } catch ( IOException e ) {
+            failure = e;
+          }
+        }
+        free.put( next );
+        next = full.take();
+      }
+    } catch ( InterruptedException e ) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private void putShort( int value ) {
+    buffer.data[buffer.length++] = (byte) ( value >>> 8 );
+    buffer.data[buffer.length++] = (byte) value;
+  }
+
+  private void putInt( int value ) {
+    buffer.data[buffer.length++] = (byte) ( value >>> 24 );
+    buffer.data[buffer.length++] = (byte) ( value >>> 16 );
+    buffer.data[buffer.length++] = (byte) ( value >>> 8 );
+    buffer.data[buffer.length++] = (byte) value;
+  }
+
+  private void putLong( long value ) {
+    putInt( (int) ( value >>> 32 ) );
+    putInt( (int) value );
+  }
+}
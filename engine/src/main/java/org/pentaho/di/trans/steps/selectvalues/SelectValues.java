@@ -36,6 +36,7 @@ import org.pentaho.di.core.exception.KettleValueException;
 import org.pentaho.di.core.row.RowDataUtil;
 import org.pentaho.di.core.row.RowMetaInterface;
 import org.pentaho.di.core.row.ValueMetaInterface;
+import org.pentaho.di.core.row.batch.RowBatch;
 import org.pentaho.di.core.util.EnvUtil;
 import org.pentaho.di.i18n.BaseMessages;
 import org.pentaho.di.trans.Trans;
@@ -55,6 +56,9 @@ import org.pentaho.di.trans.step.StepMetaInterface;
 public class SelectValues extends BaseStep implements StepInterface {
   private static Class<?> PKG = SelectValuesMeta.class; // for i18n purposes, needed by Translator2!!
 
+  /** The maximum number of rows read and written in one go */
+  static final int ROWS_PER_BATCH = 256;
+
   private SelectValuesMeta meta;
   private SelectValuesData data;
 
@@ -340,13 +344,94 @@ public class SelectValues extends BaseStep implements StepInterface {
     meta = (SelectValuesMeta) smi;
     data = (SelectValuesData) sdi;
 
-    Object[] rowData = getRow(); // get row from rowset, wait for our turn, indicate busy!
-    if ( rowData == null ) { // no more input to be expected...
+    if ( data.columnnrs != null ) {
+      return processRowBatch();
+    }
+
+    // Read the rows that are waiting in one go and pass them on in one go
+    //
+    List<Object[]> rows = getRows( ROWS_PER_BATCH ); // get rows from rowset, wait for our turn, indicate busy!
+    if ( rows.isEmpty() ) { // no more input to be expected...
 
       setOutputDone();
       return false;
     }
 
+    List<Object[]> outputRows = new ArrayList<>( rows.size() );
+    long linesRead = getLinesRead() - rows.size();
+    for ( Object[] rowData : rows ) {
+      if ( !selectRow( rowData, outputRows ) ) {
+        putRows( data.metadataRowMeta, outputRows );
+        setOutputDone(); // signal end to receiver(s)
+        return false;
+      }
+
+      if ( checkFeedback( ++linesRead ) ) {
+        logBasic( BaseMessages.getString( PKG, "SelectValues.Log.LineNumber" ) + linesRead );
+      }
+    }
+
+    // Send the rows on their way
+    //
+    putRows( data.metadataRowMeta, outputRows );
+
+    // Once the selection is known, a step that only selects fields can select the columns of whole batches
+    //
+    data.columnnrs = getSelectedColumnNrs();
+
+    return true;
+  }
+
+  /**
+   * Selects the columns of a batch of input rows, see {@link #getSelectedColumnNrs()}.
+   */
+  private boolean processRowBatch() throws KettleException {
+    RowBatch batch = getRowBatch( ROWS_PER_BATCH );
+    if ( batch == null ) { // no more input to be expected...
+      setOutputDone();
+      return false;
+    }
+
+    putRowBatch( batch.select( data.metadataRowMeta, data.columnnrs ) );
+
+    long linesRead = getLinesRead() - batch.size();
+    for ( int i = 0; i < batch.size(); i++ ) {
+      if ( checkFeedback( ++linesRead ) ) {
+        logBasic( BaseMessages.getString( PKG, "SelectValues.Log.LineNumber" ) + linesRead );
+      }
+    }
+    return true;
+  }
+
+  /**
+   * The input columns that make up the output, in order, if this step only selects fields. Fields that are removed,
+   * changed or selected more than once, error handling and row level logging all need the rows one by one.
+   *
+   * @return the column numbers, or null if the rows have to be processed one by one.
+   */
+  private int[] getSelectedColumnNrs() {
+    if ( !data.select || data.deselect || data.metadata || data.fieldnrs == null || data.extraFieldnrs == null
+      || getStepMeta().isDoingErrorHandling() || log.isRowLevel() ) {
+      return null;
+    }
+    int[] columnnrs = new int[ data.fieldnrs.length + data.extraFieldnrs.length ];
+    System.arraycopy( data.fieldnrs, 0, columnnrs, 0, data.fieldnrs.length );
+    System.arraycopy( data.extraFieldnrs, 0, columnnrs, data.fieldnrs.length, data.extraFieldnrs.length );
+    if ( columnnrs.length != data.metadataRowMeta.size()
+      || Arrays.stream( columnnrs ).distinct().count() != columnnrs.length ) {
+      return null;
+    }
+    return columnnrs;
+  }
+
+  /**
+   * Select, remove and change the fields of one input row.
+   *
+   * @param rowData the input row
+   * @param outputRows the output rows to add the result to, a row in error is passed to the error handling instead
+   * @return false if the step has to stop
+   */
+  private boolean selectRow( Object[] rowData, List<Object[]> outputRows ) throws KettleException {
     Object[] rowCopy = null;
     if ( getStepMeta().isDoingErrorHandling() ) {
       rowCopy = getInputRowMeta().cloneRow( rowData );
@@ -382,13 +467,10 @@ public class SelectValues extends BaseStep implements StepInterface {
       }
 
       if ( outputData == null ) {
-        setOutputDone(); // signal end to receiver(s)
         return false;
       }
 
-      // Send the row on its way
-      //
-      putRow( data.metadataRowMeta, outputData );
+      outputRows.add( outputData );
       if ( log.isRowLevel() ) {
         logRowlevel( BaseMessages.getString( PKG, "SelectValues.Log.WroteRowToNextStep" )
           + data.metadataRowMeta.getString( outputData ) );
@@ -408,11 +490,6 @@ public class SelectValues extends BaseStep implements StepInterface {
         throw e;
       }
     }
-
-    if ( checkFeedback( getLinesRead() ) ) {
-      logBasic( BaseMessages.getString( PKG, "SelectValues.Log.LineNumber" ) + getLinesRead() );
-    }
-
     return true;
   }
 
@@ -36,6 +36,9 @@ public class SelectValuesData extends BaseStepData implements StepDataInterface
   public int[] removenrs;
   public int[] metanrs;
 
+  /** The input columns of the output when only selecting fields, the rows are then processed as columnar batches */
+  public int[] columnnrs;
+
   public boolean firstselect;
   public boolean firstdeselect;
   public boolean firstmetadata;
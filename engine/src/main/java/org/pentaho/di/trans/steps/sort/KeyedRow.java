@@ -2,7 +2,7 @@
  *
  * Pentaho Data Integration
  *
- * Copyright (C) 2002-2017 by Hitachi Vantara : http://www.pentaho.com
+ * Copyright (C) 2002-2020 by Hitachi Vantara : http://www.pentaho.com
  *
  *******************************************************************************
  *
@@ -23,14 +23,14 @@
 package org.pentaho.di.trans.steps.sort;
 
 /**
- * Keeps track of which temporary file a row is coming from
+ * A row together with the normalized key of its first sort field.
  */
-public class RowTempFile {
+public class KeyedRow {
+  public long key;
   public Object[] row;
-  public int fileNumber;
 
-  public RowTempFile( Object[] row, int fileNumber ) {
+  public KeyedRow( long key, Object[] row ) {
+    this.key = key;
     this.row = row;
-    this.fileNumber = fileNumber;
   }
 }
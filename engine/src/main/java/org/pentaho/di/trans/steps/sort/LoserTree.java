@@ -0,0 +1,135 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2020 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.steps.sort;
+
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * A tournament tree of losers to merge k sorted runs. Finding the next smallest element takes log2(k) comparisons,
+ * always along the path from the winner's leaf to the root, no matter how the runs are distributed.<br>
+ * <br>
+ * Runs that compare equal are merged in the order of their index, so merging runs that were created in input order
+ * keeps the merge stable.
+ *
+ * @param <T>
+ *          the type of the elements being merged
+ */
+public class LoserTree<T> {
+  private final Comparator<? super T> comparator;
+  private final Object[] heads;
+  private final int size;
+
+  /** Internal nodes 1..size-1 hold the loser of the match played there, node 0 the overall winner */
+  private final int[] tree;
+
+  /**
+   * @param heads
+   *          the first element of every run, null for a run without elements
+   * @param comparator
+   *          the order of the elements
+   */
+  public LoserTree( List<T> heads, Comparator<? super T> comparator ) {
+    this.comparator = comparator;
+    this.size = heads.size();
+    this.heads = heads.toArray();
+    this.tree = new int[Math.max( 1, size )];
+
+    if ( size == 0 ) {
+      tree[0] = -1;
+      return;
+    }
+
+    // Play all matches bottom-up: leaves are (virtual) nodes size..2*size-1
+    //
+    int[] winners = new int[2 * size];
+    for ( int i = 0; i < size; i++ ) {
+      winners[size + i] = i;
+    }
+    for ( int node = size - 1; node > 0; node-- ) {
+      int left = winners[2 * node];
+      int right = winners[2 * node + 1];
+      if ( beats( left, right ) ) {
+        winners[node] = left;
+        tree[node] = right;
+      } else {
+        winners[node] = right;
+        tree[node] = left;
+      }
+    }
+    tree[0] = size == 1 ? 0 : winners[1];
+  }
+
+  /**
+   * @return the index of the run holding the smallest element or -1 if all runs are exhausted.
+   */
+  public int getWinner() {
+    int winner = tree[0];
+    return winner < 0 || heads[winner] == null ? -1 : winner;
+  }
+
+  /**
+   * @return the smallest element or null if all runs are exhausted.
+   */
+  @SuppressWarnings( "unchecked" )
+  public T peek() {
+    int winner = tree[0];
+    return winner < 0 ? null : (T) heads[winner];
+  }
+
+  /**
+   * Replace the smallest element with the next element of the same run and find the new smallest element.
+   *
+   * @param next
+   *          the next element of the winning run or null if that run is exhausted
+   */
+  public void replaceWinner( T next ) {
+    int candidate = tree[0];
+    if ( candidate < 0 ) {
+      return;
+    }
+    heads[candidate] = next;
+    for ( int node = ( size + candidate ) >> 1; node > 0; node >>= 1 ) {
+      int loser = tree[node];
+      if ( beats( loser, candidate ) ) {
+        tree[node] = candidate;
+        candidate = loser;
+      }
+    }
+    tree[0] = candidate;
+  }
+
+  /**
+   * @return true if the head of run a comes before the head of run b. Exhausted runs lose against everything.
+   */
+  @SuppressWarnings( "unchecked" )
+  private boolean beats( int a, int b ) {
+    Object headA = heads[a];
+    Object headB = heads[b];
+    if ( headA == null || headB == null ) {
+      return headB == null && ( headA != null || a < b );
+    }
+    int cmp = comparator.compare( (T) headA, (T) headB );
+    return cmp < 0 || ( cmp == 0 && a < b );
+  }
+}
@@ -0,0 +1,158 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2020 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.steps.sort;
+
+import java.util.Date;
+
+import org.pentaho.di.core.exception.KettleValueException;
+import org.pentaho.di.core.row.ValueMetaInterface;
+import org.pentaho.di.core.row.value.ValueMetaBase;
+import org.pentaho.di.core.row.value.ValueMetaBoolean;
+import org.pentaho.di.core.row.value.ValueMetaDate;
+import org.pentaho.di.core.row.value.ValueMetaInteger;
+import org.pentaho.di.core.row.value.ValueMetaNumber;
+import org.pentaho.di.core.row.value.ValueMetaString;
+
+/**
+ * Encodes the value of the first sort key into a long that compares (as a signed long) in the same order as
+ * {@link ValueMetaInterface#compare(Object, Object)} would. Sorting on this normalized key first means that most
+ * comparisons are a single primitive comparison instead of a call into the value metadata.<br>
+ * <br>
+ * A key may be an abbreviation: strings only keep their first 4 characters. When two keys are equal the rows still
+ * have to be compared with the row metadata. For integers, numbers, dates and booleans the key holds the complete
+ * value, so only the remaining sort fields have to be compared then (see {@link #isExact()}).<br>
+ * <br>
+ * Value types with their own comparison logic (collators, custom comparators, timestamps, big numbers, ...) are not
+ * supported, see {@link #getInstance(ValueMetaInterface)}.
+ */
+public class NormalizedKeyPrefix {
+  private static final int STRING_PREFIX_CHARS = 4;
+
+  private final ValueMetaInterface valueMeta;
+  private final int type;
+  private final boolean descending;
+  private final boolean caseInsensitive;
+  private final boolean trim;
+
+  private NormalizedKeyPrefix( ValueMetaInterface valueMeta ) {
+    this.valueMeta = valueMeta;
+    this.type = valueMeta.getType();
+    this.descending = valueMeta.isSortedDescending();
+    this.caseInsensitive = valueMeta.isCaseInsensitive();
+    this.trim = valueMeta.isIgnoreWhitespace();
+  }
+
+  /**
+   * @param valueMeta
+   *          the metadata of the first sort key, with the sort criteria already assigned
+   * @return the normalized key encoder for the value or null if the value type can't be normalized.
+   */
+  public static NormalizedKeyPrefix getInstance( ValueMetaInterface valueMeta ) {
+    if ( valueMeta == null || valueMeta.getStorageType() != ValueMetaInterface.STORAGE_TYPE_NORMAL ) {
+      return null;
+    }
+    // A custom comparator decides the order on its own
+    //
+    if ( valueMeta instanceof ValueMetaBase && ( (ValueMetaBase) valueMeta ).getComparator() != null ) {
+      return null;
+    }
+    // Only the plain implementations: subclasses may compare differently
+    //
+    Class<?> clazz = valueMeta.getClass();
+    if ( clazz == ValueMetaString.class ) {
+      return valueMeta.isCollatorDisabled() ? new NormalizedKeyPrefix( valueMeta ) : null;
+    }
+    if ( clazz == ValueMetaInteger.class || clazz == ValueMetaNumber.class || clazz == ValueMetaDate.class
+      || clazz == ValueMetaBoolean.class ) {
+      return new NormalizedKeyPrefix( valueMeta );
+    }
+    return null;
+  }
+
+  /**
+   * @return true if equal keys of two non-null values means that the values are equal.
+   */
+  public boolean isExact() {
+    return type != ValueMetaInterface.TYPE_STRING;
+  }
+
+  /**
+   * Calculate the normalized key of a value.
+   *
+   * @param value
+   *          the value of the sort key in normal storage
+   * @return the normalized key, nulls sort before all other values (after them when sorting descending).
+   * @throws KettleValueException
+   *           in case the value can't be converted
+   */
+  public long getKey( Object value ) throws KettleValueException {
+    long key;
+    if ( valueMeta.isNull( value ) ) {
+      key = Long.MIN_VALUE;
+    } else {
+      switch ( type ) {
+        case ValueMetaInterface.TYPE_INTEGER:
+          key = valueMeta.getInteger( value );
+          break;
+        case ValueMetaInterface.TYPE_NUMBER:
+          long bits = Double.doubleToLongBits( valueMeta.getNumber( value ) );
+          // Flip the magnitude bits of negative numbers so that the bits sort like Double.compare()
+          key = bits ^ ( ( bits >> 63 ) & Long.MAX_VALUE );
+          break;
+        case ValueMetaInterface.TYPE_DATE:
+          Date date = valueMeta.getDate( value );
+          key = date.getTime();
+          break;
+        case ValueMetaInterface.TYPE_BOOLEAN:
+          key = valueMeta.getBoolean( value ) ? 1L : 0L;
+          break;
+        default:
+          key = getStringKey( valueMeta.getString( value ) );
+          break;
+      }
+    }
+    // Reversing the order of a signed long is a simple bit flip
+    return descending ? ~key : key;
+  }
+
+  private long getStringKey( String string ) {
+    if ( trim ) {
+      string = string.trim();
+    }
+    long key = 0L;
+    int length = Math.min( string.length(), STRING_PREFIX_CHARS );
+    for ( int i = 0; i < STRING_PREFIX_CHARS; i++ ) {
+      key <<= 16;
+      if ( i < length ) {
+        char c = string.charAt( i );
+        if ( caseInsensitive ) {
+          // Same folding as String.compareToIgnoreCase()
+          c = Character.toLowerCase( Character.toUpperCase( c ) );
+        }
+        key |= c;
+      }
+    }
+    // The characters compare unsigned, move them into the signed range
+    return key ^ Long.MIN_VALUE;
+  }
+}
@@ -22,29 +22,23 @@
 
 package org.pentaho.di.trans.steps.sort;
 
-import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
-import java.io.DataInputStream;
-import java.io.DataOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
-import java.net.SocketTimeoutException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
-import java.util.zip.GZIPInputStream;
-import java.util.zip.GZIPOutputStream;
+import java.util.concurrent.ExecutionException;
 
 import org.apache.commons.vfs2.FileObject;
 import org.apache.commons.vfs2.FileSystemException;
 import org.pentaho.di.core.Const;
 import org.pentaho.di.core.exception.KettleException;
-import org.pentaho.di.core.exception.KettleFileException;
 import org.pentaho.di.core.exception.KettleValueException;
 import org.pentaho.di.core.row.RowMetaInterface;
 import org.pentaho.di.core.row.ValueMetaInterface;
+import org.pentaho.di.core.row.value.ValueMetaString;
+import org.pentaho.di.core.util.ExecutorUtil;
 import org.pentaho.di.core.vfs.KettleVFS;
 import org.pentaho.di.i18n.BaseMessages;
 import org.pentaho.di.trans.Trans;
@@ -128,248 +122,215 @@ public class SortRows extends BaseStep implements StepInterface {
       return;
     }
 
-    // First sort the rows in buffer[]
-    quickSort( data.buffer );
-
-    // Then write them to disk...
-    DataOutputStream dos;
-    GZIPOutputStream gzos;
-    int p;
+    // Only one temp file is written at a time, this also keeps the memory used to at most two buffers
+    waitForSpill();
 
+    final List<Object[]> rows = data.buffer;
+    final FileObject fileObject;
     try {
-      FileObject fileObject =
+      fileObject =
           KettleVFS.createTempFile( meta.getPrefix(), ".tmp", environmentSubstitute( meta.getDirectory() ),
               getTransMeta() );
+    } catch ( Exception e ) {
+      throw new KettleException( "Error processing temp-file!", e );
+    }
+    data.files.add( fileObject ); // Remember the files!
 
-      data.files.add( fileObject ); // Remember the files!
-      OutputStream outputStream = KettleVFS.getOutputStream( fileObject, false );
-      if ( data.compressFiles ) {
-        gzos = new GZIPOutputStream( new BufferedOutputStream( outputStream ) );
-        dos = new DataOutputStream( gzos );
-      } else {
-        dos = new DataOutputStream( new BufferedOutputStream( outputStream, 500000 ) );
-        gzos = null;
+    if ( data.sortSize < 0 ) {
+      if ( rows.size() > data.minSortSize ) {
+        data.minSortSize = rows.size(); // if we did it once, we can do
+                                        // it again.
+
+        // Memory usage goes up over time, even with garbage collection
+        // We need pointers, file handles, etc.
+        // As such, we're going to lower the min sort size a bit
+        //
+        data.minSortSize = (int) Math.round( data.minSortSize * 0.90 );
       }
+    }
+
+    if ( data.parallelSort ) {
+      // Sort and write in the background while we keep on reading rows into a new buffer
+      //
+      data.buffer = new ArrayList<Object[]>( rows.size() );
+      data.spill = ExecutorUtil.getExecutor().submit( () -> writeTempFile( rows, fileObject ) );
+    } else {
+      data.bufferSizes.add( writeTempFile( rows, fileObject ) );
+      updateFreeMemory();
+    }
+
+    data.getBufferIndex = 0;
+  }
+
+  /**
+   * Sort the rows and write them to a temp file.
+   *
+   * @return the number of rows written
+   */
+  private int writeTempFile( List<Object[]> rows, FileObject fileObject ) throws KettleException {
+    // First sort the rows in buffer[]
+    quickSort( rows );
+
+    // Then write them to disk...
+    try {
+      SpillFileWriter writer =
+          new SpillFileWriter( data.outputRowMeta, KettleVFS.getOutputStream( fileObject, false ), data.compressFiles );
 
       // Just write the data, nothing else
-      List<Integer> duplicates = new ArrayList<Integer>();
-      Object[] previousRow = null;
-      if ( meta.isOnlyPassingUniqueRows() ) {
-        int index = 0;
-        while ( index < data.buffer.size() ) {
-          Object[] row = data.buffer.get( index );
-          if ( previousRow != null ) {
-            int result = data.outputRowMeta.compare( row, previousRow, data.fieldnrs );
-            if ( result == 0 ) {
-              duplicates.add( index );
-              if ( log.isRowLevel() ) {
-                logRowlevel( BaseMessages.getString( PKG, "SortRows.RowLevel.DuplicateRowRemoved", data.outputRowMeta
-                    .getString( row ) ) );
-              }
+      try {
+        Object[] previousRow = null;
+        for ( Object[] row : rows ) {
+          if ( meta.isOnlyPassingUniqueRows() && previousRow != null
+              && data.outputRowMeta.compare( row, previousRow, data.fieldnrs ) == 0 ) {
+            if ( log.isRowLevel() ) {
+              logRowlevel( BaseMessages.getString( PKG, "SortRows.RowLevel.DuplicateRowRemoved", data.outputRowMeta
+                  .getString( row ) ) );
             }
+          } else {
+            writer.writeRow( row );
           }
-          index++;
           previousRow = row;
         }
-      }
-
-      // How many records do we have left?
-      data.bufferSizes.add( data.buffer.size() - duplicates.size() );
-
-      int duplicatesIndex = 0;
-      for ( p = 0; p < data.buffer.size(); p++ ) {
-        boolean skip = false;
-        if ( duplicatesIndex < duplicates.size() ) {
-          if ( p == duplicates.get( duplicatesIndex ) ) {
-            skip = true;
-            duplicatesIndex++;
-          }
-        }
-        if ( !skip ) {
-          data.outputRowMeta.writeData( dos, data.buffer.get( p ) );
-        }
-      }
-
-      if ( data.sortSize < 0 ) {
-        if ( data.buffer.size() > data.minSortSize ) {
-          data.minSortSize = data.buffer.size(); // if we did it once, we can do
-                                                 // it again.
-
-          // Memory usage goes up over time, even with garbage collection
-          // We need pointers, file handles, etc.
-          // As such, we're going to lower the min sort size a bit
-          //
-          data.minSortSize = (int) Math.round( data.minSortSize * 0.90 );
-        }
+      } finally {
+        // Close temp-file
+        writer.close();
       }
 
       // Clear the list
-      data.buffer.clear();
-
-      // Close temp-file
-      dos.close(); // close data stream
-      if ( gzos != null ) {
-        gzos.close(); // close gzip stream
-      }
-      outputStream.close(); // close file stream
-
-      // How much memory do we have left?
-      //
-      data.freeMemoryPct = Const.getPercentageFreeMemory();
-      data.freeCounter = 0;
-      if ( data.sortSize <= 0 ) {
-        if ( log.isDetailed() ) {
-          logDetailed( BaseMessages.getString( PKG, "SortRows.Detailed.AvailableMemory", data.freeMemoryPct ) );
-        }
-      }
+      rows.clear();
 
+      // How many records do we have left?
+      return (int) writer.getRowsWritten();
     } catch ( Exception e ) {
       throw new KettleException( "Error processing temp-file!", e );
     }
+  }
 
-    data.getBufferIndex = 0;
+  /**
+   * Wait for the temp file being written in the background, if any.
+   */
+  private void waitForSpill() throws KettleException {
+    if ( data.spill == null ) {
+      return;
+    }
+    try {
+      data.bufferSizes.add( data.spill.get() );
+    } catch ( InterruptedException e ) {
+      Thread.currentThread().interrupt();
+      throw new KettleException( "Interrupted while writing temp-file!", e );
+    } catch ( ExecutionException e ) {
+      throw new KettleException( "Error processing temp-file!", e.getCause() );
+    } finally {
+      data.spill = null;
+    }
+    updateFreeMemory();
   }
 
-  private DataInputStream getDataInputStream( GZIPInputStream gzipInputStream ) {
-    DataInputStream result = new DataInputStream( gzipInputStream );
-    data.gzis.add( gzipInputStream );
-    return result;
+  private void updateFreeMemory() {
+    // How much memory do we have left?
+    //
+    data.freeMemoryPct = Const.getPercentageFreeMemory();
+    data.freeCounter = 0;
+    if ( data.sortSize <= 0 ) {
+      if ( log.isDetailed() ) {
+        logDetailed( BaseMessages.getString( PKG, "SortRows.Detailed.AvailableMemory", data.freeMemoryPct ) );
+      }
+    }
   }
 
   // get sorted rows from available files in iterative manner.
   // that means call to this method will continue to return rows
   // till all temp files will not be read to the end.
-  Object[] getBuffer() throws KettleValueException {
-    Object[] retval;
-
+  Object[] getBuffer() throws KettleException {
     // Open all files at once and read one row from each file...
-    if ( data.files.size() > 0 && ( data.dis.size() == 0 || data.fis.size() == 0 ) ) {
-      if ( log.isBasic() ) {
-        logBasic( BaseMessages.getString( PKG, "SortRows.Basic.OpeningTempFiles", data.files.size() ) );
-      }
-
-      try {
-        for ( int f = 0; f < data.files.size() && !isStopped(); f++ ) {
-          FileObject fileObject = data.files.get( f );
-          String filename = KettleVFS.getFilename( fileObject );
-          if ( log.isDetailed() ) {
-            logDetailed( BaseMessages.getString( PKG, "SortRows.Detailed.OpeningTempFile", filename ) );
-          }
-          InputStream fi = KettleVFS.getInputStream( fileObject );
-          DataInputStream di;
-          data.fis.add( fi );
-          if ( data.compressFiles ) {
-            di = getDataInputStream( new GZIPInputStream( new BufferedInputStream( fi ) ) );
-          } else {
-            di = new DataInputStream( new BufferedInputStream( fi, 50000 ) );
-          }
-          data.dis.add( di );
-
-          // How long is the buffer?
-          int buffersize = data.bufferSizes.get( f );
-
-          if ( log.isDetailed() ) {
-            logDetailed( BaseMessages.getString( PKG, "SortRows.Detailed.FromFileExpectingRows",
-                filename, buffersize ) );
-          }
-
-          if ( buffersize > 0 ) {
-            Object[] row = data.outputRowMeta.readData( di );
-            data.rowbuffer.add( row ); // new row from input stream
-            data.tempRows.add( new RowTempFile( row, f ) );
-          }
-        }
-
-        // Sort the data row buffer
-        Collections.sort( data.tempRows, data.comparator );
-      } catch ( Exception e ) {
-        logError( BaseMessages.getString( PKG, "SortRows.Error.ErrorReadingBackTempFiles" ), e );
-      }
+    if ( data.files.size() > 0 && data.merger == null ) {
+      openTempFiles();
     }
 
-    if ( data.files.size() == 0 ) {
+    if ( data.merger == null ) {
       // read from in-memory processing
 
       if ( data.getBufferIndex < data.buffer.size() ) {
-        retval = data.buffer.get( data.getBufferIndex );
+        Object[] retval = data.buffer.get( data.getBufferIndex );
         data.getBufferIndex++;
-      } else {
-        retval = null;
+        return retval;
       }
-    } else {
-      // read from disk processing
-
-      if ( data.rowbuffer.size() == 0 ) {
-        retval = null;
-      } else {
-        // We now have "filenr" rows waiting: which one is the smallest?
-        //
-        if ( log.isRowLevel() ) {
-          for ( int i = 0; i < data.rowbuffer.size() && !isStopped(); i++ ) {
-            Object[] b = data.rowbuffer.get( i );
-            logRowlevel( BaseMessages
-                .getString( PKG, "SortRows.RowLevel.PrintRow", i, data.outputRowMeta.getString( b ) ) );
-          }
-        }
-
-        RowTempFile rowTempFile = data.tempRows.remove( 0 );
-        retval = rowTempFile.row;
-        int smallest = rowTempFile.fileNumber;
+      return null;
+    }
 
-        // now get another Row for position smallest
+    // read from disk processing: the loser tree knows which file holds the smallest row
+    //
+    int smallest = data.merger.getWinner();
+    if ( smallest < 0 ) {
+      return null;
+    }
+    KeyedRow head = data.merger.peek();
+    Object[] retval = head.row;
 
-        FileObject file = data.files.get( smallest );
-        DataInputStream di = data.dis.get( smallest );
-        InputStream fi = data.fis.get( smallest );
+    // now get another Row for position smallest
+    //
+    Object[] next = data.readers.get( smallest ).readRow();
+    if ( next != null ) {
+      head.key = getKey( next );
+      head.row = next;
+      data.merger.replaceWinner( head );
+    } else {
+      // This file is exhausted, we can get rid of it right away
+      //
+      FileObject file = data.files.get( smallest );
+      try {
+        data.readers.get( smallest ).close();
+        file.delete();
+      } catch ( IOException e ) {
+        logError( BaseMessages.getString( PKG, "SortRows.Error.UnableToCloseFile", smallest, file.toString() ) );
+        setErrors( 1 );
+        stopAll();
+        return null;
+      }
+      data.merger.replaceWinner( null );
+    }
+    return retval;
+  }
 
-        try {
-          Object[] row2 = data.outputRowMeta.readData( di );
-          RowTempFile extra = new RowTempFile( row2, smallest );
+  private void openTempFiles() throws KettleException {
+    waitForSpill();
 
-          int index = Collections.binarySearch( data.tempRows, extra, data.comparator );
-          if ( index < 0 ) {
-            data.tempRows.add( index * ( -1 ) - 1, extra );
-          } else {
-            data.tempRows.add( index, extra );
-          }
-        } catch ( KettleFileException fe ) { // empty file or EOF mostly
-          GZIPInputStream gzfi = ( data.compressFiles ) ? data.gzis.get( smallest ) : null;
-          try {
-            di.close();
-            fi.close();
-            if ( gzfi != null ) {
-              gzfi.close();
-            }
-            file.delete();
-          } catch ( IOException e ) {
-            logError( BaseMessages.getString( PKG, "SortRows.Error.UnableToCloseFile", smallest, file.toString() ) );
-            setErrors( 1 );
-            stopAll();
-            return null;
-          }
+    if ( log.isBasic() ) {
+      logBasic( BaseMessages.getString( PKG, "SortRows.Basic.OpeningTempFiles", data.files.size() ) );
+    }
 
-          data.files.remove( smallest );
-          data.dis.remove( smallest );
-          data.fis.remove( smallest );
+    List<KeyedRow> heads = new ArrayList<KeyedRow>( data.files.size() );
+    try {
+      for ( int f = 0; f < data.files.size() && !isStopped(); f++ ) {
+        FileObject fileObject = data.files.get( f );
+        String filename = KettleVFS.getFilename( fileObject );
+        if ( log.isDetailed() ) {
+          logDetailed( BaseMessages.getString( PKG, "SortRows.Detailed.OpeningTempFile", filename ) );
+        }
+        SpillFileReader reader =
+            new SpillFileReader( data.outputRowMeta, KettleVFS.getInputStream( fileObject ), data.compressFiles );
+        data.readers.add( reader );
 
-          if ( gzfi != null ) {
-            data.gzis.remove( smallest );
-          }
+        // How long is the buffer?
+        int buffersize = data.bufferSizes.get( f );
 
-          // Also update all file numbers in in data.tempRows if they are larger
-          // than smallest.
-          //
-          for ( RowTempFile rtf : data.tempRows ) {
-            if ( rtf.fileNumber > smallest ) {
-              rtf.fileNumber--;
-            }
-          }
-        } catch ( SocketTimeoutException e ) {
-          throw new KettleValueException( e ); // should never happen on local files
+        if ( log.isDetailed() ) {
+          logDetailed( BaseMessages.getString( PKG, "SortRows.Detailed.FromFileExpectingRows",
+              filename, buffersize ) );
         }
+
+        Object[] row = buffersize > 0 ? reader.readRow() : null;
+        heads.add( row == null ? null : new KeyedRow( getKey( row ), row ) );
       }
+    } catch ( Exception e ) {
+      throw new KettleException( BaseMessages.getString( PKG, "SortRows.Error.ErrorReadingBackTempFiles" ), e );
     }
-    return retval;
+
+    data.merger = new LoserTree<KeyedRow>( heads, data.keyedRowComparator );
+  }
+
+  private long getKey( Object[] row ) throws KettleValueException {
+    return data.keyPrefix == null ? 0L : data.keyPrefix.getKey( row[data.fieldnrs[0]] );
   }
 
   @Override
@@ -418,7 +379,6 @@ public class SortRows extends BaseStep implements StepInterface {
       // Metadata
       data.outputRowMeta = inputRowMeta.clone();
       meta.getFields( data.outputRowMeta, getStepname(), null, null, this, repository, metaStore );
-      data.comparator = new RowTemapFileComparator( data.outputRowMeta, data.fieldnrs );
 
       for ( int i = 0; i < fieldNames.length; i++ ) {
         data.fieldnrs[i] = inputRowMeta.indexOfValue( fieldNames[i] );
@@ -438,6 +398,12 @@ public class SortRows extends BaseStep implements StepInterface {
         i++;
       }
       data.rowComparator = new RowObjectArrayComparator( data.outputRowMeta, data.fieldnrs );
+
+      // Sort on the normalized value of the first key where possible
+      data.keyPrefix = data.fieldnrs.length == 0 ? null
+          : NormalizedKeyPrefix.getInstance( data.outputRowMeta.getValueMeta( data.fieldnrs[0] ) );
+      data.keyedRowComparator = new KeyedRowComparator( data.outputRowMeta, data.fieldnrs,
+          data.keyPrefix != null && data.keyPrefix.isExact() );
     } // end if first
 
     // it is not first row and it is null
@@ -570,13 +536,10 @@ public class SortRows extends BaseStep implements StepInterface {
     //
     data.buffer = new ArrayList<Object[]>( 5000 );
 
-    // Buffer for reading from disk
-    //
-    data.rowbuffer = new ArrayList<Object[]>( 5000 );
-
     data.compressFiles = getBooleanValueOfVariable( meta.getCompressFilesVariable(), meta.getCompressFiles() );
 
-    data.tempRows = new ArrayList<RowTempFile>();
+    Boolean parallelSort = ValueMetaString.convertStringToBoolean( getVariable( Const.KETTLE_SORT_ROWS_PARALLEL ) );
+    data.parallelSort = parallelSort == null || parallelSort.booleanValue();
 
     data.minSortSize = 5000;
 
@@ -594,20 +557,24 @@ public class SortRows extends BaseStep implements StepInterface {
     // Clean out the sort buffer
     data.buffer.clear();
     data.getBufferIndex = 0;
-    data.rowbuffer.clear();
+    data.merger = null;
 
-    // close any open DataInputStream objects
-    if ( ( data.dis != null ) && ( data.dis.size() > 0 ) ) {
-      for ( DataInputStream dis : data.dis ) {
-        BaseStep.closeQuietly( dis );
+    // let a temp file being written in the background finish before we remove it
+    if ( data.spill != null ) {
+      try {
+        data.spill.get();
+      } catch ( Exception e ) {
+        logError( e.getLocalizedMessage(), e );
       }
+      data.spill = null;
     }
-    // close any open InputStream objects
-    if ( ( data.fis != null ) && ( data.fis.size() > 0 ) ) {
-      for ( InputStream is : data.fis ) {
-        BaseStep.closeQuietly( is );
-      }
+
+    // close any open temp files
+    for ( SpillFileReader reader : data.readers ) {
+      BaseStep.closeQuietly( reader );
     }
+    data.readers.clear();
+
     // remove temp files
     for ( int f = 0; f < data.files.size(); f++ ) {
       FileObject fileToDelete = data.files.get( f );
@@ -619,6 +586,8 @@ public class SortRows extends BaseStep implements StepInterface {
         logError( e.getLocalizedMessage(), e );
       }
     }
+    data.files.clear();
+    data.bufferSizes.clear();
   }
 
   /**
@@ -626,7 +595,17 @@ public class SortRows extends BaseStep implements StepInterface {
    */
   void quickSort( List<Object[]> elements ) throws KettleException {
     if ( elements.size() > 0 ) {
-      Collections.sort( elements, data.rowComparator );
+      if ( data.keyPrefix != null ) {
+        sortOnNormalizedKeys( elements );
+      } else if ( data.parallelSort ) {
+        Object[][] rows = elements.toArray( new Object[elements.size()][] );
+        Arrays.parallelSort( rows, data.rowComparator );
+        for ( int i = 0; i < rows.length; i++ ) {
+          elements.set( i, rows[i] );
+        }
+      } else {
+        Collections.sort( elements, data.rowComparator );
+      }
 
       long nrConversions = 0L;
       for ( ValueMetaInterface valueMeta : data.outputRowMeta.getValueMetaList() ) {
@@ -639,6 +618,23 @@ public class SortRows extends BaseStep implements StepInterface {
     }
   }
 
+  private void sortOnNormalizedKeys( List<Object[]> elements ) throws KettleException {
+    KeyedRow[] keyedRows = new KeyedRow[elements.size()];
+    for ( int i = 0; i < keyedRows.length; i++ ) {
+      Object[] row = elements.get( i );
+      keyedRows[i] = new KeyedRow( getKey( row ), row );
+    }
+    if ( data.parallelSort ) {
+      // Sorts chunks on all cores, then merges them in parallel as well
+      Arrays.parallelSort( keyedRows, data.keyedRowComparator );
+    } else {
+      Arrays.sort( keyedRows, data.keyedRowComparator );
+    }
+    for ( int i = 0; i < keyedRows.length; i++ ) {
+      elements.set( i, keyedRows[i].row );
+    }
+  }
+
   /**
    * Calling this method will alert the step that we finished passing records to the step. Specifically for steps like
    * "Sort Rows" it means that the buffered rows can be sorted and passed on.
@@ -687,14 +683,31 @@ public class SortRows extends BaseStep implements StepInterface {
     }
   }
 
-  private class RowTemapFileComparator extends SortRowsComparator implements Comparator<RowTempFile> {
-    RowTemapFileComparator( RowMetaInterface rowMeta, int[] fieldNrs ) {
+  private class KeyedRowComparator extends SortRowsComparator implements Comparator<KeyedRow> {
+    private final int firstFieldNr;
+    private final int[] otherFieldNrs;
+    private final boolean exactKeys;
+
+    /**
+     * @param exactKeys
+     *          true if equal keys of non-null values mean the first sort field is equal
+     */
+    KeyedRowComparator( RowMetaInterface rowMeta, int[] fieldNrs, boolean exactKeys ) {
       super( rowMeta, fieldNrs );
+      this.exactKeys = exactKeys;
+      this.firstFieldNr = fieldNrs.length > 0 ? fieldNrs[0] : -1;
+      this.otherFieldNrs = fieldNrs.length > 0 ? Arrays.copyOfRange( fieldNrs, 1, fieldNrs.length ) : fieldNrs;
     }
 
     @Override
-    public int compare( RowTempFile o1, RowTempFile o2 ) {
+    public int compare( KeyedRow o1, KeyedRow o2 ) {
+      if ( o1.key != o2.key ) {
+        return o1.key < o2.key ? -1 : 1;
+      }
       try {
+        if ( exactKeys && ( o1.row[firstFieldNr] == null ) == ( o2.row[firstFieldNr] == null ) ) {
+          return rowMeta.compare( o1.row, o2.row, otherFieldNrs );
+        }
         return rowMeta.compare( o1.row, o2.row, fieldNrs );
       } catch ( KettleValueException e ) {
         logError( "Error comparing rows: " + e.toString() );
@@ -22,12 +22,10 @@
 
 package org.pentaho.di.trans.steps.sort;
 
-import java.io.DataInputStream;
-import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.List;
-import java.util.zip.GZIPInputStream;
+import java.util.concurrent.Future;
 
 import org.apache.commons.vfs2.FileObject;
 import org.pentaho.di.core.row.RowMetaInterface;
@@ -43,14 +41,16 @@ public class SortRowsData extends BaseStepData implements StepDataInterface {
   public List<Object[]> buffer;
   public int getBufferIndex;
 
-  public List<InputStream> fis;
-  public List<GZIPInputStream> gzis;
-  public List<DataInputStream> dis;
-  public List<Object[]> rowbuffer;
+  public List<SpillFileReader> readers;
   public List<Integer> bufferSizes;
 
-  // To store rows and file references
-  public List<RowTempFile> tempRows;
+  // Merges the rows of the temp files
+  public LoserTree<KeyedRow> merger;
+
+  // Sort on all cores and write the temp files in the background
+  public boolean parallelSort;
+  // The temp file being written in the background, returns the number of rows written
+  public Future<Integer> spill;
 
   public int[] fieldnrs; // the corresponding field numbers;
   public FileObject fil;
@@ -60,7 +60,8 @@ public class SortRowsData extends BaseStepData implements StepDataInterface {
   public int[] convertKeysToNative;
   public boolean convertAnyKeysToNative;
 
-  Comparator<RowTempFile> comparator;
+  NormalizedKeyPrefix keyPrefix;
+  Comparator<KeyedRow> keyedRowComparator;
   Comparator<Object[]> rowComparator;
 
   public int freeCounter;
@@ -80,9 +81,7 @@ public class SortRowsData extends BaseStepData implements StepDataInterface {
     super();
 
     files = new ArrayList<FileObject>();
-    fis = new ArrayList<InputStream>();
-    gzis = new ArrayList<GZIPInputStream>();
-    dis = new ArrayList<DataInputStream>();
+    readers = new ArrayList<SpillFileReader>();
     bufferSizes = new ArrayList<Integer>();
 
     previous = null; // Heroic
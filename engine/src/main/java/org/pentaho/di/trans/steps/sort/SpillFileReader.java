@@ -0,0 +1,158 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2020 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.steps.sort;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+
+import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.xerial.snappy.Snappy;
+
+/**
+ * Reads back a sorted run written by {@link SpillFileWriter}. A complete block is read (and decompressed) at once,
+ * after which rows are deserialized from memory until the block is exhausted.
+ */
+public class SpillFileReader implements Closeable {
+  private final RowMetaInterface rowMeta;
+  private final ReadableByteChannel channel;
+  private final boolean compressed;
+
+  private final ByteBuffer header;
+  private final BlockInputStream block;
+  private final DataInputStream rowStream;
+  private byte[] raw;
+  private byte[] stored;
+
+  private int rowsLeftInBlock;
+  private boolean eof;
+
+  /**
+   * @param rowMeta
+   *          the metadata of the rows to read
+   * @param inputStream
+   *          the temporary file to read, closed by {@link #close()}
+   * @param compressed
+   *          true if the file was written with compression enabled
+   */
+  public SpillFileReader( RowMetaInterface rowMeta, InputStream inputStream, boolean compressed ) {
+    this.rowMeta = rowMeta;
+    this.channel = Channels.newChannel( inputStream );
+    this.compressed = compressed;
+
+    header = ByteBuffer.allocate( SpillFileWriter.HEADER_SIZE );
+    raw = new byte[0];
+    block = new BlockInputStream();
+    rowStream = new DataInputStream( block );
+  }
+
+  /**
+   * @return the next row or null if there are no more rows in the file.
+   */
+  public Object[] readRow() throws KettleException {
+    try {
+      while ( rowsLeftInBlock == 0 ) {
+        if ( eof || !readBlock() ) {
+          eof = true;
+          return null;
+        }
+      }
+      Object[] row = rowMeta.readData( rowStream );
+      rowsLeftInBlock--;
+      return row;
+    } catch ( IOException e ) {
+      throw new KettleException( "Unable to read block from temporary file", e );
+    }
+  }
+
+  private boolean readBlock() throws IOException {
+    header.clear();
+    if ( !readFully( header, true ) ) {
+      return false;
+    }
+    header.flip();
+    int rows = header.getInt();
+    int length = header.getInt();
+    int storedLength = header.getInt();
+
+    if ( raw.length < length ) {
+      raw = new byte[length];
+    }
+    if ( compressed ) {
+      if ( stored == null || stored.length < storedLength ) {
+        stored = new byte[storedLength];
+      }
+      readFully( ByteBuffer.wrap( stored, 0, storedLength ), false );
+      Snappy.uncompress( stored, 0, storedLength, raw, 0 );
+    } else {
+      readFully( ByteBuffer.wrap( raw, 0, length ), false );
+    }
+
+    block.reset( raw, length );
+    rowsLeftInBlock = rows;
+    return true;
+  }
+
+  /**
+   * @return false if the end of the file was reached before anything was read and that is allowed.
+   */
+  private boolean readFully( ByteBuffer buffer, boolean eofAllowed ) throws IOException {
+    while ( buffer.hasRemaining() ) {
+      if ( channel.read( buffer ) < 0 ) {
+        if ( eofAllowed && buffer.position() == 0 ) {
+          return false;
+        }
+        throw new EOFException( "Unexpected end of temporary file" );
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public void close() throws IOException {
+    channel.close();
+  }
+
+  /**
+   * Reads from a block that can be swapped without creating a new stream.
+   */
+  private static class BlockInputStream extends ByteArrayInputStream {
+    BlockInputStream() {
+      super( new byte[0] );
+    }
+
+    void reset( byte[] data, int length ) {
+      buf = data;
+      pos = 0;
+      count = length;
+      mark = 0;
+    }
+  }
+}
@@ -0,0 +1,157 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2020 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.steps.sort;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+
+import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.xerial.snappy.Snappy;
+
+/**
+ * Writes a sorted run of rows to a temporary file. Rows are serialized into blocks of about {@link #BLOCK_SIZE}
+ * bytes which are written with a single channel write each. Every block is preceded by a header with the number of
+ * rows, the serialized size and the stored size of the block. When compression is enabled the stored block is
+ * compressed with Snappy, which is a lot cheaper on the CPU than GZIP.<br>
+ * <br>
+ * Read the file back with {@link SpillFileReader}.
+ */
+public class SpillFileWriter implements Closeable {
+  public static final int BLOCK_SIZE = 128 * 1024;
+
+  static final int HEADER_SIZE = 12;
+
+  private final RowMetaInterface rowMeta;
+  private final WritableByteChannel channel;
+  private final boolean compress;
+
+  private final BlockBuffer block;
+  private final DataOutputStream rowStream;
+  private final ByteBuffer header;
+  private byte[] compressed;
+
+  private int rowsInBlock;
+  private long rowsWritten;
+
+  /**
+   * @param rowMeta
+   *          the metadata of the rows to write
+   * @param outputStream
+   *          the temporary file to write to, closed by {@link #close()}
+   * @param compress
+   *          true to compress the blocks
+   */
+  public SpillFileWriter( RowMetaInterface rowMeta, OutputStream outputStream, boolean compress ) {
+    this.rowMeta = rowMeta;
+    this.channel = Channels.newChannel( outputStream );
+    this.compress = compress;
+
+    block = new BlockBuffer( BLOCK_SIZE + BLOCK_SIZE / 4 );
+    rowStream = new DataOutputStream( block );
+    header = ByteBuffer.allocate( HEADER_SIZE );
+  }
+
+  public void writeRow( Object[] row ) throws KettleException {
+    rowMeta.writeData( rowStream, row );
+    rowsInBlock++;
+    rowsWritten++;
+    if ( block.size() >= BLOCK_SIZE ) {
+      try {
+        writeBlock();
+      } catch ( IOException e ) {
+        throw new KettleException( "Unable to write block to temporary file", e );
+      }
+    }
+  }
+
+  private void writeBlock() throws IOException {
+    if ( rowsInBlock == 0 ) {
+      return;
+    }
+    int length = block.size();
+    byte[] stored = block.array();
+    int storedLength = length;
+    if ( compress ) {
+      int maxLength = Snappy.maxCompressedLength( length );
+      if ( compressed == null || compressed.length < maxLength ) {
+        compressed = new byte[maxLength];
+      }
+      storedLength = Snappy.compress( stored, 0, length, compressed, 0 );
+      stored = compressed;
+    }
+
+    header.clear();
+    header.putInt( rowsInBlock ).putInt( length ).putInt( storedLength );
+    header.flip();
+    writeFully( header );
+    writeFully( ByteBuffer.wrap( stored, 0, storedLength ) );
+
+    block.reset();
+    rowsInBlock = 0;
+  }
+
+  private void writeFully( ByteBuffer buffer ) throws IOException {
+    while ( buffer.hasRemaining() ) {
+      channel.write( buffer );
+    }
+  }
+
+  /**
+   * @return the number of rows written so far
+   */
+  public long getRowsWritten() {
+    return rowsWritten;
+  }
+
+  /**
+   * Writes the last block and closes the file.
+   */
+  @Override
+  public void close() throws IOException {
+    try {
+      writeBlock();
+    } finally {
+      channel.close();
+    }
+  }
+
+  /**
+   * Gives access to the bytes without copying them.
+   */
+  private static class BlockBuffer extends ByteArrayOutputStream {
+    BlockBuffer( int size ) {
+      super( size );
+    }
+
+    byte[] array() {
+      return buf;
+    }
+  }
+}
@@ -22,22 +22,25 @@
 
 package org.pentaho.di.trans.steps.streamlookup;
 
+import java.io.File;
 import java.math.BigDecimal;
 import java.text.DateFormat;
 import java.util.Collections;
 
-import org.pentaho.di.core.RowMetaAndData;
+import org.pentaho.di.core.Const;
 import org.pentaho.di.core.RowSet;
 import org.pentaho.di.core.exception.KettleException;
 import org.pentaho.di.core.exception.KettleStepException;
 import org.pentaho.di.core.exception.KettleValueException;
-import org.pentaho.di.core.hash.ByteArrayHashIndex;
+import org.pentaho.di.core.hash.MappedByteArrayHashMap;
 import org.pentaho.di.core.row.RowDataUtil;
 import org.pentaho.di.core.row.RowMeta;
 import org.pentaho.di.core.row.RowMetaInterface;
 import org.pentaho.di.core.row.ValueMetaInterface;
+import org.pentaho.di.core.row.value.ValueMetaBase;
 import org.pentaho.di.core.row.value.ValueMetaFactory;
 import org.pentaho.di.core.util.Utils;
+import org.pentaho.di.core.vfs.KettleVFS;
 import org.pentaho.di.i18n.BaseMessages;
 import org.pentaho.di.trans.Trans;
 import org.pentaho.di.trans.TransMeta;
@@ -198,6 +201,17 @@ public class StreamLookup extends BaseStep implements StepInterface {
 
         data.cacheKeyMeta = cacheKeyMeta;
         data.cacheValueMeta = cacheValueMeta;
+
+        // The hash table can be kept in memory-mapped files instead of the heap. They belong to this step copy:
+        // when the lookup rows are distributed, every copy gets other rows.
+        //
+        boolean useHashTable =
+          !meta.isMemoryPreservationActive() || ( !meta.isUsingSortedList() && !meta.isUsingIntegerPair() );
+        Boolean mappedFiles =
+          ValueMetaBase.convertStringToBoolean( getVariable( Const.KETTLE_STREAM_LOOKUP_MAPPED_FILES ) );
+        if ( useHashTable && mappedFiles != null && mappedFiles.booleanValue() ) {
+          data.mappedIndex = new MappedByteArrayHashMap( new File( KettleVFS.TEMP_DIR ), "streamlookup" );
+        }
       }
 
       Object[] keyData = new Object[keyNrs.length];
@@ -293,84 +307,90 @@ public class StreamLookup extends BaseStep implements StepInterface {
   }
 
   private void addToCache( RowMetaInterface keyMeta, Object[] keyData, RowMetaInterface valueMeta,
-    Object[] valueData ) throws KettleValueException {
-    if ( meta.isMemoryPreservationActive() ) {
-      if ( meta.isUsingSortedList() ) {
-        KeyValue keyValue = new KeyValue( keyData, valueData );
-        int idx = Collections.binarySearch( data.list, keyValue, data.comparator );
-        if ( idx < 0 ) {
-          int index = -idx - 1; // this is the insertion point
-          data.list.add( index, keyValue ); // insert to keep sorted.
-        } else {
-          data.list.set( idx, keyValue ); // Overwrite to simulate Hashtable behaviour
-        }
+    Object[] valueData ) throws KettleException {
+    if ( meta.isMemoryPreservationActive() && meta.isUsingSortedList() ) {
+      KeyValue keyValue = new KeyValue( keyData, valueData );
+      int idx = Collections.binarySearch( data.list, keyValue, data.comparator );
+      if ( idx < 0 ) {
+        int index = -idx - 1; // this is the insertion point
+        data.list.add( index, keyValue ); // insert to keep sorted.
       } else {
-        if ( meta.isUsingIntegerPair() ) {
-          if ( !data.metadataVerifiedIntegerPair ) {
-            data.metadataVerifiedIntegerPair = true;
-            if ( keyMeta.size() != 1
-              || valueMeta.size() != 1 || !keyMeta.getValueMeta( 0 ).isInteger()
-              || !valueMeta.getValueMeta( 0 ).isInteger() ) {
-
-              throw new KettleValueException( BaseMessages.getString(
-                PKG, "StreamLookup.Exception.CanNotUseIntegerPairAlgorithm" ) );
-            }
-          }
-
-          Long key = keyMeta.getInteger( keyData, 0 );
-          Long value = valueMeta.getInteger( valueData, 0 );
-          data.longIndex.put( key, value );
-        } else {
-          if ( data.hashIndex == null ) {
-            data.hashIndex = new ByteArrayHashIndex( keyMeta );
-          }
-          data.hashIndex
-            .put( RowMeta.extractData( keyMeta, keyData ), RowMeta.extractData( valueMeta, valueData ) );
+        data.list.set( idx, keyValue ); // Overwrite to simulate Hashtable behaviour
+      }
+    } else if ( meta.isMemoryPreservationActive() && meta.isUsingIntegerPair() ) {
+      if ( !data.metadataVerifiedIntegerPair ) {
+        data.metadataVerifiedIntegerPair = true;
+        if ( keyMeta.size() != 1
+          || valueMeta.size() != 1 || !keyMeta.getValueMeta( 0 ).isInteger()
+          || !valueMeta.getValueMeta( 0 ).isInteger() ) {
+
+          throw new KettleValueException( BaseMessages.getString(
+            PKG, "StreamLookup.Exception.CanNotUseIntegerPairAlgorithm" ) );
         }
       }
+
+      Long key = keyMeta.getInteger( keyData, 0 );
+      Long value = valueMeta.getInteger( valueData, 0 );
+      // A null value can't be stored and gives the same result as no value at all
+      if ( key != null && value != null ) {
+        data.longIndex.put( key, value );
+      }
     } else {
-      // We can't just put Object[] in the map The compare function is not in it.
-      // We need to wrap in and use that. Let's use RowMetaAndData for this one.
-      data.look.put( new RowMetaAndData( keyMeta, keyData ), valueData );
+      // Keys and values are serialized into the slabs or files of the map, there are no objects per entry.
+      //
+      byte[] key = extractKey( keyMeta, keyData );
+      byte[] value = RowMeta.extractData( valueMeta, valueData );
+      if ( data.mappedIndex != null ) {
+        data.mappedIndex.put( key, value );
+      } else {
+        data.hashIndex.put( key, value );
+      }
     }
   }
 
   private Object[] getFromCache( RowMetaInterface keyMeta, Object[] keyData ) throws KettleValueException {
-    if ( meta.isMemoryPreservationActive() ) {
-      if ( meta.isUsingSortedList() ) {
-        KeyValue keyValue = new KeyValue( keyData, null );
-        int idx = Collections.binarySearch( data.list, keyValue, data.comparator );
-        if ( idx < 0 ) {
-          return null; // nothing found
-        }
+    if ( meta.isMemoryPreservationActive() && meta.isUsingSortedList() ) {
+      KeyValue keyValue = new KeyValue( keyData, null );
+      int idx = Collections.binarySearch( data.list, keyValue, data.comparator );
+      if ( idx < 0 ) {
+        return null; // nothing found
+      }
 
-        keyValue = data.list.get( idx );
-        return keyValue.getValue();
-      } else {
-        if ( meta.isUsingIntegerPair() ) {
-          Long value = data.longIndex.get( keyMeta.getInteger( keyData, 0 ) );
-          if ( value == null ) {
-            return null;
-          }
-          return new Object[] { value, };
-        } else {
-          try {
-            byte[] value = data.hashIndex.get( RowMeta.extractData( keyMeta, keyData ) );
-            if ( value == null ) {
-              return null;
-            }
-            return RowMeta.getRow( data.cacheValueMeta, value );
-   } catch ( Exception e ) {
-            logError( "Oops", e );
-            throw new RuntimeException( e );
-          }
-        }
+      keyValue = data.list.get( idx );
+      return keyValue.getValue();
+    } else if ( meta.isMemoryPreservationActive() && meta.isUsingIntegerPair() ) {
+      Long key = keyMeta.getInteger( keyData, 0 );
+      if ( key == null ) {
+        return null;
       }
+      Long value = data.longIndex.get( key );
+      if ( value == null ) {
+        return null;
+      }
+      return new Object[] { value, };
     } else {
-      return data.look.get( new RowMetaAndData( keyMeta, keyData ) );
+      byte[] key = extractKey( keyMeta, keyData );
+      byte[] value = data.mappedIndex != null ? data.mappedIndex.get( key ) : data.hashIndex.get( key );
+      if ( value == null ) {
+        return null;
+      }
+      return RowMeta.getRow( data.cacheValueMeta, value );
     }
   }
 
+  /**
+   * Serialize the key for the hash map. Values that Kettle considers null, like an empty string, are written as null so
+   * that they match like they do when the key rows are compared.
+   */
+  private byte[] extractKey( RowMetaInterface keyMeta, Object[] keyData ) throws KettleValueException {
+    for ( int i = 0; i < keyData.length; i++ ) {
+      if ( keyData[i] != null && keyMeta.getValueMeta( i ).isNull( keyData[i] ) ) {
+        keyData[i] = null;
+      }
+    }
+    return RowMeta.extractData( keyMeta, keyData );
+  }
+
   @Override
   public boolean processRow( StepMetaInterface smi, StepDataInterface sdi ) throws KettleException {
     meta = (StreamLookupMeta) smi;
@@ -479,10 +499,13 @@ public class StreamLookup extends BaseStep implements StepInterface {
   public void dispose( StepMetaInterface smi, StepDataInterface sdi ) {
     // Recover memory immediately, allow in-memory data to be garbage collected
     //
-    data.look = null;
     data.list = null;
     data.hashIndex = null;
     data.longIndex = null;
+    if ( data.mappedIndex != null ) {
+      data.mappedIndex.close();
+      data.mappedIndex = null;
+    }
 
     super.dispose( smi, sdi );
   }
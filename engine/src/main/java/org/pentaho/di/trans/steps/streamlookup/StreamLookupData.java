@@ -24,14 +24,12 @@ package org.pentaho.di.trans.steps.streamlookup;
 
 import java.util.ArrayList;
 import java.util.Comparator;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
-import org.pentaho.di.core.RowMetaAndData;
 import org.pentaho.di.core.exception.KettleValueException;
-import org.pentaho.di.core.hash.ByteArrayHashIndex;
-import org.pentaho.di.core.hash.LongHashIndex;
+import org.pentaho.di.core.hash.ByteArraySlabHashMap;
+import org.pentaho.di.core.hash.LongLongHashMap;
+import org.pentaho.di.core.hash.MappedByteArrayHashMap;
 import org.pentaho.di.core.row.RowMetaInterface;
 import org.pentaho.di.trans.step.BaseStepData;
 import org.pentaho.di.trans.step.StepDataInterface;
@@ -42,9 +40,6 @@ import org.pentaho.di.trans.step.errorhandling.StreamInterface;
  * @since 24-jan-2005
  */
 public class StreamLookupData extends BaseStepData implements StepDataInterface {
-  /** used to store values in used to look up things */
-  public Map<RowMetaAndData, Object[]> look;
-
   public List<KeyValue> list;
 
   /** nrs of keys-values in row. */
@@ -71,8 +66,11 @@ public class StreamLookupData extends BaseStepData implements StepDataInterface
 
   public Comparator<KeyValue> comparator;
 
-  public ByteArrayHashIndex hashIndex;
-  public LongHashIndex longIndex;
+  /** The serialized keys and values, unless the sorted list or the integer pair algorithm is used */
+  public ByteArraySlabHashMap hashIndex;
+  /** Replaces hashIndex when the hash table is kept in memory-mapped files */
+  public MappedByteArrayHashMap mappedIndex;
+  public LongLongHashMap longIndex;
 
   public RowMetaInterface lookupMeta;
 
@@ -92,9 +90,8 @@ public class StreamLookupData extends BaseStepData implements StepDataInterface
 
   public StreamLookupData() {
     super();
-    look = new HashMap<RowMetaAndData, Object[]>();
-    hashIndex = null;
-    longIndex = new LongHashIndex();
+    hashIndex = new ByteArraySlabHashMap();
+    longIndex = new LongLongHashMap();
     list = new ArrayList<KeyValue>();
     metadataVerifiedIntegerPair = false;
     hasLookupRows = false;
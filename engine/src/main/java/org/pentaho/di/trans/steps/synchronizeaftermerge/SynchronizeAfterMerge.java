@@ -28,6 +28,7 @@ import java.util.Arrays;
 import java.util.List;
 
 import org.pentaho.di.core.Const;
+import org.pentaho.di.core.LookupCacheRegistry;
 import org.pentaho.di.core.util.Utils;
 import org.pentaho.di.core.database.Database;
 import org.pentaho.di.core.database.DatabaseMeta;
@@ -100,6 +101,7 @@ public class SynchronizeAfterMerge extends BaseStep implements StepInterface {
         data.realSchemaTable =
             data.db.getDatabaseMeta().getQuotedSchemaTableCombination( data.realSchemaName, data.realTableName );
       }
+      data.writtenTables.add( data.realSchemaTable );
 
       if ( operation.equals( data.insertValue ) ) {
         // directly insert data into table
@@ -910,9 +912,24 @@ public class SynchronizeAfterMerge extends BaseStep implements StepInterface {
 
   public void dispose( StepMetaInterface smi, StepDataInterface sdi ) {
     finishStep();
+    if ( getLinesOutput() > 0 || getLinesUpdated() > 0 ) {
+      invalidateSharedCaches();
+    }
     super.dispose( smi, sdi );
   }
 
+  /**
+   * Rows were inserted, updated or deleted, the shared lookup caches of the tables are stale.
+   */
+  private void invalidateSharedCaches() {
+    try {
+      LookupCacheRegistry.getInstance().invalidateTables( meta.getDatabaseMeta(), this, getPartitionID(),
+        data.writtenTables );
+    } catch ( KettleDatabaseException e ) {
+      logError( "Unable to invalidate the shared lookup caches of " + data.writtenTables, e );
+    }
+  }
+
   private void finishStep() {
     if ( data.db != null && data.db.getConnection() != null ) {
       try {
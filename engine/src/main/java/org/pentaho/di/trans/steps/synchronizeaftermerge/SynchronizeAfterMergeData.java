@@ -26,9 +26,11 @@ import java.sql.PreparedStatement;
 import java.sql.Savepoint;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Hashtable;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.pentaho.di.core.database.Database;
 import org.pentaho.di.core.database.DatabaseMeta;
@@ -62,6 +64,9 @@ public class SynchronizeAfterMergeData extends BaseStepData implements StepDataI
   public String realSchemaName;
   public String realSchemaTable;
 
+  /** The tables rows were written to, their shared lookup caches are invalidated at the end */
+  public Set<String> writtenTables;
+
   /** Use batch mode or not? */
   public boolean batchMode;
 
@@ -122,6 +127,7 @@ public class SynchronizeAfterMergeData extends BaseStepData implements StepDataI
     indexOfOperationOrderField = -1;
     lookupFailure = false;
     realSchemaTable = null;
+    writtenTables = new HashSet<String>();
     commitCounterMap = new HashMap<String, Integer>();
     batchBuffer = new ArrayList<Object[]>();
     releaseSavepoint = true;
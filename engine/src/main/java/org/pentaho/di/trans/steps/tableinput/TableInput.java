@@ -22,8 +22,15 @@
 
 package org.pentaho.di.trans.steps.tableinput;
 
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.math.RoundingMode;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Map;
 import java.util.concurrent.locks.ReentrantLock;
 
 import org.pentaho.di.core.Const;
@@ -46,6 +53,8 @@ import org.pentaho.di.trans.step.StepInterface;
 import org.pentaho.di.trans.step.StepMeta;
 import org.pentaho.di.trans.step.StepMetaInterface;
 
+import com.google.common.annotations.VisibleForTesting;
+
 /**
  * Reads information from a database table by using freehand SQL
  *
@@ -55,6 +64,8 @@ import org.pentaho.di.trans.step.StepMetaInterface;
 public class TableInput extends BaseStep implements StepInterface {
   private static Class<?> PKG = TableInputMeta.class; // for i18n purposes, needed by Translator2!!
 
+  private static final String SPLIT_RANGE_KEY = "TableInput.SplitRange.";
+
   private final ReentrantLock dbLock = new ReentrantLock();
 
   private TableInputMeta meta;
@@ -148,7 +159,7 @@ public class TableInput extends BaseStep implements StepInterface {
         if ( data.thisrow != null ) { // We can expect more rows
 
           try {
-            data.nextrow = data.db.getRow( data.rs, meta.isLazyConversionActive() );
+            data.nextrow = getNextRow();
           } catch ( KettleDatabaseException e ) {
             if ( e.getCause() instanceof SQLException && isStopped() ) {
               //This exception indicates we tried reading a row after the statment for this step was cancelled
@@ -218,13 +229,24 @@ public class TableInput extends BaseStep implements StepInterface {
     }
   }
 
+  private Object[] getNextRow() throws KettleDatabaseException {
+    if ( data.reader != null ) {
+      return data.reader.getRow();
+    }
+    return data.db.getRow( data.rs, meta.isLazyConversionActive() );
+  }
+
   private void closePreviousQuery() throws KettleDatabaseException {
+    if ( data.reader != null ) {
+      data.reader.close();
+      data.reader = null;
+    }
     if ( data.db != null ) {
       data.db.closeQuery( data.rs );
     }
   }
 
-  private boolean doQuery( RowMetaInterface parametersMeta, Object[] parameters ) throws KettleDatabaseException {
+  private boolean doQuery( RowMetaInterface parametersMeta, Object[] parameters ) throws KettleException {
     boolean success = true;
 
     // Open the query with the optional parameters received from the source steps.
@@ -235,6 +257,16 @@ public class TableInput extends BaseStep implements StepInterface {
       sql = meta.getSQL();
     }
 
+    // Only read the range of the split column of this step copy
+    if ( data.splitColumn != null ) {
+      RowMetaInterface splitParametersMeta = parametersMeta.clone();
+      Object[] splitParameters = Arrays.copyOf( parameters, parametersMeta.size() + 2 );
+      sql = getSplitSQL( sql, getSplitRange( sql, parametersMeta, parameters ), splitParametersMeta,
+        splitParameters );
+      parametersMeta = splitParametersMeta;
+      parameters = splitParameters;
+    }
+
     if ( log.isDetailed() ) {
       logDetailed( BaseMessages.getString( PKG, "TableInput.Log.SqlQuery", sql ) );
     }
@@ -261,11 +293,16 @@ public class TableInput extends BaseStep implements StepInterface {
         }
       }
 
+      // Read ahead on a background thread
+      if ( data.prefetchRows > 0 ) {
+        data.reader = data.db.getPrefetchingRowReader( data.rs, data.prefetchRows );
+      }
+
       // Get the first row...
-      data.thisrow = data.db.getRow( data.rs );
+      data.thisrow = getNextRow();
       if ( data.thisrow != null ) {
         incrementLinesInput();
-        data.nextrow = data.db.getRow( data.rs );
+        data.nextrow = getNextRow();
         if ( data.nextrow != null ) {
           incrementLinesInput();
         }
@@ -274,6 +311,147 @@ public class TableInput extends BaseStep implements StepInterface {
     return success;
   }
 
+  /**
+   * Every copy reads its own range of the split column. The range of the column is read once per transformation, a
+   * clustered step would read it on every slave server and the ranges wouldn't line up, so its query isn't split.
+   */
+  void initSplit( int rowLimit ) {
+    String splitColumn = environmentSubstitute( meta.getSplitColumn() );
+    if ( !Utils.isEmpty( splitColumn ) && getUniqueStepCountAcrossSlaves() > 1 ) {
+      if ( getClusterSize() > 1 ) {
+        logBasic( BaseMessages.getString( PKG, "TableInput.Log.SplitNotPossibleClustered", splitColumn ) );
+      } else if ( meta.isExecuteEachInputRow() || rowLimit > 0 ) {
+        logBasic( BaseMessages.getString( PKG, "TableInput.Log.SplitNotPossible", splitColumn ) );
+      } else {
+        data.splitColumn = splitColumn;
+        data.splitNr = getUniqueStepNrAcrossSlaves();
+        data.splitCount = getUniqueStepCountAcrossSlaves();
+      }
+    }
+  }
+
+  /**
+   * Read the minimum and maximum of the split column. This happens once per transformation, the other copies wait for
+   * it and use the same values so the ranges line up.
+   */
+  private RowMetaAndData getSplitRange( String sql, RowMetaInterface parametersMeta, Object[] parameters )
+    throws KettleDatabaseException {
+    Map<String, Object> extensionData = getTrans().getExtensionDataMap();
+    String key = SPLIT_RANGE_KEY + getStepname();
+    synchronized ( extensionData ) {
+      RowMetaAndData range = (RowMetaAndData) extensionData.get( key );
+      if ( range == null ) {
+        String column = meta.getDatabaseMeta().quoteField( data.splitColumn );
+        String rangeSQL = "SELECT MIN(" + column + "), MAX(" + column + ") FROM (" + Const.CR
+          + stripSemicolon( sql ) + Const.CR + ") kettle_split";
+        if ( log.isDetailed() ) {
+          logDetailed( BaseMessages.getString( PKG, "TableInput.Log.SqlQuery", rangeSQL ) );
+        }
+        ResultSet rs = data.db.openQuery( rangeSQL, parametersMeta.isEmpty() ? null : parametersMeta,
+          parametersMeta.isEmpty() ? null : parameters, ResultSet.FETCH_FORWARD, false );
+        try {
+          range = new RowMetaAndData( data.db.getReturnRowMeta(), data.db.getRow( rs ) );
+        } finally {
+          data.db.closeQuery( rs );
+        }
+        extensionData.put( key, range );
+      }
+      return range;
+    }
+  }
+
+  /**
+   * Wrap the query to only return the range of the split column this copy reads. The range between the minimum and the
+   * maximum is divided in equal parts, the first copy reads the rows without a value as well. The bounds are added to
+   * the parameters.
+   */
+  @VisibleForTesting
+  String getSplitSQL( String sql, RowMetaAndData range, RowMetaInterface parametersMeta,
+    Object[] parameters ) throws KettleException {
+    String column = meta.getDatabaseMeta().quoteField( data.splitColumn );
+    ValueMetaInterface rangeMeta = range.getRowMeta().getValueMeta( 0 );
+    Object minimum = range.getData()[0];
+    Object maximum = range.getData()[1];
+
+    StringBuilder condition = new StringBuilder();
+    if ( rangeMeta.isNull( minimum ) || rangeMeta.isNull( maximum ) ) {
+      // Nothing but empty values, the first copy reads them all
+      condition.append( data.splitNr == 0 ? "1=1" : "1=0" );
+    } else {
+      BigDecimal low = toSplitNumber( rangeMeta, minimum );
+      BigDecimal high = toSplitNumber( rangeMeta, maximum );
+      int nrParameters = parametersMeta.size();
+      if ( data.splitNr > 0 ) {
+        condition.append( column ).append( " >= ?" );
+        parametersMeta.addValueMeta( rangeMeta.clone() );
+        parameters[nrParameters++] = fromSplitNumber( rangeMeta, getSplitBound( low, high, data.splitNr ) );
+      }
+      if ( data.splitNr < data.splitCount - 1 ) {
+        if ( condition.length() > 0 ) {
+          condition.append( " AND " );
+        }
+        condition.append( column ).append( " < ?" );
+        parametersMeta.addValueMeta( rangeMeta.clone() );
+        parameters[nrParameters++] = fromSplitNumber( rangeMeta, getSplitBound( low, high, data.splitNr + 1 ) );
+      }
+      if ( data.splitNr == 0 ) {
+        condition.append( " OR " ).append( column ).append( " IS NULL" );
+      }
+    }
+
+    if ( log.isBasic() ) {
+      logBasic( BaseMessages.getString( PKG, "TableInput.Log.SplitRange", String.valueOf( data.splitNr + 1 ),
+        String.valueOf( data.splitCount ), data.splitColumn, condition.toString() ) );
+    }
+    return "SELECT * FROM (" + Const.CR + stripSemicolon( sql ) + Const.CR + ") kettle_split WHERE "
+      + condition.toString();
+  }
+
+  private BigDecimal getSplitBound( BigDecimal low, BigDecimal high, int splitNr ) {
+    return low.add( high.subtract( low ).multiply( BigDecimal.valueOf( splitNr ) ).divide(
+      BigDecimal.valueOf( data.splitCount ), MathContext.DECIMAL64 ) );
+  }
+
+  private BigDecimal toSplitNumber( ValueMetaInterface valueMeta, Object value ) throws KettleException {
+    switch ( valueMeta.getType() ) {
+      case ValueMetaInterface.TYPE_INTEGER:
+        return BigDecimal.valueOf( valueMeta.getInteger( value ) );
+      case ValueMetaInterface.TYPE_NUMBER:
+        return BigDecimal.valueOf( valueMeta.getNumber( value ) );
+      case ValueMetaInterface.TYPE_BIGNUMBER:
+        return valueMeta.getBigNumber( value );
+      case ValueMetaInterface.TYPE_DATE:
+      case ValueMetaInterface.TYPE_TIMESTAMP:
+        return BigDecimal.valueOf( valueMeta.getDate( value ).getTime() );
+      default:
+        throw new KettleException( BaseMessages.getString( PKG, "TableInput.Exception.SplitColumnType",
+          data.splitColumn, valueMeta.getTypeDesc() ) );
+    }
+  }
+
+  private Object fromSplitNumber( ValueMetaInterface valueMeta, BigDecimal bound ) {
+    switch ( valueMeta.getType() ) {
+      case ValueMetaInterface.TYPE_INTEGER:
+        return bound.setScale( 0, RoundingMode.FLOOR ).longValue();
+      case ValueMetaInterface.TYPE_NUMBER:
+        return bound.doubleValue();
+      case ValueMetaInterface.TYPE_TIMESTAMP:
+        return new Timestamp( bound.setScale( 0, RoundingMode.FLOOR ).longValue() );
+      case ValueMetaInterface.TYPE_DATE:
+        return new Date( bound.setScale( 0, RoundingMode.FLOOR ).longValue() );
+      default:
+        return bound;
+    }
+  }
+
+  private static String stripSemicolon( String sql ) {
+    String stripped = Const.rtrim( sql );
+    while ( stripped.endsWith( ";" ) ) {
+      stripped = Const.rtrim( stripped.substring( 0, stripped.length() - 1 ) );
+    }
+    return stripped;
+  }
+
   public void dispose( StepMetaInterface smi, StepDataInterface sdi ) {
     dbLock.lock();
     try {
@@ -350,7 +528,12 @@ public class TableInput extends BaseStep implements StepInterface {
         data.db = new Database( this, meta.getDatabaseMeta() );
         data.db.shareVariablesWith( this );
 
-        data.db.setQueryLimit( Const.toInt( environmentSubstitute( meta.getRowLimit() ), 0 ) );
+        int rowLimit = Const.toInt( environmentSubstitute( meta.getRowLimit() ), 0 );
+        data.db.setQueryLimit( rowLimit );
+
+        data.prefetchRows = Const.toInt( getVariable( Const.KETTLE_DATABASE_PREFETCH_ROWS ), 0 );
+
+        initSplit( rowLimit );
 
         try {
           if ( getTransMeta().isUsingUniqueConnections() ) {
@@ -2,7 +2,7 @@
  *
  * Pentaho Data Integration
  *
- * Copyright (C) 2002-2017 by Hitachi Vantara : http://www.pentaho.com
+ * Copyright (C) 2002-2020 by Hitachi Vantara : http://www.pentaho.com
  *
  *******************************************************************************
  *
@@ -26,6 +26,7 @@ import java.sql.ResultSet;
 
 import org.pentaho.di.core.RowSet;
 import org.pentaho.di.core.database.Database;
+import org.pentaho.di.core.database.PrefetchingRowReader;
 import org.pentaho.di.core.row.RowMetaInterface;
 import org.pentaho.di.trans.step.BaseStepData;
 import org.pentaho.di.trans.step.StepDataInterface;
@@ -46,6 +47,15 @@ public class TableInputData extends BaseStepData implements StepDataInterface {
   public boolean isCanceled;
   public StreamInterface infoStream;
 
+  /** The column to split the query on, null if this copy reads all rows */
+  public String splitColumn;
+  public int splitNr;
+  public int splitCount;
+
+  /** The number of rows to read ahead, 0 to read on the step thread */
+  public int prefetchRows;
+  public PrefetchingRowReader reader;
+
   public TableInputData() {
     super();
 
@@ -2,7 +2,7 @@
  *
  * Pentaho Data Integration
  *
- * Copyright (C) 2002-2019 by Hitachi Vantara : http://www.pentaho.com
+ * Copyright (C) 2002-2020 by Hitachi Vantara : http://www.pentaho.com
  *
  *******************************************************************************
  *
@@ -102,6 +102,10 @@ public class TableInputMeta extends BaseStepMeta implements StepMetaInterface {
 
   private RowMetaInterface cachedRowMeta;
 
+  /** The column to split the query on when the step runs in more than one copy */
+  @Injection( name = "SPLIT_COLUMN" )
+  private String splitColumn;
+
   public TableInputMeta() {
     super();
   }
@@ -196,6 +200,7 @@ public class TableInputMeta extends BaseStepMeta implements StepMetaInterface {
       lazyConversionActive = "Y".equals( XMLHandler.getTagValue( stepnode, "lazy_conversion_active" ) );
       cachedRowMetaActive = "Y".equals( XMLHandler.getTagValue( stepnode, "cached_row_meta_active" ) );
       cachedRowMeta = new RowMeta( XMLHandler.getSubNode( stepnode, RowMeta.XML_META_TAG ) );
+      splitColumn = XMLHandler.getTagValue( stepnode, "split_column" );
 
     } catch ( Exception e ) {
       throw new KettleXMLException( "Unable to load step info from XML", e );
@@ -206,6 +211,7 @@ public class TableInputMeta extends BaseStepMeta implements StepMetaInterface {
     databaseMeta = null;
     sql = "SELECT <values> FROM <table name> WHERE <conditions>";
     rowLimit = "0";
+    splitColumn = null;
   }
 
   protected Database getDatabase() {
@@ -314,6 +320,7 @@ public class TableInputMeta extends BaseStepMeta implements StepMetaInterface {
     retval.append( "    " + XMLHandler.addTagValue( "variables_active", variableReplacementActive ) );
     retval.append( "    " + XMLHandler.addTagValue( "lazy_conversion_active", lazyConversionActive ) );
     retval.append( "    " + XMLHandler.addTagValue( "cached_row_meta_active", cachedRowMetaActive ) );
+    retval.append( "    " + XMLHandler.addTagValue( "split_column", splitColumn ) );
     storeCachedRowMeta( retval );
     return retval.toString();
   }
@@ -367,6 +374,7 @@ public class TableInputMeta extends BaseStepMeta implements StepMetaInterface {
       variableReplacementActive = rep.getStepAttributeBoolean( id_step, "variables_active" );
       lazyConversionActive = rep.getStepAttributeBoolean( id_step, "lazy_conversion_active" );
       cachedRowMetaActive = rep.getStepAttributeBoolean( id_step, "cached_row_meta_active" );
+      splitColumn = rep.getStepAttributeString( id_step, "split_column" );
 
       String sRowMeta = rep.getStepAttributeString( id_step, RowMeta.XML_META_TAG );
       if ( sRowMeta != null ) {
@@ -393,6 +401,7 @@ public class TableInputMeta extends BaseStepMeta implements StepMetaInterface {
       rep.saveStepAttribute( id_transformation, id_step, "variables_active", variableReplacementActive );
       rep.saveStepAttribute( id_transformation, id_step, "lazy_conversion_active", lazyConversionActive );
       rep.saveStepAttribute( id_transformation, id_step, "cached_row_meta_active", cachedRowMetaActive );
+      rep.saveStepAttribute( id_transformation, id_step, "split_column", splitColumn );
       if ( cachedRowMeta != null ) {
         rep.saveStepAttribute( id_transformation, id_step, RowMeta.XML_META_TAG, cachedRowMeta.getMetaXML() );
       }
@@ -632,6 +641,22 @@ public class TableInputMeta extends BaseStepMeta implements StepMetaInterface {
     this.cachedRowMeta = cachedRowMeta;
   }
 
+  /**
+   * @return the column to split the query on, every step copy reads its own range of values of the column. A clustered
+   *         step doesn't split its query.
+   */
+  public String getSplitColumn() {
+    return splitColumn;
+  }
+
+  /**
+   * @param splitColumn
+   *          the column to split the query on, a numeric or date column of the result of the query
+   */
+  public void setSplitColumn( String splitColumn ) {
+    this.splitColumn = splitColumn;
+  }
+
   /**
    * Returns the Input/Output metadata for this step. The generator step only produces output, does not accept input!
    */
@@ -23,6 +23,7 @@
 package org.pentaho.di.trans.steps.tableoutput;
 
 import org.pentaho.di.core.Const;
+import org.pentaho.di.core.LookupCacheRegistry;
 import org.pentaho.di.core.RowMetaAndData;
 import org.pentaho.di.core.database.Database;
 import org.pentaho.di.core.database.DatabaseInterface;
@@ -47,8 +48,11 @@ import org.pentaho.di.trans.step.StepMetaInterface;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 /**
  * Writes rows to a database table.
@@ -77,6 +81,16 @@ public class TableOutput extends BaseStep implements StepInterface {
       if ( first && meta.truncateTable() ) {
         truncateTable();
       }
+      if ( data.batchWriter != null ) {
+        try {
+          data.batchWriter.flush();
+          processFinishedBatches( true );
+        } catch ( KettleException e ) {
+          logError( "Because of an error, this step can't continue: ", e );
+          setErrors( 1 );
+          stopAll();
+        }
+      }
       return false;
     }
 
@@ -84,6 +98,10 @@ public class TableOutput extends BaseStep implements StepInterface {
       first = false;
       if ( meta.truncateTable() ) {
         truncateTable();
+        if ( data.asyncBatches > 0 ) {
+          // The batches are inserted on other connections, they would wait for the lock of the truncate
+          data.db.commit( true );
+        }
       }
       data.outputRowMeta = getInputRowMeta().clone();
       meta.getFields( data.outputRowMeta, getStepname(), null, null, this, repository, metaStore );
@@ -238,6 +256,18 @@ public class TableOutput extends BaseStep implements StepInterface {
     if ( Utils.isEmpty( tableName ) ) {
       throw new KettleStepException( "The tablename is not defined (empty)" );
     }
+    data.writtenTables.add( tableName );
+
+    if ( data.asyncBatches > 0 ) {
+      if ( data.batchWriter == null ) {
+        data.batchWriter = createBatchWriter();
+      }
+      if ( data.batchWriter != null ) {
+        data.batchWriter.addRow( outputRowData, insertRowData );
+        processFinishedBatches( false );
+        return null;
+      }
+    }
 
     insertStatement = data.preparedStatements.get( tableName );
     if ( insertStatement == null ) {
@@ -427,6 +457,77 @@ public class TableOutput extends BaseStep implements StepInterface {
     return outputRowData;
   }
 
+  /**
+   * Open the connections for the batches in flight. It falls back to inserting on the step thread if the database
+   * doesn't do batch updates.
+   */
+  private TableOutputBatchWriter createBatchWriter() throws KettleException {
+    if ( !data.db.getUseBatchInsert( data.batchMode ) ) {
+      data.asyncBatches = 0;
+      return null;
+    }
+
+    String sql =
+      data.db.getInsertStatement( environmentSubstitute( meta.getSchemaName() ), data.tableName, data.insertRowMeta );
+    if ( log.isDetailed() ) {
+      logDetailed( "Inserting batches on " + data.asyncBatches + " connections with : " + sql );
+    }
+
+    List<Database> databases = new ArrayList<>();
+    try {
+      for ( int i = 0; i < data.asyncBatches; i++ ) {
+        Database db = new Database( this, meta.getDatabaseMeta() );
+        db.shareVariablesWith( this );
+        databases.add( db );
+        db.connect( getPartitionID() );
+        db.setCommit( data.commitSize );
+      }
+    } catch ( KettleException e ) {
+      for ( Database db : databases ) {
+        db.disconnect();
+      }
+      throw e;
+    }
+
+    return new TableOutputBatchWriter( databases, data.insertRowMeta, sql, data.commitSize,
+      getStepMeta().isDoingErrorHandling(), meta.ignoreErrors() );
+  }
+
+  /**
+   * Pass on the rows of the batches that were written, the ones the database refused go to the error hop.
+   */
+  private void processFinishedBatches( boolean wait ) throws KettleException {
+    for ( TableOutputBatchWriter.Batch batch : data.batchWriter.getFinishedBatches( wait ) ) {
+      if ( batch.getException() != null ) {
+        throw new KettleException( "Error batch inserting rows into table [" + data.tableName + "].",
+          batch.getException() );
+      }
+      List<Object[]> rows = batch.getOutputRows();
+      for ( int i = 0; i < rows.size(); i++ ) {
+        String error = batch.getError( i );
+        if ( error == null ) {
+          putRow( data.outputRowMeta, rows.get( i ) );
+          incrementLinesOutput();
+        } else if ( getStepMeta().isDoingErrorHandling() ) {
+          putError( data.outputRowMeta, rows.get( i ), 1L, error, null, "TOP0002" );
+        } else {
+          if ( data.warnings < 20 ) {
+            if ( log.isBasic() ) {
+              logBasic( "WARNING: Couldn't insert row into table: "
+                + data.outputRowMeta.getString( rows.get( i ) ) + Const.CR + error );
+            }
+          } else if ( data.warnings == 20 ) {
+            if ( log.isBasic() ) {
+              logBasic( "FINAL WARNING (no more then 20 displayed): Couldn't insert row into table: "
+                + data.outputRowMeta.getString( rows.get( i ) ) + Const.CR + error );
+            }
+          }
+          data.warnings++;
+        }
+      }
+    }
+  }
+
   public boolean isRowLevel() {
     return log.isRowLevel();
   }
@@ -501,6 +602,14 @@ public class TableOutput extends BaseStep implements StepInterface {
             && data.commitSize > 0 && !meta.isReturningGeneratedKeys()
             && !getTransMeta().isUsingUniqueConnections() && !data.useSafePoints;
 
+        // Batches can be inserted in the background when all rows go to the same table
+        //
+        data.asyncBatches = 0;
+        if ( data.batchMode && !meta.isPartitioningEnabled() && !meta.isTableNameInField() ) {
+          data.asyncBatches =
+            Math.max( 0, Const.toInt( getVariable( Const.KETTLE_TABLE_OUTPUT_ASYNC_BATCHES ), 0 ) );
+        }
+
         // Per PDI-6211 : give a warning that batch mode operation in combination with step error handling can lead to
         // incorrectly processed rows.
         //
@@ -577,6 +686,17 @@ public class TableOutput extends BaseStep implements StepInterface {
 
     if ( data.db != null ) {
       try {
+        if ( data.batchWriter != null ) {
+          try {
+            if ( getErrors() == 0 ) {
+              data.batchWriter.flush();
+              processFinishedBatches( true );
+            }
+          } finally {
+            data.batchWriter.close();
+            data.batchWriter = null;
+          }
+        }
         for ( String schemaTable : data.preparedStatements.keySet() ) {
           // Get a commit counter per prepared statement to keep track of separate tables, etc.
           //
@@ -630,10 +750,30 @@ public class TableOutput extends BaseStep implements StepInterface {
 
         data.db.disconnect();
       }
+      if ( getLinesOutput() > 0 ) {
+        invalidateSharedCaches();
+      }
       super.dispose( smi, sdi );
     }
   }
 
+  /**
+   * Rows were inserted, the shared lookup caches of the tables are stale.
+   */
+  private void invalidateSharedCaches() {
+    String schemaName = environmentSubstitute( meta.getSchemaName() );
+    Set<String> schemaTables = new HashSet<>();
+    for ( String tableName : data.writtenTables ) {
+      schemaTables.add( meta.getDatabaseMeta().getQuotedSchemaTableCombination( schemaName, tableName ) );
+    }
+    try {
+      LookupCacheRegistry.getInstance().invalidateTables( meta.getDatabaseMeta(), this, getPartitionID(),
+        schemaTables );
+    } catch ( KettleDatabaseException e ) {
+      logError( "Unable to invalidate the shared lookup caches of " + schemaTables, e );
+    }
+  }
+
   /**
    * Allows subclasses of TableOuput to get hold of the step meta
    *
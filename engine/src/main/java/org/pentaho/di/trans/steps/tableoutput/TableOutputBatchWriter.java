@@ -0,0 +1,367 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2020 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.steps.tableoutput;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import org.pentaho.di.core.database.Database;
+import org.pentaho.di.core.exception.KettleDatabaseBatchException;
+import org.pentaho.di.core.exception.KettleDatabaseException;
+import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.util.ExecutorUtil;
+
+/**
+ * Executes the insert batches of a Table Output step in the background, so the step can build the next batch while the
+ * database works on the previous ones. Every batch in flight has a connection of its own, taking a connection blocks
+ * when all of them are busy. The rows are bound to the statement on the background thread as well.<br>
+ * <br>
+ * Batches are committed in the order they were submitted: a batch that is done waits for the ones in front of it. When
+ * one of them fails without error handling, the batches behind it are rolled back, so the committed rows are always the
+ * first part of the stream. Finished batches are handed back in the same order, with the result of every row.<br>
+ * <br>
+ * The methods of this class are called from the step thread only.
+ */
+public class TableOutputBatchWriter {
+
+  /**
+   * The rows of a batch and what happened to them.
+   */
+  public static class Batch {
+    private final List<Object[]> outputRows = new ArrayList<>();
+    private final List<Object[]> insertRows = new ArrayList<>();
+    private final CountDownLatch done = new CountDownLatch( 1 );
+
+    /** The batch in front of this one, until this one is committed */
+    private Batch previous;
+    private volatile boolean committed;
+
+    private String[] errors;
+    private KettleException exception;
+
+    private Batch( Batch previous ) {
+      this.previous = previous;
+    }
+
+    public int size() {
+      return outputRows.size();
+    }
+
+    public List<Object[]> getOutputRows() {
+      return outputRows;
+    }
+
+    /**
+     * @return the error message of the row or null if it was written
+     */
+    public String getError( int index ) {
+      return errors == null ? null : errors[index];
+    }
+
+    /**
+     * @return the error that failed the batch as a whole or null if the rows have their own result
+     */
+    public KettleException getException() {
+      return exception;
+    }
+
+    private boolean isDone() {
+      return done.getCount() == 0;
+    }
+
+    private boolean awaitCommit() throws InterruptedException {
+      done.await();
+      return committed;
+    }
+
+    private void setError( int index, String message ) {
+      if ( errors == null ) {
+        errors = new String[outputRows.size()];
+      }
+      errors[index] = message;
+    }
+  }
+
+  /**
+   * A connection with its own copy of the row metadata, the value conversions aren't thread-safe.
+   */
+  private static class Writer {
+    private final Database db;
+    private final RowMetaInterface rowMeta;
+    private PreparedStatement statement;
+
+    private Writer( Database db, RowMetaInterface rowMeta ) {
+      this.db = db;
+      this.rowMeta = rowMeta;
+    }
+  }
+
+  private final List<Writer> writers = new ArrayList<>();
+  private final BlockingQueue<Writer> idle = new LinkedBlockingQueue<>();
+  private final String sql;
+  private final int batchSize;
+  private final boolean errorHandling;
+  private final boolean ignoreErrors;
+
+  private final Deque<Batch> pending = new ArrayDeque<>();
+  private Batch current;
+  private Batch last;
+  private volatile boolean aborted;
+
+  /**
+   * @param databases
+   *          the connected databases, one per batch in flight
+   * @param insertRowMeta
+   *          the metadata of the rows to insert
+   * @param sql
+   *          the insert statement
+   * @param batchSize
+   *          the number of rows per batch, every batch is committed
+   * @param errorHandling
+   *          true if failing rows are sent to the error hop, the other rows of the batch are committed
+   * @param ignoreErrors
+   *          true if rows that can't be bound to the statement are skipped
+   */
+  public TableOutputBatchWriter( List<Database> databases, RowMetaInterface insertRowMeta, String sql,
+    int batchSize, boolean errorHandling, boolean ignoreErrors ) {
+    for ( Database db : databases ) {
+      Writer writer = new Writer( db, insertRowMeta.clone() );
+      writers.add( writer );
+      idle.add( writer );
+    }
+    this.sql = sql;
+    this.batchSize = batchSize;
+    this.errorHandling = errorHandling;
+    this.ignoreErrors = ignoreErrors;
+  }
+
+  /**
+   * Add a row to the current batch, the batch is submitted when it's full.
+   *
+   * @param outputRow
+   *          the row to pass on once it's written
+   * @param insertRow
+   *          the values to insert
+   */
+  public void addRow( Object[] outputRow, Object[] insertRow ) throws KettleException {
+    if ( current == null ) {
+      current = new Batch( last );
+    }
+    current.outputRows.add( outputRow );
+    current.insertRows.add( insertRow );
+    if ( current.size() >= batchSize ) {
+      submit();
+    }
+  }
+
+  /**
+   * Submit the rows of the current batch, even if it isn't full.
+   */
+  public void flush() throws KettleException {
+    if ( current != null && current.size() > 0 ) {
+      submit();
+    }
+  }
+
+  /**
+   * @param wait
+   *          true to wait for all submitted batches, false to only take the ones that are done already
+   * @return the finished batches in the order they were submitted
+   */
+  public List<Batch> getFinishedBatches( boolean wait ) throws KettleException {
+    List<Batch> finished = new ArrayList<>();
+    while ( !pending.isEmpty() && ( wait || pending.peek().isDone() ) ) {
+      Batch batch = pending.peek();
+      try {
+        batch.done.await();
+      } catch ( InterruptedException e ) {
+        Thread.currentThread().interrupt();
+        throw new KettleException( "Interrupted while waiting for a batch insert to finish", e );
+      }
+      pending.poll();
+      finished.add( batch );
+    }
+    return finished;
+  }
+
+  /**
+   * Roll back the batches that aren't committed yet, wait for them and release the connections.
+   */
+  public void close() {
+    aborted = true;
+    for ( Batch batch : pending ) {
+      try {
+        batch.done.await();
+      } catch ( InterruptedException e ) {
+        Thread.currentThread().interrupt();
+        break;
+      }
+    }
+    pending.clear();
+    current = null;
+    last = null;
+
+    for ( Writer writer : writers ) {
+      try {
+        if ( writer.statement != null ) {
+          writer.db.closePreparedStatement( writer.statement );
+        }
+      } catch ( KettleDatabaseException e ) {
+        // Ignore, the connection is closed next
+      } finally {
+        writer.db.disconnect();
+      }
+    }
+    writers.clear();
+    idle.clear();
+  }
+
+  private void submit() throws KettleException {
+    Writer writer;
+    try {
+      writer = idle.take();
+    } catch ( InterruptedException e ) {
+      Thread.currentThread().interrupt();
+      throw new KettleException( "Interrupted while waiting for a connection to insert a batch", e );
+    }
+
+    final Batch batch = current;
+    current = null;
+    last = batch;
+    pending.add( batch );
+
+    try {
+      ExecutorUtil.getExecutor().submit( () -> {
+        try {
+          execute( writer, batch );
+        } finally {
+          idle.add( writer );
+        }
+      } );
+    } catch ( RuntimeException e ) {
+      idle.add( writer );
+      batch.exception = new KettleException( "Unable to start a batch insert", e );
+      batch.done.countDown();
+    }
+  }
+
+  private void execute( Writer writer, Batch batch ) {
+    Database db = writer.db;
+    boolean committed = false;
+    try {
+      if ( writer.statement == null ) {
+        writer.statement = db.prepareSQL( sql );
+      }
+      PreparedStatement statement = writer.statement;
+
+      // Remember which rows made it into the batch, the update counts refer to those
+      //
+      int[] bound = new int[batch.size()];
+      int boundCount = 0;
+      for ( int i = 0; i < batch.insertRows.size(); i++ ) {
+        try {
+          db.setValues( writer.rowMeta, batch.insertRows.get( i ), statement );
+          db.insertRow( statement, true, false );
+          bound[boundCount++] = i;
+        } catch ( KettleDatabaseException e ) {
+          if ( !errorHandling && !ignoreErrors ) {
+            throw e;
+          }
+          batch.setError( i, e.toString() );
+        }
+      }
+
+      try {
+        if ( boundCount > 0 ) {
+          statement.executeBatch();
+        }
+      } catch ( SQLException e ) {
+        KettleDatabaseBatchException be = Database.createKettleDatabaseBatchException( "Error updating batch", e );
+        db.clearBatch( statement );
+        if ( !errorHandling ) {
+          throw be;
+        }
+        setBatchErrors( batch, be, bound, boundCount );
+      }
+      statement.clearBatch();
+
+      // Commit in the order the batches were submitted
+      //
+      if ( batch.previous != null && !batch.previous.awaitCommit() && !errorHandling ) {
+        throw new KettleException( "Batch insert rolled back because an earlier batch failed" );
+      }
+      if ( aborted ) {
+        throw new KettleException( "Batch insert rolled back because the step stopped" );
+      }
+      db.commit( true );
+      committed = true;
+    } catch ( KettleException e ) {
+      batch.exception = e;
+    } catch ( Exception e ) {
+      batch.exception = new KettleException( "Unexpected error inserting a batch of rows", e );
+    } finally {
+      if ( !committed ) {
+        try {
+          if ( writer.statement != null ) {
+            db.clearBatch( writer.statement );
+          }
+          db.rollback( true );
+        } catch ( KettleDatabaseException e ) {
+          // The batch failed already, that's what gets reported
+        }
+      }
+      batch.committed = committed;
+      batch.previous = null;
+      batch.insertRows.clear();
+      batch.done.countDown();
+    }
+  }
+
+  /**
+   * Mark the rows the database refused, the other rows of the batch are inserted. Without update counts all of them are
+   * considered to have failed.
+   */
+  private static void setBatchErrors( Batch batch, KettleDatabaseBatchException be, int[] bound, int boundCount ) {
+    int[] updateCounts = be.getUpdateCounts();
+    List<Exception> exceptions = be.getExceptionsList();
+    int errorNr = 0;
+    for ( int j = 0; j < boundCount; j++ ) {
+      if ( updateCounts != null && j < updateCounts.length && updateCounts[j] > 0 ) {
+        continue;
+      }
+      String message = be.toString();
+      if ( updateCounts != null && exceptions != null && errorNr < exceptions.size() ) {
+        message = exceptions.get( errorNr++ ).toString();
+      }
+      batch.setError( bound[j], message );
+    }
+  }
+}
@@ -27,9 +27,11 @@ import java.sql.Savepoint;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Hashtable;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.pentaho.di.core.database.Database;
 import org.pentaho.di.core.database.DatabaseMeta;
@@ -78,6 +80,14 @@ public class TableOutputData extends BaseStepData implements StepDataInterface {
 
   public int commitSize;
 
+  /** The number of batches that can be in flight at the same time, 0 to insert on the step thread */
+  public int asyncBatches;
+
+  public TableOutputBatchWriter batchWriter;
+
+  /** The names of the tables rows were written to, their shared lookup caches are invalidated at the end */
+  public Set<String> writtenTables;
+
   public TableOutputData() {
     super();
 
@@ -92,6 +102,7 @@ public class TableOutputData extends BaseStepData implements StepDataInterface {
 
     batchBuffer = new ArrayList<Object[]>();
     commitCounterMap = new HashMap<String, Integer>();
+    writtenTables = new HashSet<String>();
 
     releaseSavepoint = true;
   }
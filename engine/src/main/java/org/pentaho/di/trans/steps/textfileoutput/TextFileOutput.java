@@ -2,7 +2,7 @@
  *
  * Pentaho Data Integration
  *
- * Copyright (C) 2002-2019 by Hitachi Vantara : http://www.pentaho.com
+ * Copyright (C) 2002-2020 by Hitachi Vantara : http://www.pentaho.com
  *
  *******************************************************************************
  *
@@ -34,6 +34,7 @@ import java.util.List;
 import org.apache.commons.vfs2.FileObject;
 import org.pentaho.di.core.Const;
 import org.pentaho.di.core.compress.CompressionOutputStream;
+import org.pentaho.di.core.compress.ParallelCompressionOutputStream;
 import org.pentaho.di.core.compress.zip.ZIPCompressionProvider;
 import org.pentaho.di.core.util.Utils;
 import org.pentaho.di.core.ResultFile;
@@ -118,6 +119,23 @@ public class TextFileOutput extends BaseStep implements StepInterface {
     return compressionProvider;
   }
 
+  /**
+   * Compress on a number of threads when KETTLE_TEXT_FILE_OUTPUT_COMPRESSION_THREADS is set and the provider writes
+   * output that can be compressed in blocks. The rows are still formatted on the step thread, so splitting, headers and
+   * footers work the same way.
+   */
+  private CompressionOutputStream createCompressionOutputStream( CompressionProvider compressionProvider,
+    OutputStream fileOutputStream ) throws IOException {
+    int threads = Const.toInt( getVariable( Const.KETTLE_TEXT_FILE_OUTPUT_COMPRESSION_THREADS ), 0 );
+    if ( threads > 0 && ParallelCompressionOutputStream.supports( compressionProvider ) ) {
+      if ( log.isDetailed() ) {
+        logDetailed( "Compressing output stream on " + threads + " threads" );
+      }
+      return new ParallelCompressionOutputStream( fileOutputStream, compressionProvider, threads );
+    }
+    return compressionProvider.createOutputStream( fileOutputStream );
+  }
+
   private void initServletStreamWriter(  ) throws KettleException {
     data.writer = null;
     try {
@@ -187,7 +205,7 @@ public class TextFileOutput extends BaseStep implements StepInterface {
 
           OutputStream fileOutputStream =
             getOutputStream( filename, getTransMeta(), !isZipFile && appendToExistingFile );
-          CompressionOutputStream compressionOutputStream = compressionProvider.createOutputStream( fileOutputStream );
+          CompressionOutputStream compressionOutputStream = createCompressionOutputStream( compressionProvider, fileOutputStream );
 
           // The compression output stream may also archive entries. For this we create the filename
           // (with appropriate extension) and add it as an entry to the output stream. For providers
@@ -219,7 +237,7 @@ public class TextFileOutput extends BaseStep implements StepInterface {
 
           OutputStream fileOutputStream = getOutputStream( filename, getTransMeta(), true );
           CompressionProvider compressionProvider = getCompressionProvider();
-          CompressionOutputStream compressionOutputStream = compressionProvider.createOutputStream( fileOutputStream );
+          CompressionOutputStream compressionOutputStream = createCompressionOutputStream( compressionProvider, fileOutputStream );
           compressionOutputStream.addEntry( filename, environmentSubstitute( meta.getExtension() ) );
           BufferedOutputStream bufferedOutputStream = new BufferedOutputStream( compressionOutputStream, 5000 );
 
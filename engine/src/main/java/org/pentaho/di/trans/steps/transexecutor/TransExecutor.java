@@ -28,6 +28,12 @@ import java.util.List;
 import java.util.ArrayList;
 import java.util.Map;
 import java.util.Arrays;
+import java.util.ArrayDeque;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 import com.google.common.annotations.VisibleForTesting;
 import org.pentaho.di.core.Const;
@@ -40,6 +46,7 @@ import org.pentaho.di.core.exception.KettleException;
 import org.pentaho.di.core.logging.KettleLogStore;
 import org.pentaho.di.core.row.RowDataUtil;
 import org.pentaho.di.core.row.RowMeta;
+import org.pentaho.di.core.util.ExecutorUtil;
 import org.pentaho.di.i18n.BaseMessages;
 import org.pentaho.di.job.DelegationListener;
 import org.pentaho.di.trans.StepWithMappingMeta;
@@ -91,6 +98,7 @@ public class TransExecutor extends BaseStep implements StepInterface {
 
       if ( row == null ) {
         executeTransformation( null );
+        collectWarmGroups( 0 );
         setOutputDone();
         return false;
       }
@@ -206,6 +214,12 @@ public class TransExecutor extends BaseStep implements StepInterface {
       discardLogLines( transExecutorData );
     }
 
+    if ( transExecutorData.warmInstances > 0 ) {
+      executeOnWarmInstance( incomingFieldValues != null ? incomingFieldValues : getLastIncomingFieldValues() );
+      transExecutorData.groupBuffer.clear();
+      return;
+    }
+
     Trans executorTrans = createInternalTrans();
     transExecutorData.setExecutorTrans( executorTrans );
     if ( incomingFieldValues != null ) {
@@ -260,6 +274,108 @@ public class TransExecutor extends BaseStep implements StepInterface {
     transExecutorData.groupBuffer.clear();
   }
 
+  /**
+   * Execute the group on an idle warm sub-transformation, on another thread. The results of the groups are passed on in
+   * the order of the groups, when all warm sub-transformations are busy we wait for the oldest group.
+   */
+  private void executeOnWarmInstance( List<String> incomingFieldValues ) throws KettleException {
+    TransExecutorData transExecutorData = getData();
+    collectWarmGroups( transExecutorData.warmInstances - 1 );
+
+    TransExecutorWarmInstance instance = transExecutorData.idleWarmInstances.poll();
+    if ( instance != null && instance.isBroken() ) {
+      disposeWarmInstance( instance );
+      instance = null;
+    }
+    if ( instance == null ) {
+      instance = createWarmInstance( incomingFieldValues );
+    }
+
+    final TransExecutorWarmInstance warmInstance = instance;
+    final List<RowMetaAndData> rows = new ArrayList<>( transExecutorData.groupBuffer );
+    transExecutorData.warmGroups.add(
+      ExecutorUtil.getExecutor().submit( () -> executeWarmGroup( warmInstance, rows ) ) );
+  }
+
+  private Result executeWarmGroup( TransExecutorWarmInstance instance, List<RowMetaAndData> rows ) {
+    try {
+      return instance.execute( rows );
+    } catch ( Exception e ) {
+      log.logError( "An error occurred executing the transformation: ", e );
+      Result result = new Result();
+      result.setResult( false );
+      result.setNrErrors( 1 );
+      result.setLogChannelId( instance.getTrans().getLogChannelId() );
+      return result;
+    } finally {
+      getData().idleWarmInstances.add( instance );
+    }
+  }
+
+  @VisibleForTesting
+  TransExecutorWarmInstance createWarmInstance( List<String> incomingFieldValues ) throws KettleException {
+    TransExecutorData transExecutorData = getData();
+    if ( transExecutorData.warmTransMeta == null ) {
+      transExecutorData.warmTransMeta =
+        TransExecutorWarmInstance.createTransMeta( transExecutorData.getExecutorTransMeta() );
+    }
+
+    Trans executorTrans = createInternalTrans( transExecutorData.warmTransMeta );
+    transExecutorData.setExecutorTrans( executorTrans );
+    passParametersToTrans( incomingFieldValues );
+
+    // keep track for drill down in Spoon...
+    getTrans().addActiveSubTransformation( getStepname(), executorTrans );
+
+    TransExecutorWarmInstance instance =
+      new TransExecutorWarmInstance( executorTrans, transExecutorData.getExecutorTransMeta() );
+    transExecutorData.warmInstanceList.add( instance );
+    if ( log.isDetailed() ) {
+      logDetailed( "Prepared warm sub-transformation " + transExecutorData.warmInstanceList.size() + " of "
+        + transExecutorData.warmInstances );
+    }
+    return instance;
+  }
+
+  /**
+   * Pass on the results of the oldest groups executed on warm sub-transformations until no more than the given number
+   * of groups are being executed.
+   */
+  private void collectWarmGroups( int maxPending ) throws KettleException {
+    TransExecutorData transExecutorData = getData();
+    if ( transExecutorData.warmGroups == null ) {
+      return;
+    }
+    while ( transExecutorData.warmGroups.size() > maxPending ) {
+      Result result;
+      try {
+        result = transExecutorData.warmGroups.poll().get();
+      } catch ( InterruptedException e ) {
+        Thread.currentThread().interrupt();
+        throw new KettleException( "Interrupted while waiting for a group to be executed", e );
+      } catch ( ExecutionException e ) {
+        throw new KettleException( "An error occurred executing the transformation: ", e.getCause() );
+      }
+
+      if ( result.isSafeStop() ) {
+        getTrans().safeStop();
+      }
+
+      collectTransResults( result );
+      collectExecutionResults( result );
+      collectExecutionResultFiles( result );
+    }
+  }
+
+  private void disposeWarmInstance( TransExecutorWarmInstance instance ) {
+    getData().warmInstanceList.remove( instance );
+    try {
+      instance.dispose();
+    } catch ( KettleException e ) {
+      log.logError( "Error disposing of sub-transformation: ", e );
+    }
+  }
+
   @VisibleForTesting
   void discardLogLines( TransExecutorData transExecutorData ) {
     // Keep the strain on the logging back-end conservative.
@@ -272,7 +388,11 @@ public class TransExecutor extends BaseStep implements StepInterface {
 
   @VisibleForTesting
   Trans createInternalTrans() throws KettleException {
-    Trans executorTrans = new Trans( getData().getExecutorTransMeta(), this );
+    return createInternalTrans( getData().getExecutorTransMeta() );
+  }
+
+  private Trans createInternalTrans( TransMeta executorTransMeta ) throws KettleException {
+    Trans executorTrans = new Trans( executorTransMeta, this );
 
     executorTrans.setParentTrans( getTrans() );
     executorTrans.setRepository( getTrans().getRepository() );
@@ -392,7 +512,11 @@ public class TransExecutor extends BaseStep implements StepInterface {
       int idx = 0;
 
       if ( !Utils.isEmpty( meta.getExecutionTimeField() ) ) {
-        outputRow[ idx++ ] = Long.valueOf( System.currentTimeMillis() - getData().groupTimeStart );
+        if ( getData().warmInstances > 0 ) {
+          outputRow[ idx++ ] = Long.valueOf( result.getElapsedTimeMillis() );
+        } else {
+          outputRow[ idx++ ] = Long.valueOf( System.currentTimeMillis() - getData().groupTimeStart );
+        }
       }
       if ( !Utils.isEmpty( meta.getExecutionResultField() ) ) {
         outputRow[ idx++ ] = Boolean.valueOf( result.getResult() );
@@ -428,18 +552,26 @@ public class TransExecutor extends BaseStep implements StepInterface {
         outputRow[ idx++ ] = Long.valueOf( result.getExitStatus() );
       }
       if ( !Utils.isEmpty( meta.getExecutionLogTextField() ) ) {
-        String channelId = getData().getExecutorTrans().getLogChannelId();
+        String channelId = getExecutionLogChannelId( result );
         String logText = KettleLogStore.getAppender().getBuffer( channelId, false ).toString();
         outputRow[ idx++ ] = logText;
       }
       if ( !Utils.isEmpty( meta.getExecutionLogChannelIdField() ) ) {
-        outputRow[ idx++ ] = getData().getExecutorTrans().getLogChannelId();
+        outputRow[ idx++ ] = getExecutionLogChannelId( result );
       }
 
       putRowTo( getData().getExecutionResultsOutputRowMeta(), outputRow, executionResultsRowSet );
     }
   }
 
+  private String getExecutionLogChannelId( Result result ) {
+    // A warm sub-transformation can be executing the next group already
+    if ( getData().warmInstances > 0 ) {
+      return result.getLogChannelId();
+    }
+    return getData().getExecutorTrans().getLogChannelId();
+  }
+
   @VisibleForTesting
   void collectExecutionResultFiles( Result result ) throws KettleException {
     RowSet resultFilesRowSet = getData().getResultFilesRowSet();
@@ -491,6 +623,24 @@ public class TransExecutor extends BaseStep implements StepInterface {
           if ( !Utils.isEmpty( meta.getGroupField() ) ) {
             transExecutorData.groupField = environmentSubstitute( meta.getGroupField() );
           }
+
+          // Do we keep sub-transformations prepared to execute the groups?
+          transExecutorData.warmInstances =
+            Const.toInt( getVariable( Const.KETTLE_TRANS_EXECUTOR_WARM_INSTANCES ), 0 );
+          if ( transExecutorData.warmInstances > 0 ) {
+            String reason = TransExecutorWarmInstance.getUnsupportedReason(
+              transExecutorData.getExecutorTransMeta(), meta.getParameters() );
+            if ( reason != null ) {
+              logBasic( "Executing every group on a new sub-transformation, not on prepared ones: " + reason );
+              transExecutorData.warmInstances = 0;
+            }
+          }
+          if ( transExecutorData.warmInstances > 0 ) {
+            transExecutorData.warmInstanceList = new CopyOnWriteArrayList<TransExecutorWarmInstance>();
+            transExecutorData.idleWarmInstances =
+              new ArrayBlockingQueue<TransExecutorWarmInstance>( transExecutorData.warmInstances );
+            transExecutorData.warmGroups = new ArrayDeque<Future<Result>>();
+          }
           // That's all for now...
           return true;
         } else {
@@ -513,6 +663,27 @@ public class TransExecutor extends BaseStep implements StepInterface {
   public void dispose( StepMetaInterface smi, StepDataInterface sdi ) {
     TransExecutorData transExecutorData = getData();
     transExecutorData.groupBuffer = null;
+    if ( transExecutorData.warmGroups != null ) {
+      // Wait for the groups still being executed, then clean up the warm sub-transformations
+      for ( Future<Result> group : transExecutorData.warmGroups ) {
+        group.cancel( false );
+      }
+      for ( Future<Result> group : transExecutorData.warmGroups ) {
+        try {
+          group.get();
+        } catch ( InterruptedException e ) {
+          Thread.currentThread().interrupt();
+          break;
+        } catch ( CancellationException | ExecutionException e ) {
+          // Nobody is interested in the result anymore
+        }
+      }
+      transExecutorData.warmGroups.clear();
+      for ( TransExecutorWarmInstance instance : transExecutorData.warmInstanceList ) {
+        disposeWarmInstance( instance );
+      }
+      transExecutorData.idleWarmInstances.clear();
+    }
     super.dispose( smi, sdi );
   }
 
@@ -521,6 +692,7 @@ public class TransExecutor extends BaseStep implements StepInterface {
     if ( getData().getExecutorTrans() != null ) {
       getData().getExecutorTrans().stopAll();
     }
+    stopWarmInstances();
   }
 
   public void stopAll() {
@@ -528,11 +700,20 @@ public class TransExecutor extends BaseStep implements StepInterface {
     if ( getData().getExecutorTrans() != null ) {
       getData().getExecutorTrans().stopAll();
     }
+    stopWarmInstances();
 
     // Also stop this step
     super.stopAll();
   }
 
+  private void stopWarmInstances() {
+    if ( getData().warmInstanceList != null ) {
+      for ( TransExecutorWarmInstance instance : getData().warmInstanceList ) {
+        instance.getTrans().stopAll();
+      }
+    }
+  }
+
   public Trans getExecutorTrans() {
     return getData().getExecutorTrans();
   }
@@ -2,7 +2,7 @@
  *
  * Pentaho Data Integration
  *
- * Copyright (C) 2002-2017 by Hitachi Vantara : http://www.pentaho.com
+ * Copyright (C) 2002-2020 by Hitachi Vantara : http://www.pentaho.com
  *
  *******************************************************************************
  *
@@ -22,8 +22,12 @@
 
 package org.pentaho.di.trans.steps.transexecutor;
 
+import java.util.Deque;
 import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Future;
 
+import org.pentaho.di.core.Result;
 import org.pentaho.di.core.RowMetaAndData;
 import org.pentaho.di.core.RowSet;
 import org.pentaho.di.core.row.RowMetaInterface;
@@ -59,6 +63,13 @@ public class TransExecutorData extends BaseStepData implements StepDataInterface
 
   public Object prevGroupFieldData;
 
+  /** The number of warm sub-transformations executing the groups, 0 to create a new one for every group */
+  public int warmInstances;
+  public TransMeta warmTransMeta;
+  public List<TransExecutorWarmInstance> warmInstanceList;
+  public BlockingQueue<TransExecutorWarmInstance> idleWarmInstances;
+  public Deque<Future<Result>> warmGroups;
+
   private RowSet executorStepOutputRowSet;
   private RowSet resultRowsRowSet;
   private RowSet resultFilesRowSet;
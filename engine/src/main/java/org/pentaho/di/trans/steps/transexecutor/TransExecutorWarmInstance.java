@@ -0,0 +1,262 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2020 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.steps.transexecutor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.pentaho.di.core.Result;
+import org.pentaho.di.core.ResultFile;
+import org.pentaho.di.core.RowMetaAndData;
+import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.exception.KettleStepException;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.util.Utils;
+import org.pentaho.di.trans.RowProducer;
+import org.pentaho.di.trans.SingleThreadedTransExecutor;
+import org.pentaho.di.trans.Trans;
+import org.pentaho.di.trans.TransHopMeta;
+import org.pentaho.di.trans.TransMeta;
+import org.pentaho.di.trans.TransMeta.TransformationType;
+import org.pentaho.di.trans.step.RowAdapter;
+import org.pentaho.di.trans.step.StepInterface;
+import org.pentaho.di.trans.step.StepMeta;
+import org.pentaho.di.trans.steps.dummytrans.DummyTransMeta;
+import org.pentaho.di.trans.steps.injector.InjectorMeta;
+import org.pentaho.di.trans.steps.rowsfromresult.RowsFromResultMeta;
+import org.pentaho.di.trans.steps.rowstoresult.RowsToResultMeta;
+
+/**
+ * A sub-transformation of a Transformation Executor step that is prepared once and then executes one group of rows
+ * after the other, without creating threads, initializing steps or connecting to databases again.<br>
+ * <br>
+ * The sub-transformation runs with the single threaded engine. The "Get rows from result" steps, also the "Get records
+ * from stream" steps of streaming sub-transformations, are replaced by injectors the rows of a group are put into, the
+ * "Copy rows to result" steps by dummies the result rows are taken from. At the end of a group every step is told the
+ * batch is complete, so steps like "Sort rows" and "Group by" pass on the rows of the group. Parameters are set once,
+ * when the instance is created, so sub-transformations with parameters set from fields or with steps without input
+ * can't be executed this way, see {@link #getUnsupportedReason(TransMeta, TransExecutorParameters)}.<br>
+ * <br>
+ * An instance executes one group at a time, but not necessarily on the step thread.
+ */
+public class TransExecutorWarmInstance {
+
+  private final Trans trans;
+  private final SingleThreadedTransExecutor executor;
+  private final List<RowProducer> rowProducers = new ArrayList<>();
+  private final List<RowMetaAndData> resultRows = new ArrayList<>();
+
+  private Result totals = new Result();
+  private boolean broken;
+
+  /**
+   * Prepare the execution of a sub-transformation created from the meta-data of {@link #createTransMeta(TransMeta)}.
+   *
+   * @param trans
+   *          the sub-transformation, with its parameters set
+   * @param original
+   *          the meta-data of the sub-transformation as the user designed it
+   * @throws KettleException
+   *           in case the sub-transformation can't be prepared
+   */
+  public TransExecutorWarmInstance( Trans trans, TransMeta original ) throws KettleException {
+    this( trans, original, null );
+  }
+
+  /**
+   * Prepare the execution of a sub-transformation created from the meta-data of {@link #createTransMeta(TransMeta)}.
+   *
+   * @param trans
+   *          the sub-transformation, with its parameters set
+   * @param original
+   *          the meta-data of the sub-transformation as the user designed it
+   * @param resultStepName
+   *          the step to take the result rows from, or null to take them from the "Copy rows to result" steps
+   * @throws KettleException
+   *           in case the sub-transformation can't be prepared
+   */
+  public TransExecutorWarmInstance( Trans trans, TransMeta original, String resultStepName ) throws KettleException {
+    this.trans = trans;
+
+    trans.prepareExecution( trans.getArguments() );
+
+    for ( StepMeta stepMeta : original.getSteps() ) {
+      if ( stepMeta.getStepMetaInterface() instanceof RowsFromResultMeta ) {
+        rowProducers.add( trans.addRowProducer( stepMeta.getName(), 0 ) );
+      } else if ( resultStepName == null ? stepMeta.getStepMetaInterface() instanceof RowsToResultMeta
+        : stepMeta.getName().equalsIgnoreCase( resultStepName ) ) {
+        for ( StepInterface step : trans.findBaseSteps( stepMeta.getName() ) ) {
+          step.addRowListener( new RowAdapter() {
+            @Override
+            public void rowWrittenEvent( RowMetaInterface rowMeta, Object[] row ) throws KettleStepException {
+              resultRows.add( new RowMetaAndData( rowMeta, row ) );
+            }
+          } );
+        }
+      }
+    }
+
+    trans.startThreads();
+
+    executor = new SingleThreadedTransExecutor( trans );
+    if ( !executor.init() ) {
+      throw new KettleException( "Unable to initialize the steps of sub-transformation '" + trans.getName() + "'" );
+    }
+  }
+
+  /**
+   * Groups can only be executed on a prepared sub-transformation when nothing in it differs from group to group other
+   * than the rows: parameters are set once, and steps without input only run for the first group.
+   *
+   * @param original
+   *          the meta-data of the sub-transformation as the user designed it
+   * @param parameters
+   *          the parameters passed to the sub-transformation, or null
+   * @return why the groups can't be executed on prepared sub-transformations, null if they can
+   */
+  public static String getUnsupportedReason( TransMeta original, TransExecutorParameters parameters ) {
+    if ( parameters != null && parameters.getField() != null ) {
+      for ( int i = 0; i < parameters.getField().length; i++ ) {
+        if ( !Utils.isEmpty( parameters.getField()[ i ] ) ) {
+          return "parameter '" + parameters.getVariable()[ i ] + "' is set from field '" + parameters.getField()[ i ]
+            + "' for every group";
+        }
+      }
+    }
+    for ( StepMeta stepMeta : original.getSteps() ) {
+      if ( !( stepMeta.getStepMetaInterface() instanceof RowsFromResultMeta )
+        && original.findNrPrevSteps( stepMeta ) == 0 ) {
+        return "step '" + stepMeta.getName() + "' has no input and would only run for the first group";
+      }
+    }
+    return null;
+  }
+
+  /**
+   * @param original
+   *          the meta-data of the sub-transformation as the user designed it
+   * @return a copy of the meta-data that runs with the single threaded engine, with injectors and dummies instead of
+   *         the steps that get rows from and copy rows to the result
+   */
+  public static TransMeta createTransMeta( TransMeta original ) {
+    TransMeta transMeta = (TransMeta) original.realClone( false );
+    transMeta.setTransformationType( TransformationType.SingleThreaded );
+    transMeta.setUsingThreadPriorityManagment( false );
+
+    for ( StepMeta stepMeta : transMeta.getSteps() ) {
+      if ( stepMeta.getStepMetaInterface() instanceof RowsFromResultMeta ) {
+        stepMeta.setStepMetaInterface( new InjectorMeta() );
+        stepMeta.setStepID( "Injector" );
+      } else if ( stepMeta.getStepMetaInterface() instanceof RowsToResultMeta ) {
+        stepMeta.setStepMetaInterface( new DummyTransMeta() );
+        stepMeta.setStepID( "Dummy" );
+      }
+    }
+
+    // The cloned hops still point to the steps of the original
+    for ( int i = 0; i < transMeta.nrTransHops(); i++ ) {
+      TransHopMeta hop = transMeta.getTransHop( i );
+      hop.setFromStep( transMeta.findStep( hop.getFromStep().getName() ) );
+      hop.setToStep( transMeta.findStep( hop.getToStep().getName() ) );
+    }
+    return transMeta;
+  }
+
+  /**
+   * Execute the sub-transformation for a group of rows.
+   *
+   * @param rows
+   *          the rows of the group
+   * @return the result of the group: the result rows, the number of errors and the lines and result files of the group
+   * @throws KettleException
+   *           in case the group couldn't be executed, the instance can't be used anymore
+   */
+  public Result execute( List<RowMetaAndData> rows ) throws KettleException {
+    long startTime = System.currentTimeMillis();
+    resultRows.clear();
+    try {
+      for ( RowMetaAndData row : rows ) {
+        for ( RowProducer rowProducer : rowProducers ) {
+          rowProducer.putRow( row.getRowMeta(), row.getData() );
+        }
+      }
+      executor.oneIteration();
+    } catch ( KettleException | RuntimeException e ) {
+      broken = true;
+      throw e;
+    }
+
+    Result total = executor.getResult();
+    Result result = new Result();
+    result.setNrErrors( total.getNrErrors() );
+    result.setResult( total.getNrErrors() == 0 );
+    result.setStopped( total.isStopped() );
+    result.setSafeStop( total.isSafeStop() );
+    result.setNrLinesRead( total.getNrLinesRead() - totals.getNrLinesRead() );
+    result.setNrLinesInput( total.getNrLinesInput() - totals.getNrLinesInput() );
+    result.setNrLinesWritten( total.getNrLinesWritten() - totals.getNrLinesWritten() );
+    result.setNrLinesOutput( total.getNrLinesOutput() - totals.getNrLinesOutput() );
+    result.setNrLinesUpdated( total.getNrLinesUpdated() - totals.getNrLinesUpdated() );
+    result.setNrLinesRejected( total.getNrLinesRejected() - totals.getNrLinesRejected() );
+    for ( Map.Entry<String, ResultFile> entry : total.getResultFiles().entrySet() ) {
+      if ( !totals.getResultFiles().containsKey( entry.getKey() ) ) {
+        result.getResultFiles().put( entry.getKey(), entry.getValue() );
+      }
+    }
+    result.setRows( new ArrayList<>( resultRows ) );
+    result.setLogChannelId( total.getLogChannelId() );
+    result.setElapsedTimeMillis( System.currentTimeMillis() - startTime );
+    totals = total;
+
+    // The steps of a sub-transformation with errors or that stopped aren't in a state to execute another group
+    if ( result.getNrErrors() > 0 || result.isStopped() ) {
+      broken = true;
+    }
+    return result;
+  }
+
+  /**
+   * @return true if the instance can't execute another group
+   */
+  public boolean isBroken() {
+    return broken;
+  }
+
+  public Trans getTrans() {
+    return trans;
+  }
+
+  /**
+   * Tell the steps no more rows are coming and clean them up.
+   *
+   * @throws KettleException
+   *           in case a step couldn't be disposed of
+   */
+  public void dispose() throws KettleException {
+    for ( RowProducer rowProducer : rowProducers ) {
+      rowProducer.finished();
+    }
+    executor.dispose();
+  }
+}
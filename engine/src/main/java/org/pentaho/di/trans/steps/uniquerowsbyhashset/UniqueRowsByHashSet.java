@@ -22,7 +22,10 @@
 
 package org.pentaho.di.trans.steps.uniquerowsbyhashset;
 
+import java.util.Arrays;
+
 import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.row.RowMeta;
 import org.pentaho.di.core.util.Utils;
 import org.pentaho.di.i18n.BaseMessages;
 import org.pentaho.di.trans.Trans;
@@ -36,6 +39,9 @@ import org.pentaho.di.trans.step.StepMetaInterface;
 public class UniqueRowsByHashSet extends BaseStep implements StepInterface {
   private static Class<?> PKG = UniqueRowsByHashSetMeta.class; // for i18n purposes, needed by Translator2!!
 
+  /** The map of serialized rows is used as a set */
+  private static final byte[] NO_VALUE = new byte[0];
+
   private UniqueRowsByHashSetMeta meta;
   private UniqueRowsByHashSetData data;
 
@@ -48,7 +54,23 @@ public class UniqueRowsByHashSet extends BaseStep implements StepInterface {
   }
 
   private boolean isUniqueRow( Object[] row ) {
-    return data.seen.add( new RowKey( row, data ) );
+    Object[] keyFields;
+    // If we are keying on the entire row
+    if ( data.fieldnrs.length == 0 ) {
+      keyFields = row;
+    } else {
+      keyFields = new Object[data.fieldnrs.length];
+      for ( int i = 0; i < data.fieldnrs.length; i++ ) {
+        keyFields[i] = row[data.fieldnrs[i]];
+      }
+    }
+
+    if ( data.storeValues ) {
+      return data.seen.putIfAbsent( RowMeta.extractData( data.keyRowMeta, keyFields ), NO_VALUE );
+    } else {
+      // deep used because Binary type is a native byte[]
+      return data.seenHashCodes.add( Arrays.deepHashCode( keyFields ) );
+    }
   }
 
   public boolean processRow( StepMetaInterface smi, StepDataInterface sdi ) throws KettleException {
@@ -90,6 +112,14 @@ public class UniqueRowsByHashSet extends BaseStep implements StepInterface {
               + "," + meta.getCompareFields()[i];
         }
       }
+      if ( data.fieldnrs.length == 0 ) {
+        data.keyRowMeta = data.inputRowMeta;
+      } else {
+        data.keyRowMeta = new RowMeta();
+        for ( int fieldnr : data.fieldnrs ) {
+          data.keyRowMeta.addValueMeta( data.inputRowMeta.getValueMeta( fieldnr ) );
+        }
+      }
       if ( data.sendDuplicateRows && !Utils.isEmpty( meta.getErrorDescription() ) ) {
         data.realErrorDescription = environmentSubstitute( meta.getErrorDescription() );
       }
@@ -22,8 +22,8 @@
 
 package org.pentaho.di.trans.steps.uniquerowsbyhashset;
 
-import java.util.HashSet;
-
+import org.pentaho.di.core.hash.ByteArraySlabHashMap;
+import org.pentaho.di.core.hash.IntHashSet;
 import org.pentaho.di.core.row.RowMetaInterface;
 import org.pentaho.di.trans.step.BaseStepData;
 import org.pentaho.di.trans.step.StepDataInterface;
@@ -37,13 +37,22 @@ public class UniqueRowsByHashSetData extends BaseStepData implements StepDataInt
   public String realErrorDescription;
   boolean sendDuplicateRows;
 
-  public HashSet<RowKey> seen = new HashSet<RowKey>();
+  /** The metadata of the compared fields, used to serialize them */
+  public RowMetaInterface keyRowMeta;
+
+  /** The serialized compared fields of the rows seen so far, when the values are stored */
+  public ByteArraySlabHashMap seen = new ByteArraySlabHashMap();
+
+  /** The hash codes of the rows seen so far, when only the hash code is compared */
+  public IntHashSet seenHashCodes = new IntHashSet();
 
   public UniqueRowsByHashSetData() {
     super();
   }
 
   public void clearHashSet() {
+    seen.clear();
+    seenHashCodes.clear();
     sendDuplicateRows = false;
     compareFields = null;
     realErrorDescription = null;
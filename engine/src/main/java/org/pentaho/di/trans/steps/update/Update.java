@@ -24,9 +24,11 @@ package org.pentaho.di.trans.steps.update;
 
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Collections;
 
 import org.apache.commons.lang.ArrayUtils;
 import org.pentaho.di.core.Const;
+import org.pentaho.di.core.LookupCacheRegistry;
 import org.pentaho.di.core.util.Utils;
 import org.pentaho.di.core.database.Database;
 import org.pentaho.di.core.database.DatabaseMeta;
@@ -513,6 +515,18 @@ public class Update extends BaseStep implements StepInterface {
     return false;
   }
 
+  /**
+   * Rows were updated, the shared lookup caches of the table are stale.
+   */
+  private void invalidateSharedCaches() {
+    try {
+      LookupCacheRegistry.getInstance().invalidateTables( meta.getDatabaseMeta(), this, getPartitionID(),
+        Collections.singleton( data.schemaTable ) );
+    } catch ( KettleDatabaseException e ) {
+      logError( "Unable to invalidate the shared lookup caches of " + data.schemaTable, e );
+    }
+  }
+
   public void dispose( StepMetaInterface smi, StepDataInterface sdi ) {
     meta = (UpdateMeta) smi;
     data = (UpdateData) sdi;
@@ -536,6 +550,9 @@ public class Update extends BaseStep implements StepInterface {
         data.db.disconnect();
       }
     }
+    if ( data.schemaTable != null && getLinesUpdated() > 0 ) {
+      invalidateSharedCaches();
+    }
     super.dispose( smi, sdi );
   }
 
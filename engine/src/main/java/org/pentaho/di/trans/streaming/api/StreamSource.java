@@ -2,7 +2,7 @@
  *
  * Pentaho Data Integration
  *
- * Copyright (C) 2002-2018 by Hitachi Vantara : http://www.pentaho.com
+ * Copyright (C) 2002-2020 by Hitachi Vantara : http://www.pentaho.com
  *
  *******************************************************************************
  *
@@ -25,6 +25,8 @@ package org.pentaho.di.trans.streaming.api;
 
 import io.reactivex.Flowable;
 
+import java.util.List;
+
 /**
  * Defines a source of streaming data.  A StreamSource implementation is used
  * by {@link org.pentaho.di.trans.streaming.common.BaseStreamStep} when
@@ -58,4 +60,11 @@ public interface StreamSource<R>  {
    * Used for initializing resources required to load the stream.
    */
   void open();
+
+  /**
+   * Signals the rows were processed by the sub-transformation, so the messages they came from can be acknowledged.
+   * Called once for every window, rows of windows that overlap can be passed more than once.  Noop by default.
+   */
+  default void acknowledge( List<R> rows ) {
+  }
 }
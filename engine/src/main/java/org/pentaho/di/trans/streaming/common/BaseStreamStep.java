@@ -26,14 +26,17 @@ import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Throwables;
 import org.pentaho.di.core.CheckResultInterface;
+import org.pentaho.di.core.Const;
 import org.pentaho.di.core.Result;
 import org.pentaho.di.core.RowMetaAndData;
 import org.pentaho.di.core.exception.KettleException;
 import org.pentaho.di.core.exception.KettleStepException;
+import org.pentaho.di.core.row.RowMetaInterface;
 import org.pentaho.di.i18n.BaseMessages;
 import org.pentaho.di.trans.SubtransExecutor;
 import org.pentaho.di.trans.Trans;
 import org.pentaho.di.trans.TransMeta;
+import org.pentaho.di.trans.WarmSubtransExecutor;
 import org.pentaho.di.trans.step.BaseStep;
 import org.pentaho.di.trans.step.StepDataInterface;
 import org.pentaho.di.trans.step.StepMeta;
@@ -41,6 +44,7 @@ import org.pentaho.di.trans.step.StepMetaInterface;
 import org.pentaho.di.trans.step.StepStatus;
 import org.pentaho.di.trans.steps.transexecutor.TransExecutorMeta;
 import org.pentaho.di.trans.steps.transexecutor.TransExecutorParameters;
+import org.pentaho.di.trans.steps.transexecutor.TransExecutorWarmInstance;
 import org.pentaho.di.trans.streaming.api.StreamSource;
 import org.pentaho.di.trans.streaming.api.StreamWindow;
 
@@ -48,6 +52,7 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 
 @SuppressWarnings ( "WeakerAccess" )
 public class BaseStreamStep extends BaseStep {
@@ -82,9 +87,24 @@ public class BaseStreamStep extends BaseStep {
         .loadMappingMeta( variablizedStepMeta, getTransMeta().getRepository(), getTransMeta().getMetaStore(),
           getParentVariableSpace() );
       variablizedStepMeta = (BaseStreamStepMeta) variablizedStepMeta.withVariables( this );
-      subtransExecutor = new SubtransExecutor( getStepname(),
-        getTrans(), transMeta, true,
-        new TransExecutorParameters(), variablizedStepMeta.getSubStep(), getPrefetchCount() );
+      int warmSubtrans = Const.toInt( getVariable( Const.KETTLE_STREAMING_WARM_SUBTRANS_INSTANCES ), 0 );
+      String warmUnsupportedReason =
+        warmSubtrans > 0 ? TransExecutorWarmInstance.getUnsupportedReason( transMeta, null ) : null;
+      if ( warmUnsupportedReason != null ) {
+        logBasic( "Executing every window on a new sub-transformation, not on prepared ones: "
+          + warmUnsupportedReason );
+        warmSubtrans = 0;
+      }
+      if ( warmSubtrans > 0 ) {
+        subtransExecutor = new WarmSubtransExecutor( getStepname(),
+          getTrans(), transMeta, true,
+          new TransExecutorParameters(), variablizedStepMeta.getSubStep(), getPrefetchCount(), warmSubtrans );
+      } else {
+        subtransExecutor = new SubtransExecutor( getStepname(),
+          getTrans(), transMeta, true,
+          new TransExecutorParameters(), variablizedStepMeta.getSubStep(), getPrefetchCount() );
+      }
+      subtransExecutor.setMaxBufferBytes( Const.toLong( getVariable( Const.KETTLE_STREAMING_BUFFER_MAX_BYTES ), 0L ) );
 
     } catch ( KettleException e ) {
       log.logError( e.getLocalizedMessage(), e );
@@ -181,6 +201,63 @@ public class BaseStreamStep extends BaseStep {
     } );
   }
 
+  /**
+   * Window post processor passing the rows of a window the sub-transformation processed to
+   * {@link StreamSource#acknowledge(List)}. Only the rows of windows that were processed without errors are passed.
+   */
+  protected void acknowledge( Map.Entry<List<List<Object>>, Result> processed ) {
+    if ( source != null ) {
+      source.acknowledge( processed.getKey() );
+    }
+  }
+
+  /**
+   * @return true if sources should acknowledge messages after the sub-transformation processed them, see
+   *         {@link Const#KETTLE_STREAMING_ACKNOWLEDGE_PROCESSED}
+   */
+  public boolean isAcknowledgingProcessed() {
+    return "Y".equalsIgnoreCase( getVariable( Const.KETTLE_STREAMING_ACKNOWLEDGE_PROCESSED ) );
+  }
+
+  /**
+   * Create the window of the type set in the step, see {@link BaseStreamStepMeta.WindowType}. The rows of the windows
+   * the sub-transformation processed are passed to {@link #acknowledge(Map.Entry)}.
+   *
+   * @param rowMeta
+   *          the layout of the rows of the stream
+   * @throws KettleException
+   *           in case the window settings are not valid for the rows
+   */
+  protected StreamWindow<List<Object>, Result> createWindow( RowMetaInterface rowMeta ) throws KettleException {
+    BaseStreamStepMeta.WindowType type = BaseStreamStepMeta.WindowType.getWindowType( variablizedStepMeta
+      .getWindowType() );
+    long length = Const.toLong( variablizedStepMeta.getWindowLength(), -1L );
+    long slide = Const.toLong( variablizedStepMeta.getWindowSlide(), -1L );
+    long gap = Const.toLong( variablizedStepMeta.getWindowGap(), -1L );
+    String field = variablizedStepMeta.getWindowField();
+    try {
+      switch ( type ) {
+        case SLIDING_TIME:
+          return SlidingStreamWindow.byTime( subtransExecutor, rowMeta, length, slide, getParallelism(),
+            this::acknowledge );
+        case SLIDING_COUNT:
+          return SlidingStreamWindow.byCount( subtransExecutor, rowMeta, (int) length, (int) slide, getParallelism(),
+            this::acknowledge );
+        case SESSION:
+          return new SessionStreamWindow<>( subtransExecutor, rowMeta, field, gap, getBatchSize(), getParallelism(),
+            this::acknowledge );
+        case EVENT_TIME:
+          return new EventTimeStreamWindow<>( subtransExecutor, rowMeta, field, length, gap, getParallelism(),
+            this::acknowledge );
+        default:
+          return new FixedTimeStreamWindow<>( subtransExecutor, rowMeta, getDuration(), getBatchSize(),
+            getParallelism(), this::acknowledge );
+      }
+    } catch ( IllegalArgumentException e ) {
+      throw new KettleException( "Unable to create the " + type.name() + " window: " + e.getMessage(), e );
+    }
+  }
+
   protected int getBatchSize() {
     try {
       return Integer.parseInt( variablizedStepMeta.getBatchSize() );
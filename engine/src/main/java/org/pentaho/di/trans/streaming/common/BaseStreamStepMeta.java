@@ -60,6 +60,11 @@ public abstract class BaseStreamStepMeta extends StepWithMappingMeta implements
   public static final String SUB_STEP = "SUB_STEP";
   public static final String PARALLELISM = "PARALLELISM";
   public static final String MESSAGE_DATA_TYPE = "MESSAGE_DATA_TYPE";
+  public static final String WINDOW_TYPE = "WINDOW_TYPE";
+  public static final String WINDOW_LENGTH = "WINDOW_LENGTH";
+  public static final String WINDOW_SLIDE = "WINDOW_SLIDE";
+  public static final String WINDOW_FIELD = "WINDOW_FIELD";
+  public static final String WINDOW_GAP = "WINDOW_GAP";
 
   public static final int PREFETCH = 100000;
   public static final String PREFETCH_DEFAULT = Integer.toString( PREFETCH );
@@ -82,6 +87,61 @@ public abstract class BaseStreamStepMeta extends StepWithMappingMeta implements
   @Injection( name =  PARALLELISM )
   protected String parallelism = "1";
 
+  @Injection( name = WINDOW_TYPE )
+  protected String windowType = WindowType.FIXED.name();
+
+  @Injection( name = WINDOW_LENGTH )
+  protected String windowLength = "";
+
+  @Injection( name = WINDOW_SLIDE )
+  protected String windowSlide = "";
+
+  @Injection( name = WINDOW_FIELD )
+  protected String windowField = "";
+
+  @Injection( name = WINDOW_GAP )
+  protected String windowGap = "";
+
+  /**
+   * How the stream is cut in the windows that are executed in the sub-transformation.
+   */
+  public enum WindowType {
+    /**
+     * Batches of the duration or of the number of records, see {@link FixedTimeStreamWindow}
+     */
+    FIXED,
+    /**
+     * Every slide, the rows of the window length; both in milliseconds, see {@link SlidingStreamWindow}
+     */
+    SLIDING_TIME,
+    /**
+     * Every slide, the rows of the window length; both a number of rows, see {@link SlidingStreamWindow}
+     */
+    SLIDING_COUNT,
+    /**
+     * A session per value of the window field that ends after the gap in milliseconds, or at the number of records if
+     * that is set, see {@link SessionStreamWindow}
+     */
+    SESSION,
+    /**
+     * Windows of the window length in milliseconds of the time in the window field, waiting the gap in milliseconds for
+     * rows that come in late, see {@link EventTimeStreamWindow}
+     */
+    EVENT_TIME;
+
+    /**
+     * @return the window type with the name, {@link #FIXED} if there is none
+     */
+    public static WindowType getWindowType( String name ) {
+      for ( WindowType type : values() ) {
+        if ( type.name().equalsIgnoreCase( name ) ) {
+          return type;
+        }
+      }
+      return FIXED;
+    }
+  }
+
   MappingMetaRetriever mappingMetaRetriever = TransExecutorMeta::loadMappingMeta;
 
   @FunctionalInterface interface MappingMetaRetriever {
@@ -116,11 +176,36 @@ public abstract class BaseStreamStepMeta extends StepWithMappingMeta implements
   public void setParallelism( String parallelism ) {
     this.parallelism = parallelism;
   }
+
+  public void setWindowType( String windowType ) {
+    this.windowType = windowType;
+  }
+
+  public void setWindowLength( String windowLength ) {
+    this.windowLength = windowLength;
+  }
+
+  public void setWindowSlide( String windowSlide ) {
+    this.windowSlide = windowSlide;
+  }
+
+  public void setWindowField( String windowField ) {
+    this.windowField = windowField;
+  }
+
+  public void setWindowGap( String windowGap ) {
+    this.windowGap = windowGap;
+  }
   @Override public void setDefault() {
     batchSize = "1000";
     batchDuration = "1000";
     parallelism = "1";
     prefetchCount = PREFETCH_DEFAULT;
+    windowType = WindowType.FIXED.name();
+    windowLength = "";
+    windowSlide = "";
+    windowField = "";
+    windowGap = "";
   }
 
   public String getTransformationPath() {
@@ -143,6 +228,26 @@ public abstract class BaseStreamStepMeta extends StepWithMappingMeta implements
     return parallelism;
   }
 
+  public String getWindowType() {
+    return windowType;
+  }
+
+  public String getWindowLength() {
+    return windowLength;
+  }
+
+  public String getWindowSlide() {
+    return windowSlide;
+  }
+
+  public String getWindowField() {
+    return windowField;
+  }
+
+  public String getWindowGap() {
+    return windowGap;
+  }
+
   public int getMessageDataType() {
     throw new UnsupportedOperationException();
   }
@@ -176,15 +281,17 @@ public abstract class BaseStreamStepMeta extends StepWithMappingMeta implements
         stepMeta ) );
     }
 
-    if ( duration == 0 && size == 0 ) {
+    WindowType type = WindowType.getWindowType( space.environmentSubstitute( getWindowType() ) );
+    if ( type == WindowType.FIXED && duration == 0 && size == 0 ) {
       remarks.add( new CheckResult(
         CheckResultInterface.TYPE_RESULT_ERROR,
         BaseMessages.getString( PKG, "BaseStreamStepMeta.CheckResult.NoBatchDefined" ),
         stepMeta ) );
     }
 
+    int prefetch = 0;
     try {
-      int prefetch = Integer.parseInt( space.environmentSubstitute( getPrefetchCount() ) );
+      prefetch = Integer.parseInt( space.environmentSubstitute( getPrefetchCount() ) );
 
       if ( prefetch <= 0 ) {
         remarks.add( new CheckResult( CheckResultInterface.TYPE_RESULT_ERROR,
@@ -204,6 +311,8 @@ public abstract class BaseStreamStepMeta extends StepWithMappingMeta implements
         stepMeta ) );
     }
 
+    checkWindow( remarks, stepMeta, space, type, prefetch );
+
     try {
       TransMeta subMeta = mappingMetaRetriever.get( this, repository, metaStore, space );
       if ( !StringUtil.isEmpty( getSubStep() ) ) {
@@ -221,6 +330,59 @@ public abstract class BaseStreamStepMeta extends StepWithMappingMeta implements
     }
   }
 
+  private void checkWindow( List<CheckResultInterface> remarks, StepMeta stepMeta, VariableSpace space,
+                            WindowType type, int prefetch ) {
+    if ( type == WindowType.FIXED ) {
+      return;
+    }
+    long length = checkWindowNumber( remarks, stepMeta, space, getWindowLength(), "Window length",
+      type != WindowType.SESSION );
+    checkWindowNumber( remarks, stepMeta, space, getWindowGap(), "Gap", type == WindowType.SESSION );
+    if ( type == WindowType.SLIDING_TIME || type == WindowType.SLIDING_COUNT ) {
+      long slide = checkWindowNumber( remarks, stepMeta, space, getWindowSlide(), "Window slide", true );
+      if ( length > 0 && slide > 0 && length % slide != 0 ) {
+        remarks.add( new CheckResult( CheckResultInterface.TYPE_RESULT_ERROR,
+          BaseMessages.getString( PKG, "BaseStreamStepMeta.CheckResult.LengthNotMultipleOfSlide", length, slide ),
+          stepMeta ) );
+      }
+      // The source stops reading at the prefetch limit, a count window would wait for its slide forever
+      if ( type == WindowType.SLIDING_COUNT && prefetch > 0 && slide > prefetch ) {
+        remarks.add( new CheckResult( CheckResultInterface.TYPE_RESULT_ERROR,
+          BaseMessages.getString( PKG, "BaseStreamStepMeta.CheckResult.PrefetchLessThanSlide", prefetch, slide ),
+          stepMeta ) );
+      }
+    }
+    if ( ( type == WindowType.SESSION || type == WindowType.EVENT_TIME )
+      && Utils.isEmpty( space.environmentSubstitute( getWindowField() ) ) ) {
+      remarks.add( new CheckResult( CheckResultInterface.TYPE_RESULT_ERROR,
+        BaseMessages.getString( PKG, "BaseStreamStepMeta.CheckResult.NoWindowField", type.name() ), stepMeta ) );
+    }
+  }
+
+  /**
+   * @return the number set in a window setting, 0 if it is empty or not a number
+   */
+  private long checkWindowNumber( List<CheckResultInterface> remarks, StepMeta stepMeta, VariableSpace space,
+                                  String value, String name, boolean required ) {
+    String realValue = space.environmentSubstitute( value );
+    if ( Utils.isEmpty( realValue ) && !required ) {
+      return 0;
+    }
+    try {
+      long number = Long.parseLong( realValue );
+      if ( number <= 0 && required ) {
+        remarks.add( new CheckResult( CheckResultInterface.TYPE_RESULT_ERROR,
+          BaseMessages.getString( PKG, "BaseStreamStepMeta.CheckResult.WindowZeroOrLess", name, number ),
+          stepMeta ) );
+      }
+      return number;
+    } catch ( NumberFormatException e ) {
+      remarks.add( new CheckResult( CheckResultInterface.TYPE_RESULT_ERROR,
+        BaseMessages.getString( PKG, NOT_A_NUMBER, name ), stepMeta ) );
+      return 0;
+    }
+  }
+
   @Override
   public String getFileName() {
     return ( Strings.isNullOrEmpty( this.fileName ) ? this.getTransformationPath() : this.fileName );
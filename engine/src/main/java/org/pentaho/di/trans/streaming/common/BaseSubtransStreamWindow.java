@@ -0,0 +1,124 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2020 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+
+package org.pentaho.di.trans.streaming.common;
+
+import io.reactivex.Flowable;
+import io.reactivex.functions.Consumer;
+import io.reactivex.schedulers.Schedulers;
+import org.pentaho.di.core.Result;
+import org.pentaho.di.core.RowMetaAndData;
+import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.i18n.BaseMessages;
+import org.pentaho.di.trans.SubtransExecutor;
+import org.pentaho.di.trans.streaming.api.StreamWindow;
+
+import java.util.AbstractMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+/**
+ * Base class for StreamWindow implementations which cut the stream of rows of I in windows in their own way and execute
+ * every window in a subtransformation. Set KETTLE_STREAMING_WARM_SUBTRANS_INSTANCES to reuse prepared
+ * subtransformations, so short windows don't spend their time starting subtransformations.
+ */
+public abstract class BaseSubtransStreamWindow<I extends List> implements StreamWindow<I, Result> {
+
+  private static final Class<?> PKG = BaseStreamStep.class;
+
+  protected final SubtransExecutor subtransExecutor;
+  protected final RowMetaInterface rowMeta;
+  private final int parallelism;
+  private final Consumer<Map.Entry<List<I>, Result>> postProcessor;
+
+  protected BaseSubtransStreamWindow( SubtransExecutor subtransExecutor, RowMetaInterface rowMeta, int parallelism,
+                                      Consumer<Map.Entry<List<I>, Result>> postProcessor ) {
+    this.subtransExecutor = subtransExecutor;
+    this.rowMeta = rowMeta;
+    this.parallelism = Math.max( 1, parallelism );
+    this.postProcessor = postProcessor;
+  }
+
+  /**
+   * Cut the stream in windows.
+   */
+  protected abstract Flowable<Window<I>> window( Flowable<I> flowable );
+
+  @Override public Iterable<Result> buffer( Flowable<I> flowable ) {
+    return window( flowable )
+      .filter( window -> !window.getRows().isEmpty() )
+      .parallel( parallelism )
+      .runOn( Schedulers.io() )
+      .map( this::sendWindowToSubtrans )
+      .filter( Optional::isPresent )
+      .map( Optional::get )
+      .sequential()
+      .doOnNext( this::failOnError )
+      .doOnNext( postProcessor )
+      .map( Map.Entry::getValue )
+      .blockingIterable();
+  }
+
+  private void failOnError( Map.Entry<List<I>, Result> pair ) throws KettleException {
+    if ( pair.getValue().getNrErrors() > 0 ) {
+      throw new KettleException( BaseMessages.getString( PKG, "FixedTimeStreamWindow.SubtransFailed" ) );
+    }
+  }
+
+  private Optional<Map.Entry<List<I>, Result>> sendWindowToSubtrans( Window<I> window ) throws KettleException {
+    final List<RowMetaAndData> rows = window.getRows().stream()
+      .map( row -> row.toArray( new Object[ 0 ] ) )
+      .map( objects -> new RowMetaAndData( rowMeta, objects ) )
+      .collect( Collectors.toList() );
+    Optional<Result> optionalRes = subtransExecutor.execute( rows, window.getNewRows() );
+    return optionalRes.map( result -> new AbstractMap.SimpleImmutableEntry<>( window.getRows(), result ) );
+  }
+
+  /**
+   * The rows of a window. When windows overlap, only the rows that weren't in a previous window are new.
+   */
+  public static class Window<I> {
+    private final List<I> rows;
+    private final int newRows;
+
+    public Window( List<I> rows ) {
+      this( rows, rows.size() );
+    }
+
+    public Window( List<I> rows, int newRows ) {
+      this.rows = rows;
+      this.newRows = newRows;
+    }
+
+    public List<I> getRows() {
+      return rows;
+    }
+
+    public int getNewRows() {
+      return newRows;
+    }
+  }
+}
@@ -2,7 +2,7 @@
  *
  * Pentaho Data Integration
  *
- * Copyright (C) 2002-2019 by Hitachi Vantara : http://www.pentaho.com
+ * Copyright (C) 2002-2020 by Hitachi Vantara : http://www.pentaho.com
  *
  *******************************************************************************
  *
@@ -24,14 +24,17 @@
 package org.pentaho.di.trans.streaming.common;
 
 import com.google.common.annotations.VisibleForTesting;
+import io.reactivex.BackpressureStrategy;
 import io.reactivex.Flowable;
-import io.reactivex.processors.PublishProcessor;
+import io.reactivex.FlowableEmitter;
 import org.pentaho.di.core.logging.LogChannel;
 import org.pentaho.di.core.row.ValueMetaInterface;
+import org.pentaho.di.trans.SubtransExecutor;
 import org.pentaho.di.trans.streaming.api.StreamSource;
 
 import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.List;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -46,6 +49,10 @@ import static org.pentaho.di.i18n.BaseMessages.getString;
  * typically start a new thread that feeds rows of data to the {@link #acceptRows(List)} method. Any resource cleanup
  * should be included in a .close() implementation, along with a call to super.close() to complete the blocking
  * iterable.
+ * <p>
+ * The flowable has one subscriber and honors its requests: acceptRows blocks until the subscriber asked for more rows,
+ * until the prefetch buffer of the sub-transformation has room for them, and, with a maximum number of bytes set on
+ * the {@link SubtransExecutor}, until the buffer has room for their size.
  */
 public abstract class BlockingQueueStreamSource<T> implements StreamSource<T> {
 
@@ -54,9 +61,17 @@ public abstract class BlockingQueueStreamSource<T> implements StreamSource<T> {
 
   private final AtomicBoolean paused = new AtomicBoolean( false );
 
-  private final PublishProcessor<T> publishProcessor = PublishProcessor.create();
+  private final Flowable<T> flowable = Flowable.<T>create( this::subscribe, BackpressureStrategy.MISSING )
+    .doOnRequest( this::request );
   protected final BaseStreamStep streamStep;
 
+  // guards the subscriber, its outstanding requests and the end of the stream
+  private final Object demandLock = new Object();
+  private FlowableEmitter<T> emitter;
+  private long requested;
+  private boolean done;
+  private Throwable failure;
+
   // binary semaphore used to block acceptance of rows when paused
   @VisibleForTesting Semaphore acceptingRowsSemaphore = new Semaphore( 1 );
   @VisibleForTesting LogChannel logChannel = new LogChannel( this );
@@ -67,15 +82,11 @@ public abstract class BlockingQueueStreamSource<T> implements StreamSource<T> {
 
 
   @Override public Flowable<T> flowable() {
-    return Flowable
-      .fromPublisher( publishProcessor );
+    return flowable;
   }
 
   @Override public void close() {
-    if ( !publishProcessor.hasComplete() ) {
-
-      publishProcessor.onComplete();
-    }
+    end( null );
   }
 
   /**
@@ -100,7 +111,7 @@ public abstract class BlockingQueueStreamSource<T> implements StreamSource<T> {
   }
 
   /**
-   * Accept rows, blocking if currently paused or if there are no permits
+   * Accept rows, blocking if currently paused, if there are no permits or if the subscriber didn't request more rows
    * <p>
    * Implementations should implement the open() function to pass external row events to the acceptRows method.
    * <p>
@@ -108,11 +119,19 @@ public abstract class BlockingQueueStreamSource<T> implements StreamSource<T> {
   protected void acceptRows( List<T> rows ) {
     try {
       acceptingRowsSemaphore.acquire();
-      waitForSubscribers();
+      SubtransExecutor subtransExecutor = streamStep.getSubtransExecutor();
+      boolean limitBytes = subtransExecutor.getMaxBufferBytes() > 0;
       for ( T row : rows ) {
-        streamStep.getSubtransExecutor().acquireBufferPermit();
+        subtransExecutor.acquireBufferPermit();
+        if ( limitBytes ) {
+          subtransExecutor.acquireBufferBytes( estimateBytes( row ) );
+        }
+        FlowableEmitter<T> subscriber = awaitRequest();
+        if ( subscriber == null ) {
+          break;
+        }
         streamStep.incrementLinesInput();
-        publishProcessor.onNext( row );
+        subscriber.onNext( row );
       }
     } catch ( InterruptedException e ) {
       logChannel
@@ -124,17 +143,79 @@ public abstract class BlockingQueueStreamSource<T> implements StreamSource<T> {
   }
 
   /**
-   * Wait for Subscribers Wait for the publish processor to have subscribers, otherwise the subtrans misses messages
-   * (even in .onSubscribe() the .hasSubscribers() is still false for a short while)
+   * Wait for the subscriber to request a row.
    *
+   * @return the subscriber, null if the stream ended
    * @throws InterruptedException
    */
-  private void waitForSubscribers() throws InterruptedException {
-    logChannel.logDebug( getString( PKG, "BlockingQueueStream.WaitForSubscribers" ) );
-    while ( !publishProcessor.hasSubscribers() ) {
-      Thread.sleep( 100 );
+  private FlowableEmitter<T> awaitRequest() throws InterruptedException {
+    synchronized ( demandLock ) {
+      if ( emitter == null && !done ) {
+        logChannel.logDebug( getString( PKG, "BlockingQueueStream.WaitForSubscribers" ) );
+      }
+      while ( !done && ( emitter == null || requested == 0 ) ) {
+        demandLock.wait();
+      }
+      if ( done ) {
+        return null;
+      }
+      if ( requested != Long.MAX_VALUE ) {
+        requested--;
+      }
+      return emitter;
+    }
+  }
+
+  private void subscribe( FlowableEmitter<T> subscriber ) {
+    synchronized ( demandLock ) {
+      if ( emitter != null ) {
+        subscriber.onError( new IllegalStateException( "Stream sources support only one subscriber" ) );
+        return;
+      }
+      emitter = subscriber.serialize();
+      emitter.setCancellable( () -> end( null ) );
+      logChannel.logDebug( getString( PKG, "BlockingQueueStream.HasSubscribers" ) );
+      if ( done ) {
+        terminate();
+      }
+      demandLock.notifyAll();
+    }
+  }
+
+  private void request( long n ) {
+    synchronized ( demandLock ) {
+      requested = requested + n < 0 ? Long.MAX_VALUE : requested + n;
+      demandLock.notifyAll();
+    }
+  }
+
+  private void end( Throwable throwable ) {
+    synchronized ( demandLock ) {
+      if ( done ) {
+        return;
+      }
+      done = true;
+      failure = throwable;
+      if ( emitter != null ) {
+        terminate();
+      }
+      demandLock.notifyAll();
+    }
+  }
+
+  private void terminate() {
+    if ( failure != null ) {
+      emitter.onError( failure );
+    } else {
+      emitter.onComplete();
+    }
+  }
+
+  private long estimateBytes( T row ) {
+    if ( row instanceof Collection ) {
+      return SubtransExecutor.estimateBufferBytes( (Collection<?>) row );
     }
-    logChannel.logDebug( getString( PKG, "BlockingQueueStream.HasSubscribers" ) );
+    return SubtransExecutor.estimateBufferBytes( Arrays.asList( row ) );
   }
 
   /**
@@ -145,7 +226,7 @@ public abstract class BlockingQueueStreamSource<T> implements StreamSource<T> {
    * receive that error.
    */
   public void error( Throwable throwable ) {
-    publishProcessor.onError( throwable );
+    end( throwable );
   }
 
   protected Object readBytes( byte[] bytes ) {
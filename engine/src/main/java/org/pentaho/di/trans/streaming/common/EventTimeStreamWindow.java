@@ -0,0 +1,194 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2020 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+
+package org.pentaho.di.trans.streaming.common;
+
+import io.reactivex.BackpressureStrategy;
+import io.reactivex.Flowable;
+import io.reactivex.FlowableEmitter;
+import io.reactivex.disposables.Disposable;
+import io.reactivex.functions.Consumer;
+import io.reactivex.schedulers.Schedulers;
+import org.pentaho.di.core.Result;
+import org.pentaho.di.core.exception.KettleValueException;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.trans.SubtransExecutor;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * A StreamWindow implementation with windows of a fixed length of event time: the time in a field of the rows, not the
+ * time the rows came in. Rows can come in out of order, the watermark is the latest event time seen minus the allowed
+ * lateness. A window is executed in a subtransformation once the watermark passed its end.<br>
+ * <br>
+ * The watermark only moves when rows come in, so a window is also executed once the window length plus the allowed
+ * lateness passed, in processing time, since its first row came in. The source holds back rows until a window is
+ * executed, a quiet stream would otherwise keep them forever. Rows that come in after their window was executed are
+ * executed in a window of their own. The last windows are executed at the end of the stream.
+ */
+public class EventTimeStreamWindow<I extends List> extends BaseSubtransStreamWindow<I> {
+
+  private final int timeIndex;
+  private final long windowMillis;
+  private final long allowedLatenessMillis;
+
+  public EventTimeStreamWindow( SubtransExecutor subtransExecutor, RowMetaInterface rowMeta, String timeField,
+                                long windowMillis, long allowedLatenessMillis, int parallelism ) {
+    this( subtransExecutor, rowMeta, timeField, windowMillis, allowedLatenessMillis, parallelism, ( p ) -> { } );
+  }
+
+  /**
+   * @param timeField
+   *          the field with the event time: a date, a number of milliseconds or a value that converts to a date
+   * @param windowMillis
+   *          the length of a window
+   * @param allowedLatenessMillis
+   *          how long to wait for rows that come in out of order
+   */
+  public EventTimeStreamWindow( SubtransExecutor subtransExecutor, RowMetaInterface rowMeta, String timeField,
+                                long windowMillis, long allowedLatenessMillis, int parallelism,
+                                Consumer<Map.Entry<List<I>, Result>> postProcessor ) {
+    super( subtransExecutor, rowMeta, parallelism, postProcessor );
+    this.timeIndex = rowMeta.indexOfValue( timeField );
+    if ( timeIndex < 0 ) {
+      throw new IllegalArgumentException( "Unable to find event time field '" + timeField + "'" );
+    }
+    if ( windowMillis <= 0 ) {
+      throw new IllegalArgumentException( "The length of a window must be positive" );
+    }
+    this.windowMillis = windowMillis;
+    this.allowedLatenessMillis = Math.max( 0, allowedLatenessMillis );
+  }
+
+  @Override protected Flowable<Window<I>> window( Flowable<I> flowable ) {
+    return Flowable.create( emitter -> {
+      Windows windows = new Windows( emitter );
+      long tick = Math.max( 1, ( windowMillis + allowedLatenessMillis ) / 4 );
+      Disposable ticker = Schedulers.computation()
+        .schedulePeriodicallyDirect( windows::closeExpired, tick, tick, MILLISECONDS );
+      Disposable subscription = flowable.subscribe(
+        windows::add,
+        error -> {
+          ticker.dispose();
+          emitter.onError( error );
+        },
+        () -> {
+          ticker.dispose();
+          windows.closeAll();
+          emitter.onComplete();
+        } );
+      emitter.setCancellable( () -> {
+        ticker.dispose();
+        subscription.dispose();
+      } );
+    }, BackpressureStrategy.BUFFER );
+  }
+
+  private long getEventTime( I row ) throws KettleValueException {
+    Object value = row.get( timeIndex );
+    if ( value instanceof Date ) {
+      return ( (Date) value ).getTime();
+    }
+    if ( value instanceof Number ) {
+      return ( (Number) value ).longValue();
+    }
+    Date date = rowMeta.getValueMeta( timeIndex ).getDate( value );
+    if ( date == null ) {
+      throw new KettleValueException( "Row without event time in field '"
+        + rowMeta.getValueMeta( timeIndex ).getName() + "'" );
+    }
+    return date.getTime();
+  }
+
+  /**
+   * The open windows, by start time. Rows are added on the thread of the stream, windows that are open for too long are
+   * closed on a timer thread.
+   */
+  private class Windows {
+    private final FlowableEmitter<Window<I>> emitter;
+    private final TreeMap<Long, OpenWindow> open = new TreeMap<>();
+    private long watermark = Long.MIN_VALUE;
+
+    Windows( FlowableEmitter<Window<I>> emitter ) {
+      this.emitter = emitter;
+    }
+
+    synchronized void add( I row ) throws KettleValueException {
+      long eventTime = getEventTime( row );
+      long start = Math.floorDiv( eventTime, windowMillis ) * windowMillis;
+      if ( start + windowMillis <= watermark ) {
+        // Too late, the window of the row was executed already
+        emitter.onNext( new Window<>( Collections.singletonList( row ) ) );
+        return;
+      }
+
+      OpenWindow window = open.get( start );
+      if ( window == null ) {
+        window = new OpenWindow();
+        open.put( start, window );
+      }
+      window.rows.add( row );
+
+      watermark = Math.max( watermark, eventTime - allowedLatenessMillis );
+      for ( Iterator<Map.Entry<Long, OpenWindow>> windows = open.entrySet().iterator(); windows.hasNext(); ) {
+        Map.Entry<Long, OpenWindow> entry = windows.next();
+        if ( entry.getKey() + windowMillis > watermark ) {
+          break;
+        }
+        windows.remove();
+        emitter.onNext( new Window<>( entry.getValue().rows ) );
+      }
+    }
+
+    synchronized void closeExpired() {
+      long now = System.currentTimeMillis();
+      for ( Iterator<OpenWindow> windows = open.values().iterator(); windows.hasNext(); ) {
+        OpenWindow window = windows.next();
+        if ( now - window.firstRowTime >= windowMillis + allowedLatenessMillis ) {
+          windows.remove();
+          emitter.onNext( new Window<>( window.rows ) );
+        }
+      }
+    }
+
+    synchronized void closeAll() {
+      for ( OpenWindow window : open.values() ) {
+        emitter.onNext( new Window<>( window.rows ) );
+      }
+      open.clear();
+    }
+  }
+
+  private class OpenWindow {
+    private final List<I> rows = new ArrayList<>();
+    private final long firstRowTime = System.currentTimeMillis();
+  }
+}
@@ -0,0 +1,156 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2020 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+
+package org.pentaho.di.trans.streaming.common;
+
+import io.reactivex.BackpressureStrategy;
+import io.reactivex.Flowable;
+import io.reactivex.FlowableEmitter;
+import io.reactivex.disposables.Disposable;
+import io.reactivex.functions.Consumer;
+import io.reactivex.schedulers.Schedulers;
+import org.pentaho.di.core.Result;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.trans.SubtransExecutor;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * A StreamWindow implementation with a session per value of a key field. A session ends when no rows came in for its
+ * key during the gap, or when it has the maximum number of rows. Every session is executed in a subtransformation. The
+ * sessions still open at the end of the stream are executed then.
+ */
+public class SessionStreamWindow<I extends List> extends BaseSubtransStreamWindow<I> {
+
+  private final int keyIndex;
+  private final long gapMillis;
+  private final int maxSize;
+
+  public SessionStreamWindow( SubtransExecutor subtransExecutor, RowMetaInterface rowMeta, String keyField,
+                              long gapMillis, int maxSize, int parallelism ) {
+    this( subtransExecutor, rowMeta, keyField, gapMillis, maxSize, parallelism, ( p ) -> { } );
+  }
+
+  /**
+   * @param keyField
+   *          the field with the key of the sessions
+   * @param gapMillis
+   *          the time without rows after which a session ends
+   * @param maxSize
+   *          the maximum number of rows of a session, 0 for no maximum
+   */
+  public SessionStreamWindow( SubtransExecutor subtransExecutor, RowMetaInterface rowMeta, String keyField,
+                              long gapMillis, int maxSize, int parallelism,
+                              Consumer<Map.Entry<List<I>, Result>> postProcessor ) {
+    super( subtransExecutor, rowMeta, parallelism, postProcessor );
+    this.keyIndex = rowMeta.indexOfValue( keyField );
+    if ( keyIndex < 0 ) {
+      throw new IllegalArgumentException( "Unable to find session key field '" + keyField + "'" );
+    }
+    if ( gapMillis <= 0 ) {
+      throw new IllegalArgumentException( "The gap between sessions must be positive" );
+    }
+    this.gapMillis = gapMillis;
+    this.maxSize = maxSize;
+  }
+
+  @Override protected Flowable<Window<I>> window( Flowable<I> flowable ) {
+    return Flowable.create( emitter -> {
+      Sessions sessions = new Sessions( emitter );
+      long tick = Math.max( 1, gapMillis / 4 );
+      Disposable ticker = Schedulers.computation()
+        .schedulePeriodicallyDirect( sessions::closeExpired, tick, tick, MILLISECONDS );
+      Disposable subscription = flowable.subscribe(
+        sessions::add,
+        error -> {
+          ticker.dispose();
+          emitter.onError( error );
+        },
+        () -> {
+          ticker.dispose();
+          sessions.closeAll();
+          emitter.onComplete();
+        } );
+      emitter.setCancellable( () -> {
+        ticker.dispose();
+        subscription.dispose();
+      } );
+    }, BackpressureStrategy.BUFFER );
+  }
+
+  /**
+   * The open sessions. Rows are added on the thread of the stream, expired sessions are closed on a timer thread.
+   */
+  private class Sessions {
+    private final FlowableEmitter<Window<I>> emitter;
+    private final Map<Object, Session> open = new LinkedHashMap<>();
+
+    Sessions( FlowableEmitter<Window<I>> emitter ) {
+      this.emitter = emitter;
+    }
+
+    synchronized void add( I row ) {
+      Object key = row.get( keyIndex );
+      Session session = open.get( key );
+      if ( session == null ) {
+        session = new Session();
+        open.put( key, session );
+      }
+      session.rows.add( row );
+      session.lastRowTime = System.currentTimeMillis();
+      if ( maxSize > 0 && session.rows.size() >= maxSize ) {
+        open.remove( key );
+        emitter.onNext( new Window<>( session.rows ) );
+      }
+    }
+
+    synchronized void closeExpired() {
+      long now = System.currentTimeMillis();
+      for ( Iterator<Session> sessions = open.values().iterator(); sessions.hasNext(); ) {
+        Session session = sessions.next();
+        if ( now - session.lastRowTime >= gapMillis ) {
+          sessions.remove();
+          emitter.onNext( new Window<>( session.rows ) );
+        }
+      }
+    }
+
+    synchronized void closeAll() {
+      for ( Session session : open.values() ) {
+        emitter.onNext( new Window<>( session.rows ) );
+      }
+      open.clear();
+    }
+  }
+
+  private class Session {
+    private final List<I> rows = new ArrayList<>();
+    private long lastRowTime;
+  }
+}
@@ -0,0 +1,115 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2020 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+
+package org.pentaho.di.trans.streaming.common;
+
+import io.reactivex.Flowable;
+import io.reactivex.functions.Consumer;
+import io.reactivex.functions.Function;
+import org.pentaho.di.core.Result;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.trans.SubtransExecutor;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * A StreamWindow implementation with windows that overlap: every slide a window with the rows of the last window length
+ * is executed in a subtransformation. Slide and length are either an amount of time or a number of rows.<br>
+ * <br>
+ * The stream is cut in panes of a slide, a window is made of the last panes that fit in the window length, which must be
+ * a multiple of the slide. Every row is in one pane, so it counts as new in one window only. The first windows are
+ * shorter, until there are enough panes.
+ */
+public class SlidingStreamWindow<I extends List> extends BaseSubtransStreamWindow<I> {
+
+  private final Function<Flowable<I>, Flowable<List<I>>> panes;
+  private final int panesPerWindow;
+
+  private SlidingStreamWindow( SubtransExecutor subtransExecutor, RowMetaInterface rowMeta,
+                               Function<Flowable<I>, Flowable<List<I>>> panes, long length, long slide,
+                               int parallelism, Consumer<Map.Entry<List<I>, Result>> postProcessor ) {
+    super( subtransExecutor, rowMeta, parallelism, postProcessor );
+    if ( length <= 0 || slide <= 0 || length % slide != 0 ) {
+      throw new IllegalArgumentException( "The length of a sliding window (" + length
+        + ") must be a multiple of the length of the slide (" + slide + ")" );
+    }
+    this.panes = panes;
+    this.panesPerWindow = (int) ( length / slide );
+  }
+
+  /**
+   * Windows of the rows of the last windowMillis, every slideMillis.
+   */
+  public static <I extends List> SlidingStreamWindow<I> byTime( SubtransExecutor subtransExecutor,
+                                                                RowMetaInterface rowMeta, long windowMillis,
+                                                                long slideMillis, int parallelism ) {
+    return byTime( subtransExecutor, rowMeta, windowMillis, slideMillis, parallelism, ( p ) -> { } );
+  }
+
+  public static <I extends List> SlidingStreamWindow<I> byTime( SubtransExecutor subtransExecutor,
+                                                                RowMetaInterface rowMeta, long windowMillis,
+                                                                long slideMillis, int parallelism,
+                                                                Consumer<Map.Entry<List<I>, Result>> postProcessor ) {
+    return new SlidingStreamWindow<>( subtransExecutor, rowMeta,
+      flowable -> flowable.buffer( slideMillis, MILLISECONDS ), windowMillis, slideMillis, parallelism,
+      postProcessor );
+  }
+
+  /**
+   * Windows of the last windowSize rows, every slideSize rows.
+   */
+  public static <I extends List> SlidingStreamWindow<I> byCount( SubtransExecutor subtransExecutor,
+                                                                 RowMetaInterface rowMeta, int windowSize,
+                                                                 int slideSize, int parallelism ) {
+    return byCount( subtransExecutor, rowMeta, windowSize, slideSize, parallelism, ( p ) -> { } );
+  }
+
+  public static <I extends List> SlidingStreamWindow<I> byCount( SubtransExecutor subtransExecutor,
+                                                                 RowMetaInterface rowMeta, int windowSize,
+                                                                 int slideSize, int parallelism,
+                                                                 Consumer<Map.Entry<List<I>, Result>> postProcessor ) {
+    return new SlidingStreamWindow<>( subtransExecutor, rowMeta,
+      flowable -> flowable.buffer( slideSize ), windowSize, slideSize, parallelism, postProcessor );
+  }
+
+  @Override protected Flowable<Window<I>> window( Flowable<I> flowable ) {
+    return Flowable.defer( () -> {
+      Deque<List<I>> recentPanes = new ArrayDeque<>();
+      return panes.apply( flowable ).map( pane -> {
+        recentPanes.addLast( pane );
+        if ( recentPanes.size() > panesPerWindow ) {
+          recentPanes.removeFirst();
+        }
+        List<I> rows = new ArrayList<>();
+        recentPanes.forEach( rows::addAll );
+        return new Window<>( rows, pane.size() );
+      } );
+    } );
+  }
+}
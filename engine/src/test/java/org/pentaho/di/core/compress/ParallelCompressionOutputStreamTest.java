@@ -0,0 +1,135 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2020 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+
+package org.pentaho.di.core.compress;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.pentaho.di.core.plugins.PluginRegistry;
+import org.pentaho.di.junit.rules.RestorePDIEngineEnvironment;
+import org.xerial.snappy.SnappyInputStream;
+
+public class ParallelCompressionOutputStreamTest {
+  @ClassRule public static RestorePDIEngineEnvironment env = new RestorePDIEngineEnvironment();
+
+  // Small blocks, so the data is compressed in a lot more blocks than there are threads
+  private static final int BLOCK_SIZE = 1000;
+
+  private CompressionProviderFactory factory;
+
+  @BeforeClass
+  public static void setUpBeforeClass() throws Exception {
+    PluginRegistry.addPluginType( CompressionPluginType.getInstance() );
+    PluginRegistry.init( false );
+  }
+
+  private CompressionProvider getProvider( String name ) {
+    if ( factory == null ) {
+      factory = CompressionProviderFactory.getInstance();
+    }
+    return factory.getCompressionProviderByName( name );
+  }
+
+  private byte[] createContent() {
+    StringBuilder content = new StringBuilder();
+    for ( int i = 0; i < 20000; i++ ) {
+      content.append( "row " ).append( i ).append( ";value " ).append( i * 7 ).append( '\n' );
+    }
+    return content.toString().getBytes( StandardCharsets.UTF_8 );
+  }
+
+  private byte[] compress( CompressionProvider provider, byte[] content ) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    ParallelCompressionOutputStream stream = new ParallelCompressionOutputStream( out, provider, 4, BLOCK_SIZE );
+    // Write in pieces that don't line up with the blocks, the way a buffered writer does
+    for ( int i = 0; i < content.length; i += 777 ) {
+      stream.write( content, i, Math.min( 777, content.length - i ) );
+    }
+    stream.write( '\n' );
+    stream.flush();
+    stream.write( content, 0, 10 );
+    stream.close();
+    return out.toByteArray();
+  }
+
+  private byte[] expected( byte[] content ) {
+    byte[] expected = new byte[ content.length + 11 ];
+    System.arraycopy( content, 0, expected, 0, content.length );
+    expected[ content.length ] = '\n';
+    System.arraycopy( content, 0, expected, content.length + 1, 10 );
+    return expected;
+  }
+
+  @Test
+  public void gzipMembersAreReadAsOneStream() throws IOException {
+    byte[] content = createContent();
+    byte[] compressed = compress( getProvider( "GZip" ), content );
+    try ( InputStream in = new GZIPInputStream( new ByteArrayInputStream( compressed ) ) ) {
+      assertArrayEquals( expected( content ), IOUtils.toByteArray( in ) );
+    }
+  }
+
+  @Test
+  public void snappyStreamsAreReadAsOneStream() throws IOException {
+    byte[] content = createContent();
+    byte[] compressed = compress( getProvider( "Snappy" ), content );
+    try ( InputStream in = new SnappyInputStream( new ByteArrayInputStream( compressed ) ) ) {
+      assertArrayEquals( expected( content ), IOUtils.toByteArray( in ) );
+    }
+  }
+
+  @Test
+  public void onlyProvidersWithConcatenatedOutputAreSupported() {
+    assertTrue( ParallelCompressionOutputStream.supports( getProvider( "GZip" ) ) );
+    assertTrue( ParallelCompressionOutputStream.supports( getProvider( "Snappy" ) ) );
+    assertFalse( ParallelCompressionOutputStream.supports( getProvider( "Zip" ) ) );
+    assertFalse( ParallelCompressionOutputStream.supports( getProvider( "None" ) ) );
+  }
+
+  @Test
+  public void writingToAClosedStreamFails() throws IOException {
+    ParallelCompressionOutputStream stream =
+      new ParallelCompressionOutputStream( new ByteArrayOutputStream(), getProvider( "GZip" ), 2 );
+    stream.close();
+    try {
+      stream.write( "closed".getBytes() );
+      fail();
+    } catch ( IOException e ) {
+      // Success, the stream was already closed
+    }
+  }
+}
@@ -0,0 +1,119 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2020 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+
+package org.pentaho.di.trans;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.row.RowMeta;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.value.ValueMetaInteger;
+import org.pentaho.di.junit.rules.RestorePDIEngineEnvironment;
+
+public class SkewAwarePartitionerTest {
+  @ClassRule public static RestorePDIEngineEnvironment env = new RestorePDIEngineEnvironment();
+
+  private static final long HOT_KEY = 7L;
+  private static final int PARTITIONS = 4;
+
+  private SkewAwarePartitioner partitioner;
+  private RowMetaInterface rowMeta;
+
+  @Before
+  public void setUp() {
+    partitioner = new SkewAwarePartitioner();
+    partitioner.setFieldName( "key" );
+    partitioner.setNrPartitions( PARTITIONS );
+    rowMeta = new RowMeta();
+    rowMeta.addValueMeta( new ValueMetaInteger( "key" ) );
+  }
+
+  // Two thirds of the rows have the hot key, the other rows all have a key of their own
+  private void partitionSkewedRows() throws KettleException {
+    for ( long i = 0; i < 100000; i++ ) {
+      partitioner.getPartition( rowMeta, new Object[] { i % 3 == 0 ? i * 10 : HOT_KEY } );
+    }
+  }
+
+  @Test
+  public void testSerialization() throws KettleException {
+    List<String> attributes = Arrays.asList( "FieldName", "SplitHeavyKeys" );
+    LoadSaveTester<SkewAwarePartitioner> tester =
+      new LoadSaveTester<SkewAwarePartitioner>( SkewAwarePartitioner.class, attributes );
+
+    tester.testSerialization();
+  }
+
+  @Test
+  public void heavyKeyIsSpreadOverAllPartitions() throws KettleException {
+    partitioner.setSplitHeavyKeys( true );
+    partitionSkewedRows();
+
+    assertEquals( new HashSet<>( Arrays.asList( HOT_KEY ) ), partitioner.getHeavyKeys() );
+    Set<Integer> partitions = new HashSet<>();
+    for ( int i = 0; i < PARTITIONS; i++ ) {
+      partitions.add( partitioner.getPartition( rowMeta, new Object[] { HOT_KEY } ) );
+    }
+    assertEquals( PARTITIONS, partitions.size() );
+  }
+
+  @Test
+  public void otherKeysArePartitionedLikeMod() throws KettleException {
+    partitioner.setSplitHeavyKeys( true );
+    partitionSkewedRows();
+
+    for ( long key = 100; key < 200; key++ ) {
+      assertEquals( (int) ( key % PARTITIONS ), partitioner.getPartition( rowMeta, new Object[] { key } ) );
+    }
+  }
+
+  @Test
+  public void heavyKeyIsOnlyDetectedWithoutSplitting() throws KettleException {
+    partitionSkewedRows();
+
+    assertTrue( partitioner.getHeavyKeys().contains( HOT_KEY ) );
+    for ( int i = 0; i < PARTITIONS; i++ ) {
+      assertEquals( (int) ( HOT_KEY % PARTITIONS ), partitioner.getPartition( rowMeta, new Object[] { HOT_KEY } ) );
+    }
+  }
+
+  @Test
+  public void evenlySpreadKeysAreNotHeavy() throws KettleException {
+    partitioner.setSplitHeavyKeys( true );
+    for ( long i = 0; i < 100000; i++ ) {
+      partitioner.getPartition( rowMeta, new Object[] { i % 1000 } );
+    }
+
+    assertTrue( partitioner.getHeavyKeys().isEmpty() );
+  }
+}
@@ -266,6 +266,49 @@ public class SubtransExecutorTest {
     assertFalse( timedOut );
   }
 
+  @Test
+  public void blockOnBufferBytesTillRowsAreExecuted() throws KettleException, InterruptedException,
+    ExecutionException, TimeoutException {
+    final ExecutorService executorService = Executors.newFixedThreadPool( 1 );
+
+    TransMeta parentMeta =
+      new TransMeta( this.getClass().getResource( "subtrans-executor-parent.ktr" ).getPath(), new Variables() );
+    TransMeta subMeta =
+      new TransMeta( this.getClass().getResource( "subtrans-executor-sub.ktr" ).getPath(), new Variables() );
+    LoggingObjectInterface loggingObject = new LoggingObject( "anything" );
+    Trans parentTrans = new Trans( parentMeta, loggingObject );
+    SubtransExecutor subtransExecutor =
+      new SubtransExecutor( "subtransname", parentTrans, subMeta, true, new TransExecutorParameters(), "", 1000 );
+
+    RowMetaInterface rowMeta = parentMeta.getStepFields( "Data Grid" );
+    List<RowMetaAndData> rows = Arrays.asList(
+      new RowMetaAndData( rowMeta, "Pentaho", 1L ),
+      new RowMetaAndData( rowMeta, "Pentaho", 2L ),
+      new RowMetaAndData( rowMeta, "Pentaho", 3L ),
+      new RowMetaAndData( rowMeta, "Pentaho", 4L ) );
+    long rowBytes = SubtransExecutor.estimateBufferBytes( Arrays.asList( rows.get( 0 ).getData() ) );
+    subtransExecutor.setMaxBufferBytes( 2 * rowBytes );
+
+    CompletableFuture<Boolean> acquireThreadRunning = new CompletableFuture();
+    Future future = executorService.submit( () -> {
+      try {
+        for ( RowMetaAndData row : rows ) {
+          acquireThreadRunning.complete( true );
+          subtransExecutor.acquireBufferBytes( SubtransExecutor.estimateBufferBytes( Arrays.asList( row.getData() ) ) );
+        }
+      } catch ( InterruptedException e ) {
+        fail();
+      }
+    } );
+    assertTrue( acquireThreadRunning.get( 5, TimeUnit.SECONDS ) );
+
+    // Only two rows fit in the buffer
+    assertFalse( safeWaitForCompletion( future, 2 ) );
+
+    subtransExecutor.execute( rows.subList( 0, 2 ) );
+    assertTrue( safeWaitForCompletion( future, 5 ) );
+  }
+
   private void safeAcquirePermits( SubtransExecutor subtransExecutor, int permitCount,
                                    CompletableFuture<Boolean> threadRunning ) {
     try {
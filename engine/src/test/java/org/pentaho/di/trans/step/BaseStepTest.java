@@ -2,7 +2,7 @@
  *
  * Pentaho Data Integration
  *
- * Copyright (C) 2002-2018 by Hitachi Vantara : http://www.pentaho.com
+ * Copyright (C) 2002-2020 by Hitachi Vantara : http://www.pentaho.com
  *
  *******************************************************************************
  *
@@ -42,6 +42,7 @@ import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.junit.After;
@@ -52,6 +53,7 @@ import org.mockito.Mock;
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.runners.MockitoJUnitRunner;
 import org.mockito.stubbing.Answer;
+import org.pentaho.di.core.AdaptiveBatchingRowSet;
 import org.pentaho.di.core.BlockingRowSet;
 import org.pentaho.di.core.QueueRowSet;
 import org.pentaho.di.core.ResultFile;
@@ -527,4 +529,97 @@ public class BaseStepTest {
     baseStepSpy.getRow();
     verify( mockHelper.transMeta, times( 1 ) ).checkRowMixingStatically( any( StepMeta.class ), anyObject() );
   }
+
+  /**
+   * A diamond: the step writes to two hops that end in the same step, which reads the rows of hop B before those of hop
+   * A. When hop A fills up, the rows on hop B are still a partial batch.
+   */
+  @Test( timeout = 10000 )
+  public void partialBatchesAreHandedOverBeforeWaitingForSpace() throws Exception {
+    final RowSet hopA = new AdaptiveBatchingRowSet( 4, 4, 60000 );
+    final RowSet hopB = new AdaptiveBatchingRowSet( 100, 100, 60000 );
+    BaseStep baseStep =
+      new BaseStep( mockHelper.stepMeta, mockHelper.stepDataInterface, 0, mockHelper.transMeta, mockHelper.trans );
+    baseStep.setStopped( false );
+    baseStep.setOutputRowSets( Arrays.asList( hopA, hopB ) );
+    RowMetaInterface rowMeta = new RowMeta();
+    rowMeta.addValueMeta( new ValueMetaInteger( "id" ) );
+
+    for ( long i = 0; i < 10; i++ ) {
+      baseStep.putRowTo( rowMeta, new Object[] { i }, hopB );
+    }
+    final List<Object[]> read = Collections.synchronizedList( new ArrayList<Object[]>() );
+    Thread mergingStep = new Thread( new Runnable() {
+      @Override
+      public void run() {
+        readRows( hopB, 10, read );
+        readRows( hopA, 20, read );
+      }
+    } );
+    mergingStep.start();
+    for ( long i = 0; i < 20; i++ ) {
+      baseStep.putRowTo( rowMeta, new Object[] { i }, hopA );
+    }
+    mergingStep.join();
+
+    assertEquals( 30, read.size() );
+  }
+
+  private static void readRows( RowSet rowSet, int nrRows, List<Object[]> read ) {
+    for ( int i = 0; i < nrRows; ) {
+      Object[] row = rowSet.getRowWait( 10, TimeUnit.MILLISECONDS );
+      if ( row != null ) {
+        read.add( row );
+        i++;
+      }
+    }
+  }
+
+  @Test
+  public void getRowsTakesTheBufferedRows() throws KettleException {
+    when( mockHelper.trans.isRunning() ).thenReturn( true );
+    BaseStep baseStep =
+      new BaseStep( mockHelper.stepMeta, mockHelper.stepDataInterface, 0, mockHelper.transMeta, mockHelper.trans );
+    RowMetaInterface rowMeta = new RowMeta();
+    rowMeta.addValueMeta( new ValueMetaInteger( "id" ) );
+    RowSet rowSet = new BlockingRowSet( 100 );
+    for ( long i = 0; i < 10; i++ ) {
+      rowSet.putRow( rowMeta, new Object[] { i } );
+    }
+    rowSet.setDone();
+    baseStep.addRowSetToInputRowSets( rowSet );
+
+    List<Object[]> rows = baseStep.getRows( 8 );
+    assertEquals( 8, rows.size() );
+    for ( int i = 0; i < rows.size(); i++ ) {
+      assertEquals( (long) i, rows.get( i )[ 0 ] );
+    }
+    assertEquals( 2, baseStep.getRows( 8 ).size() );
+    assertTrue( baseStep.getRows( 8 ).isEmpty() );
+    assertEquals( 10, baseStep.getLinesRead() );
+  }
+
+  @Test
+  public void putRowsHandsTheRowsToTheOnlyRowSetInOneGo() throws KettleException {
+    when( mockHelper.trans.isRunning() ).thenReturn( true );
+    BaseStep baseStep =
+      new BaseStep( mockHelper.stepMeta, mockHelper.stepDataInterface, 0, mockHelper.transMeta, mockHelper.trans );
+    RowMetaInterface rowMeta = new RowMeta();
+    rowMeta.addValueMeta( new ValueMetaInteger( "id" ) );
+    RowSet rowSet = spy( new BlockingRowSet( 100 ) );
+    baseStep.addRowSetToOutputRowSets( rowSet );
+
+    List<Object[]> rows = new ArrayList<>();
+    for ( long i = 0; i < 10; i++ ) {
+      rows.add( new Object[] { i } );
+    }
+    baseStep.putRows( rowMeta, rows );
+
+    verify( rowSet, times( 1 ) ).putRows( any( RowMetaInterface.class ), anyListOf( Object[].class ) );
+    for ( long i = 0; i < 10; i++ ) {
+      assertEquals( i, rowSet.getRowImmediate()[ 0 ] );
+    }
+    assertNull( rowSet.getRowImmediate() );
+    assertEquals( 10, baseStep.getLinesWritten() );
+  }
 }
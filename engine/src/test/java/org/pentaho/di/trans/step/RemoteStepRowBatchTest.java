@@ -0,0 +1,177 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2020 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+
+package org.pentaho.di.trans.step;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.pentaho.di.core.BlockingRowSet;
+import org.pentaho.di.core.Const;
+import org.pentaho.di.core.compress.CompressionPluginType;
+import org.pentaho.di.core.compress.CompressionProvider;
+import org.pentaho.di.core.compress.CompressionProviderFactory;
+import org.pentaho.di.core.plugins.PluginRegistry;
+import org.pentaho.di.core.row.RowMeta;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.value.ValueMetaInteger;
+import org.pentaho.di.core.row.value.ValueMetaString;
+import org.pentaho.di.junit.rules.RestorePDIEngineEnvironment;
+import org.pentaho.di.trans.TransMeta;
+import org.pentaho.di.www.SocketRepository;
+
+public class RemoteStepRowBatchTest {
+  @ClassRule public static RestorePDIEngineEnvironment env = new RestorePDIEngineEnvironment();
+
+  private static final int ROWS = 5000;
+
+  @BeforeClass
+  public static void setUpBeforeClass() throws Exception {
+    PluginRegistry.addPluginType( CompressionPluginType.getInstance() );
+    PluginRegistry.init( false );
+  }
+
+  private static RowMetaInterface createRowMeta() {
+    RowMetaInterface rowMeta = new RowMeta();
+    rowMeta.addValueMeta( new ValueMetaString( "name" ) );
+    rowMeta.addValueMeta( new ValueMetaInteger( "id" ) );
+    return rowMeta;
+  }
+
+  private void assertRoundTrip( String compression ) throws Exception {
+    CompressionProvider provider =
+      CompressionProviderFactory.getInstance().getCompressionProviderByName( compression );
+    assertTrue( RemoteStepRowBatchWriter.supports( provider ) );
+    RowMetaInterface rowMeta = createRowMeta();
+
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    RemoteStepRowBatchWriter.writeHandshake( bytes, provider );
+    DataOutputStream out = new DataOutputStream( bytes );
+    // A small batch size, so the rows are sent in a number of batches
+    RemoteStepRowBatchWriter writer = new RemoteStepRowBatchWriter( out, rowMeta, provider, 1024 );
+    for ( int i = 0; i < ROWS; i++ ) {
+      writer.addRow( new Object[] { "name" + i, (long) i } );
+      if ( i == ROWS / 2 ) {
+        writer.flush();
+      }
+    }
+    writer.finish();
+    out.flush();
+
+    BufferedInputStream in = new BufferedInputStream( new ByteArrayInputStream( bytes.toByteArray() ) );
+    CompressionProvider detected = RemoteStepRowBatchReader.readHandshake( in );
+    assertEquals( provider.getName(), detected.getName() );
+    RemoteStepRowBatchReader reader = new RemoteStepRowBatchReader( new DataInputStream( in ), rowMeta, detected );
+    for ( int i = 0; i < ROWS; i++ ) {
+      assertArrayEquals( new Object[] { "name" + i, (long) i }, reader.readRow() );
+    }
+    assertNull( reader.readRow() );
+    assertNull( reader.readRow() );
+  }
+
+  @Test
+  public void rowsAreReadUncompressed() throws Exception {
+    assertRoundTrip( "None" );
+  }
+
+  @Test
+  public void rowsAreReadFromGZipBatches() throws Exception {
+    assertRoundTrip( "GZip" );
+  }
+
+  @Test
+  public void rowsAreReadFromSnappyBatches() throws Exception {
+    assertRoundTrip( "Snappy" );
+  }
+
+  @Test
+  public void streamWithoutHandshakeIsReset() throws Exception {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream( bytes );
+    createRowMeta().writeMeta( out );
+    out.flush();
+
+    BufferedInputStream in = new BufferedInputStream( new ByteArrayInputStream( bytes.toByteArray() ) );
+    assertNull( RemoteStepRowBatchReader.readHandshake( in ) );
+    // The legacy stream starts with the number of fields of the row metadata
+    assertEquals( 2, new DataInputStream( in ).readInt() );
+  }
+
+  @Test
+  public void emptyStreamHasNoHandshake() throws Exception {
+    BufferedInputStream in = new BufferedInputStream( new ByteArrayInputStream( new byte[ 0 ] ) );
+    assertNull( RemoteStepRowBatchReader.readHandshake( in ) );
+    assertEquals( -1, in.read() );
+  }
+
+  @Test
+  public void compressedStreamWithoutRowsIsClosed() throws Exception {
+    BaseStep baseStep = mock( BaseStep.class );
+    TransMeta transMeta = mock( TransMeta.class );
+    SocketRepository socketRepository = mock( SocketRepository.class );
+    when( baseStep.getTransMeta() ).thenReturn( transMeta );
+    when( transMeta.getSizeRowset() ).thenReturn( 10 );
+    when( baseStep.environmentSubstitute( anyString() ) ).thenReturn( "0" );
+    when( baseStep.getSocketRepository() ).thenReturn( socketRepository );
+    when( baseStep.getServerSockets() ).thenReturn( new ArrayList<>() );
+    when( baseStep.getVariable( Const.KETTLE_REMOTE_STEP_BATCH_COMPRESSION ) ).thenReturn( "GZip" );
+    when( socketRepository.openServerSocket( anyInt(), anyString() ) ).thenReturn( new ServerSocket( 0 ) );
+
+    // The cluster schema compresses the streams as well, the partition of this sender gets no rows
+    RemoteStep remoteStep = new RemoteStep( "localhost", "localhost", "0", "source", 0, "target", 0, "master",
+      "slave", 1000, true, createRowMeta() );
+    remoteStep.openServerSocket( baseStep );
+    BlockingRowSet rowSet = remoteStep.openWriterSocket();
+    rowSet.setDone();
+
+    try ( Socket socket = new Socket( "localhost", remoteStep.getServerSocket().getLocalPort() ) ) {
+      BufferedInputStream in = new BufferedInputStream( socket.getInputStream() );
+      assertEquals( "GZip", RemoteStepRowBatchReader.readHandshake( in ).getName() );
+      assertEquals( -1, in.read() );
+    } finally {
+      remoteStep.getServerSocket().close();
+    }
+    verify( baseStep, never() ).setErrors( anyLong() );
+  }
+}
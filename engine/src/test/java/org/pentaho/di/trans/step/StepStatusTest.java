@@ -2,7 +2,7 @@
  *
  * Pentaho Data Integration
  *
- * Copyright (C) 2002-2017 by Hitachi Vantara : http://www.pentaho.com
+ * Copyright (C) 2002-2020 by Hitachi Vantara : http://www.pentaho.com
  *
  *******************************************************************************
  *
@@ -22,8 +22,11 @@
 package org.pentaho.di.trans.step;
 
 import org.junit.Test;
+import org.pentaho.di.core.exception.KettleException;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 
 public class StepStatusTest {
 
@@ -34,4 +37,28 @@ public class StepStatusTest {
     String[] overrides = status.getTransLogFields( "Override" );
     assertEquals( "Override", overrides[10] );
   }
+
+  @Test
+  public void partitionRowsAreSerialized() throws KettleException {
+    StepStatus status = createStatus();
+    status.setPartitionRows( new long[] { 10, 0, 250 } );
+
+    StepStatus loaded = new StepStatus().fromXML( status.getXML() );
+    assertArrayEquals( new long[] { 10, 0, 250 }, loaded.getPartitionRows() );
+  }
+
+  @Test
+  public void partitionRowsAreOptional() throws KettleException {
+    StepStatus loaded = new StepStatus().fromXML( createStatus().getXML() );
+    assertNull( loaded.getPartitionRows() );
+  }
+
+  private StepStatus createStatus() {
+    StepStatus status = new StepStatus();
+    status.setStepname( "step" );
+    status.setStatusDescription( "Running" );
+    status.setSpeed( "-" );
+    status.setPriority( "-" );
+    return status;
+  }
 }
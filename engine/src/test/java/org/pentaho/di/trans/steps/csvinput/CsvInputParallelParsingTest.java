@@ -0,0 +1,126 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2020 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.steps.csvinput;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.pentaho.di.core.Const;
+import org.pentaho.di.junit.rules.RestorePDIEngineEnvironment;
+import org.pentaho.di.trans.TransTestingUtil;
+import org.pentaho.di.trans.step.StepDataInterface;
+import org.pentaho.di.trans.steps.StepMockUtil;
+import org.pentaho.di.trans.steps.mock.StepMockHelper;
+import org.pentaho.di.trans.steps.textfileinput.TextFileInputField;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class CsvInputParallelParsingTest extends CsvInputUnitTestBase {
+  @ClassRule public static RestorePDIEngineEnvironment env = new RestorePDIEngineEnvironment();
+
+  // With a buffer of 1024 bytes a chunk is about 64 KB, so the file is parsed in a number of chunks
+  private static final int ROWS = 10000;
+
+  private CsvInput csvInput;
+  private StepMockHelper<CsvInputMeta, StepDataInterface> stepMockHelper;
+
+  @Before
+  public void setUp() throws Exception {
+    stepMockHelper = StepMockUtil.getStepMockHelper( CsvInputMeta.class, "CsvInputParallelParsingTest" );
+    csvInput = new CsvInput(
+      stepMockHelper.stepMeta, stepMockHelper.stepDataInterface, 0, stepMockHelper.transMeta,
+      stepMockHelper.trans );
+    csvInput.setVariable( Const.KETTLE_CSV_INPUT_PARSER_THREADS, "4" );
+  }
+
+  @After
+  public void cleanUp() {
+    stepMockHelper.cleanUp();
+  }
+
+  private String createContent( boolean header ) {
+    StringBuilder content = new StringBuilder( header ? "a,b\r\n" : "" );
+    for ( int i = 0; i < ROWS; i++ ) {
+      content.append( "name" ).append( i ).append( ",\"value, " ).append( i ).append( "\"\r\n" );
+    }
+    return content.toString();
+  }
+
+  @Test
+  public void rowsAreNumberedInTheOrderOfTheFile() throws Exception {
+    File tmp = createTestFile( ENCODING, createContent( false ) );
+    CsvInputData data = new CsvInputData();
+    CsvInputMeta meta = createMeta( tmp, createInputFileFields( "a", "b" ) );
+    meta.setRowNumField( "rownum" );
+    List<Object[]> actual;
+    try {
+      csvInput.init( meta, data );
+      actual = TransTestingUtil.execute( csvInput, meta, data, ROWS, true );
+    } finally {
+      csvInput.dispose( meta, data );
+      tmp.delete();
+    }
+
+    List<Object[]> expected = new ArrayList<>();
+    for ( int i = 0; i < ROWS; i++ ) {
+      expected.add( new Object[] { "name" + i, "value, " + i, i + 1L } );
+    }
+    TransTestingUtil.assertResult( expected, actual );
+    assertEquals( ROWS, csvInput.getLinesInput() );
+  }
+
+  @Test
+  public void lazyConversionIsKept() throws Exception {
+    File tmp = createTestFile( ENCODING, createContent( true ) );
+    CsvInputData data = new CsvInputData();
+    CsvInputMeta meta = createMeta( tmp, createInputFileFields( "a", "b" ) );
+    meta.setHeaderPresent( true );
+    meta.setLazyConversionActive( true );
+    List<Object[]> actual;
+    try {
+      csvInput.init( meta, data );
+      actual = TransTestingUtil.execute( csvInput, meta, data, ROWS, true );
+    } finally {
+      csvInput.dispose( meta, data );
+      tmp.delete();
+    }
+
+    for ( int i = 0; i < ROWS; i++ ) {
+      assertArrayEquals( ( "name" + i ).getBytes( ENCODING ), (byte[]) actual.get( i )[ 0 ] );
+      assertArrayEquals( ( "value, " + i ).getBytes( ENCODING ), (byte[]) actual.get( i )[ 1 ] );
+    }
+  }
+
+  @Override
+  CsvInputMeta createMeta( File file, TextFileInputField[] fields ) {
+    CsvInputMeta meta = super.createMeta( file, fields );
+    meta.setRunningInParallel( false );
+    return meta;
+  }
+}
@@ -24,8 +24,13 @@ package org.pentaho.di.trans.steps.databasejoin;
 
 import org.junit.Before;
 import org.junit.Test;
+import org.pentaho.di.core.RowMetaAndData;
 import org.pentaho.di.core.database.Database;
+import org.pentaho.di.core.exception.KettleDatabaseException;
 import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.row.RowMeta;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.value.ValueMetaInteger;
 import org.pentaho.di.trans.Trans;
 import org.pentaho.di.trans.TransMeta;
 import org.pentaho.di.trans.step.StepMeta;
@@ -34,13 +39,22 @@ import org.pentaho.di.trans.step.StepPartitioningMeta;
 
 import java.sql.Connection;
 import java.sql.PreparedStatement;
+import java.sql.Savepoint;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 import static junit.framework.TestCase.assertFalse;
 import static junit.framework.TestCase.assertTrue;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.contains;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -69,6 +83,7 @@ public class DatabaseJoinTest {
     mockStepDataInterface = mock( DatabaseJoinData.class, withSettings().extraInterfaces( StepMetaInterface.class ) );
     mockStepDataInterface.db = mock( Database.class );
     mockStepDataInterface.pstmt = mock( PreparedStatement.class );
+    mockStepDataInterface.batchStatements = new HashMap<>();
     mockDatabaseJoin = spy( new DatabaseJoin( mockStepMeta, mockStepDataInterface, 1, mockTransMeta, mockTrans ) );
   }
 
@@ -123,4 +138,87 @@ public class DatabaseJoinTest {
     verify( mockStepDataInterface.db, times( 0 ) ).cancelStatement( any( PreparedStatement.class ) );
     assertFalse( mockStepDataInterface.isCanceled );
   }
+
+  @Test
+  public void testQueryBatchTagsTheRowsOfEveryParameterRow() throws KettleException {
+    DatabaseJoinData data = new DatabaseJoinData();
+    data.db = mock( Database.class );
+    data.batchSize = 2;
+    data.batchSQL = "SELECT name FROM customers WHERE id = ?";
+    data.lookupRowMeta = new RowMeta();
+    data.lookupRowMeta.addValueMeta( new ValueMetaInteger( "id" ) );
+    when( data.db.prepareSQL( anyString() ) ).thenReturn( mock( PreparedStatement.class ) );
+
+    // Every id finds itself twice, except for id 2
+    when( data.db.getRows( any( PreparedStatement.class ), any( RowMetaInterface.class ), any( Object[].class ),
+      any( List.class ) ) ).thenAnswer( invocation -> {
+        Object[] parameters = (Object[]) invocation.getArguments()[2];
+        @SuppressWarnings( "unchecked" )
+        List<Object[]> rows = (List<Object[]>) invocation.getArguments()[3];
+        for ( int k = 0; k < parameters.length; k++ ) {
+          if ( !Long.valueOf( 2L ).equals( parameters[k] ) ) {
+            rows.add( new Object[] { (long) k, "a" + parameters[k] } );
+            rows.add( new Object[] { (long) k, "b" + parameters[k] } );
+          }
+        }
+        return null;
+      } );
+
+    List<RowMetaAndData> parameters = Arrays.asList(
+      new RowMetaAndData( data.lookupRowMeta, 1L ),
+      new RowMetaAndData( data.lookupRowMeta, 2L ),
+      new RowMetaAndData( data.lookupRowMeta, 3L ) );
+    Map<Integer, List<Object[]>> results = mockDatabaseJoin.queryBatch( data, parameters );
+
+    assertEquals( 2, results.size() );
+    assertEquals( "a1", results.get( 0 ).get( 0 )[0] );
+    assertEquals( "b1", results.get( 0 ).get( 1 )[0] );
+    assertFalse( results.containsKey( 1 ) );
+    assertEquals( 2, results.get( 2 ).size() );
+    assertEquals( "a3", results.get( 2 ).get( 0 )[0] );
+
+    // A statement for two parameter rows, then one for the last
+    verify( data.db ).prepareSQL( contains( "UNION ALL" ) );
+    verify( data.db, times( 2 ) ).prepareSQL( anyString() );
+  }
+
+  @Test
+  public void testStopRunningCancelsTheBatchStatements() throws KettleException {
+    doReturn( false ).when( mockDatabaseJoin ).isStopped();
+    doReturn( false ).when( mockStepDataInterface ).isDisposed();
+    when( mockStepDataInterface.db.getConnection() ).thenReturn( mock( Connection.class ) );
+    PreparedStatement batchStatement = mock( PreparedStatement.class );
+    mockStepDataInterface.batchStatements.put( 2, batchStatement );
+
+    mockDatabaseJoin.stopRunning( mockStepMetaInterface, mockStepDataInterface );
+
+    verify( mockStepDataInterface.db ).cancelStatement( mockStepDataInterface.pstmt );
+    verify( mockStepDataInterface.db ).cancelStatement( batchStatement );
+  }
+
+  @Test
+  public void testFailedBatchIsRolledBackAndStopsBatching() throws KettleException {
+    DatabaseJoinData data = new DatabaseJoinData();
+    data.db = mock( Database.class );
+    data.batchSize = 2;
+    data.batchSQL = "SELECT name FROM customers WHERE id = ?";
+    data.lookupRowMeta = new RowMeta();
+    data.lookupRowMeta.addValueMeta( new ValueMetaInteger( "id" ) );
+    data.batchInTransaction = true;
+    data.batchSavepoints = true;
+    Savepoint savepoint = mock( Savepoint.class );
+    when( data.db.setSavepoint() ).thenReturn( savepoint );
+    when( data.db.prepareSQL( anyString() ) ).thenReturn( mock( PreparedStatement.class ) );
+    when( data.db.getRows( any( PreparedStatement.class ), any( RowMetaInterface.class ), any( Object[].class ),
+      any( List.class ) ) ).thenThrow( new KettleDatabaseException( "syntax error" ) );
+
+    List<RowMetaAndData> parameters = Arrays.asList(
+      new RowMetaAndData( data.lookupRowMeta, 1L ),
+      new RowMetaAndData( data.lookupRowMeta, 2L ) );
+
+    assertNull( mockDatabaseJoin.queryBatchOrStopBatching( data, parameters ) );
+    verify( data.db ).rollback( savepoint );
+    verify( data.db, never() ).rollback();
+    assertEquals( 0, data.batchSize );
+  }
 }
@@ -28,6 +28,8 @@ import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
@@ -42,6 +44,7 @@ import static org.mockito.Mockito.doNothing;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.mockingDetails;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
@@ -51,10 +54,12 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
+import java.sql.Savepoint;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
 import org.junit.After;
@@ -69,10 +74,12 @@ import org.mockito.internal.util.reflection.Whitebox;
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
 import org.pentaho.di.core.KettleEnvironment;
+import org.pentaho.di.core.RowMetaAndData;
 import org.pentaho.di.core.RowSet;
 import org.pentaho.di.core.database.Database;
 import org.pentaho.di.core.database.DatabaseMeta;
 import org.pentaho.di.core.database.MySQLDatabaseMeta;
+import org.pentaho.di.core.exception.KettleDatabaseException;
 import org.pentaho.di.core.exception.KettleException;
 import org.pentaho.di.core.logging.LoggingObjectInterface;
 import org.pentaho.di.core.row.RowMeta;
@@ -634,6 +641,78 @@ public class DatabaseLookupUTest {
     return rowMetaOutput;
   }
 
+  @Test
+  public void queryBatchFindsEveryKeyOfTheBatch() throws Exception {
+    DatabaseLookup look =
+      new DatabaseLookup( mockHelper.stepMeta, mockHelper.stepDataInterface, 0, mockHelper.transMeta,
+        mockHelper.trans );
+    DatabaseLookupData lookData = new DatabaseLookupData();
+    lookData.db = mock( Database.class );
+    lookData.lookupMeta = new RowMeta();
+    lookData.lookupMeta.addValueMeta( new ValueMetaInteger( ID_FIELD ) );
+    lookData.batchSize = 2;
+    lookData.batchParameterMeta = new RowMeta();
+    lookData.batchParameterMeta.addValueMeta( new ValueMetaInteger( ID_FIELD ) );
+    lookData.batchParameterMeta.addValueMeta( new ValueMetaInteger( ID_FIELD ) );
+    for ( Long id : new Long[] { 1L, 2L, null } ) {
+      lookData.batchKeys.put( new RowMetaAndData( lookData.lookupMeta, id ), new Object[] { id } );
+    }
+    Whitebox.setInternalState( look, "meta", new DatabaseLookupMeta() );
+    Whitebox.setInternalState( look, "data", lookData );
+
+    // Only the key 1 is in the table
+    RowMeta resultMeta = new RowMeta();
+    resultMeta.addValueMeta( new ValueMetaInteger( ID_FIELD ) );
+    resultMeta.addValueMeta( new ValueMetaString( "name" ) );
+    when( lookData.db.getRows( any( PreparedStatement.class ), any( RowMetaInterface.class ), any( Object[].class ),
+      any( List.class ) ) ).thenAnswer( invocation -> {
+        assertArrayEquals( new Object[] { 1L, 2L }, (Object[]) invocation.getArguments()[ 2 ] );
+        @SuppressWarnings( "unchecked" )
+        List<Object[]> rows = (List<Object[]>) invocation.getArguments()[ 3 ];
+        rows.add( new Object[] { 1L, "one" } );
+        return resultMeta;
+      } );
+
+    Map<RowMetaAndData, Object[]> results = look.queryBatch();
+
+    assertEquals( 3, results.size() );
+    assertArrayEquals( new Object[] { "one" }, results.get( new RowMetaAndData( lookData.lookupMeta, 1L ) ) );
+    assertSame( DatabaseLookup.NOT_FOUND, results.get( new RowMetaAndData( lookData.lookupMeta, 2L ) ) );
+    assertSame( DatabaseLookup.NOT_FOUND,
+      results.get( new RowMetaAndData( lookData.lookupMeta, new Object[] { null } ) ) );
+    assertEquals( 1, lookData.batchReturnMeta.size() );
+  }
+
+  @Test
+  public void failedBatchIsRolledBackAndStopsBatching() throws Exception {
+    DatabaseLookup look =
+      new DatabaseLookup( mockHelper.stepMeta, mockHelper.stepDataInterface, 0, mockHelper.transMeta,
+        mockHelper.trans );
+    DatabaseLookupData lookData = new DatabaseLookupData();
+    lookData.db = mock( Database.class );
+    lookData.lookupMeta = new RowMeta();
+    lookData.lookupMeta.addValueMeta( new ValueMetaInteger( ID_FIELD ) );
+    lookData.batchSize = 2;
+    lookData.batchParameterMeta = new RowMeta();
+    lookData.batchParameterMeta.addValueMeta( new ValueMetaInteger( ID_FIELD ) );
+    lookData.batchParameterMeta.addValueMeta( new ValueMetaInteger( ID_FIELD ) );
+    lookData.batchKeys.put( new RowMetaAndData( lookData.lookupMeta, 1L ), new Object[] { 1L } );
+    lookData.batchInTransaction = true;
+    lookData.batchSavepoints = true;
+    Whitebox.setInternalState( look, "meta", new DatabaseLookupMeta() );
+    Whitebox.setInternalState( look, "data", lookData );
+
+    Savepoint savepoint = mock( Savepoint.class );
+    when( lookData.db.setSavepoint() ).thenReturn( savepoint );
+    when( lookData.db.getRows( any( PreparedStatement.class ), any( RowMetaInterface.class ), any( Object[].class ),
+      any( List.class ) ) ).thenThrow( new KettleDatabaseException( "too many terms" ) );
+
+    assertNull( look.queryBatchOrStopBatching() );
+    verify( lookData.db ).rollback( savepoint );
+    verify( lookData.db, never() ).rollback();
+    assertEquals( 0, lookData.batchSize );
+  }
+
   public class MockDatabaseLookup extends DatabaseLookup {
     public MockDatabaseLookup( StepMeta stepMeta, StepDataInterface stepDataInterface, int copyNr, TransMeta transMeta, Trans trans ) {
       super( stepMeta, stepDataInterface, copyNr, transMeta, trans );
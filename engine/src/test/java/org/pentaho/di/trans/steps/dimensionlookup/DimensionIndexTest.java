@@ -0,0 +1,106 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2020 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.steps.dimensionlookup;
+
+import java.util.Date;
+
+import org.junit.Test;
+import org.pentaho.di.core.row.RowMeta;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.value.ValueMetaDate;
+import org.pentaho.di.core.row.value.ValueMetaInteger;
+import org.pentaho.di.core.row.value.ValueMetaString;
+
+import static org.junit.Assert.assertEquals;
+
+public class DimensionIndexTest {
+
+  private static final Date D1 = new Date( 1000L );
+  private static final Date D2 = new Date( 2000L );
+  private static final Date D3 = new Date( 3000L );
+  private static final Date MAX = new Date( 100000L );
+
+  private RowMetaInterface createRowMeta() {
+    RowMetaInterface rowMeta = new RowMeta();
+    rowMeta.addValueMeta( new ValueMetaInteger( "tk" ) );
+    rowMeta.addValueMeta( new ValueMetaInteger( "version" ) );
+    rowMeta.addValueMeta( new ValueMetaString( "name" ) );
+    rowMeta.addValueMeta( new ValueMetaDate( "date_from" ) );
+    rowMeta.addValueMeta( new ValueMetaDate( "date_to" ) );
+    return rowMeta;
+  }
+
+  private static Object[] version( long tk, long version, String name ) {
+    return new Object[] { tk, version, name, null, null };
+  }
+
+  @Test
+  public void findsTheVersionValidOnADate() throws Exception {
+    RowMetaInterface keyMeta = new RowMeta();
+    keyMeta.addValueMeta( new ValueMetaInteger( "customer_id" ) );
+    DimensionIndex index = new DimensionIndex( keyMeta, createRowMeta(), false, 3, 4 );
+
+    // Enough keys to sort more than the small ranges
+    for ( long id = 100; id > 0; id-- ) {
+      index.loadVersion( new Object[] { id }, version( id * 10 + 2, 2, "new" + id ), D2, MAX );
+      index.loadVersion( new Object[] { id }, version( id * 10 + 1, 1, "old" + id ), D1, D2 );
+    }
+    index.loadVersion( new Object[] { null }, version( 0, 1, null ), null, null );
+    index.sort();
+
+    assertEquals( 200, index.size() );
+    assertEquals( "old7", index.getRow( index.lookup( new Object[] { 7L }, new Date( 1500L ) ) )[ 2 ] );
+    assertEquals( "new7", index.getRow( index.lookup( new Object[] { 7L }, D2 ) )[ 2 ] );
+    assertEquals( D2, index.getRow( index.lookup( new Object[] { 7L }, D2 ) )[ 3 ] );
+    assertEquals( -1, index.lookup( new Object[] { 7L }, new Date( 500L ) ) );
+    assertEquals( -1, index.lookup( new Object[] { 101L }, D2 ) );
+    assertEquals( -1, index.lookup( new Object[] { null }, D2 ) );
+    assertEquals( 2, index.getVersions( new Object[] { 42L } ).size() );
+  }
+
+  @Test
+  public void keepsTrackOfNewVersions() throws Exception {
+    RowMetaInterface keyMeta = new RowMeta();
+    keyMeta.addValueMeta( new ValueMetaString( "country" ) );
+    keyMeta.addValueMeta( new ValueMetaString( "code" ) );
+    DimensionIndex index = new DimensionIndex( keyMeta, createRowMeta(), true, 3, 4 );
+
+    index.loadVersion( new Object[] { "BE", "A" }, version( 1, 1, "first" ), null, MAX );
+    index.sort();
+    assertEquals( 0, index.lookup( new Object[] { "BE", "A" }, D1 ) );
+
+    // A new version closes the previous one
+    int previous = index.findVersion( new Object[] { "BE", "A" }, 1, 1L );
+    index.setToDate( previous, D3 );
+    int added = index.addVersion( new Object[] { "BE", "A" }, version( 2, 2, "second" ), D3, MAX );
+    assertEquals( D3, index.getRow( previous )[ 4 ] );
+    assertEquals( previous, index.lookup( new Object[] { "BE", "A" }, D2 ) );
+    assertEquals( added, index.lookup( new Object[] { "BE", "A" }, D3 ) );
+    assertEquals( added, index.findVersion( new Object[] { "BE", "A" }, 0, 2L ) );
+
+    // A new key
+    int other = index.addVersion( new Object[] { "NL", "A" }, version( 3, 1, "other" ), D1, MAX );
+    assertEquals( other, index.lookup( new Object[] { "NL", "A" }, D3 ) );
+    assertEquals( -1, index.lookup( new Object[] { "NL", "B" }, D3 ) );
+  }
+}
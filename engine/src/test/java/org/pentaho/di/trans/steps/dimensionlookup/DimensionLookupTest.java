@@ -2,7 +2,7 @@
  *
  * Pentaho Data Integration
  *
- * Copyright (C) 2002-2018 by Hitachi Vantara : http://www.pentaho.com
+ * Copyright (C) 2002-2020 by Hitachi Vantara : http://www.pentaho.com
  *
  *******************************************************************************
  *
@@ -24,22 +24,29 @@ package org.pentaho.di.trans.steps.dimensionlookup;
 
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.InOrder;
 import org.pentaho.di.core.database.Database;
 import org.pentaho.di.core.database.DatabaseMeta;
+import org.pentaho.di.core.row.RowMeta;
 import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.value.ValueMetaInteger;
 import org.pentaho.di.trans.Trans;
 import org.pentaho.di.trans.TransMeta;
 import org.pentaho.di.trans.step.StepMeta;
 import org.pentaho.di.trans.step.StepPartitioningMeta;
 
 import java.sql.Connection;
+import java.sql.PreparedStatement;
 import java.util.Date;
 import java.util.List;
 
+import static org.junit.Assert.assertEquals;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Mockito.doNothing;
 import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
@@ -102,4 +109,63 @@ public class DimensionLookupTest {
     dimensionLookupSpy.dimInsert( rowMetaInterface, objects, null, true, null, date, date );
     verify( databaseMeta, times( 2 ) ).supportsAutoGeneratedKeys();
   }
+
+  @Test
+  public void testPunchThroughIsExecutedBeforeTheRowsWrittenAfterIt() throws Exception {
+    DimensionLookupData data = new DimensionLookupData();
+    data.db = dimensionLookupData.db;
+    data.keynrs = new int[] { };
+    data.fieldnrs = new int[] { };
+    data.batchingWrites = true;
+    data.prepStatementPunchThrough = mock( PreparedStatement.class );
+    data.punchThroughRowMeta = new RowMeta();
+    data.prepStatementDimensionUpdate = mock( PreparedStatement.class );
+    data.dimensionUpdateRowMeta = new RowMeta();
+    data.dimensionUpdateRowMeta.addValueMeta( new ValueMetaInteger( "tk" ) );
+    dimensionLookupSpy.setData( data );
+    doReturn( 100 ).when( dimensionLookupMeta ).getCommitSize();
+
+    // The punch through of a key, then a type 1 update of its current version with a newer value
+    RowMetaInterface rowMeta = new RowMeta();
+    dimensionLookupSpy.dimPunchThrough( rowMeta, new Object[] { } );
+    dimensionLookupSpy.dimPunchThrough( rowMeta, new Object[] { } );
+    dimensionLookupSpy.dimUpdate( rowMeta, new Object[] { }, 1L, new Date() );
+
+    InOrder inOrder = inOrder( data.db, data.prepStatementPunchThrough );
+    inOrder.verify( data.db, times( 2 ) ).insertRow( data.prepStatementPunchThrough, true, false );
+    inOrder.verify( data.prepStatementPunchThrough ).executeBatch();
+    inOrder.verify( data.db ).insertRow( data.prepStatementDimensionUpdate, true, false );
+    verify( data.prepStatementDimensionUpdate, never() ).executeBatch();
+  }
+
+  @Test
+  public void testBatchesAreExecutedWhenTheStatementOfAKeyRunsEarlier() throws Exception {
+    DimensionLookupData data = new DimensionLookupData();
+    data.db = dimensionLookupData.db;
+    data.keynrs = new int[] { 0 };
+    data.fieldnrs = new int[] { };
+    data.batchingWrites = true;
+    data.prepStatementPunchThrough = mock( PreparedStatement.class );
+    data.punchThroughRowMeta = new RowMeta();
+    data.prepStatementDimensionUpdate = mock( PreparedStatement.class );
+    data.dimensionUpdateRowMeta = new RowMeta();
+    data.dimensionUpdateRowMeta.addValueMeta( new ValueMetaInteger( "tk" ) );
+    dimensionLookupSpy.setData( data );
+    doReturn( 100 ).when( dimensionLookupMeta ).getCommitSize();
+
+    // Other keys are kept in the batch, the update of key 1 after its punch through is not
+    RowMetaInterface rowMeta = new RowMeta();
+    dimensionLookupSpy.dimPunchThrough( rowMeta, new Object[] { 1L } );
+    dimensionLookupSpy.dimUpdate( rowMeta, new Object[] { 2L }, 2L, new Date() );
+    dimensionLookupSpy.dimPunchThrough( rowMeta, new Object[] { 3L } );
+    verify( data.prepStatementPunchThrough, never() ).executeBatch();
+
+    dimensionLookupSpy.dimUpdate( rowMeta, new Object[] { 1L }, 1L, new Date() );
+
+    InOrder inOrder = inOrder( data.db, data.prepStatementDimensionUpdate, data.prepStatementPunchThrough );
+    inOrder.verify( data.prepStatementDimensionUpdate ).executeBatch();
+    inOrder.verify( data.prepStatementPunchThrough ).executeBatch();
+    inOrder.verify( data.db ).insertRow( data.prepStatementDimensionUpdate, true, false );
+    assertEquals( 1, data.batchedWrites );
+  }
 }
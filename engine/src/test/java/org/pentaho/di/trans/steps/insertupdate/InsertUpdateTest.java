@@ -0,0 +1,264 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2020 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.steps.insertupdate;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.AdditionalAnswers.returnsFirstArg;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.aryEq;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.RETURNS_MOCKS;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.pentaho.di.core.RowSet;
+import org.pentaho.di.core.database.Database;
+import org.pentaho.di.core.database.DatabaseMeta;
+import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.logging.LoggingObjectInterface;
+import org.pentaho.di.core.row.RowMeta;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.value.ValueMetaInteger;
+import org.pentaho.di.core.row.value.ValueMetaString;
+import org.pentaho.di.trans.step.RowAdapter;
+import org.pentaho.di.trans.steps.mock.StepMockHelper;
+
+/**
+ * Tests merging the rows of an Insert/Update step into the table in batches.
+ *
+ * @see InsertUpdate
+ */
+public class InsertUpdateTest {
+  private StepMockHelper<InsertUpdateMeta, InsertUpdateData> smh;
+  private DatabaseMeta databaseMeta;
+  private Database db;
+  private PreparedStatement stagingStatement;
+  private InsertUpdateData data;
+  private RowMeta inputRowMeta;
+  private List<Object[]> outputRows;
+
+  @Before
+  public void setUp() throws Exception {
+    smh =
+        new StepMockHelper<InsertUpdateMeta, InsertUpdateData>( "insertUpdate", InsertUpdateMeta.class,
+            InsertUpdateData.class );
+    when( smh.logChannelInterfaceFactory.create( any(), any( LoggingObjectInterface.class ) ) ).thenReturn(
+        smh.logChannelInterface );
+    when( smh.trans.isRunning() ).thenReturn( true );
+
+    databaseMeta = mock( DatabaseMeta.class );
+    when( databaseMeta.supportsBatchUpdates() ).thenReturn( true );
+    when( databaseMeta.quoteField( anyString() ) ).then( returnsFirstArg() );
+    when( databaseMeta.stripCR( anyString() ) ).then( returnsFirstArg() );
+    when( databaseMeta.getQuotedSchemaTableCombination( anyString(), anyString() ) ).thenReturn( "TARGET" );
+    when( databaseMeta.getTemporaryTableName( anyString() ) ).thenReturn( "STAGING" );
+    when( databaseMeta.getSQLCreateTemporaryTable( anyString(), anyString() ) ).thenReturn( "CREATE" );
+    when( databaseMeta.getSQLMergeFromTable( anyString(), anyString(), any( String[].class ),
+      any( String[].class ), any( String[].class ) ) ).thenReturn( "MERGE" );
+
+    InsertUpdateMeta meta = smh.processRowsStepMetaInterface;
+    when( meta.getDatabaseMeta() ).thenReturn( databaseMeta );
+    when( meta.getTableName() ).thenReturn( "TARGET" );
+    when( meta.getKeyLookup() ).thenReturn( new String[] { "ID" } );
+    when( meta.getKeyStream() ).thenReturn( new String[] { "id" } );
+    when( meta.getKeyStream2() ).thenReturn( new String[] { null } );
+    when( meta.getKeyCondition() ).thenReturn( new String[] { "=" } );
+    when( meta.getUpdateLookup() ).thenReturn( new String[] { "ID", "NAME" } );
+    when( meta.getUpdateStream() ).thenReturn( new String[] { "id", "name" } );
+    when( meta.getUpdate() ).thenReturn( new Boolean[] { false, true } );
+
+    stagingStatement = mock( PreparedStatement.class );
+    db = mock( Database.class );
+    when( db.getConnection() ).thenReturn( mock( Connection.class, RETURNS_MOCKS ) );
+    when( db.prepareSQL( anyString() ) ).thenReturn( stagingStatement );
+
+    // The data defaults matter here, so it's not a mock
+    data = new InsertUpdateData();
+    data.db = db;
+    data.commitSize = 100;
+    data.mergeRows = 3;
+
+    inputRowMeta = new RowMeta();
+    inputRowMeta.addValueMeta( new ValueMetaInteger( "id" ) );
+    inputRowMeta.addValueMeta( new ValueMetaString( "name" ) );
+    outputRows = new ArrayList<Object[]>();
+  }
+
+  @After
+  public void cleanUp() {
+    smh.cleanUp();
+  }
+
+  private InsertUpdate createStep( Object[]... rows ) {
+    InsertUpdate step = new InsertUpdate( smh.stepMeta, smh.stepDataInterface, 0, smh.transMeta, smh.trans );
+    RowSet input = smh.getMockInputRowSet( rows );
+    when( input.getRowMeta() ).thenReturn( inputRowMeta );
+    step.setInputRowMeta( inputRowMeta );
+    step.addRowSetToInputRowSets( input );
+    step.addRowListener( new RowAdapter() {
+      @Override
+      public void rowWrittenEvent( RowMetaInterface rowMeta, Object[] row ) {
+        outputRows.add( row );
+      }
+    } );
+    return step;
+  }
+
+  private static Object[] row( long id, String name ) {
+    return new Object[] { id, name };
+  }
+
+  private void processRows( InsertUpdate step, int rows ) throws KettleException {
+    for ( int i = 0; i < rows; i++ ) {
+      assertTrue( step.processRow( smh.processRowsStepMetaInterface, data ) );
+    }
+  }
+
+  @Test
+  public void testRowsAreMergedInBatchesAndTheRestAtTheEndOfTheInput() throws KettleException {
+    InsertUpdate step = createStep( row( 1L, "a" ), row( 2L, "b" ), row( 3L, "c" ), row( 4L, "d" ) );
+
+    processRows( step, 3 );
+    verify( db ).execStatement( "CREATE" );
+    verify( db, times( 1 ) ).execStatement( "MERGE" );
+    assertEquals( 3, outputRows.size() );
+
+    processRows( step, 1 );
+    verify( db, times( 1 ) ).execStatement( "MERGE" );
+    assertEquals( "The last row waits for a full batch", 3, outputRows.size() );
+
+    step.processRow( smh.processRowsStepMetaInterface, data );
+    verify( db, times( 2 ) ).execStatement( "MERGE" );
+    verify( db, times( 2 ) ).execStatement( "DELETE FROM STAGING" );
+    verify( stagingStatement, times( 4 ) ).addBatch();
+    verify( stagingStatement, times( 2 ) ).executeBatch();
+    verify( db, never() ).getLookup( any( PreparedStatement.class ) );
+    assertEquals( 4, outputRows.size() );
+
+    // The merge doesn't tell which rows it inserted or updated
+    assertEquals( 4, step.getLinesOutput() );
+    assertEquals( 0, step.getLinesUpdated() );
+    assertEquals( 0, step.getLinesSkipped() );
+  }
+
+  @Test
+  public void testADuplicateKeyStartsANewBatch() throws KettleException {
+    InsertUpdate step = createStep( row( 1L, "a" ), row( 2L, "b" ), row( 1L, "c" ) );
+
+    processRows( step, 2 );
+    verify( db, never() ).execStatement( "MERGE" );
+
+    processRows( step, 1 );
+    verify( db, times( 1 ) ).execStatement( "MERGE" );
+    assertEquals( 2, outputRows.size() );
+    assertEquals( 1, data.mergeBuffer.size() );
+
+    step.processRow( smh.processRowsStepMetaInterface, data );
+    verify( db, times( 2 ) ).execStatement( "MERGE" );
+    assertEquals( 3, outputRows.size() );
+  }
+
+  @Test
+  public void testMergedRowsAreCommittedEveryCommitSizeRows() throws KettleException {
+    data.commitSize = 4;
+    data.mergeRows = 2;
+    InsertUpdate step = createStep( row( 1L, "a" ), row( 2L, "b" ), row( 3L, "c" ), row( 4L, "d" ),
+      row( 5L, "e" ) );
+
+    processRows( step, 3 );
+    verify( db, never() ).commit();
+
+    processRows( step, 1 );
+    verify( db, times( 1 ) ).commit();
+
+    processRows( step, 1 );
+    step.processRow( smh.processRowsStepMetaInterface, data );
+    verify( db, times( 1 ) ).commit();
+    assertEquals( 1, data.mergedSinceCommit );
+  }
+
+  @Test
+  public void testAKeyNotComparedWithEqualsFallsBackToRowByRow() throws KettleException {
+    when( smh.processRowsStepMetaInterface.getKeyCondition() ).thenReturn( new String[] { "<>" } );
+    assertRowByRow();
+  }
+
+  @Test
+  public void testErrorHandlingFallsBackToRowByRow() throws KettleException {
+    when( smh.stepMeta.isDoingErrorHandling() ).thenReturn( true );
+    assertRowByRow();
+  }
+
+  @Test
+  public void testUniqueConnectionsFallBackToRowByRow() throws KettleException {
+    when( smh.transMeta.isUsingUniqueConnections() ).thenReturn( true );
+    assertRowByRow();
+  }
+
+  @Test
+  public void testADatabaseWithoutMergeStatementFallsBackToRowByRow() throws KettleException {
+    when( databaseMeta.getSQLMergeFromTable( anyString(), anyString(), any( String[].class ),
+      any( String[].class ), any( String[].class ) ) ).thenReturn( null );
+    assertRowByRow();
+  }
+
+  @Test
+  public void testAKeyInsertedFromAnotherFieldFallsBackToRowByRow() throws KettleException {
+    inputRowMeta.addValueMeta( new ValueMetaInteger( "other" ) );
+    when( smh.processRowsStepMetaInterface.getUpdateStream() ).thenReturn( new String[] { "other", "name" } );
+    assertRowByRow();
+  }
+
+  @Test
+  public void testAnUpsertWithoutUniqueIndexOnTheKeysFallsBackToRowByRow() throws KettleException {
+    when( databaseMeta.requiresUniqueIndexForMerge() ).thenReturn( true );
+    when( db.checkUniqueIndexExists( anyString(), anyString(), any( String[].class ) ) ).thenReturn( false );
+    assertRowByRow();
+    verify( db ).checkUniqueIndexExists( anyString(), eq( "TARGET" ), aryEq( new String[] { "ID" } ) );
+  }
+
+  private void assertRowByRow() throws KettleException {
+    InsertUpdate step = createStep( new Object[] { 1L, "a", 2L }, new Object[] { 3L, "b", 4L } );
+
+    processRows( step, 2 );
+    step.processRow( smh.processRowsStepMetaInterface, data );
+    assertEquals( 0, data.mergeRows );
+    verify( db, never() ).execStatement( anyString() );
+    verify( db, times( 2 ) ).getLookup( any( PreparedStatement.class ) );
+    verify( db, times( 2 ) ).insertRow();
+    assertEquals( 2, outputRows.size() );
+  }
+}
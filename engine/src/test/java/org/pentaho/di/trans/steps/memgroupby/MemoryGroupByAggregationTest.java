@@ -341,7 +341,7 @@ public class MemoryGroupByAggregationTest {
     }
 
     MemoryGroupByData data = new MemoryGroupByData();
-    data.map = Maps.newHashMap();
+    data.clearGroups();
 
     // Add to trans
     TransMeta transMeta = mock( TransMeta.class );
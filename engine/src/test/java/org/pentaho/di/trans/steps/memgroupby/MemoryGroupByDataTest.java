@@ -2,7 +2,7 @@
  *
  * Pentaho Data Integration
  *
- * Copyright (C) 2002-2017 by Hitachi Vantara : http://www.pentaho.com
+ * Copyright (C) 2002-2020 by Hitachi Vantara : http://www.pentaho.com
  *
  *******************************************************************************
  *
@@ -24,62 +24,114 @@ package org.pentaho.di.trans.steps.memgroupby;
 
 import org.junit.Before;
 import org.junit.Test;
-import org.junit.runner.RunWith;
-import org.mockito.Mock;
-import org.mockito.invocation.InvocationOnMock;
-import org.mockito.runners.MockitoJUnitRunner;
-import org.mockito.stubbing.Answer;
-import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.RowMeta;
 import org.pentaho.di.core.row.ValueMetaInterface;
+import org.pentaho.di.core.row.value.ValueMetaBigNumber;
+import org.pentaho.di.core.row.value.ValueMetaString;
 
-import java.util.HashMap;
+import java.math.BigDecimal;
+import java.text.Collator;
+import java.util.Arrays;
+import java.util.Locale;
 
-import static org.mockito.Matchers.anyInt;
-import static org.mockito.Matchers.anyObject;
-import static org.mockito.Mockito.when;
-import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 
 /**
  * Created by bmorrise on 2/11/16.
  */
-@RunWith( MockitoJUnitRunner.class ) public class MemoryGroupByDataTest {
+public class MemoryGroupByDataTest {
 
   private MemoryGroupByData data = new MemoryGroupByData();
 
-  @Mock private RowMetaInterface groupMeta;
-  @Mock private ValueMetaInterface valueMeta;
-
   @Before public void setUp() throws Exception {
-    data.groupMeta = groupMeta;
-    when( groupMeta.size() ).thenReturn( 1 );
-    when( groupMeta.getValueMeta( anyInt() ) ).thenReturn( valueMeta );
-    when( valueMeta.convertToNormalStorageType( anyObject() ) ).then( new Answer<Object>() {
-      @Override public Object answer( InvocationOnMock invocation ) throws Throwable {
-        Object argument = invocation.getArguments()[0];
-        return new String( (byte[]) argument );
-      }
-    } );
+    ValueMetaInterface valueMeta = new ValueMetaString( "key" );
+    valueMeta.setStorageType( ValueMetaInterface.STORAGE_TYPE_BINARY_STRING );
+    valueMeta.setStorageMetadata( new ValueMetaString( "key" ) );
+    data.groupMeta = new RowMeta();
+    data.groupMeta.addValueMeta( valueMeta );
+    data.clearGroups();
   }
 
-  @Test public void hashEntryTest() {
-    HashMap<MemoryGroupByData.HashEntry, String> map = new HashMap<>();
-
+  @Test public void groupKeyTest() throws Exception {
     byte[] byteValue1 = "key".getBytes();
     Object[] groupData1 = new Object[1];
     groupData1[0] = byteValue1;
 
-    MemoryGroupByData.HashEntry hashEntry1 = data.getHashEntry( groupData1 );
-    map.put( hashEntry1, "value" );
+    Aggregate aggregate = new Aggregate();
+    data.addGroup( data.getGroupKey( groupData1 ), groupData1, aggregate );
 
     byte[] byteValue2 = "key".getBytes();
     Object[] groupData2 = new Object[1];
     groupData2[0] = byteValue2;
 
-    MemoryGroupByData.HashEntry hashEntry2 = data.getHashEntry( groupData2 );
+    assertSame( aggregate, data.getAggregate( data.getGroupKey( groupData2 ) ) );
+    assertNull( data.getAggregate( data.getGroupKey( new Object[] { "other".getBytes() } ) ) );
+  }
+
+  @Test public void binaryStorageGroupKeyTest() throws Exception {
+    MemoryGroupByData normalData = new MemoryGroupByData();
+    normalData.groupMeta = new RowMeta();
+    normalData.groupMeta.addValueMeta( new ValueMetaString( "key" ) );
+
+    assertArrayEquals( data.getGroupKey( new Object[] { "key".getBytes() } ),
+      normalData.getGroupKey( new Object[] { "key" } ) );
+  }
+
+  @Test public void nullGroupKeyTest() throws Exception {
+    assertArrayEquals( data.getGroupKey( new Object[] { null } ), data.getGroupKey( new Object[] { new byte[0] } ) );
+    assertFalse( Arrays.equals( data.getGroupKey( new Object[] { null } ),
+      data.getGroupKey( new Object[] { " ".getBytes() } ) ) );
+  }
+
+  @Test public void caseInsensitiveGroupKeyTest() throws Exception {
+    ValueMetaInterface valueMeta = new ValueMetaString( "key" );
+    valueMeta.setCaseInsensitive( true );
+    data.groupMeta = new RowMeta();
+    data.groupMeta.addValueMeta( valueMeta );
+
+    Aggregate aggregate = new Aggregate();
+    data.addGroup( data.getGroupKey( new Object[] { "Key" } ), new Object[] { "Key" }, aggregate );
+
+    assertSame( aggregate, data.getAggregate( data.getGroupKey( new Object[] { "KEY" } ) ) );
+    assertSame( aggregate, data.getAggregate( data.getGroupKey( new Object[] { "key" } ) ) );
+    assertNull( data.getAggregate( data.getGroupKey( new Object[] { "keys" } ) ) );
+  }
+
+  @Test public void collatorGroupKeyTest() throws Exception {
+    ValueMetaInterface valueMeta = new ValueMetaString( "key" );
+    valueMeta.setCollatorDisabled( false );
+    valueMeta.setCollatorLocale( Locale.ENGLISH );
+    valueMeta.setCollatorStrength( Collator.PRIMARY );
+    data.groupMeta = new RowMeta();
+    data.groupMeta.addValueMeta( valueMeta );
+
+    assertArrayEquals( data.getGroupKey( new Object[] { "resume" } ),
+      data.getGroupKey( new Object[] { "R\u00e9sum\u00e9" } ) );
+    assertFalse( Arrays.equals( data.getGroupKey( new Object[] { "resume" } ),
+      data.getGroupKey( new Object[] { "resumes" } ) ) );
+  }
+
+  @Test public void bigNumberScaleGroupKeyTest() throws Exception {
+    data.groupMeta = new RowMeta();
+    data.groupMeta.addValueMeta( new ValueMetaBigNumber( "key" ) );
 
-    String value = map.get( hashEntry2 );
+    assertArrayEquals( data.getGroupKey( new Object[] { new BigDecimal( "1.0" ) } ),
+      data.getGroupKey( new Object[] { new BigDecimal( "1.00" ) } ) );
+    assertArrayEquals( data.getGroupKey( new Object[] { new BigDecimal( "0.00" ) } ),
+      data.getGroupKey( new Object[] { BigDecimal.ZERO } ) );
+    assertFalse( Arrays.equals( data.getGroupKey( new Object[] { new BigDecimal( "1.0" ) } ),
+      data.getGroupKey( new Object[] { new BigDecimal( "1.01" ) } ) ) );
+  }
 
-    assertEquals( "value", value );
+  @Test public void partitionTest() throws Exception {
+    for ( int i = 0; i < 1000; i++ ) {
+      int partition = data.getPartition( data.getGroupKey( new Object[] { ( "key" + i ).getBytes() } ) );
+      assertTrue( partition >= 0 && partition < MemoryGroupByData.NR_PARTITIONS );
+    }
   }
 
 }
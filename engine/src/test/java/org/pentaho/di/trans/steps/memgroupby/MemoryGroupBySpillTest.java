@@ -0,0 +1,153 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2020 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+
+package org.pentaho.di.trans.steps.memgroupby;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.pentaho.di.core.BlockingRowSet;
+import org.pentaho.di.core.Const;
+import org.pentaho.di.core.RowSet;
+import org.pentaho.di.core.exception.KettleStepException;
+import org.pentaho.di.core.row.RowMeta;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.value.ValueMetaInteger;
+import org.pentaho.di.core.row.value.ValueMetaString;
+import org.pentaho.di.junit.rules.RestorePDIEngineEnvironment;
+import org.pentaho.di.trans.Trans;
+import org.pentaho.di.trans.TransMeta;
+import org.pentaho.di.trans.step.RowAdapter;
+import org.pentaho.di.trans.step.StepMeta;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class MemoryGroupBySpillTest {
+  @ClassRule public static RestorePDIEngineEnvironment env = new RestorePDIEngineEnvironment();
+
+  private static final int NR_GROUPS = 30000;
+  private static final int NR_ROWS = 3 * NR_GROUPS;
+
+  private RowMetaInterface createRowMeta() {
+    RowMetaInterface rowMeta = new RowMeta();
+    rowMeta.addValueMeta( new ValueMetaString( "name" ) );
+    rowMeta.addValueMeta( new ValueMetaInteger( "id" ) );
+    rowMeta.addValueMeta( new ValueMetaString( "code" ) );
+    return rowMeta;
+  }
+
+  private MemoryGroupByMeta createMeta() {
+    MemoryGroupByMeta meta = new MemoryGroupByMeta();
+    meta.allocate( 1, 9 );
+    meta.getGroupField()[0] = "name";
+    meta.setSubjectField( new String[] { "id", "id", "id", "code", "id", "code", "id", "id", "code" } );
+    meta.setAggregateField( new String[] { "id_sum", "id_count_distinct", "id_median", "code_concat", "id_count",
+      "code_count_distinct", "id_average", "id_stddev", "code_min" } );
+    meta.setAggregateType( new int[] {
+      MemoryGroupByMeta.TYPE_GROUP_SUM,
+      MemoryGroupByMeta.TYPE_GROUP_COUNT_DISTINCT,
+      MemoryGroupByMeta.TYPE_GROUP_MEDIAN,
+      MemoryGroupByMeta.TYPE_GROUP_CONCAT_COMMA,
+      MemoryGroupByMeta.TYPE_GROUP_COUNT_ANY,
+      MemoryGroupByMeta.TYPE_GROUP_COUNT_DISTINCT,
+      MemoryGroupByMeta.TYPE_GROUP_AVERAGE,
+      MemoryGroupByMeta.TYPE_GROUP_STANDARD_DEVIATION,
+      MemoryGroupByMeta.TYPE_GROUP_MIN } );
+    meta.setValueField( new String[] { null, null, null, null, null, null, null, null, null } );
+    return meta;
+  }
+
+  /**
+   * Run the step and return the output rows by group, counting the spilled partitions when the first row comes out.
+   */
+  private Map<String, List<Object>> aggregate( String maxMemory, AtomicInteger spilledPartitions ) throws Exception {
+    MemoryGroupByMeta meta = createMeta();
+    StepMeta stepMeta = new StepMeta( "group", meta );
+    TransMeta transMeta = new TransMeta();
+    transMeta.addStep( stepMeta );
+    transMeta.setVariable( Const.KETTLE_MEMORY_GROUP_BY_MAX_MEMORY, maxMemory );
+    Trans trans = new Trans( transMeta );
+    trans.setRunning( true );
+
+    final MemoryGroupByData data = new MemoryGroupByData();
+    MemoryGroupBy step = new MemoryGroupBy( stepMeta, data, 0, transMeta, trans );
+    step.initializeVariablesFrom( trans );
+    assertTrue( step.init( meta, data ) );
+
+    RowSet input = new BlockingRowSet( NR_ROWS );
+    RowMetaInterface rowMeta = createRowMeta();
+    for ( long i = 0; i < NR_ROWS; i++ ) {
+      input.putRow( rowMeta, new Object[] { "group-" + ( i % NR_GROUPS ), i, "c" + ( i % 7 ) } );
+    }
+    input.setDone();
+    List<RowSet> inputRowSets = new ArrayList<>();
+    inputRowSets.add( input );
+    step.setInputRowSets( inputRowSets );
+
+    final Map<String, List<Object>> result = new HashMap<>();
+    step.addRowListener( new RowAdapter() {
+      @Override
+      public void rowWrittenEvent( RowMetaInterface rowMeta, Object[] row ) throws KettleStepException {
+        if ( result.isEmpty() && data.spilledPartitions != null ) {
+          for ( SpilledPartition spilledPartition : data.spilledPartitions ) {
+            if ( spilledPartition != null ) {
+              spilledPartitions.incrementAndGet();
+            }
+          }
+        }
+        List<Object> values = new ArrayList<>();
+        for ( int i = 1; i < rowMeta.size(); i++ ) {
+          values.add( row[i] );
+        }
+        assertEquals( null, result.put( (String) row[0], values ) );
+      }
+    } );
+
+    while ( step.processRow( meta, data ) ) {
+      // keep going
+    }
+    step.dispose( meta, data );
+
+    assertEquals( 0, step.getErrors() );
+    return result;
+  }
+
+  @Test
+  public void testSpilledGroupsGiveTheSameResult() throws Exception {
+    AtomicInteger inMemorySpills = new AtomicInteger();
+    Map<String, List<Object>> expected = aggregate( "0", inMemorySpills );
+    assertEquals( 0, inMemorySpills.get() );
+    assertEquals( NR_GROUPS, expected.size() );
+
+    AtomicInteger spills = new AtomicInteger();
+    Map<String, List<Object>> result = aggregate( "1", spills );
+    assertTrue( "Expected partitions to be moved to disk", spills.get() > 0 );
+    assertEquals( expected, result );
+  }
+}
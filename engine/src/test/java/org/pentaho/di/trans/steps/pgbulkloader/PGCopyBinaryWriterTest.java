@@ -0,0 +1,179 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2020 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.steps.pgbulkloader;
+
+import org.junit.Test;
+import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.row.RowMeta;
+import org.pentaho.di.core.row.value.ValueMetaBigNumber;
+import org.pentaho.di.core.row.value.ValueMetaDate;
+import org.pentaho.di.core.row.value.ValueMetaInteger;
+import org.pentaho.di.core.row.value.ValueMetaString;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Date;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class PGCopyBinaryWriterTest {
+
+  private static final int[] COLUMN_TYPES = { PGCopyBinaryWriter.TYPE_INT4, PGCopyBinaryWriter.TYPE_TEXT,
+    PGCopyBinaryWriter.TYPE_NUMERIC, PGCopyBinaryWriter.TYPE_DATE };
+
+  private RowMeta createRowMeta() {
+    RowMeta rowMeta = new RowMeta();
+    rowMeta.addValueMeta( new ValueMetaInteger( "id" ) );
+    rowMeta.addValueMeta( new ValueMetaString( "name" ) );
+    rowMeta.addValueMeta( new ValueMetaBigNumber( "amount" ) );
+    rowMeta.addValueMeta( new ValueMetaDate( "day" ) );
+    return rowMeta;
+  }
+
+  @Test
+  public void writesBinaryCopyFormat() throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    // A small buffer, so the rows are handed to the writer more than once
+    PGCopyBinaryWriter writer = new PGCopyBinaryWriter( out, COLUMN_TYPES, StandardCharsets.UTF_8, 16 );
+
+    Date day = Date.from( LocalDate.of( 2000, 1, 2 ).atStartOfDay( ZoneId.systemDefault() ).toInstant() );
+    int[] fieldIndexes = { 0, 1, 2, 3 };
+    writer.writeRow( createRowMeta(), new Object[] { 7L, null, new BigDecimal( "-12345.678" ), day }, fieldIndexes );
+    writer.writeRow( createRowMeta(), new Object[] { 8L, "abc", BigDecimal.ZERO, null }, fieldIndexes );
+    writer.close();
+
+    DataInputStream in = new DataInputStream( new ByteArrayInputStream( out.toByteArray() ) );
+    byte[] signature = new byte[11];
+    in.readFully( signature );
+    assertArrayEquals( new byte[] { 'P', 'G', 'C', 'O', 'P', 'Y', '\n', (byte) 0xFF, '\r', '\n', 0 }, signature );
+    assertEquals( 0, in.readInt() );
+    assertEquals( 0, in.readInt() );
+
+    // First row
+    assertEquals( 4, in.readShort() );
+    assertEquals( 4, in.readInt() );
+    assertEquals( 7, in.readInt() );
+    assertEquals( -1, in.readInt() );
+    assertEquals( 14, in.readInt() );
+    assertEquals( 3, in.readShort() ); // digits
+    assertEquals( 1, in.readShort() ); // weight
+    assertEquals( 0x4000, in.readShort() ); // negative
+    assertEquals( 3, in.readShort() ); // scale
+    assertEquals( 1, in.readShort() );
+    assertEquals( 2345, in.readShort() );
+    assertEquals( 6780, in.readShort() );
+    assertEquals( 4, in.readInt() );
+    assertEquals( 1, in.readInt() ); // days since 2000-01-01
+
+    // Second row
+    assertEquals( 4, in.readShort() );
+    assertEquals( 4, in.readInt() );
+    assertEquals( 8, in.readInt() );
+    assertEquals( 3, in.readInt() );
+    byte[] text = new byte[3];
+    in.readFully( text );
+    assertEquals( "abc", new String( text, StandardCharsets.UTF_8 ) );
+    assertEquals( 8, in.readInt() );
+    assertEquals( 0, in.readShort() );
+    assertEquals( 0, in.readShort() );
+    assertEquals( 0, in.readShort() );
+    assertEquals( 0, in.readShort() );
+    assertEquals( -1, in.readInt() );
+
+    // Trailer
+    assertEquals( -1, in.readShort() );
+    assertEquals( 0, in.available() );
+  }
+
+  @Test
+  public void writesSmallFractions() throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    PGCopyBinaryWriter writer = new PGCopyBinaryWriter( out,
+      new int[] { PGCopyBinaryWriter.TYPE_NUMERIC }, StandardCharsets.UTF_8, 1024 );
+    RowMeta rowMeta = new RowMeta();
+    rowMeta.addValueMeta( new ValueMetaBigNumber( "amount" ) );
+    writer.writeRow( rowMeta, new Object[] { new BigDecimal( "0.00012" ) }, new int[] { 0 } );
+    writer.close();
+
+    DataInputStream in = new DataInputStream( new ByteArrayInputStream( out.toByteArray() ) );
+    in.skipBytes( 19 + 2 );
+    assertEquals( 12, in.readInt() );
+    assertEquals( 2, in.readShort() );
+    assertEquals( -1, in.readShort() );
+    assertEquals( 0, in.readShort() );
+    assertEquals( 5, in.readShort() );
+    assertEquals( 1, in.readShort() );
+    assertEquals( 2000, in.readShort() );
+  }
+
+  @Test
+  public void refusesIntegersOutOfRange() throws Exception {
+    PGCopyBinaryWriter writer = new PGCopyBinaryWriter( new ByteArrayOutputStream(),
+      new int[] { PGCopyBinaryWriter.TYPE_INT2 }, StandardCharsets.UTF_8, 1024 );
+    RowMeta rowMeta = new RowMeta();
+    rowMeta.addValueMeta( new ValueMetaInteger( "id" ) );
+    try {
+      writer.writeRow( rowMeta, new Object[] { 40000L }, new int[] { 0 } );
+      fail( "Exception expected" );
+    } catch ( KettleException e ) {
+      // expected
+    } finally {
+      writer.abort();
+    }
+  }
+
+  @Test
+  public void reportsWriteErrorsOnClose() throws Exception {
+    OutputStream failing = new OutputStream() {
+      @Override
+      public void write( int b ) throws IOException {
+        throw new IOException( "connection lost" );
+      }
+    };
+    PGCopyBinaryWriter writer = new PGCopyBinaryWriter( failing,
+      new int[] { PGCopyBinaryWriter.TYPE_INT8 }, StandardCharsets.UTF_8, 1024 );
+    try {
+      writer.close();
+      fail( "Exception expected" );
+    } catch ( KettleException e ) {
+      assertEquals( "connection lost", e.getCause().getMessage() );
+    }
+  }
+
+  @Test
+  public void mapsPostgresTypeNames() {
+    assertEquals( PGCopyBinaryWriter.TYPE_TEXT, PGCopyBinaryWriter.getColumnType( "varchar" ) );
+    assertEquals( PGCopyBinaryWriter.TYPE_TIMESTAMPTZ, PGCopyBinaryWriter.getColumnType( "timestamptz" ) );
+    assertEquals( -1, PGCopyBinaryWriter.getColumnType( "jsonb" ) );
+    assertEquals( -1, PGCopyBinaryWriter.getColumnType( null ) );
+  }
+}
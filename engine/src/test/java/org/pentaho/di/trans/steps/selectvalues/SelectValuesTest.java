@@ -27,7 +27,11 @@ import org.junit.Before;
 import org.junit.BeforeClass;
 import org.junit.ClassRule;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 import org.pentaho.di.core.Const;
@@ -38,6 +42,7 @@ import org.pentaho.di.core.exception.KettleStepException;
 import org.pentaho.di.core.row.RowMeta;
 import org.pentaho.di.core.row.RowMetaInterface;
 import org.pentaho.di.core.row.ValueMetaInterface;
+import org.pentaho.di.core.row.batch.RowBatch;
 import org.pentaho.di.core.row.value.ValueMetaBase;
 import org.pentaho.di.core.row.value.ValueMetaBigNumber;
 import org.pentaho.di.core.row.value.ValueMetaInteger;
@@ -52,16 +57,22 @@ import org.pentaho.di.trans.steps.mock.StepMockHelper;
 import org.pentaho.di.trans.steps.selectvalues.SelectValuesMeta.SelectField;
 
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyListOf;
 import static org.mockito.Matchers.anyLong;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.doNothing;
 import static org.mockito.Mockito.eq;
 import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 
 /**
  * @author Andrey Khayrutdinov
@@ -331,6 +342,75 @@ public class SelectValuesTest {
     assertTrue( properException );
   }
 
+  @Test
+  public void rowsReadInOneGoArePassedOnInOneGo() throws Exception {
+    RowMeta inputRowMeta = new RowMeta();
+    inputRowMeta.addValueMeta( new ValueMetaString( "other" ) );
+    inputRowMeta.addValueMeta( new ValueMetaString( SELECTED_FIELD ) );
+    step.setInputRowMeta( inputRowMeta );
+    doReturn( Arrays.asList( new Object[] { "x1", "a" }, new Object[] { "x2", "b" }, new Object[] { "x3", "c" } ) )
+      .when( step ).getRows( anyInt() );
+    doNothing().when( step ).putRows( any( RowMetaInterface.class ), anyListOf( Object[].class ) );
+
+    SelectValuesMeta stepMeta = new SelectValuesMeta();
+    stepMeta.allocate( 1, 0, 0 );
+    stepMeta.getSelectFields()[0] = new SelectField();
+    stepMeta.getSelectFields()[0].setName( SELECTED_FIELD );
+
+    SelectValuesData stepData = new SelectValuesData();
+    stepData.select = true;
+    stepData.firstselect = true;
+
+    assertTrue( step.processRow( stepMeta, stepData ) );
+
+    ArgumentCaptor<List> rows = ArgumentCaptor.forClass( List.class );
+    verify( step ).putRows( any( RowMetaInterface.class ), rows.capture() );
+    assertEquals( 3, rows.getValue().size() );
+    assertEquals( "a", ( (Object[]) rows.getValue().get( 0 ) )[ 0 ] );
+    assertEquals( "c", ( (Object[]) rows.getValue().get( 2 ) )[ 0 ] );
+  }
+
+  @Test
+  public void onlySelectingFieldsSelectsTheColumnsOfBatches() throws Exception {
+    when( helper.stepMeta.isDoingErrorHandling() ).thenReturn( false );
+    RowMeta inputRowMeta = new RowMeta();
+    inputRowMeta.addValueMeta( new ValueMetaString( "other" ) );
+    inputRowMeta.addValueMeta( new ValueMetaInteger( SELECTED_FIELD ) );
+    step.setInputRowMeta( inputRowMeta );
+    doReturn( Arrays.asList( new Object[] { "x1", 1L }, new Object[] { "x2", null } ) )
+      .when( step ).getRows( anyInt() );
+    doNothing().when( step ).putRows( any( RowMetaInterface.class ), anyListOf( Object[].class ) );
+
+    SelectValuesMeta stepMeta = new SelectValuesMeta();
+    stepMeta.allocate( 1, 0, 0 );
+    stepMeta.getSelectFields()[0] = new SelectField();
+    stepMeta.getSelectFields()[0].setName( SELECTED_FIELD );
+    stepMeta.getSelectFields()[0].setRename( "renamed" );
+
+    SelectValuesData stepData = new SelectValuesData();
+    stepData.select = true;
+    stepData.firstselect = true;
+
+    // The first rows set up the selection one row at a time
+    assertTrue( step.processRow( stepMeta, stepData ) );
+    assertArrayEquals( new int[] { 1 }, stepData.columnnrs );
+
+    assertTrue( step.processRow( stepMeta, stepData ) );
+
+    ArgumentCaptor<RowBatch> batch = ArgumentCaptor.forClass( RowBatch.class );
+    verify( step ).putRowBatch( batch.capture() );
+    assertEquals( "renamed", batch.getValue().getRowMeta().getValueMeta( 0 ).getName() );
+    ArgumentCaptor<List> rows = ArgumentCaptor.forClass( List.class );
+    verify( step, times( 2 ) ).putRows( any( RowMetaInterface.class ), rows.capture() );
+    List<Object[]> batchRows = rows.getAllValues().get( 1 );
+    assertEquals( 2, batchRows.size() );
+    assertEquals( 1L, batchRows.get( 0 )[ 0 ] );
+    assertNull( batchRows.get( 1 )[ 0 ] );
+
+    doReturn( Collections.emptyList() ).when( step ).getRows( anyInt() );
+    assertFalse( step.processRow( stepMeta, stepData ) );
+  }
+
   public class SelectValuesHandler extends SelectValues {
     private Object[] resultRow;
     private RowMetaInterface rowMeta;
@@ -0,0 +1,112 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2020 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.steps.sort;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class LoserTreeTest {
+
+  private List<Integer> merge( List<List<Integer>> runs ) {
+    List<Iterator<Integer>> iterators = new ArrayList<>();
+    List<Integer> heads = new ArrayList<>();
+    for ( List<Integer> run : runs ) {
+      Iterator<Integer> iterator = run.iterator();
+      iterators.add( iterator );
+      heads.add( iterator.hasNext() ? iterator.next() : null );
+    }
+
+    LoserTree<Integer> tree = new LoserTree<>( heads, Comparator.<Integer>naturalOrder() );
+    List<Integer> result = new ArrayList<>();
+    int winner = tree.getWinner();
+    while ( winner >= 0 ) {
+      result.add( tree.peek() );
+      Iterator<Integer> iterator = iterators.get( winner );
+      tree.replaceWinner( iterator.hasNext() ? iterator.next() : null );
+      winner = tree.getWinner();
+    }
+    return result;
+  }
+
+  @Test
+  public void testNoRuns() {
+    LoserTree<Integer> tree = new LoserTree<>( Collections.<Integer>emptyList(), Comparator.<Integer>naturalOrder() );
+    assertEquals( -1, tree.getWinner() );
+    assertNull( tree.peek() );
+  }
+
+  @Test
+  public void testEmptyRuns() {
+    List<List<Integer>> runs = Arrays.asList( Collections.<Integer>emptyList(), Arrays.asList( 2, 3 ),
+      Collections.<Integer>emptyList() );
+    assertEquals( Arrays.asList( 2, 3 ), merge( runs ) );
+  }
+
+  @Test
+  public void testRandomRuns() {
+    Random random = new Random( 42 );
+    for ( int nrRuns = 1; nrRuns <= 33; nrRuns++ ) {
+      List<List<Integer>> runs = new ArrayList<>();
+      List<Integer> expected = new ArrayList<>();
+      for ( int r = 0; r < nrRuns; r++ ) {
+        List<Integer> run = new ArrayList<>();
+        int size = random.nextInt( 50 );
+        for ( int i = 0; i < size; i++ ) {
+          run.add( random.nextInt( 100 ) );
+        }
+        Collections.sort( run );
+        runs.add( run );
+        expected.addAll( run );
+      }
+      Collections.sort( expected );
+
+      assertEquals( expected, merge( runs ) );
+    }
+  }
+
+  @Test
+  public void testEqualElementsComeInRunOrder() {
+    // Compare on the tens only, the units tell us which run an element came from
+    Comparator<Integer> comparator = ( a, b ) -> Integer.compare( a / 10, b / 10 );
+    List<Integer> heads = Arrays.asList( 12, 10, 11 );
+
+    LoserTree<Integer> tree = new LoserTree<>( heads, comparator );
+    assertEquals( 1, tree.getWinner() );
+    tree.replaceWinner( null );
+    assertEquals( 2, tree.getWinner() );
+    tree.replaceWinner( null );
+    assertEquals( 0, tree.getWinner() );
+    tree.replaceWinner( null );
+    assertEquals( -1, tree.getWinner() );
+  }
+}
@@ -0,0 +1,124 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2020 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.steps.sort;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.Test;
+import org.pentaho.di.core.exception.KettleValueException;
+import org.pentaho.di.core.row.ValueMetaInterface;
+import org.pentaho.di.core.row.value.ValueMetaBigNumber;
+import org.pentaho.di.core.row.value.ValueMetaDate;
+import org.pentaho.di.core.row.value.ValueMetaInteger;
+import org.pentaho.di.core.row.value.ValueMetaNumber;
+import org.pentaho.di.core.row.value.ValueMetaString;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class NormalizedKeyPrefixTest {
+
+  /**
+   * A smaller key must always mean a smaller value, equal keys are resolved by the value metadata.
+   */
+  private void assertConsistentOrder( ValueMetaInterface valueMeta, List<Object> values ) throws KettleValueException {
+    NormalizedKeyPrefix prefix = NormalizedKeyPrefix.getInstance( valueMeta );
+    assertNotNull( prefix );
+    for ( Object one : values ) {
+      for ( Object two : values ) {
+        int cmp = valueMeta.compare( one, two );
+        long key1 = prefix.getKey( one );
+        long key2 = prefix.getKey( two );
+        if ( key1 < key2 ) {
+          assertTrue( one + " < " + two, cmp < 0 );
+        } else if ( key1 > key2 ) {
+          assertTrue( one + " > " + two, cmp > 0 );
+        } else if ( prefix.isExact() && ( one == null ) == ( two == null ) ) {
+          assertTrue( one + " == " + two, cmp == 0 );
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testIntegers() throws KettleValueException {
+    List<Object> values = Arrays.asList( null, Long.MIN_VALUE, -5L, -1L, 0L, 1L, 7L, Long.MAX_VALUE );
+    ValueMetaInteger valueMeta = new ValueMetaInteger( "int" );
+    assertConsistentOrder( valueMeta, values );
+    valueMeta.setSortedDescending( true );
+    assertConsistentOrder( valueMeta, values );
+  }
+
+  @Test
+  public void testNumbers() throws KettleValueException {
+    List<Object> values = Arrays.asList( null, Double.NEGATIVE_INFINITY, -Double.MAX_VALUE, -1.5, -0.0, 0.0,
+      Double.MIN_VALUE, 3.25, Double.POSITIVE_INFINITY, Double.NaN );
+    ValueMetaNumber valueMeta = new ValueMetaNumber( "num" );
+    assertConsistentOrder( valueMeta, values );
+    valueMeta.setSortedDescending( true );
+    assertConsistentOrder( valueMeta, values );
+  }
+
+  @Test
+  public void testDates() throws KettleValueException {
+    List<Object> values = Arrays.asList( null, new Date( -1000L ), new Date( 0L ), new Date( 1000L ) );
+    assertConsistentOrder( new ValueMetaDate( "date" ), values );
+  }
+
+  @Test
+  public void testStrings() throws KettleValueException {
+    List<Object> values = new ArrayList<>( Arrays.asList( null, "a", "A", "ab", "aB", "abcd", "abcde", "abcdf", "b",
+      " b", "Z", "\u00e9", "\u00c9", "\uffff" ) );
+    ValueMetaString valueMeta = new ValueMetaString( "str" );
+    valueMeta.setCollatorDisabled( true );
+    assertConsistentOrder( valueMeta, values );
+    assertFalse( NormalizedKeyPrefix.getInstance( valueMeta ).isExact() );
+
+    valueMeta.setCaseInsensitive( true );
+    assertConsistentOrder( valueMeta, values );
+
+    valueMeta.setSortedDescending( true );
+    assertConsistentOrder( valueMeta, values );
+
+    valueMeta.setIgnoreWhitespace( true );
+    assertConsistentOrder( valueMeta, values );
+  }
+
+  @Test
+  public void testUnsupportedTypes() {
+    ValueMetaString collated = new ValueMetaString( "str" );
+    collated.setCollatorDisabled( false );
+    assertNull( NormalizedKeyPrefix.getInstance( collated ) );
+    assertNull( NormalizedKeyPrefix.getInstance( new ValueMetaString( "str", ( o1, o2 ) -> 0 ) ) );
+    assertNull( NormalizedKeyPrefix.getInstance( new ValueMetaBigNumber( "big" ) ) );
+
+    ValueMetaInteger lazy = new ValueMetaInteger( "int" );
+    lazy.setStorageType( ValueMetaInterface.STORAGE_TYPE_BINARY_STRING );
+    assertNull( NormalizedKeyPrefix.getInstance( lazy ) );
+  }
+}
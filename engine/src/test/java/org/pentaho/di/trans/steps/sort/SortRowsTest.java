@@ -0,0 +1,185 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2020 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.steps.sort;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.ClassRule;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.pentaho.di.core.BlockingRowSet;
+import org.pentaho.di.core.Const;
+import org.pentaho.di.core.RowMetaAndData;
+import org.pentaho.di.core.RowSet;
+import org.pentaho.di.core.row.RowMeta;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.value.ValueMetaInteger;
+import org.pentaho.di.core.row.value.ValueMetaString;
+import org.pentaho.di.junit.rules.RestorePDIEngineEnvironment;
+import org.pentaho.di.trans.RowStepCollector;
+import org.pentaho.di.trans.Trans;
+import org.pentaho.di.trans.TransMeta;
+import org.pentaho.di.trans.step.StepMeta;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SortRowsTest {
+  @ClassRule public static RestorePDIEngineEnvironment env = new RestorePDIEngineEnvironment();
+
+  @Rule public TemporaryFolder tempFolder = new TemporaryFolder();
+
+  private static final int NR_ROWS = 5000;
+
+  private RowMetaInterface createRowMeta() {
+    RowMetaInterface rowMeta = new RowMeta();
+    rowMeta.addValueMeta( new ValueMetaString( "name" ) );
+    rowMeta.addValueMeta( new ValueMetaInteger( "id" ) );
+    return rowMeta;
+  }
+
+  private List<Object[]> createRows() {
+    Random random = new Random( 123 );
+    List<Object[]> rows = new ArrayList<>();
+    for ( long i = 0; i < NR_ROWS; i++ ) {
+      String name = random.nextInt( 20 ) == 0 ? null : "name-" + random.nextInt( 300 );
+      rows.add( new Object[] { name, i } );
+    }
+    return rows;
+  }
+
+  /**
+   * Sort on name (ascending) and id (descending).
+   */
+  private SortRowsMeta createMeta( String sortSize, boolean compress, boolean unique ) {
+    SortRowsMeta meta = new SortRowsMeta();
+    meta.setDefault();
+    meta.allocate( 2 );
+    meta.setDirectory( tempFolder.getRoot().getAbsolutePath() );
+    meta.setSortSize( sortSize );
+    meta.setCompressFiles( compress );
+    meta.setOnlyPassingUniqueRows( unique );
+    meta.setFieldName( new String[] { "name", "id" } );
+    meta.setAscending( new boolean[] { true, false } );
+    meta.setCaseSensitive( new boolean[] { true, true } );
+    meta.setCollatorEnabled( new boolean[] { false, false } );
+    meta.setCollatorStrength( new int[] { 0, 0 } );
+    meta.setPreSortedField( new boolean[] { false, false } );
+    return meta;
+  }
+
+  private List<Object[]> sort( SortRowsMeta meta, String parallel, List<Object[]> rows ) throws Exception {
+    StepMeta stepMeta = new StepMeta( "sort", meta );
+    TransMeta transMeta = new TransMeta();
+    transMeta.addStep( stepMeta );
+    transMeta.setVariable( Const.KETTLE_SORT_ROWS_PARALLEL, parallel );
+    Trans trans = new Trans( transMeta );
+    trans.setRunning( true );
+
+    SortRowsData data = new SortRowsData();
+    SortRows step = new SortRows( stepMeta, data, 0, transMeta, trans );
+    step.initializeVariablesFrom( trans );
+    assertTrue( step.init( meta, data ) );
+
+    RowSet input = new BlockingRowSet( rows.size() );
+    RowMetaInterface rowMeta = createRowMeta();
+    for ( Object[] row : rows ) {
+      input.putRow( rowMeta, row );
+    }
+    input.setDone();
+    List<RowSet> inputRowSets = new ArrayList<>();
+    inputRowSets.add( input );
+    step.setInputRowSets( inputRowSets );
+
+    RowStepCollector collector = new RowStepCollector();
+    step.addRowListener( collector );
+
+    while ( step.processRow( meta, data ) ) {
+      // keep going
+    }
+    step.dispose( meta, data );
+
+    assertEquals( 0, step.getErrors() );
+    List<Object[]> result = new ArrayList<>();
+    for ( RowMetaAndData row : collector.getRowsWritten() ) {
+      result.add( row.getData() );
+    }
+    return result;
+  }
+
+  private void assertSorted( List<Object[]> rows, boolean unique ) throws Exception {
+    RowMetaInterface rowMeta = createRowMeta();
+    rowMeta.getValueMeta( 1 ).setSortedDescending( true );
+    int[] keys = { 0, 1 };
+    for ( int i = 1; i < rows.size(); i++ ) {
+      int cmp = rowMeta.compare( rows.get( i - 1 ), rows.get( i ), keys );
+      assertTrue( "Row " + i + " is out of order", unique ? cmp < 0 : cmp <= 0 );
+    }
+  }
+
+  private void assertNoTempFiles() {
+    File[] files = tempFolder.getRoot().listFiles();
+    assertEquals( 0, files == null ? 0 : files.length );
+  }
+
+  @Test
+  public void testInMemorySort() throws Exception {
+    List<Object[]> rows = createRows();
+    for ( String parallel : new String[] { "Y", "N" } ) {
+      List<Object[]> result = sort( createMeta( "1000000", false, false ), parallel, rows );
+      assertEquals( NR_ROWS, result.size() );
+      assertSorted( result, false );
+    }
+  }
+
+  @Test
+  public void testExternalSort() throws Exception {
+    List<Object[]> rows = createRows();
+    for ( String parallel : new String[] { "Y", "N" } ) {
+      for ( boolean compress : new boolean[] { false, true } ) {
+        List<Object[]> result = sort( createMeta( "300", compress, false ), parallel, rows );
+        assertEquals( NR_ROWS, result.size() );
+        assertSorted( result, false );
+        assertNoTempFiles();
+      }
+    }
+  }
+
+  @Test
+  public void testExternalSortOnlyPassingUniqueRows() throws Exception {
+    // Make the id part of the duplicates
+    List<Object[]> rows = new ArrayList<>();
+    for ( Object[] row : createRows() ) {
+      rows.add( new Object[] { row[0], (Long) row[1] % 10 } );
+    }
+    SortRowsMeta meta = createMeta( "250", false, true );
+    List<Object[]> result = sort( meta, "Y", rows );
+    assertSorted( result, true );
+    assertTrue( result.size() < NR_ROWS );
+    assertNoTempFiles();
+  }
+}
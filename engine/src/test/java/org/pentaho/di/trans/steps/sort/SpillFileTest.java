@@ -0,0 +1,89 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2020 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.steps.sort;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.pentaho.di.core.row.RowMeta;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.value.ValueMetaInteger;
+import org.pentaho.di.core.row.value.ValueMetaString;
+import org.pentaho.di.junit.rules.RestorePDIEngineEnvironment;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class SpillFileTest {
+  @ClassRule public static RestorePDIEngineEnvironment env = new RestorePDIEngineEnvironment();
+
+  private RowMetaInterface createRowMeta() {
+    RowMetaInterface rowMeta = new RowMeta();
+    rowMeta.addValueMeta( new ValueMetaInteger( "id" ) );
+    rowMeta.addValueMeta( new ValueMetaString( "name" ) );
+    return rowMeta;
+  }
+
+  private void roundTrip( boolean compress, int nrRows ) throws Exception {
+    RowMetaInterface rowMeta = createRowMeta();
+
+    ByteArrayOutputStream file = new ByteArrayOutputStream();
+    SpillFileWriter writer = new SpillFileWriter( rowMeta, file, compress );
+    for ( long i = 0; i < nrRows; i++ ) {
+      writer.writeRow( new Object[] { i, i % 7 == 0 ? null : "name-" + i } );
+    }
+    writer.close();
+    assertEquals( nrRows, writer.getRowsWritten() );
+
+    SpillFileReader reader = new SpillFileReader( rowMeta, new ByteArrayInputStream( file.toByteArray() ), compress );
+    for ( long i = 0; i < nrRows; i++ ) {
+      Object[] row = reader.readRow();
+      assertEquals( i, row[0] );
+      assertEquals( i % 7 == 0 ? null : "name-" + i, row[1] );
+    }
+    assertNull( reader.readRow() );
+    assertNull( reader.readRow() );
+    reader.close();
+  }
+
+  @Test
+  public void testEmptyFile() throws Exception {
+    roundTrip( false, 0 );
+    roundTrip( true, 0 );
+  }
+
+  @Test
+  public void testSingleBlock() throws Exception {
+    roundTrip( false, 100 );
+    roundTrip( true, 100 );
+  }
+
+  @Test
+  public void testManyBlocks() throws Exception {
+    // Well over SpillFileWriter.BLOCK_SIZE worth of rows
+    roundTrip( false, 50000 );
+    roundTrip( true, 50000 );
+  }
+}
@@ -68,6 +68,11 @@ public class TableInputMetaInjectionTest extends BaseMetadataInjectionTest<Table
         return meta.isCachedRowMetaActive();
       }
     } );
+    check( "SPLIT_COLUMN", new StringGetter() {
+      public String get() {
+        return meta.getSplitColumn();
+      }
+    } );
     skipPropertyTest( "CONNECTIONNAME" );
   }
 }
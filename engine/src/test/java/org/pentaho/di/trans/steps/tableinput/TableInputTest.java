@@ -24,8 +24,14 @@ package org.pentaho.di.trans.steps.tableinput;
 
 import org.junit.Before;
 import org.junit.Test;
+import org.pentaho.di.core.Const;
+import org.pentaho.di.core.RowMetaAndData;
 import org.pentaho.di.core.database.Database;
+import org.pentaho.di.core.database.DatabaseMeta;
 import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.row.RowMeta;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.value.ValueMetaInteger;
 import org.pentaho.di.trans.Trans;
 import org.pentaho.di.trans.TransMeta;
 import org.pentaho.di.trans.step.StepMeta;
@@ -37,6 +43,8 @@ import java.sql.PreparedStatement;
 
 import static junit.framework.TestCase.assertFalse;
 import static junit.framework.TestCase.assertTrue;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Mockito.doReturn;
@@ -46,6 +54,7 @@ import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.mockito.Mockito.withSettings;
 import static org.powermock.api.mockito.PowerMockito.spy;
+import static org.powermock.reflect.Whitebox.setInternalState;
 
 public class TableInputTest {
 
@@ -122,4 +131,76 @@ public class TableInputTest {
     verify( mockStepDataInterface.db, times( 0 ) ).cancelStatement( any( PreparedStatement.class ) );
     assertFalse( mockStepDataInterface.isCanceled );
   }
+
+  private String getSplitSQL( int splitNr, RowMetaInterface parametersMeta, Object[] parameters )
+    throws KettleException {
+    DatabaseMeta databaseMeta = mock( DatabaseMeta.class );
+    when( databaseMeta.quoteField( anyString() ) ).thenAnswer( invocation -> invocation.getArguments()[0] );
+    when( mockStepMetaInterface.getDatabaseMeta() ).thenReturn( databaseMeta );
+    setInternalState( mockTableInput, "meta", mockStepMetaInterface );
+    setInternalState( mockTableInput, "data", mockStepDataInterface );
+    mockStepDataInterface.splitColumn = "id";
+    mockStepDataInterface.splitNr = splitNr;
+    mockStepDataInterface.splitCount = 3;
+
+    RowMeta rangeMeta = new RowMeta();
+    rangeMeta.addValueMeta( new ValueMetaInteger( "min" ) );
+    rangeMeta.addValueMeta( new ValueMetaInteger( "max" ) );
+    return mockTableInput.getSplitSQL( "SELECT id FROM t;", new RowMetaAndData( rangeMeta, 0L, 30L ),
+      parametersMeta, parameters );
+  }
+
+  @Test
+  public void testSplitQueryReadsTheRangeOfTheCopy() throws KettleException {
+    RowMetaInterface parametersMeta = new RowMeta();
+    Object[] parameters = new Object[2];
+
+    String sql = getSplitSQL( 1, parametersMeta, parameters );
+
+    assertEquals( "SELECT * FROM (" + Const.CR + "SELECT id FROM t" + Const.CR
+      + ") kettle_split WHERE id >= ? AND id < ?", sql );
+    assertEquals( 2, parametersMeta.size() );
+    assertEquals( 10L, parameters[0] );
+    assertEquals( 20L, parameters[1] );
+  }
+
+  @Test
+  public void testSplitQueryFirstAndLastCopy() throws KettleException {
+    Object[] parameters = new Object[2];
+    String sql = getSplitSQL( 0, new RowMeta(), parameters );
+    assertTrue( sql.endsWith( "WHERE id < ? OR id IS NULL" ) );
+    assertEquals( 10L, parameters[0] );
+
+    sql = getSplitSQL( 2, new RowMeta(), parameters );
+    assertTrue( sql.endsWith( "WHERE id >= ?" ) );
+    assertEquals( 20L, parameters[0] );
+  }
+
+  @Test
+  public void testSplitQueryOverTheCopies() {
+    setInternalState( mockTableInput, "meta", mockStepMetaInterface );
+    setInternalState( mockTableInput, "data", mockStepDataInterface );
+    when( mockStepMetaInterface.getSplitColumn() ).thenReturn( "id" );
+    doReturn( 1 ).when( mockTableInput ).getUniqueStepNrAcrossSlaves();
+    doReturn( 3 ).when( mockTableInput ).getUniqueStepCountAcrossSlaves();
+
+    mockTableInput.initSplit( 0 );
+
+    assertEquals( "id", mockStepDataInterface.splitColumn );
+    assertEquals( 1, mockStepDataInterface.splitNr );
+    assertEquals( 3, mockStepDataInterface.splitCount );
+  }
+
+  @Test
+  public void testClusteredStepDoesNotSplitQuery() {
+    setInternalState( mockTableInput, "meta", mockStepMetaInterface );
+    setInternalState( mockTableInput, "data", mockStepDataInterface );
+    when( mockStepMetaInterface.getSplitColumn() ).thenReturn( "id" );
+    doReturn( 6 ).when( mockTableInput ).getUniqueStepCountAcrossSlaves();
+    doReturn( 2 ).when( mockTableInput ).getClusterSize();
+
+    mockTableInput.initSplit( 0 );
+
+    assertNull( mockStepDataInterface.splitColumn );
+  }
 }
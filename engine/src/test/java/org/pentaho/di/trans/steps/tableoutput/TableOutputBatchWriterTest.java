@@ -0,0 +1,167 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2020 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.steps.tableoutput;
+
+import org.junit.Test;
+import org.pentaho.di.core.database.Database;
+import org.pentaho.di.core.exception.KettleDatabaseException;
+import org.pentaho.di.core.row.RowMeta;
+import org.pentaho.di.core.row.RowMetaInterface;
+
+import java.sql.BatchUpdateException;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+public class TableOutputBatchWriterTest {
+
+  private Database mockDatabase( PreparedStatement statement ) throws Exception {
+    Database db = mock( Database.class );
+    doReturn( statement ).when( db ).prepareSQL( anyString() );
+    return db;
+  }
+
+  private List<Object[]> addRows( TableOutputBatchWriter writer, int count ) throws Exception {
+    List<Object[]> rows = new ArrayList<>();
+    for ( int i = 0; i < count; i++ ) {
+      Object[] row = new Object[] { (long) i };
+      rows.add( row );
+      writer.addRow( row, row );
+    }
+    writer.flush();
+    return rows;
+  }
+
+  @Test
+  public void handsBackBatchesInOrder() throws Exception {
+    PreparedStatement statement = mock( PreparedStatement.class );
+    Database db1 = mockDatabase( statement );
+    Database db2 = mockDatabase( statement );
+    TableOutputBatchWriter writer =
+      new TableOutputBatchWriter( Arrays.asList( db1, db2 ), new RowMeta(), "INSERT", 2, false, false );
+
+    List<Object[]> rows = addRows( writer, 5 );
+    List<TableOutputBatchWriter.Batch> batches = writer.getFinishedBatches( true );
+
+    assertEquals( 3, batches.size() );
+    int index = 0;
+    for ( TableOutputBatchWriter.Batch batch : batches ) {
+      assertNull( batch.getException() );
+      for ( int i = 0; i < batch.size(); i++ ) {
+        assertNull( batch.getError( i ) );
+        assertSame( rows.get( index++ ), batch.getOutputRows().get( i ) );
+      }
+    }
+    assertEquals( 5, index );
+    verify( statement, times( 3 ) ).executeBatch();
+
+    writer.close();
+    verify( db1 ).disconnect();
+    verify( db2 ).disconnect();
+  }
+
+  @Test
+  public void routesRefusedRowsWithErrorHandling() throws Exception {
+    PreparedStatement statement = mock( PreparedStatement.class );
+    doThrow( new BatchUpdateException( "refused", new int[] { 1, Statement.EXECUTE_FAILED } ) )
+      .when( statement ).executeBatch();
+    Database db = mockDatabase( statement );
+    TableOutputBatchWriter writer =
+      new TableOutputBatchWriter( Arrays.asList( db ), new RowMeta(), "INSERT", 2, true, false );
+
+    addRows( writer, 2 );
+    List<TableOutputBatchWriter.Batch> batches = writer.getFinishedBatches( true );
+
+    assertEquals( 1, batches.size() );
+    TableOutputBatchWriter.Batch batch = batches.get( 0 );
+    assertNull( batch.getException() );
+    assertNull( batch.getError( 0 ) );
+    assertNotNull( batch.getError( 1 ) );
+    verify( db ).commit( true );
+    writer.close();
+  }
+
+  @Test
+  public void rollsBackBatchesBehindAFailedOne() throws Exception {
+    PreparedStatement failing = mock( PreparedStatement.class );
+    doThrow( new BatchUpdateException( "refused", new int[] { Statement.EXECUTE_FAILED } ) )
+      .when( failing ).executeBatch();
+    Database db1 = mockDatabase( failing );
+    Database db2 = mockDatabase( mock( PreparedStatement.class ) );
+    TableOutputBatchWriter writer =
+      new TableOutputBatchWriter( Arrays.asList( db1, db2 ), new RowMeta(), "INSERT", 1, false, false );
+
+    addRows( writer, 2 );
+    List<TableOutputBatchWriter.Batch> batches = writer.getFinishedBatches( true );
+
+    assertEquals( 2, batches.size() );
+    assertNotNull( batches.get( 0 ).getException() );
+    assertNotNull( batches.get( 1 ).getException() );
+    verify( db1, never() ).commit( anyBoolean() );
+    verify( db2, never() ).commit( anyBoolean() );
+    verify( db1 ).rollback( true );
+    verify( db2 ).rollback( true );
+    writer.close();
+  }
+
+  @Test
+  public void skipsRowsThatCantBeBound() throws Exception {
+    PreparedStatement statement = mock( PreparedStatement.class );
+    Database db = mockDatabase( statement );
+    TableOutputBatchWriter writer =
+      new TableOutputBatchWriter( Arrays.asList( db ), new RowMeta(), "INSERT", 3, false, true );
+
+    Object[] bad = new Object[] { "bad" };
+    doThrow( new KettleDatabaseException( "conversion" ) ).when( db )
+      .setValues( any( RowMetaInterface.class ), eq( bad ), any( PreparedStatement.class ) );
+    writer.addRow( new Object[] { 1L }, new Object[] { 1L } );
+    writer.addRow( bad, bad );
+    writer.addRow( new Object[] { 2L }, new Object[] { 2L } );
+
+    TableOutputBatchWriter.Batch batch = writer.getFinishedBatches( true ).get( 0 );
+    assertNull( batch.getException() );
+    assertNull( batch.getError( 0 ) );
+    assertNotNull( batch.getError( 1 ) );
+    assertNull( batch.getError( 2 ) );
+    verify( db, times( 2 ) ).insertRow( statement, true, false );
+    verify( db ).commit( true );
+    writer.close();
+  }
+}
@@ -24,6 +24,7 @@ package org.pentaho.di.trans.steps.tableoutput;
 
 import org.junit.Before;
 import org.junit.Test;
+import org.pentaho.di.core.LookupCacheRegistry;
 import org.pentaho.di.core.database.Database;
 import org.pentaho.di.core.database.DatabaseInterface;
 import org.pentaho.di.core.database.DatabaseMeta;
@@ -35,8 +36,11 @@ import org.pentaho.di.trans.step.StepMeta;
 import org.pentaho.di.trans.step.StepPartitioningMeta;
 
 import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.Map;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.anyString;
@@ -81,6 +85,7 @@ public class TableOutputTest {
     tableOutputData.tableName = "sas";
     tableOutputData.preparedStatements = mock( Map.class );
     tableOutputData.commitCounterMap = mock( Map.class );
+    tableOutputData.writtenTables = new HashSet<>();
 
     TransMeta transMeta = mock( TransMeta.class );
     doReturn( stepMeta ).when( transMeta ).findStep( anyString() );
@@ -100,6 +105,23 @@ public class TableOutputTest {
     tableOutputSpy.writeToTable( mock( RowMetaInterface.class ), new Object[]{} );
   }
 
+  @Test
+  public void testDispose_invalidatesSharedLookupCachesOfTheWrittenTables() throws Exception {
+    doReturn( "jdbc:h2:mem:tableoutput" ).when( databaseMeta ).getURL( null );
+    doReturn( "\"sas\"" ).when( databaseMeta ).getQuotedSchemaTableCombination( null, "sas" );
+    tableOutputData.batchBuffer = new ArrayList<>();
+    LookupCacheRegistry registry = LookupCacheRegistry.getInstance();
+    String connection = LookupCacheRegistry.getConnection( databaseMeta, tableOutputSpy, null );
+    registry.attach( connection, "\"sas\"", "query", 0L, () -> "cached" ).release();
+
+    tableOutputSpy.writeToTable( mock( RowMetaInterface.class ), new Object[]{} );
+    tableOutputSpy.setLinesOutput( 1 );
+    tableOutputSpy.dispose( tableOutputMeta, tableOutputData );
+
+    assertEquals( "reloaded", registry.attach( connection, "\"sas\"", "query", 0L, () -> "reloaded" ).getValue() );
+    registry.invalidateConnection( connection );
+  }
+
   @Test
   public void testTruncateTable_off() throws Exception {
     tableOutputSpy.truncateTable();
@@ -23,13 +23,16 @@
 package org.pentaho.di.trans.steps.transexecutor;
 
 import java.util.Arrays;
+import java.util.List;
 import org.junit.After;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.BeforeClass;
 import org.junit.ClassRule;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mockito;
+import org.pentaho.di.core.Const;
 import org.pentaho.di.core.KettleEnvironment;
 import org.pentaho.di.core.QueueRowSet;
 import org.pentaho.di.core.Result;
@@ -293,6 +296,39 @@ public class TransExecutorUnitTest {
     assertEquals( 0, data.groupBuffer.size() );
   }
 
+  @Test
+  @SuppressWarnings( "unchecked" )
+  public void shouldPassGroupValuesToParametersWhenWarmInstancesAreRequested() throws KettleException {
+    prepareMultipleRowsForExecutor();
+
+    meta.setGroupField( "groupField" );
+    meta.getParameters().setVariable( new String[] { "param" } );
+    meta.getParameters().setField( new String[] { "groupField" } );
+    meta.getParameters().setInput( new String[] { null } );
+    doReturn( "2" ).when( executor ).getVariable( Const.KETTLE_TRANS_EXECUTOR_WARM_INSTANCES );
+    doNothing().when( executor ).passParametersToTrans( any( List.class ) );
+
+    Trans parent = new Trans();
+    Mockito.when( executor.getTrans() ).thenReturn( parent );
+
+    executor.init( meta, data );
+    // a prepared sub-transformation would keep the parameter values of its first group
+    assertEquals( 0, data.warmInstances );
+
+    RowMetaInterface rowMeta = new RowMeta();
+    rowMeta.addValueMeta( new ValueMetaString( "groupField" ) );
+    executor.setInputRowMeta( rowMeta );
+
+    while ( executor.processRow( meta, data ) ) {
+      // process all the rows
+    }
+
+    ArgumentCaptor<List> captor = ArgumentCaptor.forClass( List.class );
+    verify( executor, times( 2 ) ).passParametersToTrans( captor.capture() );
+    assertEquals( Arrays.asList( "value1" ), captor.getAllValues().get( 0 ) );
+    assertEquals( Arrays.asList( "value12" ), captor.getAllValues().get( 1 ) );
+  }
+
   /**
    * Given an input data and a transformation executor
    * with specified number of rows to send to the transformation (X).
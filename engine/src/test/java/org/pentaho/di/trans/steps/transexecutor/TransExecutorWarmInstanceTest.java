@@ -0,0 +1,142 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2020 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+
+package org.pentaho.di.trans.steps.transexecutor;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.pentaho.di.core.KettleEnvironment;
+import org.pentaho.di.core.Result;
+import org.pentaho.di.core.RowMetaAndData;
+import org.pentaho.di.core.row.RowMeta;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.value.ValueMetaString;
+import org.pentaho.di.junit.rules.RestorePDIEngineEnvironment;
+import org.pentaho.di.trans.Trans;
+import org.pentaho.di.trans.TransHopMeta;
+import org.pentaho.di.trans.TransMeta;
+import org.pentaho.di.trans.TransMeta.TransformationType;
+import org.pentaho.di.trans.step.StepMeta;
+import org.pentaho.di.trans.steps.dummytrans.DummyTransMeta;
+import org.pentaho.di.trans.steps.injector.InjectorMeta;
+import org.pentaho.di.trans.steps.rowsfromresult.RowsFromResultMeta;
+import org.pentaho.di.trans.steps.rowstoresult.RowsToResultMeta;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class TransExecutorWarmInstanceTest {
+  @ClassRule public static RestorePDIEngineEnvironment env = new RestorePDIEngineEnvironment();
+
+  @BeforeClass
+  public static void initKettle() throws Exception {
+    KettleEnvironment.init();
+  }
+
+  private TransMeta createTransMeta() {
+    TransMeta transMeta = new TransMeta();
+    transMeta.setName( "warm" );
+    StepMeta get = new StepMeta( "get", new RowsFromResultMeta() );
+    StepMeta dummy = new StepMeta( "dummy", new DummyTransMeta() );
+    StepMeta copy = new StepMeta( "copy", new RowsToResultMeta() );
+    transMeta.addStep( get );
+    transMeta.addStep( dummy );
+    transMeta.addStep( copy );
+    transMeta.addTransHop( new TransHopMeta( get, dummy ) );
+    transMeta.addTransHop( new TransHopMeta( dummy, copy ) );
+    return transMeta;
+  }
+
+  private List<RowMetaAndData> createGroup( String... names ) {
+    RowMetaInterface rowMeta = new RowMeta();
+    rowMeta.addValueMeta( new ValueMetaString( "name" ) );
+    RowMetaAndData[] rows = new RowMetaAndData[ names.length ];
+    for ( int i = 0; i < names.length; i++ ) {
+      rows[ i ] = new RowMetaAndData( rowMeta, names[ i ] );
+    }
+    return Arrays.asList( rows );
+  }
+
+  @Test
+  public void resultStepsAreReplaced() {
+    TransMeta original = createTransMeta();
+    TransMeta transMeta = TransExecutorWarmInstance.createTransMeta( original );
+
+    assertEquals( TransformationType.SingleThreaded, transMeta.getTransformationType() );
+    assertTrue( transMeta.findStep( "get" ).getStepMetaInterface() instanceof InjectorMeta );
+    assertTrue( transMeta.findStep( "copy" ).getStepMetaInterface() instanceof DummyTransMeta );
+    assertSame( transMeta.findStep( "get" ), transMeta.getTransHop( 0 ).getFromStep() );
+    assertSame( transMeta.findStep( "copy" ), transMeta.getTransHop( 1 ).getToStep() );
+
+    // The original is left alone
+    assertEquals( TransformationType.Normal, original.getTransformationType() );
+    assertTrue( original.findStep( "get" ).getStepMetaInterface() instanceof RowsFromResultMeta );
+  }
+
+  @Test
+  public void groupsThatNeedANewSubTransformationAreDetected() {
+    TransMeta transMeta = createTransMeta();
+    assertNull( TransExecutorWarmInstance.getUnsupportedReason( transMeta, new TransExecutorParameters() ) );
+
+    TransExecutorParameters parameters = new TransExecutorParameters();
+    parameters.setVariable( new String[] { "param" } );
+    parameters.setField( new String[] { "name" } );
+    parameters.setInput( new String[] { null } );
+    assertNotNull( TransExecutorWarmInstance.getUnsupportedReason( transMeta, parameters ) );
+
+    transMeta.addStep( new StepMeta( "generator", new DummyTransMeta() ) );
+    assertNotNull( TransExecutorWarmInstance.getUnsupportedReason( transMeta, new TransExecutorParameters() ) );
+  }
+
+  @Test
+  public void groupsAreExecutedOneAfterTheOther() throws Exception {
+    TransMeta original = createTransMeta();
+    Trans trans = new Trans( TransExecutorWarmInstance.createTransMeta( original ) );
+    TransExecutorWarmInstance instance = new TransExecutorWarmInstance( trans, original );
+    try {
+      Result first = instance.execute( createGroup( "a", "b" ) );
+      assertTrue( first.getResult() );
+      assertEquals( 2, first.getRows().size() );
+      assertEquals( "a", first.getRows().get( 0 ).getString( "name", null ) );
+
+      Result second = instance.execute( createGroup( "c" ) );
+      assertTrue( second.getResult() );
+      assertEquals( 1, second.getRows().size() );
+      assertEquals( "c", second.getRows().get( 0 ).getString( "name", null ) );
+      assertFalse( instance.isBroken() );
+
+      // Still the same sub-transformation
+      assertSame( trans, instance.getTrans() );
+    } finally {
+      instance.dispose();
+    }
+  }
+}
@@ -0,0 +1,132 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2020 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.steps.uniquerowsbyhashset;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.pentaho.di.core.BlockingRowSet;
+import org.pentaho.di.core.RowSet;
+import org.pentaho.di.core.exception.KettleStepException;
+import org.pentaho.di.core.row.RowMeta;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.value.ValueMetaBinary;
+import org.pentaho.di.core.row.value.ValueMetaInteger;
+import org.pentaho.di.core.row.value.ValueMetaString;
+import org.pentaho.di.junit.rules.RestorePDIEngineEnvironment;
+import org.pentaho.di.trans.Trans;
+import org.pentaho.di.trans.TransMeta;
+import org.pentaho.di.trans.step.RowAdapter;
+import org.pentaho.di.trans.step.StepMeta;
+
+public class UniqueRowsByHashSetTest {
+  @ClassRule public static RestorePDIEngineEnvironment env = new RestorePDIEngineEnvironment();
+
+  private RowMetaInterface createRowMeta() {
+    RowMetaInterface rowMeta = new RowMeta();
+    rowMeta.addValueMeta( new ValueMetaString( "name" ) );
+    rowMeta.addValueMeta( new ValueMetaInteger( "id" ) );
+    rowMeta.addValueMeta( new ValueMetaBinary( "data" ) );
+    return rowMeta;
+  }
+
+  private List<Object[]> createRows() {
+    List<Object[]> rows = new ArrayList<>();
+    rows.add( new Object[] { "a", 1L, new byte[] { 1 } } );
+    rows.add( new Object[] { "a", 1L, new byte[] { 1 } } );
+    rows.add( new Object[] { "a", 2L, new byte[] { 1 } } );
+    rows.add( new Object[] { "b", 1L, new byte[] { 2 } } );
+    rows.add( new Object[] { null, null, null } );
+    rows.add( new Object[] { null, null, null } );
+    rows.add( new Object[] { "a", 2L, new byte[] { 1 } } );
+    return rows;
+  }
+
+  private List<Object[]> run( boolean storeValues, String... compareFields ) throws Exception {
+    UniqueRowsByHashSetMeta meta = new UniqueRowsByHashSetMeta();
+    meta.setDefault();
+    meta.setStoreValues( storeValues );
+    meta.setCompareFields( compareFields );
+    StepMeta stepMeta = new StepMeta( "unique", meta );
+    TransMeta transMeta = new TransMeta();
+    transMeta.addStep( stepMeta );
+    Trans trans = new Trans( transMeta );
+    trans.setRunning( true );
+
+    UniqueRowsByHashSetData data = new UniqueRowsByHashSetData();
+    UniqueRowsByHashSet step = new UniqueRowsByHashSet( stepMeta, data, 0, transMeta, trans );
+    assertTrue( step.init( meta, data ) );
+
+    RowSet input = new BlockingRowSet( 100 );
+    RowMetaInterface rowMeta = createRowMeta();
+    for ( Object[] row : createRows() ) {
+      input.putRow( rowMeta, row );
+    }
+    input.setDone();
+    List<RowSet> inputRowSets = new ArrayList<>();
+    inputRowSets.add( input );
+    step.setInputRowSets( inputRowSets );
+
+    final List<Object[]> result = new ArrayList<>();
+    step.addRowListener( new RowAdapter() {
+      @Override
+      public void rowWrittenEvent( RowMetaInterface rowMeta, Object[] row ) throws KettleStepException {
+        result.add( row );
+      }
+    } );
+
+    while ( step.processRow( meta, data ) ) {
+      // keep going
+    }
+    assertEquals( 0, step.getErrors() );
+    return result;
+  }
+
+  @Test
+  public void testStoredValuesOfAllFields() throws Exception {
+    List<Object[]> result = run( true );
+    assertEquals( 4, result.size() );
+    assertEquals( 2L, result.get( 1 )[1] );
+    assertEquals( null, result.get( 3 )[0] );
+  }
+
+  @Test
+  public void testStoredValuesOfSomeFields() throws Exception {
+    List<Object[]> result = run( true, "name", "data" );
+    assertEquals( 3, result.size() );
+    assertEquals( "a", result.get( 0 )[0] );
+    assertEquals( "b", result.get( 1 )[0] );
+    assertEquals( null, result.get( 2 )[0] );
+  }
+
+  @Test
+  public void testHashCodesOnly() throws Exception {
+    assertEquals( 4, run( false ).size() );
+    assertEquals( 3, run( false, "id" ).size() );
+  }
+}
@@ -222,6 +222,22 @@ public class BaseStreamStepMetaTest {
       remarks.get( 1 ).getText() );
   }
 
+  @Test
+  public void testCheckSlideMoreThanPrefetch() {
+    List<CheckResultInterface> remarks = new ArrayList<>();
+    meta.setWindowType( "SLIDING_COUNT" );
+    meta.setWindowLength( "4000" );
+    meta.setWindowSlide( "2000" );
+    meta.setBatchSize( "1000" );
+    meta.setPrefetchCount( "1000" );
+    meta.check( remarks, null, null, null, null, null, null, new Variables(), null, null );
+    assertEquals( 1, remarks.size() );
+    assertEquals( CheckResultInterface.TYPE_RESULT_ERROR, remarks.get( 0 ).getType() );
+    assertEquals( "The \"Message prefetch limit\" must be equal to or greater than the \"Window slide\". 1000 is not "
+        + "equal to or greater than 2000",
+      remarks.get( 0 ).getText() );
+  }
+
   @Test
   public void testCheckPrefetchNull() {
     List<CheckResultInterface> remarks = new ArrayList<>();
@@ -36,6 +36,9 @@ import org.pentaho.di.core.exception.KettleException;
 import org.pentaho.di.core.logging.KettleLogStore;
 import org.pentaho.di.core.logging.LogChannelInterface;
 import org.pentaho.di.core.logging.LogChannelInterfaceFactory;
+import org.pentaho.di.core.row.RowMeta;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.value.ValueMetaString;
 import org.pentaho.di.core.variables.Variables;
 import org.pentaho.di.trans.Trans;
 import org.pentaho.di.trans.TransMeta;
@@ -220,4 +223,33 @@ public class BaseStreamStepTest {
     when( metaWithVariables.getPrefetchCount() ).thenReturn( "" );
     assertEquals( 100000, baseStreamStep.getPrefetchCount() );
   }
+
+  @Test
+  public void testCreateWindowOfTheChosenType() throws KettleException {
+    baseStreamStep.variablizedStepMeta = metaWithVariables;
+    RowMetaInterface rowMeta = new RowMeta();
+    rowMeta.addValueMeta( new ValueMetaString( "key" ) );
+
+    when( metaWithVariables.getWindowType() ).thenReturn( "SLIDING_COUNT" );
+    when( metaWithVariables.getWindowLength() ).thenReturn( "4" );
+    when( metaWithVariables.getWindowSlide() ).thenReturn( "2" );
+    assertTrue( baseStreamStep.createWindow( rowMeta ) instanceof SlidingStreamWindow );
+
+    when( metaWithVariables.getWindowType() ).thenReturn( "SESSION" );
+    when( metaWithVariables.getWindowField() ).thenReturn( "key" );
+    when( metaWithVariables.getWindowGap() ).thenReturn( "1000" );
+    assertTrue( baseStreamStep.createWindow( rowMeta ) instanceof SessionStreamWindow );
+
+    when( metaWithVariables.getWindowType() ).thenReturn( "EVENT_TIME" );
+    assertTrue( baseStreamStep.createWindow( rowMeta ) instanceof EventTimeStreamWindow );
+  }
+
+  @Test( expected = KettleException.class )
+  public void testCreateWindowRejectsALengthThatIsNoMultipleOfTheSlide() throws KettleException {
+    baseStreamStep.variablizedStepMeta = metaWithVariables;
+    when( metaWithVariables.getWindowType() ).thenReturn( "SLIDING_TIME" );
+    when( metaWithVariables.getWindowLength() ).thenReturn( "5000" );
+    when( metaWithVariables.getWindowSlide() ).thenReturn( "2000" );
+    baseStreamStep.createWindow( new RowMeta() );
+  }
 }
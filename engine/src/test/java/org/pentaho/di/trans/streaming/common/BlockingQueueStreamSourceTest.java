@@ -22,6 +22,7 @@
 
 package org.pentaho.di.trans.streaming.common;
 
+import io.reactivex.subscribers.TestSubscriber;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -40,6 +41,7 @@ import java.util.concurrent.Future;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeoutException;
 
+import static java.util.Arrays.asList;
 import static java.util.Collections.singletonList;
 import static java.util.concurrent.TimeUnit.MILLISECONDS;
 import static junit.framework.TestCase.fail;
@@ -141,6 +143,44 @@ public class BlockingQueueStreamSourceTest {
 
   }
 
+  @Test
+  public void acceptRowsWaitsForRequests() {
+    TestSubscriber<String> subscriber = streamSource.flowable().test( 1 );
+    Future<?> accepted = execSvc.submit( () -> streamSource.acceptRows( asList( "first", "second" ) ) );
+
+    // only one row was requested
+    assertTimesOut( accepted );
+    subscriber.assertValues( "first" );
+
+    subscriber.request( 1 );
+    getQuickly( accepted );
+    subscriber.assertValues( "first", "second" );
+  }
+
+  @Test
+  public void rowsAcceptedBeforeSubscribingAreKept() {
+    Future<?> accepted = execSvc.submit( () -> streamSource.acceptRows( singletonList( "row" ) ) );
+    assertTimesOut( accepted );
+
+    TestSubscriber<String> subscriber = streamSource.flowable().test();
+    getQuickly( accepted );
+    subscriber.assertValues( "row" );
+  }
+
+  @Test
+  public void closeBeforeSubscribingCompletes() {
+    streamSource.close();
+    streamSource.flowable().test().assertNoValues().assertComplete();
+  }
+
+  @Test
+  public void acceptRowsAcquiresBufferBytesWhenLimited() throws InterruptedException {
+    when( subtransExecutor.getMaxBufferBytes() ).thenReturn( 1000L );
+    streamSource.flowable().test();
+    streamSource.acceptRows( singletonList( "row" ) );
+    verify( subtransExecutor ).acquireBufferBytes( SubtransExecutor.estimateBufferBytes( singletonList( "row" ) ) );
+  }
+
   @Test
   public void testRowsFilled() throws InterruptedException {
     int rowCount = 4;
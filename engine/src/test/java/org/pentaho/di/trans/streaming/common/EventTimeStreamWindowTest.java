@@ -0,0 +1,114 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2020 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+
+package org.pentaho.di.trans.streaming.common;
+
+import io.reactivex.Flowable;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.pentaho.di.core.Result;
+import org.pentaho.di.core.RowMetaAndData;
+import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.row.RowMeta;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.value.ValueMetaInteger;
+import org.pentaho.di.trans.SubtransExecutor;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+import static java.util.Arrays.asList;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Mockito.when;
+
+@RunWith( MockitoJUnitRunner.class )
+public class EventTimeStreamWindowTest {
+  @Mock private SubtransExecutor subtransExecutor;
+
+  private RowMetaInterface rowMeta;
+  private final List<String> windows = Collections.synchronizedList( new ArrayList<>() );
+
+  @Before
+  @SuppressWarnings( "unchecked" )
+  public void setUp() throws KettleException {
+    rowMeta = new RowMeta();
+    rowMeta.addValueMeta( new ValueMetaInteger( "time" ) );
+    when( subtransExecutor.execute( any(), anyInt() ) ).thenAnswer( ( InvocationOnMock invocation ) -> {
+      StringBuilder window = new StringBuilder();
+      for ( RowMetaAndData row : (List<RowMetaAndData>) invocation.getArguments()[ 0 ] ) {
+        window.append( window.length() > 0 ? "," : "" ).append( row.getData()[ 0 ] );
+      }
+      windows.add( window.toString() );
+      return Optional.of( new Result() );
+    } );
+  }
+
+  @Test
+  public void windowsCloseWhenTheWatermarkPassesAndLateRowsGoOnTheirOwn() throws KettleException {
+    EventTimeStreamWindow<List> window =
+      new EventTimeStreamWindow<>( subtransExecutor, rowMeta, "time", 10000, 0, 1 );
+    window.buffer( times( 1000, 5000, 12000, 3000, 25000 ) ).forEach( result -> { } );
+
+    assertEquals( asList( "1000,5000", "3000", "12000", "25000" ), windows );
+  }
+
+  @Test
+  public void allowedLatenessKeepsWindowsOpen() throws KettleException {
+    EventTimeStreamWindow<List> window =
+      new EventTimeStreamWindow<>( subtransExecutor, rowMeta, "time", 10000, 5000, 1 );
+    window.buffer( times( 1000, 12000, 3000, 16000, 7000 ) ).forEach( result -> { } );
+
+    assertEquals( asList( "1000,3000", "7000", "12000,16000" ), windows );
+  }
+
+  @Test
+  public void windowsAlsoCloseAfterTheirLengthInProcessingTime() throws KettleException {
+    EventTimeStreamWindow<List> window = new EventTimeStreamWindow<>( subtransExecutor, rowMeta, "time", 50, 0, 1 );
+    Flowable<List> rows = Flowable.concat( times( 1, 5 ), times( 7 ).delaySubscription( 500, MILLISECONDS ) );
+    window.buffer( rows ).forEach( result -> { } );
+
+    assertEquals( asList( "1,5", "7" ), windows );
+  }
+
+  @Test( expected = IllegalArgumentException.class )
+  public void emptyWindowIsRejected() {
+    new EventTimeStreamWindow<List>( subtransExecutor, rowMeta, "time", 0, 0, 1 );
+  }
+
+  private Flowable<List> times( long... times ) {
+    List<List> rows = new ArrayList<>();
+    for ( long time : times ) {
+      rows.add( Collections.singletonList( time ) );
+    }
+    return Flowable.fromIterable( rows );
+  }
+}
@@ -0,0 +1,103 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2020 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+
+package org.pentaho.di.trans.streaming.common;
+
+import io.reactivex.Flowable;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.pentaho.di.core.Result;
+import org.pentaho.di.core.RowMetaAndData;
+import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.row.RowMeta;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.value.ValueMetaString;
+import org.pentaho.di.trans.SubtransExecutor;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+import static java.util.Arrays.asList;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Mockito.when;
+
+@RunWith( MockitoJUnitRunner.class )
+public class SessionStreamWindowTest {
+  @Mock private SubtransExecutor subtransExecutor;
+
+  private RowMetaInterface rowMeta;
+  private final List<String> windows = Collections.synchronizedList( new ArrayList<>() );
+
+  @Before
+  @SuppressWarnings( "unchecked" )
+  public void setUp() throws KettleException {
+    rowMeta = new RowMeta();
+    rowMeta.addValueMeta( new ValueMetaString( "key" ) );
+    rowMeta.addValueMeta( new ValueMetaString( "value" ) );
+    when( subtransExecutor.execute( any(), anyInt() ) ).thenAnswer( ( InvocationOnMock invocation ) -> {
+      StringBuilder window = new StringBuilder();
+      for ( RowMetaAndData row : (List<RowMetaAndData>) invocation.getArguments()[ 0 ] ) {
+        window.append( row.getData()[ 1 ] );
+      }
+      windows.add( window + "/" + invocation.getArguments()[ 1 ] );
+      return Optional.of( new Result() );
+    } );
+  }
+
+  @Test
+  public void sessionsAreClosedAtTheMaximumSizeAndAtTheEndOfTheStream() throws KettleException {
+    SessionStreamWindow<List> window =
+      new SessionStreamWindow<>( subtransExecutor, rowMeta, "key", 60000, 2, 1 );
+    Flowable<List> rows = Flowable.<List>just(
+      asList( "x", "1" ), asList( "y", "2" ), asList( "x", "3" ), asList( "y", "4" ), asList( "x", "5" ) );
+    window.buffer( rows ).forEach( result -> { } );
+
+    assertEquals( asList( "13/2", "24/2", "5/1" ), windows );
+  }
+
+  @Test
+  public void sessionsAreClosedAfterTheGap() throws KettleException {
+    SessionStreamWindow<List> window =
+      new SessionStreamWindow<>( subtransExecutor, rowMeta, "key", 50, 0, 1 );
+    Flowable<List> rows = Flowable.concat(
+      Flowable.<List>just( asList( "x", "1" ), asList( "x", "2" ) ),
+      Flowable.<List>just( asList( "x", "3" ) ).delaySubscription( 500, MILLISECONDS ) );
+    window.buffer( rows ).forEach( result -> { } );
+
+    assertEquals( asList( "12/2", "3/1" ), windows );
+  }
+
+  @Test( expected = IllegalArgumentException.class )
+  public void unknownKeyFieldIsRejected() {
+    new SessionStreamWindow<List>( subtransExecutor, rowMeta, "unknown", 1000, 0, 1 );
+  }
+}
@@ -0,0 +1,103 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2020 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+
+package org.pentaho.di.trans.streaming.common;
+
+import io.reactivex.Flowable;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.pentaho.di.core.Result;
+import org.pentaho.di.core.RowMetaAndData;
+import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.row.RowMeta;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.value.ValueMetaString;
+import org.pentaho.di.trans.SubtransExecutor;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Mockito.when;
+
+@RunWith( MockitoJUnitRunner.class )
+public class SlidingStreamWindowTest {
+  @Mock private SubtransExecutor subtransExecutor;
+
+  private RowMetaInterface rowMeta;
+  private final List<String> windows = Collections.synchronizedList( new ArrayList<>() );
+
+  @Before
+  @SuppressWarnings( "unchecked" )
+  public void setUp() throws KettleException {
+    rowMeta = new RowMeta();
+    rowMeta.addValueMeta( new ValueMetaString( "field" ) );
+    when( subtransExecutor.execute( any(), anyInt() ) ).thenAnswer( ( InvocationOnMock invocation ) -> {
+      StringBuilder window = new StringBuilder();
+      for ( RowMetaAndData row : (List<RowMetaAndData>) invocation.getArguments()[ 0 ] ) {
+        window.append( row.getData()[ 0 ] );
+      }
+      windows.add( window + "/" + invocation.getArguments()[ 1 ] );
+      return Optional.of( new Result() );
+    } );
+  }
+
+  @Test
+  public void windowsByCountOverlapAndCountEveryRowOnce() throws KettleException {
+    SlidingStreamWindow<List> window = SlidingStreamWindow.byCount( subtransExecutor, rowMeta, 4, 2, 1 );
+    int results = 0;
+    for ( Result result : window.buffer( rows( "a", "b", "c", "d", "e", "f", "g" ) ) ) {
+      results++;
+    }
+
+    assertEquals( 4, results );
+    assertEquals( asList( "ab/2", "abcd/2", "cdef/2", "efg/1" ), windows );
+  }
+
+  @Test( expected = IllegalArgumentException.class )
+  public void windowLengthThatIsNoMultipleOfTheSlideIsRejected() {
+    SlidingStreamWindow.byCount( subtransExecutor, rowMeta, 5, 2, 1 );
+  }
+
+  @Test( expected = IllegalArgumentException.class )
+  public void slideLongerThanTheWindowIsRejected() {
+    SlidingStreamWindow.byTime( subtransExecutor, rowMeta, 1000, 2000, 1 );
+  }
+
+  private Flowable<List> rows( String... values ) {
+    List<List> rows = new ArrayList<>();
+    for ( String value : values ) {
+      rows.add( Collections.singletonList( value ) );
+    }
+    return Flowable.fromIterable( rows );
+  }
+}
@@ -2,7 +2,7 @@
  *
  * Pentaho Data Integration
  *
- * Copyright (C) 2002-2018 by Hitachi Vantara : http://www.pentaho.com
+ * Copyright (C) 2002-2020 by Hitachi Vantara : http://www.pentaho.com
  *
  *******************************************************************************
  *
@@ -26,6 +26,7 @@ import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
 import org.apache.commons.vfs2.FileObject;
 import org.apache.commons.vfs2.FileSystemException;
+import org.pentaho.di.core.exception.KettleException;
 import org.pentaho.di.core.exception.KettleFileException;
 import org.pentaho.di.core.row.RowMeta;
 import org.pentaho.di.core.row.value.ValueMetaString;
@@ -38,7 +39,6 @@ import org.pentaho.di.trans.step.StepMeta;
 import org.pentaho.di.trans.step.StepMetaInterface;
 import org.pentaho.di.trans.streaming.api.StreamSource;
 import org.pentaho.di.trans.streaming.common.BaseStreamStep;
-import org.pentaho.di.trans.streaming.common.FixedTimeStreamWindow;
 
 import java.io.FileNotFoundException;
 import java.net.URISyntaxException;
@@ -71,11 +71,10 @@ public class FileStream extends BaseStreamStep implements StepInterface {
     RowMeta rowMeta = new RowMeta();
     rowMeta.addValueMeta( new ValueMetaString( "line" ) );
 
-    window = new FixedTimeStreamWindow<>( subtransExecutor, rowMeta, getDuration(), getBatchSize() );
-
     try {
+      window = createWindow( rowMeta );
       source = new TailFileStreamSource( sourceFile, this );
-    } catch ( FileNotFoundException e ) {
+    } catch ( KettleException | FileNotFoundException e ) {
       logError( e.getLocalizedMessage(), e );
       return false;
     }
@@ -22,13 +22,13 @@
 
 package org.pentaho.di.trans.step.jms;
 
+import org.pentaho.di.core.exception.KettleException;
 import org.pentaho.di.trans.Trans;
 import org.pentaho.di.trans.TransMeta;
 import org.pentaho.di.trans.step.StepDataInterface;
 import org.pentaho.di.trans.step.StepMeta;
 import org.pentaho.di.trans.step.StepMetaInterface;
 import org.pentaho.di.trans.streaming.common.BaseStreamStep;
-import org.pentaho.di.trans.streaming.common.FixedTimeStreamWindow;
 
 import static java.util.Objects.requireNonNull;
 import static org.pentaho.di.i18n.BaseMessages.getString;
@@ -55,8 +55,12 @@ public class JmsConsumer extends BaseStreamStep {
     log.logDebug( "Connection Details: "
       + jmsConsumerMeta.jmsDelegate.getJmsProvider().getConnectionDetails( jmsConsumerMeta.jmsDelegate ) );
 
-    window = new FixedTimeStreamWindow<>(
-      getSubtransExecutor(), jmsConsumerMeta.getRowMeta(), getDuration(), getBatchSize(), getParallelism() );
+    try {
+      window = createWindow( jmsConsumerMeta.getRowMeta() );
+    } catch ( KettleException e ) {
+      logError( e.getMessage(), e );
+      return false;
+    }
     source = new JmsStreamSource( this, requireNonNull( jmsConsumerMeta.jmsDelegate ), getReceiverTimeout( jmsConsumerMeta ) );
     return superStatus;
   }
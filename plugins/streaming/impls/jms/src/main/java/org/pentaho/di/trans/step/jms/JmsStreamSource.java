@@ -2,7 +2,7 @@
  *
  * Pentaho Data Integration
  *
- * Copyright (C) 2002-2019 by Hitachi Vantara : http://www.pentaho.com
+ * Copyright (C) 2002-2020 by Hitachi Vantara : http://www.pentaho.com
  *
  *******************************************************************************
  *
@@ -27,14 +27,18 @@ import org.pentaho.di.trans.streaming.common.BaseStreamStep;
 import org.pentaho.di.trans.streaming.common.BlockingQueueStreamSource;
 
 import javax.jms.JMSConsumer;
+import javax.jms.JMSContext;
 import javax.jms.JMSException;
 import javax.jms.JMSRuntimeException;
 import javax.jms.Message;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Set;
 import java.util.TimeZone;
 import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -45,10 +49,25 @@ import static org.pentaho.di.trans.step.jms.JmsConstants.PKG;
 
 public class JmsStreamSource extends BlockingQueueStreamSource<List<Object>> {
 
+  /**
+   * How long the receive loop waits for a message at a time when it acknowledges processed messages
+   */
+  static final int ACKNOWLEDGE_POLL_MILLIS = 100;
+
   private final JmsDelegate jmsDelegate;
   private final int receiverTimeout;
+  private JMSContext connectionContext;
+  private JMSContext context;
   private JMSConsumer consumer;
   private AtomicBoolean closed = new AtomicBoolean( false );
+  private boolean acknowledging;
+  private boolean unacknowledged;
+
+  /**
+   * The rows of the received messages the sub-transformation didn't process yet
+   */
+  private final Set<List<Object>> unprocessed = Collections.synchronizedSet( Collections.newSetFromMap(
+    new IdentityHashMap<>() ) );
 
   JmsStreamSource( BaseStreamStep streamStep, JmsDelegate jmsDelegate, int receiverTimeout ) {
     super( streamStep );
@@ -56,9 +75,16 @@ public class JmsStreamSource extends BlockingQueueStreamSource<List<Object>> {
     this.receiverTimeout = receiverTimeout;
   }
 
+  /**
+   * Opens a context and a consumer of the destination.  When processed messages are to be acknowledged, the context
+   * acknowledges on request: JMS acknowledges all messages the context received so far at once, so the receive loop
+   * acknowledges whenever every message it received was processed.
+   */
   @Override public void open() {
-    consumer = jmsDelegate.getJmsContext()
-      .createConsumer( jmsDelegate.getDestination() );
+    acknowledging = streamStep.isAcknowledgingProcessed();
+    connectionContext = jmsDelegate.getJmsContext();
+    context = acknowledging ? connectionContext.createContext( JMSContext.CLIENT_ACKNOWLEDGE ) : connectionContext;
+    consumer = context.createConsumer( jmsDelegate.getDestination() );
     Executors.newSingleThreadExecutor().submit( this::receiveLoop  );
   }
 
@@ -69,13 +95,20 @@ public class JmsStreamSource extends BlockingQueueStreamSource<List<Object>> {
   private void receiveLoop() {
     Message message;
     try {
-      while ( !closed.get() && ( message = consumer.receive( receiverTimeout ) ) != null ) {
+      while ( !closed.get() && ( message = receive() ) != null ) {
         streamStep.logDebug( message.toString() );
         Date date = new Date( message.getJMSTimestamp() );
         DateFormat formatter = new SimpleDateFormat( "MM-dd-yyyy HH:mm:ss a" );
         formatter.setTimeZone( TimeZone.getTimeZone( "UTC" ) );
         String jmsTimestamp = formatter.format( date );
-        acceptRows( singletonList( Arrays.asList( message.getBody( Object.class ), jmsDelegate.destinationName, message.getJMSMessageID(), jmsTimestamp, message.getJMSRedelivered() ) ) );
+        List<Object> row = Arrays.asList( message.getBody( Object.class ), jmsDelegate.destinationName,
+          message.getJMSMessageID(), jmsTimestamp, message.getJMSRedelivered() );
+        if ( acknowledging ) {
+          unprocessed.add( row );
+          unacknowledged = true;
+        }
+        acceptRows( singletonList( row ) );
+        acknowledgeProcessed();
       }
     } catch ( JMSRuntimeException | JMSException jmsException ) {
       error( jmsException );
@@ -88,11 +121,56 @@ public class JmsStreamSource extends BlockingQueueStreamSource<List<Object>> {
     }
   }
 
+  /**
+   * Receives the next message, null once the receiver timeout passed without one. When processed messages are
+   * acknowledged, the wait is cut in short polls to acknowledge the messages that were processed in the meantime.
+   */
+  private Message receive() {
+    if ( !acknowledging ) {
+      return consumer.receive( receiverTimeout );
+    }
+    long waited = 0;
+    while ( !closed.get() && ( receiverTimeout == 0 || waited < receiverTimeout ) ) {
+      long poll = receiverTimeout == 0 ? ACKNOWLEDGE_POLL_MILLIS : Math.min( ACKNOWLEDGE_POLL_MILLIS,
+        receiverTimeout - waited );
+      Message message = consumer.receive( poll );
+      if ( message != null ) {
+        return message;
+      }
+      acknowledgeProcessed();
+      waited += poll;
+    }
+    return null;
+  }
+
+  /**
+   * Acknowledges all messages received so far once the sub-transformation processed every one of them. Only called on
+   * the receive thread, the thread of the context.
+   */
+  private void acknowledgeProcessed() {
+    if ( unacknowledged && unprocessed.isEmpty() ) {
+      context.acknowledge();
+      unacknowledged = false;
+    }
+  }
+
+  /**
+   * Records the rows as processed, the receive loop acknowledges their messages.
+   */
+  @Override public void acknowledge( List<List<Object>> rows ) {
+    if ( acknowledging ) {
+      rows.forEach( unprocessed::remove );
+    }
+  }
+
   @Override public void close() {
     //don't call super.close().  need to wait for the receiveLoop to be done
     if ( consumer != null && !closed.getAndSet( true ) ) {
       consumer.close();
-      jmsDelegate.getJmsContext().close();
+      context.close();
+      if ( context != connectionContext ) {
+        connectionContext.close();
+      }
     }
   }
 }
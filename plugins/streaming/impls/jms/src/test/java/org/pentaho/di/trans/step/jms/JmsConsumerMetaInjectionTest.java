@@ -49,6 +49,11 @@ public class JmsConsumerMetaInjectionTest extends BaseMetadataInjectionTest<JmsC
     check( "DURATION", () -> meta.getBatchDuration() );
     check( "JMS_REDELIVERED", () -> meta.jmsRedelivered );
     check( "SUB_STEP", () -> meta.getSubStep() );
+    check( "WINDOW_TYPE", () -> meta.getWindowType() );
+    check( "WINDOW_LENGTH", () -> meta.getWindowLength() );
+    check( "WINDOW_SLIDE", () -> meta.getWindowSlide() );
+    check( "WINDOW_FIELD", () -> meta.getWindowField() );
+    check( "WINDOW_GAP", () -> meta.getWindowGap() );
 
     check( "AMQ_PASSWORD", () -> meta.jmsDelegate.amqPassword );
     check( "AMQ_SSL_PROVIDER", () -> meta.jmsDelegate.amqSslProvider );
@@ -32,6 +32,7 @@ import org.pentaho.di.trans.SubtransExecutor;
 
 import javax.jms.Destination;
 import javax.jms.JMSConsumer;
+import javax.jms.JMSContext;
 import javax.jms.JMSException;
 import javax.jms.JMSRuntimeException;
 import javax.jms.Message;
@@ -45,6 +46,9 @@ import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -109,6 +113,35 @@ public class JmsStreamSourceTest {
   }
 
 
+  @Test ( timeout = 5000 )
+  public void acknowledgesOnceEveryReceivedMessageIsProcessed() throws Exception {
+    JMSContext clientAckContext = mock( JMSContext.class );
+    when( consumerStep.isAcknowledgingProcessed() ).thenReturn( true );
+    when( context.createContext( JMSContext.CLIENT_ACKNOWLEDGE ) ).thenReturn( clientAckContext );
+    when( clientAckContext.createConsumer( destination ) ).thenReturn( consumer );
+    AtomicBoolean first = new AtomicBoolean( true );
+    when( consumer.receive( (long) JmsStreamSource.ACKNOWLEDGE_POLL_MILLIS ) ).thenAnswer( ans -> {
+      if ( first.getAndSet( false ) ) {
+        return message;
+      }
+      Thread.sleep( 10 );
+      return null;
+    } );
+    source.open();
+
+    List<Object> row = source.flowable().firstElement().blockingGet( Collections.emptyList() );
+    assertEquals( "messageId", row.get( 2 ) );
+    Thread.sleep( 3 * JmsStreamSource.ACKNOWLEDGE_POLL_MILLIS );
+    verify( clientAckContext, never() ).acknowledge();
+
+    source.acknowledge( Collections.singletonList( row ) );
+    verify( clientAckContext, timeout( 1000 ) ).acknowledge();
+
+    source.close();
+    verify( clientAckContext ).close();
+    verify( context ).close();
+  }
+
   @Test ( timeout = 5000 )
   public void handlesJmsRuntimeException() {
     when( consumer.receive( 0 ) ).thenThrow( new JMSRuntimeException( "exception" ) );
@@ -2,7 +2,7 @@
  *
  * Pentaho Data Integration
  *
- * Copyright (C) 2002-2018 by Hitachi Vantara : http://www.pentaho.com
+ * Copyright (C) 2002-2020 by Hitachi Vantara : http://www.pentaho.com
  *
  *******************************************************************************
  *
@@ -93,6 +93,7 @@ public final class MQTTClientBuilder {
   private String serverUris;
   private String mqttVersion;
   private String automaticReconnect;
+  private boolean manualAcks;
   private MqttCallback callback;
   private String clientId = MqttAsyncClient.generateClientId();  // default
   private LogChannelInterface logChannel;
@@ -204,6 +205,16 @@ public final class MQTTClientBuilder {
     return this;
   }
 
+  /**
+   * @param manualAcks
+   *          true to acknowledge messages with {@link MqttClient#messageArrivedComplete(int, int)} instead of when the
+   *          callback returns
+   */
+  public MQTTClientBuilder withManualAcks( boolean manualAcks ) {
+    this.manualAcks = manualAcks;
+    return this;
+  }
+
   public MqttClient buildAndConnect() throws MqttException {
     validateArgs();
 
@@ -223,6 +234,7 @@ public final class MQTTClientBuilder {
     MqttClient client = clientFactory.getClient( protocolBroker, clientId, persistence );
 
     client.setCallback( callback );
+    client.setManualAcks( manualAcks );
 
     logChannel.logDebug( "Subscribing to topics with a quality of service level of " + qos );
     logChannel.logDebug( "Server URIs is set to " + serverUris );
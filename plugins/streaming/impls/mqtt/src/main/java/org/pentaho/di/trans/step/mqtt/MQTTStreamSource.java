@@ -31,7 +31,9 @@ import org.eclipse.paho.client.mqttv3.MqttException;
 import org.eclipse.paho.client.mqttv3.MqttMessage;
 import org.pentaho.di.trans.streaming.common.BlockingQueueStreamSource;
 
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 
 import static java.util.Collections.singletonList;
 
@@ -45,13 +47,23 @@ public class MQTTStreamSource extends BlockingQueueStreamSource<List<Object>> {
 
   @VisibleForTesting MqttClient mqttClient;
 
+  // messages waiting for their window to be processed, by row
+  private final Map<List<Object>, MqttMessage> unacknowledged = new IdentityHashMap<>();
+  private boolean manualAcks;
+
   private MqttCallback callback = new MqttCallback() {
     @Override public void connectionLost( Throwable cause ) {
       error( cause );
     }
 
     @Override public void messageArrived( String topic, MqttMessage message ) {
-      acceptRows( singletonList( ImmutableList.of( readBytes( message.getPayload() ), topic ) ) );
+      List<Object> row = ImmutableList.of( readBytes( message.getPayload() ), topic );
+      if ( manualAcks ) {
+        synchronized ( unacknowledged ) {
+          unacknowledged.put( row, message );
+        }
+      }
+      acceptRows( singletonList( row ) );
     }
 
     @Override public void deliveryComplete( IMqttDeliveryToken token ) {
@@ -66,6 +78,7 @@ public class MQTTStreamSource extends BlockingQueueStreamSource<List<Object>> {
   }
 
   @Override public void open() {
+    manualAcks = mqttConsumer.isAcknowledgingProcessed();
     try {
       mqttClient = MQTTClientBuilder.builder()
         .withClientId( mqttConsumerMeta.getClientId() )
@@ -86,6 +99,7 @@ public class MQTTStreamSource extends BlockingQueueStreamSource<List<Object>> {
         .withServerUris( mqttConsumerMeta.getServerUris() )
         .withMqttVersion( mqttConsumerMeta.getMqttVersion() )
         .withAutomaticReconnect( mqttConsumerMeta.getAutomaticReconnect() )
+        .withManualAcks( manualAcks )
         .buildAndConnect();
     } catch ( Exception e ) {
       mqttConsumer.stopAll();
@@ -93,8 +107,34 @@ public class MQTTStreamSource extends BlockingQueueStreamSource<List<Object>> {
     }
   }
 
+  /**
+   * Acknowledges the messages of the rows to the broker, when acknowledging processed messages. Messages of rows that
+   * were acknowledged before are skipped.
+   */
+  @Override public void acknowledge( List<List<Object>> rows ) {
+    if ( !manualAcks ) {
+      return;
+    }
+    for ( List<Object> row : rows ) {
+      MqttMessage message;
+      synchronized ( unacknowledged ) {
+        message = unacknowledged.remove( row );
+      }
+      if ( message != null ) {
+        try {
+          mqttClient.messageArrivedComplete( message.getId(), message.getQos() );
+        } catch ( MqttException e ) {
+          mqttConsumer.logError( e.getMessage() );
+        }
+      }
+    }
+  }
+
   @Override public void close() {
     super.close();
+    synchronized ( unacknowledged ) {
+      unacknowledged.clear();
+    }
     try {
       // Check if connected so subsequent calls does not produce an already stopped exception
       if ( mqttClient != null && mqttClient.isConnected() ) {
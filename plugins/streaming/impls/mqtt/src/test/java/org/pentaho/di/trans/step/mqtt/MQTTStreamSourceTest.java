@@ -65,11 +65,14 @@ import static org.hamcrest.CoreMatchers.equalTo;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.core.IsNot.not;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
 import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -178,6 +181,28 @@ public class MQTTStreamSourceTest {
     source.close();
   }
 
+  @Test
+  public void processedMessagesAreAcknowledgedOnce() throws Exception {
+    when( consumerMeta.getMessageDataType() ).thenReturn( ValueMetaInterface.TYPE_STRING );
+    when( mqttConsumer.isAcknowledgingProcessed() ).thenReturn( true );
+    MQTTStreamSource source = new MQTTStreamSource( consumerMeta, mqttConsumer );
+    source.open();
+
+    publish( "mytopic", "foo", "bar" );
+    List<List<Object>> rows = getQuickly(
+      iterateSource( source.flowable().blockingIterable().iterator(), 2 ) );
+
+    MqttClient connectedClient = source.mqttClient;
+    source.mqttClient = spy( connectedClient );
+    source.acknowledge( rows );
+    // rows of overlapping windows are passed again
+    source.acknowledge( rows );
+    verify( source.mqttClient, times( 2 ) ).messageArrivedComplete( anyInt(), eq( 2 ) );
+
+    source.mqttClient = connectedClient;
+    source.close();
+  }
+
   @Test
   public void testServernameCheck() {
     // valid server:port
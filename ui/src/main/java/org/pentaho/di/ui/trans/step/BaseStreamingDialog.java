@@ -23,6 +23,7 @@
 package org.pentaho.di.ui.trans.step;
 
 import org.eclipse.swt.SWT;
+import org.eclipse.swt.custom.CCombo;
 import org.eclipse.swt.custom.CTabFolder;
 import org.eclipse.swt.custom.CTabItem;
 import org.eclipse.swt.events.ModifyListener;
@@ -36,6 +37,7 @@ import org.eclipse.swt.layout.FormData;
 import org.eclipse.swt.layout.FormLayout;
 import org.eclipse.swt.widgets.Button;
 import org.eclipse.swt.widgets.Composite;
+import org.eclipse.swt.widgets.Control;
 import org.eclipse.swt.widgets.Display;
 import org.eclipse.swt.widgets.Event;
 import org.eclipse.swt.widgets.Label;
@@ -63,6 +65,7 @@ import org.pentaho.di.trans.step.StepDialogInterface;
 import org.pentaho.di.trans.step.StepMeta;
 import org.pentaho.di.trans.steps.recordsfromstream.RecordsFromStreamMeta;
 import org.pentaho.di.trans.streaming.common.BaseStreamStepMeta;
+import org.pentaho.di.trans.streaming.common.BaseStreamStepMeta.WindowType;
 import org.pentaho.di.ui.core.ConstUI;
 import org.pentaho.di.ui.core.FormDataBuilder;
 import org.pentaho.di.ui.core.dialog.ErrorDialog;
@@ -110,6 +113,11 @@ public abstract class BaseStreamingDialog extends BaseStepDialog implements Step
   protected Label wlBatchDuration;
   protected TextVar wBatchDuration;
   protected TextVar wParallelism;
+  protected CCombo wWindowType;
+  protected TextVar wWindowLength;
+  protected TextVar wWindowSlide;
+  protected TextVar wWindowField;
+  protected TextVar wWindowGap;
 
   protected CTabFolder wTabFolder;
   protected CTabItem wSetupTab;
@@ -502,10 +510,61 @@ public abstract class BaseStreamingDialog extends BaseStepDialog implements Step
     wPrefetchCount.addModifyListener( lsMod );
     wPrefetchCount.setLayoutData( new FormDataBuilder().left().top( wlPrefetchCount, 5 ).width( 125 ).result() );
 
+    // The windows the stream is cut in, next to the batch settings
+    Label wlWindowType = new Label( wBatchComp, SWT.LEFT );
+    props.setLook( wlWindowType );
+    wlWindowType.setText( BaseMessages.getString( PKG, "BaseStreamingDialog.WindowType" ) );
+    wlWindowType.setLayoutData( new FormDataBuilder().left( 50, 0 ).top().right( 100, 0 ).result() );
+
+    wWindowType = new CCombo( wBatchComp, SWT.BORDER | SWT.READ_ONLY );
+    props.setLook( wWindowType );
+    for ( WindowType type : WindowType.values() ) {
+      wWindowType.add( BaseMessages.getString( PKG, "BaseStreamingDialog.WindowType." + type.name() ) );
+    }
+    wWindowType.addModifyListener( lsMod );
+    wWindowType.addListener( SWT.Selection, e -> enableWindowSettings() );
+    wWindowType.setLayoutData( new FormDataBuilder().left( 50, 0 ).top( wlWindowType, 5 ).width( 200 ).result() );
+
+    wWindowLength = addWindowSetting( "BaseStreamingDialog.WindowLength", wWindowType );
+    wWindowSlide = addWindowSetting( "BaseStreamingDialog.WindowSlide", wWindowLength );
+    wWindowField = addWindowSetting( "BaseStreamingDialog.WindowField", wWindowSlide );
+    wWindowGap = addWindowSetting( "BaseStreamingDialog.WindowGap", wWindowField );
+
     wBatchComp.layout();
     wBatchTab.setControl( wBatchComp );
   }
 
+  private TextVar addWindowSetting( String labelKey, Control above ) {
+    Label wlSetting = new Label( wBatchComp, SWT.LEFT );
+    props.setLook( wlSetting );
+    wlSetting.setText( BaseMessages.getString( PKG, labelKey ) );
+    wlSetting.setLayoutData( new FormDataBuilder().left( 50, 0 ).top( above, 10 ).right( 100, 0 ).result() );
+
+    TextVar wSetting = new TextVar( transMeta, wBatchComp, SWT.SINGLE | SWT.LEFT | SWT.BORDER );
+    props.setLook( wSetting );
+    wSetting.addModifyListener( lsMod );
+    wSetting.setLayoutData( new FormDataBuilder().left( 50, 0 ).top( wlSetting, 5 ).width( 125 ).result() );
+    return wSetting;
+  }
+
+  /**
+   * Only the settings the chosen window type uses can be changed.
+   */
+  private void enableWindowSettings() {
+    WindowType type = getSelectedWindowType();
+    boolean sliding = type == WindowType.SLIDING_TIME || type == WindowType.SLIDING_COUNT;
+    boolean keyed = type == WindowType.SESSION || type == WindowType.EVENT_TIME;
+    wWindowLength.setEnabled( sliding || type == WindowType.EVENT_TIME );
+    wWindowSlide.setEnabled( sliding );
+    wWindowField.setEnabled( keyed );
+    wWindowGap.setEnabled( keyed );
+  }
+
+  private WindowType getSelectedWindowType() {
+    int index = wWindowType.getSelectionIndex();
+    return index < 0 ? WindowType.FIXED : WindowType.values()[ index ];
+  }
+
   private void buildResultsTab() {
     wResultsTab = new CTabItem( wTabFolder, SWT.NONE );
     wResultsTab.setText( BaseMessages.getString( PKG, "BaseStreamingDialog.ResultsTab" ) );
@@ -565,6 +624,12 @@ public abstract class BaseStreamingDialog extends BaseStepDialog implements Step
     if ( this.meta.getSubStep() != null ) {
       wSubStep.setText( this.meta.getSubStep() );
     }
+    wWindowType.select( WindowType.getWindowType( meta.getWindowType() ).ordinal() );
+    wWindowLength.setText( Const.NVL( meta.getWindowLength(), "" ) );
+    wWindowSlide.setText( Const.NVL( meta.getWindowSlide(), "" ) );
+    wWindowField.setText( Const.NVL( meta.getWindowField(), "" ) );
+    wWindowGap.setText( Const.NVL( meta.getWindowGap(), "" ) );
+    enableWindowSettings();
     specificationMethod = meta.getSpecificationMethod();
   }
 
@@ -629,6 +694,11 @@ public abstract class BaseStreamingDialog extends BaseStepDialog implements Step
     streamMeta.setBatchDuration( wBatchDuration.getText() );
     streamMeta.setParallelism( wParallelism.getText() );
     streamMeta.setPrefetchCount( wPrefetchCount.getText() );
+    streamMeta.setWindowType( getSelectedWindowType().name() );
+    streamMeta.setWindowLength( wWindowLength.getText() );
+    streamMeta.setWindowSlide( wWindowSlide.getText() );
+    streamMeta.setWindowField( wWindowField.getText() );
+    streamMeta.setWindowGap( wWindowGap.getText() );
     streamMeta.setSpecificationMethod( specificationMethod );
     streamMeta.setSubStep( wSubStep.getText() );
     switch ( specificationMethod ) {
@@ -2,7 +2,7 @@
  *
  * Pentaho Data Integration
  *
- * Copyright (C) 2002-2019 by Hitachi Vantara : http://www.pentaho.com
+ * Copyright (C) 2002-2020 by Hitachi Vantara : http://www.pentaho.com
  *
  *******************************************************************************
  *
@@ -94,6 +94,10 @@ public class TableInputDialog extends BaseStepDialog implements StepDialogInterf
   private TextVar wLimit;
   private FormData fdlLimit, fdLimit;
 
+  private Label wlSplitColumn;
+  private TextVar wSplitColumn;
+  private FormData fdlSplitColumn, fdSplitColumn;
+
   private Label wlEachRow;
   private Button wEachRow;
   private FormData fdlEachRow, fdEachRow;
@@ -188,6 +192,24 @@ public class TableInputDialog extends BaseStepDialog implements StepDialogInterf
 
     setButtonPositions( new Button[] { wOK, wPreview, wCancel }, margin, null );
 
+    // Split column for parallel reads...
+    wlSplitColumn = new Label( shell, SWT.RIGHT );
+    wlSplitColumn.setText( BaseMessages.getString( PKG, "TableInputDialog.SplitColumn" ) );
+    props.setLook( wlSplitColumn );
+    fdlSplitColumn = new FormData();
+    fdlSplitColumn.left = new FormAttachment( 0, 0 );
+    fdlSplitColumn.right = new FormAttachment( middle, -margin );
+    fdlSplitColumn.bottom = new FormAttachment( wOK, -2 * margin );
+    wlSplitColumn.setLayoutData( fdlSplitColumn );
+    wSplitColumn = new TextVar( transMeta, shell, SWT.SINGLE | SWT.LEFT | SWT.BORDER );
+    props.setLook( wSplitColumn );
+    wSplitColumn.addModifyListener( lsMod );
+    fdSplitColumn = new FormData();
+    fdSplitColumn.left = new FormAttachment( middle, 0 );
+    fdSplitColumn.right = new FormAttachment( 100, 0 );
+    fdSplitColumn.bottom = new FormAttachment( wOK, -2 * margin );
+    wSplitColumn.setLayoutData( fdSplitColumn );
+
     // Limit input ...
     wlLimit = new Label( shell, SWT.RIGHT );
     wlLimit.setText( BaseMessages.getString( PKG, "TableInputDialog.LimitSize" ) );
@@ -195,7 +217,7 @@ public class TableInputDialog extends BaseStepDialog implements StepDialogInterf
     fdlLimit = new FormData();
     fdlLimit.left = new FormAttachment( 0, 0 );
     fdlLimit.right = new FormAttachment( middle, -margin );
-    fdlLimit.bottom = new FormAttachment( wOK, -2 * margin );
+    fdlLimit.bottom = new FormAttachment( wSplitColumn, -margin );
     wlLimit.setLayoutData( fdlLimit );
     wLimit = new TextVar( transMeta, shell, SWT.SINGLE | SWT.LEFT | SWT.BORDER );
     props.setLook( wLimit );
@@ -203,7 +225,7 @@ public class TableInputDialog extends BaseStepDialog implements StepDialogInterf
     fdLimit = new FormData();
     fdLimit.left = new FormAttachment( middle, 0 );
     fdLimit.right = new FormAttachment( 100, 0 );
-    fdLimit.bottom = new FormAttachment( wOK, -2 * margin );
+    fdLimit.bottom = new FormAttachment( wSplitColumn, -margin );
     wLimit.setLayoutData( fdLimit );
 
     // Execute for each row?
@@ -443,6 +465,7 @@ public class TableInputDialog extends BaseStepDialog implements StepDialogInterf
 
     wStepname.addSelectionListener( lsDef );
     wLimit.addSelectionListener( lsDef );
+    wSplitColumn.addSelectionListener( lsDef );
 
     // Detect X or ALT-F4 or something that kills this window...
     shell.addShellListener( new ShellAdapter() {
@@ -500,6 +523,7 @@ public class TableInputDialog extends BaseStepDialog implements StepDialogInterf
       wConnection.setText( input.getDatabaseMeta().getName() );
     }
     wLimit.setText( Const.NVL( input.getRowLimit(), "" ) );
+    wSplitColumn.setText( Const.NVL( input.getSplitColumn(), "" ) );
 
     StreamInterface infoStream = input.getStepIOMeta().getInfoStreams().get( 0 );
     if ( infoStream.getStepMeta() != null ) {
@@ -546,6 +570,7 @@ public class TableInputDialog extends BaseStepDialog implements StepDialogInterf
     meta.setSQL( preview && !Utils.isEmpty( wSQL.getSelectionText() ) ? wSQL.getSelectionText() : wSQL.getText() );
     meta.setDatabaseMeta( transMeta.findDatabase( wConnection.getText() ) );
     meta.setRowLimit( wLimit.getText() );
+    meta.setSplitColumn( wSplitColumn.getText() );
     StreamInterface infoStream = input.getStepIOMeta().getInfoStreams().get( 0 );
     infoStream.setStepMeta( transMeta.findStep( wDatefrom.getText() ) );
     meta.setExecuteEachInputRow( wEachRow.getSelection() );